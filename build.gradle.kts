@@ -40,6 +40,54 @@ tasks.getByName<Test>("test") {
     useJUnitPlatform()
 }
 
+// Registry of the syscalls, dump formats and tools shipped with MARS, written as ServiceLoader
+// descriptors so that startup doesn't need to scan the classpath for them.  The loaders fall
+// back to scanning when the descriptors are missing (e.g. when running from an IDE).
+val serviceProviderPackages = mapOf(
+    "mars.mips.instructions.syscalls.Syscall" to "mars.mips.instructions.syscalls",
+    "mars.mips.dump.DumpFormat" to "mars.mips.dump",
+    "mars.tools.MarsTool" to "mars.tools",
+)
+val generatedServicesDirectory = File(buildDir, "generated/services")
+
+val generateServiceDescriptors = tasks.register("generateServiceDescriptors") {
+    val classesDirs = sourceSets.main.get().output.classesDirs
+    dependsOn(tasks.compileJava)
+    inputs.files(classesDirs)
+    outputs.dir(generatedServicesDirectory)
+
+    doLast {
+        val urls = (classesDirs.files + configurations.runtimeClasspath.get().files)
+            .map { it.toURI().toURL() }
+            .toTypedArray()
+        java.net.URLClassLoader(urls, ClassLoader.getPlatformClassLoader()).use { loader ->
+            serviceProviderPackages.forEach { (service, pkg) ->
+                val serviceClass = Class.forName(service, false, loader)
+                val providers = classesDirs.files
+                    .flatMap { File(it, pkg.replace('.', '/')).listFiles()?.asList() ?: emptyList() }
+                    .filter { it.name.endsWith(".class") && !it.name.contains('$') }
+                    .map { "$pkg.${it.nameWithoutExtension}" }
+                    .filter { name ->
+                        val clazz = Class.forName(name, false, loader)
+                        serviceClass.isAssignableFrom(clazz) &&
+                                java.lang.reflect.Modifier.isPublic(clazz.modifiers) &&
+                                !java.lang.reflect.Modifier.isAbstract(clazz.modifiers) &&
+                                clazz.constructors.any { it.parameterCount == 0 }
+                    }
+                    .distinct()
+                    .sorted()
+                val descriptor = File(generatedServicesDirectory, "META-INF/services/$service")
+                descriptor.parentFile.mkdirs()
+                descriptor.writeText(providers.joinToString("\n", postfix = "\n"))
+            }
+        }
+    }
+}
+
+tasks.processResources {
+    from(generateServiceDescriptors)
+}
+
 val jarsDirectory = File(buildDir, "jpackage-jars")
 val distDirectory = File(buildDir, "jpackage-dist")
 
@@ -100,6 +100,10 @@ public class Globals {
      * Maximum length of scrolled message window (MARS Messages and Run I/O)
      */
     public static final int maximumMessageCharacters = getMessageLimit();
+    /**
+     * Maximum number of characters cut from the Run I/O tab to keep in a temporary file for saving
+     */
+    public static final int maximumRunOutputSpill = getRunOutputSpillLimit();
     /**
      * Maximum number of assembler errors produced by one assemble operation
      */
@@ -209,6 +213,11 @@ public class Globals {
         return getIntegerProperty(configPropertiesFile, "MessageLimit", 1000000);
     }
 
+    // Read limit of Run I/O text to keep in a temporary file once cut from the tab.
+    private static int getRunOutputSpillLimit() {
+        return getIntegerProperty(configPropertiesFile, "RunOutputSpillLimit", 100000000);
+    }
+
     // Read limit on number of error messages produced by one assemble operation.
     private static int getErrorLimit() {
         return getIntegerProperty(configPropertiesFile, "ErrorLimit", 200);
@@ -30,6 +30,7 @@ package mars;
 import mars.assembler.*;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.BackStepper;
+import mars.simulator.Breakpoints;
 import mars.simulator.Simulator;
 
 import javax.swing.*;
@@ -228,8 +229,20 @@ public class MIPSprogram {
      * @throws ProcessingException Will throw exception if errors occured while tokenizing.
      **/
     public void tokenize() throws ProcessingException {
+        tokenize(new AssemblyProgress());
+    }
+
+    /**
+     * Tokenizes the MIPS source program, reporting the lines tokenized to the given progress
+     * and stopping between lines if it is cancelled.  Program must have already been read from file.
+     *
+     * @param progress progress of the assembly this tokenizing is part of
+     * @throws ProcessingException Will throw exception if errors occured while tokenizing,
+     *                             or if the assembly was cancelled.
+     **/
+    public void tokenize(AssemblyProgress progress) throws ProcessingException {
         this.tokenizer = new Tokenizer();
-        this.tokenList = tokenizer.tokenize(this);
+        this.tokenList = tokenizer.tokenize(this, progress);
         this.localSymbolTable = new SymbolTable(this.filename); // prepare for assembly
     }
 
@@ -249,16 +262,38 @@ public class MIPSprogram {
      * @throws ProcessingException Will throw exception if errors occured while reading or tokenizing.
      **/
     public List<MIPSprogram> prepareFilesForAssembly(List<String> filenames, String leadFilename, String exceptionHandler) throws ProcessingException {
+        return prepareFilesForAssembly(filenames, leadFilename, exceptionHandler, new AssemblyProgress());
+    }
+
+    /**
+     * Prepares the given list of files for assembly, reporting each file tokenized to the
+     * given progress and stopping between files if it is cancelled.
+     *
+     * @param filenames        ArrayList containing the source file name(s) in no particular order
+     * @param leadFilename     String containing name of source file that needs to go first and
+     *                         will be represented by "this" MIPSprogram object.
+     * @param exceptionHandler String containing name of source file containing exception
+     *                         handler, or null or empty String if there is none.
+     * @param progress         progress of the assembly this preparation is part of
+     * @return ArrayList containing one MIPSprogram object for each file to assemble.
+     * @throws ProcessingException Will throw exception if errors occured while reading or tokenizing,
+     *                             or if the assembly was cancelled.
+     **/
+    public List<MIPSprogram> prepareFilesForAssembly(List<String> filenames, String leadFilename, String exceptionHandler,
+                                                     AssemblyProgress progress) throws ProcessingException {
         List<MIPSprogram> MIPSprogramsToAssemble = new ArrayList<>();
         int leadFilePosition = 0;
         if (exceptionHandler != null && exceptionHandler.length() > 0) {
             filenames.add(0, exceptionHandler);
             leadFilePosition = 1;
         }
+        progress.startTokenizing(filenames.size());
         for (String filename : filenames) {
+            progress.checkCancelled();
             MIPSprogram preparee = (filename.equals(leadFilename)) ? this : new MIPSprogram();
             preparee.readSource(filename);
-            preparee.tokenize();
+            preparee.tokenize(progress);
+            progress.fileTokenized();
             // I want "this" MIPSprogram to be the first in the list...except for exception handler
             if (preparee == this && MIPSprogramsToAssemble.size() > 0) {
                 MIPSprogramsToAssemble.add(leadFilePosition, preparee);
@@ -296,9 +331,28 @@ public class MIPSprogram {
      * @throws ProcessingException Will throw exception if errors occured while assembling.
      **/
     public ErrorList assemble(List<MIPSprogram> MIPSprogramsToAssemble, boolean extendedAssemblerEnabled, boolean warningsAreErrors) throws ProcessingException {
+        return assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors, new AssemblyProgress());
+    }
+
+    /**
+     * Assembles the MIPS source program, reporting to the given progress and stopping
+     * between source lines if it is cancelled.  All files comprising the program must have
+     * already been tokenized.
+     *
+     * @param MIPSprogramsToAssemble   ArrayList of MIPSprogram objects, each representing a tokenized source file.
+     * @param extendedAssemblerEnabled A boolean value - true means extended (pseudo) instructions
+     *                                 are permitted in source code and false means they are to be flagged as errors
+     * @param warningsAreErrors        A boolean value - true means assembler warnings will be considered errors and terminate
+     *                                 the assemble; false means the assembler will produce warning message but otherwise ignore warnings.
+     * @param progress                 progress of the assembly
+     * @return ErrorList containing nothing or only warnings (otherwise would have thrown exception).
+     * @throws ProcessingException Will throw exception if errors occured while assembling, or if it was cancelled.
+     **/
+    public ErrorList assemble(List<MIPSprogram> MIPSprogramsToAssemble, boolean extendedAssemblerEnabled, boolean warningsAreErrors,
+                              AssemblyProgress progress) throws ProcessingException {
         this.backStepper = null;
         Assembler asm = new Assembler();
-        this.machineList = asm.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
+        this.machineList = asm.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors, progress);
         this.backStepper = new BackStepper();
         return asm.getErrorList();
     }
@@ -327,7 +381,7 @@ public class MIPSprogram {
      * @throws ProcessingException Will throw exception if errors occured while simulating.
      **/
     public boolean simulate(int maxSteps) throws ProcessingException {
-        return this.simulateFromPC(null, maxSteps, null);
+        return this.simulateFromPC((Breakpoints) null, maxSteps, null);
     }
 
     /**
@@ -342,9 +396,24 @@ public class MIPSprogram {
      * @throws ProcessingException Will throw exception if errors occured while simulating.
      **/
     public boolean simulateFromPC(int[] breakPoints, int maxSteps, AbstractAction a) throws ProcessingException {
+        return simulateFromPC((breakPoints == null) ? null : new Breakpoints(breakPoints), maxSteps, a);
+    }
+
+    /**
+     * Simulates execution of the MIPS program. Program must have already been assembled.
+     * Begins simulation at current program counter address and continues until stopped,
+     * paused, maximum steps exceeded, breakpoint or watchpoint hit, or exception occurs.
+     *
+     * @param breakpoints breakpoints and watchpoints.  Can be null.
+     * @param maxSteps    maximum number of instruction executions.  Default -1 means no maximum.
+     * @param a           the GUI component responsible for this call (GO normally).  set to null if none.
+     * @return true if execution completed and false otherwise
+     * @throws ProcessingException Will throw exception if errors occured while simulating.
+     **/
+    public boolean simulateFromPC(Breakpoints breakpoints, int maxSteps, AbstractAction a) throws ProcessingException {
         steppedExecution = false;
         Simulator sim = Simulator.getInstance();
-        return sim.simulate(this, RegisterFile.getProgramCounter(), maxSteps, breakPoints, a);
+        return sim.simulate(this, RegisterFile.getProgramCounter(), maxSteps, breakpoints, a);
     }
 
 
@@ -359,7 +428,7 @@ public class MIPSprogram {
     public boolean simulateStepAtPC(AbstractAction a) throws ProcessingException {
         steppedExecution = true;
         Simulator sim = Simulator.getInstance();
-        return sim.simulate(this, RegisterFile.getProgramCounter(), 1, null, a);
+        return sim.simulate(this, RegisterFile.getProgramCounter(), 1, (Breakpoints) null, a);
     }
 
     /**
@@ -34,7 +34,16 @@ import mars.mips.dump.DumpFormat;
 import mars.mips.dump.DumpFormatLoader;
 import mars.mips.hardware.*;
 import mars.settings.LookAndFeelSettingsListener;
+import mars.simulator.BranchPredictor;
+import mars.simulator.BranchPredictorSweep;
+import mars.simulator.CacheHierarchy;
+import mars.simulator.CacheSweep;
+import mars.simulator.CallGraphProfiler;
+import mars.simulator.PipelineModel;
+import mars.simulator.Profiler;
 import mars.simulator.ProgramArgumentList;
+import mars.simulator.TraceReader;
+import mars.simulator.TraceRecorder;
 import mars.util.Binary;
 import mars.util.FilenameFinder;
 import mars.util.MemoryDump;
@@ -62,6 +71,7 @@ public class MarsLaunch {
     private static final int DECIMAL = 0; // memory and register display format
     private static final int HEXADECIMAL = 1;// memory and register display format
     private static final int ASCII = 2;// memory and register display format
+    private static final int PROFILE_REPORT_LENGTH = 20; // entries in each part of the profile report
     /**
      * Main takes a number of command line arguments.<br>
      * Usage:  Mars  [options] filename<br>
@@ -71,6 +81,15 @@ public class MarsLaunch {
      * ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.<br>
      * ascii  -- display memory or register contents interpreted as ASCII
      * b  -- brief - do not display register/memory address along with contents<br>
+     * profile <file>  -- write a report of the most executed instructions, source lines and labels.<br>
+     * callgraph <file>  -- write a report of inclusive and exclusive counts per procedure.<br>
+     * callstacks <file>  -- write instruction counts per path of calls as collapsed stacks.<br>
+     * trace <file>  -- record a binary execution trace of the run to the given file.<br>
+     * tracetext <file>  -- display a trace recorded with the trace option as text.<br>
+     * cache <hierarchy>  -- simulate a cache hierarchy and display its statistics at end of run.<br>
+     * Option may be repeated, hierarchies are evaluated in parallel.<br>
+     * branch <predictors>  -- evaluate branch predictors and display their accuracy at end of run.<br>
+     * pipeline  -- time the run on a 5-stage pipeline and display cycles and CPI per function.<br>
      * d  -- print debugging statements<br>
      * da  -- both a and d<br>
      * db  -- MIPS delayed branching is enabled.<br>
@@ -93,6 +112,8 @@ public class MarsLaunch {
      * np  -- No Pseudo-instructions allowed ("ne" will work also).<br>
      * p  -- Project mode - assemble all files in the same directory as given file.<br>
      * se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.<br>
+     * server [socket]  -- run as a simulation server accepting JSON requests, one per line, on standard input<br>
+     * or on the given Unix domain socket.  Must be the first option.  See {@link MarsServer}.<br>
      * sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
      * smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
      * we  -- assembler Warnings will be considered Errors<br>
@@ -122,6 +143,19 @@ public class MarsLaunch {
     private boolean startAtMain; // Whether to start execution at statement labeled 'main'
     private boolean countInstructions; // Whether to count and report number of instructions executed
     private boolean selfModifyingCode; // Whether to allow self-modifying code (e.g. write to text segment)
+    private List<CacheHierarchy> cacheHierarchies; // cache hierarchies to simulate, see cache option
+    private CacheSweep cacheSweep;
+    private List<BranchPredictor> branchPredictors; // branch predictors to evaluate, see branch option
+    private BranchPredictorSweep branchPredictorSweep;
+    private boolean pipelineTiming; // time the run on a 5-stage pipeline, see pipeline option
+    private PipelineModel pipelineModel;
+    private String traceFileName; // file to record an execution trace to, see trace option
+    private TraceRecorder traceRecorder;
+    private String profileFileName; // file to write the profile report to, see profile option
+    private Profiler profiler;
+    private String callGraphFileName; // file to write the call graph report to, see callgraph option
+    private String callStacksFileName; // file to write collapsed call stacks to, see callstacks option
+    private CallGraphProfiler callGraphProfiler;
     private List<String> registerDisplayList;
     private List<String> memoryDisplayList;
     private List<String> filenameList;
@@ -142,6 +176,10 @@ public class MarsLaunch {
         } else { // running from command line.
             // assure command mode works in headless environment (generates exception if not)
             System.setProperty("java.awt.headless", "true");
+            if (args[0].equalsIgnoreCase("server")) {
+                launchServer(args);
+                System.exit(0);
+            }
             simulate = true;
             displayFormat = HEXADECIMAL;
             verbose = true;
@@ -151,10 +189,13 @@ public class MarsLaunch {
             warningsAreErrors = false;
             startAtMain = false;
             countInstructions = false;
+            pipelineTiming = false;
             selfModifyingCode = false;
             instructionCount = 0;
             assembleErrorExitCode = 0;
             simulateErrorExitCode = 0;
+            cacheHierarchies = new ArrayList<>();
+            branchPredictors = new ArrayList<>();
             registerDisplayList = new ArrayList<>();
             memoryDisplayList = new ArrayList<>();
             filenameList = new ArrayList<>();
@@ -175,6 +216,28 @@ public class MarsLaunch {
         }
     }
 
+    /////////////////////////////////////////////////////////////
+    // Run as a long-lived simulation server.  See "server" option.
+    // With no further argument requests are read from standard input and
+    // responses written to standard output, otherwise the argument is the
+    // path of a Unix domain socket to listen on.
+
+    private void launchServer(String[] args) {
+        MarsServer server = new MarsServer();
+        try {
+            if (args.length > 1) {
+                server.serve(new File(args[1]).toPath());
+            } else {
+                // Keep the protocol channel clean of anything else written to System.out
+                PrintStream protocolOut = System.out;
+                System.setOut(System.err);
+                server.serve(System.in, protocolOut);
+            }
+        } catch (IOException e) {
+            System.err.println("Simulation server terminated: " + e);
+        }
+    }
+
     /////////////////////////////////////////////////////////////
     // Perform any specified dump operations.  See "dump" option.
     //
@@ -184,89 +247,107 @@ public class MarsLaunch {
         if (dumpTriples == null)
             return;
 
+        List<DumpFormat> dumpFormats = new DumpFormatLoader().loadDumpFormats();
         for (String[] triple : dumpTriples) {
-            File file = new File(triple[2]);
-            Integer[] segInfo = MemoryDump.getSegmentBounds(triple[0]);
-            // If not segment name, see if it is address range instead.  DPS 14-July-2008
-            if (segInfo == null) {
-                try {
-                    String[] memoryRange = checkMemoryAddressRange(triple[0]);
-                    segInfo = new Integer[2];
-                    segInfo[0] = Binary.stringToInt(memoryRange[0]); // low end of range
-                    segInfo[1] = Binary.stringToInt(memoryRange[1]); // high end of range
-                } catch (NumberFormatException | NullPointerException nfe) {
-                    segInfo = null;
-                }
-            }
-            if (segInfo == null) {
-                out.println("Error while attempting to save dump, segment/address-range " + triple[0] + " is invalid!");
-                continue;
-            }
-            DumpFormatLoader loader = new DumpFormatLoader();
-            List<DumpFormat> dumpFormats = loader.loadDumpFormats();
-            DumpFormat format = DumpFormatLoader.findDumpFormatGivenCommandDescriptor(dumpFormats, triple[1]);
-            if (format == null) {
-                out.println("Error while attempting to save dump, format " + triple[1] + " was not found!");
-                continue;
-            }
+            String error = dumpSegment(dumpFormats, triple[0], triple[1], new File(triple[2]));
+            if (error != null)
+                out.println(error);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////
+    // Dump the given segment or address range to file in the given format.
+    // Returns null on success or a message describing why the dump could
+    // not be done.  Shared with the simulation server.
+
+    static String dumpSegment(List<DumpFormat> dumpFormats, String segment, String formatName, File file) {
+        Integer[] segInfo = MemoryDump.getSegmentBounds(segment);
+        // If not segment name, see if it is address range instead.  DPS 14-July-2008
+        if (segInfo == null) {
             try {
-                int highAddress = Globals.memory.getAddressOfFirstNull(segInfo[0], segInfo[1]) - Memory.WORD_LENGTH_BYTES;
-                if (highAddress < segInfo[0]) {
-                    out.println("This segment has not been written to, there is nothing to dump.");
-                    continue;
-                }
-                format.dumpMemoryRange(file, segInfo[0], highAddress);
-            } catch (FileNotFoundException e) {
-                out.println("Error while attempting to save dump, file " + file + " was not found!");
-            } catch (AddressErrorException e) {
-                out.println("Error while attempting to save dump, file " + file + "!  Could not access address: " + e.getAddress() + "!");
-            } catch (IOException e) {
-                out.println("Error while attempting to save dump, file " + file + "!  Disk IO failed!");
+                String[] memoryRange = checkMemoryAddressRange(segment);
+                segInfo = new Integer[2];
+                segInfo[0] = Binary.stringToInt(memoryRange[0]); // low end of range
+                segInfo[1] = Binary.stringToInt(memoryRange[1]); // high end of range
+            } catch (NumberFormatException | NullPointerException nfe) {
+                segInfo = null;
+            }
+        }
+        if (segInfo == null) {
+            return "Error while attempting to save dump, segment/address-range " + segment + " is invalid!";
+        }
+        DumpFormat format = DumpFormatLoader.findDumpFormatGivenCommandDescriptor(dumpFormats, formatName);
+        if (format == null) {
+            return "Error while attempting to save dump, format " + formatName + " was not found!";
+        }
+        try {
+            int highAddress = (format.skipsUnallocatedMemory() ? segInfo[1]
+                    : Globals.memory.getAddressOfFirstNull(segInfo[0], segInfo[1])) - Memory.WORD_LENGTH_BYTES;
+            if (highAddress < segInfo[0]) {
+                return "This segment has not been written to, there is nothing to dump.";
             }
+            format.dumpMemoryRange(file, segInfo[0], highAddress);
+        } catch (FileNotFoundException e) {
+            return "Error while attempting to save dump, file " + file + " was not found!";
+        } catch (AddressErrorException e) {
+            return "Error while attempting to save dump, file " + file + "!  Could not access address: " + e.getAddress() + "!";
+        } catch (IOException e) {
+            return "Error while attempting to save dump, file " + file + "!  Disk IO failed!";
         }
+        return null;
     }
 
 
     /////////////////////////////////////////////////////////////////
     // There are no command arguments, so run in interactive mode by
     // launching the GUI-fronted integrated development environment.
+    // The work is done by a nested class so that verifying MarsLaunch
+    // in command mode does not load any Swing, AWT or darklaf classes.
 
     private void launchIDE() {
-        // System.setProperty("apple.laf.useScreenMenuBar", "true"); // Puts MARS menu on Mac OS menu bar
-        new MarsSplashScreen(splashDuration).showSplash();
+        IDELauncher.launch();
+    }
 
-        LafManager.setLogLevel(Level.INFO);
-        LafManager.addThemeChangeListener(new LookAndFeelSettingsListener());
-        LafManager.registerDefaultsAdjustmentTask((t, d) -> {
-            if (!Theme.isDark(t))
-                return;
+    private static final class IDELauncher {
 
-            Object p = d.get("backgroundContainer");
-            if (p instanceof Color color)
-                d.put("backgroundContainer", new ColorUIResource(color.darker()));
-        });
+        private static void launch() {
+            // System.setProperty("apple.laf.useScreenMenuBar", "true"); // Puts MARS menu on Mac OS menu bar
+            new MarsSplashScreen(splashDuration).showSplash();
 
-        final String fontFolder = "fonts";
-        FilenameFinder.getFilenameList(this.getClass().getClassLoader(), fontFolder, ".ttf").forEach(fontFileName -> {
-            try(InputStream is = this.getClass().getClassLoader().getResourceAsStream(fontFolder + "/" + fontFileName)) {
-                if(is == null)
-                    throw new FileNotFoundException(fontFileName);
+            LafManager.setLogLevel(Level.INFO);
+            LafManager.addThemeChangeListener(new LookAndFeelSettingsListener());
+            LafManager.registerDefaultsAdjustmentTask((t, d) -> {
+                if (!Theme.isDark(t))
+                    return;
 
-                if(!GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(Font.createFont(Font.TRUETYPE_FONT, is)))
-                    System.err.println("Refused to install font " + fontFileName);
+                Object p = d.get("backgroundContainer");
+                if (p instanceof Color color)
+                    d.put("backgroundContainer", new ColorUIResource(color.darker()));
+            });
 
-            } catch (FontFormatException | IOException ex) {
-                System.err.println("Failed to install font " + fontFileName);
-                ex.printStackTrace();
-            }
-        });
+            final String fontFolder = "fonts";
+            final ClassLoader classLoader = MarsLaunch.class.getClassLoader();
+            FilenameFinder.getFilenameList(classLoader, fontFolder, ".ttf").forEach(fontFileName -> {
+                try(InputStream is = classLoader.getResourceAsStream(fontFolder + "/" + fontFileName)) {
+                    if(is == null)
+                        throw new FileNotFoundException(fontFileName);
+
+                    if(!GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(Font.createFont(Font.TRUETYPE_FONT, is)))
+                        System.err.println("Refused to install font " + fontFileName);
 
-        SwingUtilities.invokeLater(() -> {
-            //Turn off metal's use of bold fonts
-            //UIManager.put("swing.boldMetal", Boolean.FALSE);
-            LafManager.install();
-            new VenusUI("MARS " + Globals.version);
-        });
+                } catch (FontFormatException | IOException ex) {
+                    System.err.println("Failed to install font " + fontFileName);
+                    ex.printStackTrace();
+                }
+            });
+
+            SwingUtilities.invokeLater(() -> {
+                //Turn off metal's use of bold fonts
+                //UIManager.put("swing.boldMetal", Boolean.FALSE);
+                LafManager.install();
+                new VenusUI("MARS " + Globals.version);
+            });
+        }
     }
 
 
@@ -330,6 +411,91 @@ public class MarsLaunch {
                 }
                 continue;
             }
+            if (args[i].equalsIgnoreCase("pipeline")) {
+                pipelineTiming = true;
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("branch")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Branch command line argument requires a list of branch predictors.");
+                    argsOK = false;
+                } else {
+                    for (String predictor : args[++i].split(",")) {
+                        try {
+                            branchPredictors.add(new BranchPredictor(predictor));
+                        } catch (IllegalArgumentException e) {
+                            out.println("Invalid branch predictor " + predictor + ": " + e.getMessage());
+                            argsOK = false;
+                        }
+                    }
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("cache")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Cache command line argument requires a cache hierarchy description.");
+                    argsOK = false;
+                } else {
+                    try {
+                        cacheHierarchies.add(new CacheHierarchy(args[++i]));
+                    } catch (IllegalArgumentException e) {
+                        out.println("Invalid cache hierarchy " + args[i] + ": " + e.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("trace")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Trace command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    traceFileName = args[++i];
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("profile")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Profile command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    profileFileName = args[++i];
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("callgraph")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Callgraph command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    callGraphFileName = args[++i];
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("callstacks")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Callstacks command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    callStacksFileName = args[++i];
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("tracetext")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Tracetext command line argument requires a trace file name.");
+                    argsOK = false;
+                } else {
+                    String traceFile = args[++i];
+                    try {
+                        TraceReader.convertToText(new FileInputStream(traceFile), out);
+                    } catch (IOException e) {
+                        out.println("Error while converting trace " + traceFile + ": " + e.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
             if (args[i].equalsIgnoreCase("mc")) {
                 String configName = args[++i];
                 MemoryConfiguration config = MemoryConfigurations.getConfigurationByName(configName);
@@ -547,7 +713,7 @@ public class MarsLaunch {
     // by "-"; no embedded spaces.  e.g. 0x00400000-0x00400010
     // If number is not multiple of 4, will be rounded up to next higher.
 
-    private String[] checkMemoryAddressRange(String arg) throws NumberFormatException {
+    static String[] checkMemoryAddressRange(String arg) throws NumberFormatException {
         String[] memoryRange = null;
         if (arg.indexOf(rangeSeparator) > 0 &&
                 arg.indexOf(rangeSeparator) < arg.length() - 1) {
@@ -570,7 +736,37 @@ public class MarsLaunch {
     /////////////////////////////////////////////////////////////////
     // Required for counting instructions executed, if that option is specified.
     // DPS 19 July 2012
+    // Also feeds memory accesses to the cache hierarchies of the cache option
+    // and records the execution trace of the trace option.
     private void establishObserver() {
+        if (profileFileName != null) {
+            profiler = new Profiler();
+            profiler.start();
+        }
+        if (callGraphFileName != null || callStacksFileName != null) {
+            callGraphProfiler = new CallGraphProfiler();
+            callGraphProfiler.start();
+        }
+        if (traceFileName != null) {
+            try {
+                traceRecorder = new TraceRecorder(new FileOutputStream(traceFileName));
+                traceRecorder.start();
+            } catch (IOException e) {
+                out.println("Error while creating trace " + traceFileName + ": " + e.getMessage());
+            }
+        }
+        if (!cacheHierarchies.isEmpty()) {
+            cacheSweep = new CacheSweep(cacheHierarchies);
+            cacheSweep.attach();
+        }
+        if (pipelineTiming) {
+            pipelineModel = new PipelineModel();
+            pipelineModel.start();
+        }
+        if (!branchPredictors.isEmpty()) {
+            branchPredictorSweep = new BranchPredictorSweep(branchPredictors);
+            branchPredictorSweep.attach();
+        }
         if (countInstructions) {
             Observer instructionCounter = new Observer() {
                 private int lastAddress = 0;
@@ -605,6 +801,53 @@ public class MarsLaunch {
         if (countInstructions) {
             out.println("\n" + instructionCount);
         }
+        if (profiler != null) {
+            profiler.stop();
+            try (PrintStream report = new PrintStream(new FileOutputStream(profileFileName))) {
+                profiler.writeReport(report, PROFILE_REPORT_LENGTH);
+            } catch (IOException e) {
+                out.println("Error while writing profile " + profileFileName + ": " + e.getMessage());
+            }
+        }
+        if (callGraphProfiler != null) {
+            callGraphProfiler.stop();
+            if (callGraphFileName != null) {
+                try (PrintStream report = new PrintStream(new FileOutputStream(callGraphFileName))) {
+                    callGraphProfiler.writeReport(report, PROFILE_REPORT_LENGTH);
+                } catch (IOException e) {
+                    out.println("Error while writing call graph " + callGraphFileName + ": " + e.getMessage());
+                }
+            }
+            if (callStacksFileName != null) {
+                try (PrintStream stacks = new PrintStream(new FileOutputStream(callStacksFileName))) {
+                    callGraphProfiler.writeCollapsedStacks(stacks);
+                } catch (IOException e) {
+                    out.println("Error while writing call stacks " + callStacksFileName + ": " + e.getMessage());
+                }
+            }
+        }
+        if (traceRecorder != null) {
+            try {
+                traceRecorder.close();
+            } catch (IOException e) {
+                out.println("Error while writing trace " + traceFileName + ": " + e.getMessage());
+            }
+        }
+        if (cacheSweep != null) {
+            cacheSweep.finish();
+            out.println();
+            cacheSweep.printStatistics(out);
+        }
+        if (branchPredictorSweep != null) {
+            branchPredictorSweep.finish();
+            out.println();
+            branchPredictorSweep.printStatistics(out);
+        }
+        if (pipelineModel != null) {
+            pipelineModel.stop();
+            out.println();
+            pipelineModel.writeReport(out, PROFILE_REPORT_LENGTH);
+        }
     }
 
 
@@ -777,6 +1020,26 @@ public class MarsLaunch {
         out.println("  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.");
         out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.");
         out.println("      b  -- brief - do not display register/memory address along with contents");
+        out.println("   branch <predictors> -- evaluate branch predictors on the conditional branches of");
+        out.println("            the run and display their accuracy at end of run.  <predictors> is a");
+        out.println("            comma-separated list of kind:entries[:bits] with kind bht (the BHT");
+        out.println("            Simulator table, bits of history, default 1), bimodal (bits-bit counters,");
+        out.println("            default 2), gshare or tournament (bits of global history, default as");
+        out.println("            many as index bits).  Option may be repeated.");
+        out.println("            Example: branch bht:16:1,bht:16:2,bimodal:1k,gshare:4k:12,tournament:4k");
+        out.println("   cache <hierarchy> -- simulate the given cache hierarchy and display its hit/miss");
+        out.println("            statistics at end of run.  Option may be repeated; all hierarchies are");
+        out.println("            evaluated in parallel on the same accesses.  <hierarchy> is a comma-");
+        out.println("            separated list of levels name=size:block:ways[:replacement][:write]");
+        out.println("            with name l1 (unified), l1i, l1d or l2, sizes in bytes (suffix k allowed),");
+        out.println("            ways a number or full, replacement lru (default), fifo, random or plru");
+        out.println("            and write wb (write-back, default) or wt (write-through).");
+        out.println("            Example: cache l1i=4k:16:1,l1d=4k:16:2:lru:wb,l2=64k:32:8:plru");
+        out.println("   callgraph <file> -- follow procedure calls and returns and write the " + PROFILE_REPORT_LENGTH);
+        out.println("            procedures with the most instructions executed in them and their callees,");
+        out.println("            with calls, inclusive and exclusive instructions and memory accesses.");
+        out.println("   callstacks <file> -- write the instructions executed in each path of procedure");
+        out.println("            calls as collapsed stacks, the input format of flame graph tools.");
         out.println("      d  -- display MARS debugging statements");
         out.println("     db  -- MIPS delayed branching is enabled");
         out.println("    dec  -- display memory or register contents in decimal.");
@@ -799,9 +1062,22 @@ public class MarsLaunch {
         out.println("     nc  -- do not display copyright notice (for cleaner redirected/piped output).");
         out.println("     np  -- use of pseudo instructions and formats not permitted");
         out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
+        out.println("   pipeline -- time the run on a 5-stage pipeline with forwarding and display the");
+        out.println("            cycles, CPI, stalls and the " + PROFILE_REPORT_LENGTH + " functions taking the most cycles at end of run.");
+        out.println("   profile <file> -- count executions of each instruction and write a report of the");
+        out.println("            " + PROFILE_REPORT_LENGTH + " most executed instructions, source lines and labels to the given file.");
         out.println("  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.");
+        out.println("  server [socket] -- run as a simulation server.  Must be the first option.");
+        out.println("            Assemble/run requests are read as JSON objects, one per line, from");
+        out.println("            standard input (or from the given Unix domain socket) and results");
+        out.println("            are written back as JSON, one per line.");
         out.println("     sm  -- start execution at statement with global label main, if defined");
         out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+        out.println("   trace <file> -- record an execution trace of the run to the given file in a");
+        out.println("            compact binary format: each instruction with the memory accesses and");
+        out.println("            register writes it makes.");
+        out.println("   tracetext <file> -- display a trace recorded with the trace option as text.");
+        out.println("            Can be used without a program file.");
         out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
         out.println("            If 0, negative or not specified, there is no maximum.");
         out.println(" $<reg>  -- where <reg> is number or name (e.g. 5, t3, f10) of register whose ");
@@ -0,0 +1,396 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars;
+
+import mars.assembler.SymbolTable;
+import mars.mips.dump.DumpFormat;
+import mars.mips.dump.DumpFormatLoader;
+import mars.mips.hardware.*;
+import mars.simulator.ProgramArgumentList;
+import mars.simulator.Simulator;
+import mars.simulator.Snapshot;
+import mars.util.Binary;
+import mars.util.Json;
+import mars.util.SystemIO;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Long-lived simulation server, started with the <tt>server</tt> command line option.
+ * <p>
+ * Keeping a single JVM around avoids paying startup and {@link Globals#initialize(boolean)}
+ * (instruction set, syscalls and dump formats discovery) for every program, and lets the
+ * JIT stay warm across requests.  Requests are processed one at a time, since the simulated
+ * machine is global state.
+ * <p>
+ * The protocol is line based: each request is a JSON object on its own line and each
+ * response is a JSON object on its own line.  Recognized request members are:
+ * <ul>
+ * <li><tt>id</tt> - any value, echoed back in the response</li>
+ * <li><tt>command</tt> - <tt>run</tt> (default), <tt>assemble</tt>, <tt>ping</tt> or <tt>shutdown</tt></li>
+ * <li><tt>files</tt> - array of <tt>{"name": ..., "source": ...}</tt> objects holding the sources
+ * to assemble, the first one being the main file</li>
+ * <li><tt>paths</tt> - array of source file paths, alternative to <tt>files</tt></li>
+ * <li><tt>args</tt> - array of program arguments (argc/argv)</li>
+ * <li><tt>stdin</tt> - text made available as standard input of the program</li>
+ * <li><tt>maxSteps</tt> - maximum number of instructions to execute, 0 or less means no limit</li>
+ * <li><tt>timeout</tt> - maximum run time in milliseconds, by default {@value #DEFAULT_TIMEOUT_MILLIS};
+ * 0 or less means no limit.  Keeps a program stuck in a loop from blocking the server</li>
+ * <li><tt>registers</tt> - array of register names whose content to report at the end of the run</li>
+ * <li><tt>stopAt</tt> - label or address of an instruction; the run stops before executing it</li>
+ * <li><tt>snapshot</tt> - file to save the machine state to at the end of the run, see {@link Snapshot}</li>
+ * <li><tt>restore</tt> - snapshot file to resume from, instead of starting the program from scratch;
+ * the sources and memory configuration must be the ones the snapshot was taken with</li>
+ * <li><tt>dumps</tt> - array of <tt>{"segment": ..., "format": ..., "file": ...}</tt> memory dumps,
+ * with the same values accepted by the <tt>dump</tt> command line option</li>
+ * <li><tt>memoryConfiguration</tt>, <tt>delayedBranching</tt>, <tt>selfModifyingCode</tt>,
+ * <tt>startAtMain</tt>, <tt>pseudo</tt>, <tt>warningsAreErrors</tt>, <tt>countInstructions</tt> -
+ * same meaning as the corresponding command line options</li>
+ * </ul>
+ * The response holds the <tt>id</tt>, a <tt>status</tt> (<tt>ok</tt>, <tt>max-steps</tt>, <tt>timeout</tt>, <tt>breakpoint</tt>,
+ * <tt>assemble-error</tt>, <tt>runtime-error</tt>, <tt>bad-request</tt> or <tt>internal-error</tt>),
+ * the program <tt>exitCode</tt>, its captured <tt>stdout</tt> and <tt>stderr</tt>, any
+ * <tt>warnings</tt> and <tt>errors</tt> reports and the requested <tt>registers</tt>,
+ * <tt>instructionCount</tt> and <tt>dumpErrors</tt>.
+ */
+public class MarsServer {
+    /**
+     * Run time limit of a request that does not specify one.
+     */
+    public static final int DEFAULT_TIMEOUT_MILLIS = 60000;
+
+    private final List<DumpFormat> dumpFormats;
+    // Stops runs that exceed their time limit
+    private final Timer watchdog = new Timer("MARS server watchdog", true);
+    private boolean shutdown;
+
+    public MarsServer() {
+        // Only scan for dump formats once, they are reused by every request
+        this.dumpFormats = new DumpFormatLoader().loadDumpFormats();
+    }
+
+    /**
+     * Serve requests read from the given stream until end of input or a
+     * <tt>shutdown</tt> command is received.
+     *
+     * @param in  stream to read requests from
+     * @param out stream to write responses to
+     * @throws IOException if reading or writing the protocol streams fails
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        String line;
+        while (!shutdown && (line = reader.readLine()) != null) {
+            if (line.isBlank())
+                continue;
+            writer.write(Json.write(handle(line)));
+            writer.write('\n');
+            writer.flush();
+        }
+    }
+
+    /**
+     * Listen on a Unix domain socket at the given path, serving one connection
+     * at a time until a <tt>shutdown</tt> command is received.
+     *
+     * @param socketPath path of the socket file to create
+     * @throws IOException if the socket cannot be created
+     */
+    public void serve(Path socketPath) throws IOException {
+        Files.deleteIfExists(socketPath);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+            while (!shutdown) {
+                try (SocketChannel channel = server.accept()) {
+                    serve(Channels.newInputStream(channel), Channels.newOutputStream(channel));
+                } catch (IOException e) {
+                    System.err.println("Simulation server connection failed: " + e);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    private Map<String, Object> handle(String line) {
+        final Map<String, Object> response = new LinkedHashMap<>();
+        try {
+            if (!(Json.parse(line) instanceof Map<?, ?> request))
+                throw new IllegalArgumentException("Request must be a JSON object");
+
+            response.put("id", request.get("id"));
+            final String command = getString(request, "command", "run");
+            switch (command) {
+                case "ping" -> response.put("status", "ok");
+                case "shutdown" -> {
+                    shutdown = true;
+                    response.put("status", "ok");
+                }
+                case "assemble" -> assembleAndRun(request, false, response);
+                case "run" -> assembleAndRun(request, true, response);
+                default -> throw new IllegalArgumentException("Unknown command " + command);
+            }
+        } catch (IllegalArgumentException | ClassCastException ex) {
+            response.put("status", "bad-request");
+            response.put("errors", ex.getMessage());
+        } catch (RuntimeException ex) {
+            response.put("status", "internal-error");
+            response.put("errors", ex.toString());
+        }
+        return response;
+    }
+
+    private void assembleAndRun(Map<?, ?> request, boolean simulate, Map<String, Object> response) {
+        final String configName = getString(request, "memoryConfiguration", null);
+        final MemoryConfiguration config = configName == null ?
+                MemoryConfigurations.getDefaultConfiguration() :
+                MemoryConfigurations.getConfigurationByName(configName);
+        if (config == null)
+            throw new IllegalArgumentException("Invalid memory configuration: " + configName);
+
+        Path sourcesDirectory = null;
+        final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        Simulator.InstructionListener instructionCounter = null;
+        TimerTask timeout = null;
+        try {
+            final List<String> filesToAssemble = new ArrayList<>();
+            if (request.get("files") != null) {
+                sourcesDirectory = Files.createTempDirectory("mars-server");
+                for (Object file : getList(request, "files")) {
+                    final Map<?, ?> fileRequest = (Map<?, ?>) file;
+                    final Path path = sourcesDirectory.resolve(
+                            Path.of(getString(fileRequest, "name", "main.asm")).getFileName());
+                    Files.writeString(path, getString(fileRequest, "source", ""));
+                    filesToAssemble.add(path.toString());
+                }
+            } else {
+                for (Object path : getList(request, "paths"))
+                    filesToAssemble.add(new File((String) path).getAbsolutePath());
+            }
+            if (filesToAssemble.isEmpty())
+                throw new IllegalArgumentException("No source files given");
+
+            // Reset the machine state that a previous request may have left behind
+            Globals.exitCode = 0;
+            MemoryConfigurations.setCurrentConfiguration(config);
+            Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED,
+                    getBoolean(request, "delayedBranching", false));
+            Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED,
+                    getBoolean(request, "selfModifyingCode", false));
+            Simulator.clearDelayedBranch();
+            Simulator.clearInterruptRequests();
+            SystemIO.setStandardStreams(
+                    new ByteArrayInputStream(getString(request, "stdin", "").getBytes(StandardCharsets.UTF_8)),
+                    new PrintStream(stdout, true, StandardCharsets.UTF_8),
+                    new PrintStream(stderr, true, StandardCharsets.UTF_8));
+            SystemIO.resetFiles();
+
+            boolean programRan = false;
+            try {
+                // do NOT use Globals.program, same as for command line MARS
+                final MIPSprogram code = new MIPSprogram();
+                final List<MIPSprogram> programsToAssemble =
+                        code.prepareFilesForAssembly(filesToAssemble, filesToAssemble.get(0), null);
+                final ErrorList warnings = code.assemble(programsToAssemble,
+                        getBoolean(request, "pseudo", true),
+                        getBoolean(request, "warningsAreErrors", false));
+                if (warnings != null && warnings.warningsOccurred())
+                    response.put("warnings", warnings.generateWarningReport());
+
+                final String restore = getString(request, "restore", null);
+                if (restore == null) {
+                    RegisterFile.resetRegisters();
+                    Coprocessor1.resetRegisters();
+                    Coprocessor0.resetRegisters();
+                    RegisterFile.initializeProgramCounter(getBoolean(request, "startAtMain", false));
+                } else {
+                    Snapshot.restore(new File(restore));
+                }
+                String status = "ok";
+                Long instructions = null;
+                if (simulate) {
+                    if (restore == null) {
+                        final List<String> args = new ArrayList<>();
+                        if (request.get("args") != null) {
+                            for (Object arg : getList(request, "args"))
+                                args.add(String.valueOf(arg));
+                        }
+                        new ProgramArgumentList(args).storeProgramArguments();
+                    }
+                    final int stopAt = getStopAddress(request, code);
+
+                    final long[] instructionCount = { 0 };
+                    if (getBoolean(request, "countInstructions", false)) {
+                        instructionCounter = (address, statement) -> instructionCount[0]++;
+                        Simulator.getInstance().addInstructionListener(instructionCounter);
+                    }
+                    final boolean[] timedOut = { false };
+                    final int timeoutMillis = getInt(request, "timeout", DEFAULT_TIMEOUT_MILLIS);
+                    if (timeoutMillis > 0) {
+                        timeout = new TimerTask() {
+                            public void run() {
+                                timedOut[0] = true;
+                                Simulator.getInstance().stopExecution(null);
+                            }
+                        };
+                        watchdog.schedule(timeout, timeoutMillis);
+                    }
+                    programRan = true;
+                    final boolean done = code.simulateFromPC(stopAt == 0 ? null : new int[]{stopAt}, getInt(request, "maxSteps", -1), null);
+                    if (!done) {
+                        status = stopAt != 0 && RegisterFile.getProgramCounter() == stopAt ? "breakpoint"
+                                : timedOut[0] ? "timeout" : "max-steps";
+                    }
+                    if (instructionCounter != null)
+                        instructions = instructionCount[0];
+                }
+                response.put("status", status);
+                if (instructions != null)
+                    response.put("instructionCount", instructions);
+            } catch (ProcessingException e) {
+                response.put("status", programRan ? "runtime-error" : "assemble-error");
+                response.put("errors", e.errors().generateErrorAndWarningReport());
+            }
+            response.put("exitCode", Globals.exitCode);
+
+            if (programRan) {
+                final Map<String, Object> registers = new LinkedHashMap<>();
+                if (request.get("registers") != null) {
+                    for (Object name : getList(request, "registers"))
+                        registers.put((String) name, getRegisterValue((String) name));
+                }
+                response.put("registers", registers);
+            }
+
+            final String snapshot = getString(request, "snapshot", null);
+            if (snapshot != null)
+                Snapshot.save(new File(snapshot));
+
+            final List<String> dumpErrors = new ArrayList<>();
+            if (request.get("dumps") != null) {
+                for (Object dump : getList(request, "dumps")) {
+                    final Map<?, ?> dumpRequest = (Map<?, ?>) dump;
+                    final String format = getString(dumpRequest, "format", null);
+                    final String file = getString(dumpRequest, "file", null);
+                    if (format == null || file == null) {
+                        dumpErrors.add("Dump requires a format and a file name.");
+                        continue;
+                    }
+                    final String error = MarsLaunch.dumpSegment(dumpFormats,
+                            getString(dumpRequest, "segment", ".text"), format, new File(file));
+                    if (error != null)
+                        dumpErrors.add(error);
+                }
+            }
+            if (!dumpErrors.isEmpty())
+                response.put("dumpErrors", dumpErrors);
+        } catch (IOException e) {
+            response.put("status", "internal-error");
+            response.put("errors", e.toString());
+        } finally {
+            if (timeout != null)
+                timeout.cancel();
+            if (instructionCounter != null)
+                Simulator.getInstance().removeInstructionListener(instructionCounter);
+            SystemIO.resetFiles(); // close any files opened by the MIPS program
+            SystemIO.resetStandardStreams();
+            if (sourcesDirectory != null)
+                deleteDirectory(sourcesDirectory);
+        }
+        response.put("stdout", stdout.toString(StandardCharsets.UTF_8));
+        response.put("stderr", stderr.toString(StandardCharsets.UTF_8));
+    }
+
+    private static int getStopAddress(Map<?, ?> request, MIPSprogram code) {
+        final Object stopAt = request.get("stopAt");
+        if (stopAt == null)
+            return 0;
+        if (stopAt instanceof Number number)
+            return number.intValue();
+        final String label = (String) stopAt;
+        int address = code.getLocalSymbolTable().getAddressLocalOrGlobal(label);
+        if (address == SymbolTable.NOT_FOUND) {
+            try {
+                address = Binary.stringToInt(label);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Unknown stopAt label " + label);
+            }
+        }
+        return address;
+    }
+
+    private static Integer getRegisterValue(String name) {
+        final String regName = name.startsWith("$") ? name : "$" + name;
+        final Register register = RegisterFile.getUserRegister(regName);
+        if (register != null)
+            return register.getValue();
+        if (Coprocessor1.getRegister(regName) != null)
+            return Coprocessor1.getIntFromRegister(regName);
+        return null;
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator)
+                Files.deleteIfExists(file);
+            Files.deleteIfExists(directory);
+        } catch (IOException ignored) {
+            // Temp files will be cleaned up by the OS eventually
+        }
+    }
+
+    private static String getString(Map<?, ?> map, String key, String defaultValue) {
+        final Object value = map.get(key);
+        return value == null ? defaultValue : (String) value;
+    }
+
+    private static boolean getBoolean(Map<?, ?> map, String key, boolean defaultValue) {
+        final Object value = map.get(key);
+        return value == null ? defaultValue : (Boolean) value;
+    }
+
+    private static int getInt(Map<?, ?> map, String key, int defaultValue) {
+        final Object value = map.get(key);
+        return value == null ? defaultValue : ((Number) value).intValue();
+    }
+
+    private static List<?> getList(Map<?, ?> map, String key) {
+        final Object value = map.get(key);
+        if (!(value instanceof List<?> list))
+            throw new IllegalArgumentException("Expected an array for " + key);
+        return list;
+    }
+}
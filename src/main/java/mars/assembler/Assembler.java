@@ -157,9 +157,42 @@ public class Assembler {
     public List<ProgramStatement> assemble(List<MIPSprogram> tokenizedProgramFiles,
                                            boolean extendedAssemblerEnabled,
                                            boolean warningsAreErrors) throws ProcessingException {
+        return assemble(tokenizedProgramFiles, extendedAssemblerEnabled, warningsAreErrors, new AssemblyProgress());
+    }
+
+    /**
+     * Parse and generate machine code for the given MIPS program, reporting the lines
+     * parsed and statements generated to the given progress.  The assembly stops between
+     * source lines once the progress is cancelled.  All source files must have already
+     * been tokenized.
+     *
+     * @param tokenizedProgramFiles    An ArrayList of MIPSprogram objects, each produced from a
+     *                                 different source code file, representing the program source.
+     * @param extendedAssemblerEnabled A boolean value that if true permits use of extended (pseudo)
+     *                                 instructions in the source code. If false, these are flagged
+     *                                 as errors.
+     * @param warningsAreErrors        A boolean value - true means assembler warnings will be
+     *                                 considered errors and terminate the assemble; false means the
+     *                                 assembler will produce warning message but otherwise ignore
+     *                                 warnings.
+     * @param progress                 progress of the assembly, possibly cancelled by another thread
+     * @return An ArrayList representing the assembled program, or null if incoming array list
+     * is null or empty.
+     * @throws ProcessingException if errors occurred or the assembly was cancelled
+     * @see ProgramStatement
+     **/
+    public List<ProgramStatement> assemble(List<MIPSprogram> tokenizedProgramFiles,
+                                           boolean extendedAssemblerEnabled,
+                                           boolean warningsAreErrors,
+                                           AssemblyProgress progress) throws ProcessingException {
 
         if (tokenizedProgramFiles == null || tokenizedProgramFiles.size() == 0)
             return null;
+        int lines = 0;
+        for (MIPSprogram programFile : tokenizedProgramFiles) {
+            lines += programFile.getTokenList().size();
+        }
+        progress.startParsing(lines);
         textAddress = new UserKernelAddressSpace(Memory.textBaseAddress, Memory.kernelTextBaseAddress);
         dataAddress = new UserKernelAddressSpace(Memory.dataBaseAddress, Memory.kernelDataBaseAddress);
         externAddress = Memory.externBaseAddress;
@@ -208,6 +241,7 @@ public class Assembler {
             for (int i = 0; i < tokenList.size(); i++) {
                 if (errors.errorLimitExceeded())
                     break;
+                progress.checkCancelled();
 
                 for (int z = 0; z < tokenList.get(i).size(); z++) {
                     Token t = tokenList.get(i).get(z);
@@ -221,6 +255,7 @@ public class Assembler {
                 if (statements != null) {
                     parsedList.addAll(statements);
                 }
+                progress.lineParsed();
             }
             if (inMacroSegment) {
                 errors.add(new ErrorMessage(fileCurrentlyBeingAssembled,
@@ -255,6 +290,11 @@ public class Assembler {
             System.out.println("Assembler second pass begins");
         // SECOND PASS OF ASSEMBLER GENERATES BASIC ASSEMBLER THEN MACHINE CODE.
         // Generates basic assembler statements...
+        int parsedStatements = 0;
+        for (MIPSprogram tokenizedProgramFile : tokenizedProgramFiles) {
+            parsedStatements += tokenizedProgramFile.getParsedList().size();
+        }
+        progress.startTranslating(parsedStatements);
         for (MIPSprogram tokenizedProgramFile : tokenizedProgramFiles) {
             if (errors.errorLimitExceeded())
                 break;
@@ -263,6 +303,8 @@ public class Assembler {
             List<ProgramStatement> parsedList = fileCurrentlyBeingAssembled.getParsedList();
             ProgramStatement statement;
             for (ProgramStatement programStatement : parsedList) {
+                progress.checkCancelled();
+                int generatedBefore = machineList.size();
                 statement = programStatement;
                 statement.buildBasicStatementFromBasicInstruction(errors);
                 if (errors.errorsOccurred()) {
@@ -342,6 +384,7 @@ public class Assembler {
                         machineList.add(ps);
                     } // end of FOR loop, repeated for each template in list.
                 } // end of ELSE part for extended instruction.
+                progress.statementTranslated(machineList.size() - generatedBefore);
 
             } // end of assembler second pass.
         }
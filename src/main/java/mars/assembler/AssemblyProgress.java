@@ -0,0 +1,174 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.assembler;
+
+import mars.ErrorList;
+import mars.ErrorMessage;
+import mars.MIPSprogram;
+import mars.ProcessingException;
+
+/**
+ * Progress of an assembly, shared between the thread assembling and the one displaying it.
+ * <p>
+ * The assembly reports the files it tokenized, the source lines it parsed in the first pass
+ * and the statements it generated in the second pass.  Any thread may ask the assembly to
+ * stop with {@link #cancel()}: it is checked between files and between lines, and makes
+ * the assembly end with a {@link ProcessingException} whose single error says so.
+ */
+public class AssemblyProgress {
+    /**
+     * Text of the error ending a cancelled assembly.
+     */
+    public static final String CANCELLED_MESSAGE = "Assembly cancelled";
+
+    // Each counter has a single writer, the assembling thread
+    private volatile int filesToTokenize;
+    private volatile int filesTokenized;
+    private volatile int fileLinesToTokenize;
+    private volatile int fileLinesTokenized;
+    private volatile int linesToParse;
+    private volatile int linesParsed;
+    private volatile int statementsToTranslate;
+    private volatile int statementsTranslated;
+    private volatile int statementsGenerated;
+    private volatile boolean cancelled;
+
+    /**
+     * Ask the assembly to stop at the next file or line.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if {@link #cancel()} was called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return number of source files read and tokenized so far
+     */
+    public int getFilesTokenized() {
+        return filesTokenized;
+    }
+
+    /**
+     * @return number of source files to read and tokenize
+     */
+    public int getFilesToTokenize() {
+        return filesToTokenize;
+    }
+
+    /**
+     * @return number of source lines parsed so far by the first pass
+     */
+    public int getLinesParsed() {
+        return linesParsed;
+    }
+
+    /**
+     * @return number of machine statements generated so far by the second pass
+     */
+    public int getStatementsGenerated() {
+        return statementsGenerated;
+    }
+
+    /**
+     * Overall completion, giving tokenizing, parsing and code generation a third each.
+     *
+     * @return percentage between 0 and 100
+     */
+    public int getPercentComplete() {
+        int tokenized = (filesToTokenize == 0) ? 0
+                : (100 * filesTokenized + fraction(fileLinesTokenized, fileLinesToTokenize)) / filesToTokenize;
+        return (Math.min(tokenized, 100)
+                + fraction(linesParsed, linesToParse)
+                + fraction(statementsTranslated, statementsToTranslate)) / 3;
+    }
+
+    private static int fraction(int done, int total) {
+        return (total == 0) ? 0 : (int) (100L * Math.min(done, total) / total);
+    }
+
+    /**
+     * Called before tokenizing the given number of source files.
+     */
+    public void startTokenizing(int files) {
+        filesToTokenize = files;
+        filesTokenized = 0;
+    }
+
+    /**
+     * Called after each source file is tokenized.
+     */
+    public void fileTokenized() {
+        filesTokenized++;
+        fileLinesToTokenize = 0;
+    }
+
+    void startFile(int lines) {
+        fileLinesTokenized = 0;
+        fileLinesToTokenize = lines;
+    }
+
+    void lineTokenized() {
+        fileLinesTokenized++;
+    }
+
+    void startParsing(int lines) {
+        linesToParse = lines;
+        linesParsed = 0;
+    }
+
+    void lineParsed() {
+        linesParsed++;
+    }
+
+    void startTranslating(int statements) {
+        statementsToTranslate = statements;
+        statementsTranslated = 0;
+        statementsGenerated = 0;
+    }
+
+    void statementTranslated(int generated) {
+        statementsTranslated++;
+        statementsGenerated += generated;
+    }
+
+    /**
+     * Ends the assembly if it was cancelled.
+     *
+     * @throws ProcessingException holding a single {@link #CANCELLED_MESSAGE} error if cancelled
+     */
+    public void checkCancelled() throws ProcessingException {
+        if (cancelled) {
+            ErrorList errors = new ErrorList();
+            errors.add(new ErrorMessage((MIPSprogram) null, 0, 0, CANCELLED_MESSAGE));
+            throw new ProcessingException(errors);
+        }
+    }
+}
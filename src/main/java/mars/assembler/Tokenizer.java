@@ -86,15 +86,32 @@ public class Tokenizer {
      * that represents a tokenized source statement from the MIPS program.
      **/
     public List<TokenList> tokenize(MIPSprogram p) throws ProcessingException {
+        return tokenize(p, new AssemblyProgress());
+    }
+
+    /**
+     * Will tokenize a complete MIPS program, reporting the lines tokenized to the given
+     * progress and stopping between lines if it is cancelled.
+     *
+     * @param p        The MIPSprogram to be tokenized.
+     * @param progress progress of the assembly this tokenizing is part of
+     * @return An ArrayList representing the tokenized program.  Each list member is a TokenList
+     * that represents a tokenized source statement from the MIPS program.
+     **/
+    public List<TokenList> tokenize(MIPSprogram p, AssemblyProgress progress) throws ProcessingException {
         sourceMIPSprogram = p;
         equivalents = new HashMap<>(); // DPS 11-July-2012
         List<TokenList> tokenList = new ArrayList<>();
+        // Each line is tokenized twice, once looking for includes and once for good
+        progress.startFile(2 * p.getSourceList().size());
         //List<String> source = p.getSourceList();
-        List<SourceLine> source = processIncludes(p, new HashMap<>()); // DPS 9-Jan-2013
+        List<SourceLine> source = processIncludes(p, new HashMap<>(), progress); // DPS 9-Jan-2013
         p.setSourceLineList(source);
         TokenList currentLineTokens;
         String sourceLine;
         for (int i = 0; i < source.size(); i++) {
+            progress.checkCancelled();
+            progress.lineTokenized();
             sourceLine = source.get(i).getSource();
             currentLineTokens = this.tokenizeLine(i + 1, sourceLine);
             tokenList.add(currentLineTokens);
@@ -121,10 +138,13 @@ public class Tokenizer {
     // files that themselves have .include.  Plus it will detect and report recursive
     // includes both direct and indirect.
     // DPS 11-Jan-2013
-    private ArrayList<SourceLine> processIncludes(MIPSprogram program, Map<String, String> inclFiles) throws ProcessingException {
+    private ArrayList<SourceLine> processIncludes(MIPSprogram program, Map<String, String> inclFiles,
+                                                 AssemblyProgress progress) throws ProcessingException {
         List<String> source = program.getSourceList();
         ArrayList<SourceLine> result = new ArrayList<>(source.size());
         for (int i = 0; i < source.size(); i++) {
+            progress.checkCancelled();
+            progress.lineTokenized();
             String line = source.get(i);
             TokenList tl = tokenizeLine(program, i + 1, line, false);
             boolean hasInclude = false;
@@ -155,7 +175,7 @@ public class Tokenizer {
                                 "Error reading include file " + filename));
                         throw new ProcessingException(errors);
                     }
-                    ArrayList<SourceLine> allLines = processIncludes(incl, inclFiles);
+                    ArrayList<SourceLine> allLines = processIncludes(incl, inclFiles, progress);
                     result.addAll(allLines);
                     hasInclude = true;
                     break;
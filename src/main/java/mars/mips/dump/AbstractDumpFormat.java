@@ -27,20 +27,29 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package mars.mips.dump;
 
+import mars.Globals;
 import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 
 /**
  * Abstract class for memory dump file formats.  Provides constructors and
  * defaults for everything except the dumpMemoryRange method itself.
+ * Subclasses write to a stream, reading memory a page at a time through
+ * forEachPage(); dumping to a file goes through a buffered stream on it.
  *
  * @author Pete Sanderson
  * @version December 2007
  */
 public abstract class AbstractDumpFormat implements DumpFormat {
 
+    /**
+     * Maximum number of words handed to a PageWriter at a time.
+     */
+    protected static final int PAGE_LENGTH_WORDS = 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
     private final String name;
     private final String commandDescriptor;
     private final String description;
@@ -108,7 +117,8 @@ public abstract class AbstractDumpFormat implements DumpFormat {
 
     /**
      * Write MIPS memory contents according to the
-     * specification for this format.
+     * specification for this format.  Opens a buffered stream on the
+     * file and writes to it.
      *
      * @param file         File in which to store MIPS memory contents.
      * @param firstAddress first (lowest) memory address to dump.  In bytes but
@@ -118,7 +128,92 @@ public abstract class AbstractDumpFormat implements DumpFormat {
      * @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
      * @throws IOException           if error occurs during file output.
      */
-    public abstract void dumpMemoryRange(File file, int firstAddress, int lastAddress)
+    public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
+            throws AddressErrorException, IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), OUTPUT_BUFFER_SIZE)) {
+            dumpMemoryRange(out, firstAddress, lastAddress);
+        }
+    }
+
+    /**
+     * Write MIPS memory contents according to the specification for
+     * this format to the given stream, which is left open.
+     *
+     * @param out          Stream on which to write MIPS memory contents.
+     * @param firstAddress first (lowest) memory address to dump.  In bytes but
+     *                     must be on word boundary.
+     * @param lastAddress  last (highest) memory address to dump.  In bytes but
+     *                     must be on word boundary.  Will dump the word that starts at this address.
+     * @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
+     * @throws IOException           if error occurs during output.
+     */
+    public abstract void dumpMemoryRange(OutputStream out, int firstAddress, int lastAddress)
             throws AddressErrorException, IOException;
 
-}
\ No newline at end of file
+    /**
+     * Read the memory range a page at a time and hand each page to the given
+     * writer.  Like the original word by word dumps, this stops at the first
+     * word that has never been allocated (see Memory.getRawWordOrNull()).
+     *
+     * @param firstAddress first (lowest) memory address to read, on word boundary.
+     * @param lastAddress  last (highest) memory address to read, on word boundary.
+     * @param writer       receives the pages in ascending address order.
+     * @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
+     * @throws IOException           if the writer fails.
+     */
+    protected static void forEachPage(int firstAddress, int lastAddress, PageWriter writer)
+            throws AddressErrorException, IOException {
+        readPages(firstAddress, lastAddress, false, writer);
+    }
+
+    /**
+     * Like forEachPage(), but skips over the unallocated parts of the range
+     * instead of stopping at the first one.
+     *
+     * @param firstAddress first (lowest) memory address to read, on word boundary.
+     * @param lastAddress  last (highest) memory address to read, on word boundary.
+     * @param writer       receives the pages in ascending address order.
+     * @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
+     * @throws IOException           if the writer fails.
+     */
+    protected static void forEachAllocatedPage(int firstAddress, int lastAddress, PageWriter writer)
+            throws AddressErrorException, IOException {
+        readPages(firstAddress, lastAddress, true, writer);
+    }
+
+    private static void readPages(int firstAddress, int lastAddress, boolean skipUnallocated, PageWriter writer)
+            throws AddressErrorException, IOException {
+        int[] page = new int[PAGE_LENGTH_WORDS];
+        long remaining = ((long) lastAddress - firstAddress) / Memory.WORD_LENGTH_BYTES + 1;
+        int address = firstAddress;
+        while (remaining > 0) {
+            int length = (int) Math.min(remaining, PAGE_LENGTH_WORDS);
+            int count = Globals.memory.getRawWords(address, page, 0, length);
+            if (count > 0) {
+                writer.writePage(address, page, count);
+            } else if (skipUnallocated) {
+                count = Globals.memory.getRawNullWordCount(address, length);
+            }
+            if (count == 0)
+                break;
+            remaining -= count;
+            address += count * Memory.WORD_LENGTH_BYTES;
+        }
+    }
+
+    /**
+     * Receives the memory being dumped, a page at a time.
+     */
+    @FunctionalInterface
+    protected interface PageWriter {
+        /**
+         * @param address address of the first word in the page.
+         * @param words   array holding the words of the page, starting at index 0.
+         *                It is reused for the next page.
+         * @param count   number of words in the page.
+         * @throws IOException if error occurs during output.
+         */
+        void writePage(int address, int[] words, int count) throws IOException;
+    }
+
+}
@@ -27,15 +27,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package mars.mips.dump;
 
-import mars.Globals;
 import mars.mips.hardware.AddressErrorException;
-import mars.mips.hardware.Memory;
 import mars.util.Binary;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
 /**
  * Class that represents the "ASCII text" memory dump format. Memory contents
@@ -64,28 +63,29 @@ public class AsciiTextDumpFormat extends AbstractDumpFormat {
      * corresponding to tab, newline, null, etc are rendered as backslash
      * followed by single-character code, e.g. \t for tab, \0 for null.
      * Non-printing character (control code,
-     * values above 127) is rendered as a period (.).  Written
-     * using PrintStream's println() method.
+     * values above 127) is rendered as a period (.).  Memory is read and
+     * written a page at a time.
      * Adapted by Pete Sanderson from code written by Greg Gibeling.
      *
-     * @param file         File in which to store MIPS memory contents.
+     * @param out          Stream on which to write MIPS memory contents.
      * @param firstAddress first (lowest) memory address to dump.  In bytes but
      *                     must be on word boundary.
      * @param lastAddress  last (highest) memory address to dump.  In bytes but
      *                     must be on word boundary.  Will dump the word that starts at this address.
      * @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
-     * @throws IOException           if error occurs during file output.
+     * @throws IOException           if error occurs during output.
      */
-    public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
+    public void dumpMemoryRange(OutputStream out, int firstAddress, int lastAddress)
             throws AddressErrorException, IOException {
-        try (PrintStream out = new PrintStream(new FileOutputStream(file))) {
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
-                if (temp == null)
-                    break;
-                out.println(Binary.intToAscii(temp));
-            }
-        }
+        Writer writer = new OutputStreamWriter(out, Charset.defaultCharset());
+        String lineSeparator = System.lineSeparator();
+        StringBuilder text = new StringBuilder();
+        forEachPage(firstAddress, lastAddress, (address, words, count) -> {
+            text.setLength(0);
+            for (int i = 0; i < count; i++)
+                text.append(Binary.intToAscii(words[i])).append(lineSeparator);
+            writer.append(text);
+        });
+        writer.flush();
     }
-
-}
\ No newline at end of file
+}
@@ -27,19 +27,24 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package mars.mips.dump;
 
-import mars.Globals;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Class that represents the "binary" memory dump format.  The output
- * is a binary file containing the memory words as a byte stream.  Output
- * is produced using PrintStream's write() method.
+ * is a binary file containing the memory words as a byte stream, each
+ * word in little-endian byte order.  Output is written a page at a time
+ * through a FileChannel.
  *
  * @author Pete Sanderson
  * @version December 2007
@@ -55,9 +60,8 @@ public class BinaryDumpFormat extends AbstractDumpFormat {
 
 
     /**
-     * Write MIPS memory contents in pure binary format.  One byte at a time
-     * using PrintStream's write() method.  Adapted by Pete Sanderson from
-     * code written by Greg Gibeling.
+     * Write MIPS memory contents in pure binary format, directly through
+     * a FileChannel on the file.
      *
      * @param file         File in which to store MIPS memory contents.
      * @param firstAddress first (lowest) memory address to dump.  In bytes but
@@ -69,16 +73,42 @@ public class BinaryDumpFormat extends AbstractDumpFormat {
      */
     public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
             throws AddressErrorException, IOException {
-        try (PrintStream out = new PrintStream(new FileOutputStream(file))) {
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
-                if (temp == null)
-                    break;
-                int word = temp;
-                for (int i = 0; i < 4; i++)
-                    out.write((word >>> (i << 3)) & 0xFF);
-            }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeWords(channel, firstAddress, lastAddress);
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Write MIPS memory contents in pure binary format.
+     *
+     * @param out          Stream on which to write MIPS memory contents.
+     * @param firstAddress first (lowest) memory address to dump.  In bytes but
+     *                     must be on word boundary.
+     * @param lastAddress  last (highest) memory address to dump.  In bytes but
+     *                     must be on word boundary.  Will dump the word that starts at this address.
+     * @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
+     * @throws IOException           if error occurs during output.
+     */
+    public void dumpMemoryRange(OutputStream out, int firstAddress, int lastAddress)
+            throws AddressErrorException, IOException {
+        // Not closed, as that would close the stream
+        writeWords(Channels.newChannel(out), firstAddress, lastAddress);
+    }
+
+    // Write the words as little-endian bytes, one page per channel write.
+    // Also used by the compressed binary format.
+    static void writeWords(WritableByteChannel channel, int firstAddress, int lastAddress)
+            throws AddressErrorException, IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_LENGTH_WORDS * Memory.WORD_LENGTH_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        forEachPage(firstAddress, lastAddress, (address, words, count) -> {
+            buffer.clear();
+            buffer.asIntBuffer().put(words, 0, count);
+            buffer.limit(count * Memory.WORD_LENGTH_BYTES);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        });
+    }
+
+}
@@ -27,14 +27,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package mars.mips.dump;
 
-import mars.Globals;
 import mars.mips.hardware.AddressErrorException;
-import mars.mips.hardware.Memory;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
 /**
  * Class that represents the "binary text" memory dump format.  The output
@@ -56,32 +55,33 @@ public class BinaryTextDumpFormat extends AbstractDumpFormat {
 
     /**
      * Write MIPS memory contents in binary text format.  Each line of
-     * text contains one memory word written as 32 '0' and '1' characters.  Written
-     * using PrintStream's println() method.
+     * text contains one memory word written as 32 '0' and '1' characters.
+     * Memory is read and written a page at a time.
      * Adapted by Pete Sanderson from code written by Greg Gibeling.
      *
-     * @param file         File in which to store MIPS memory contents.
+     * @param out          Stream on which to write MIPS memory contents.
      * @param firstAddress first (lowest) memory address to dump.  In bytes but
      *                     must be on word boundary.
      * @param lastAddress  last (highest) memory address to dump.  In bytes but
      *                     must be on word boundary.  Will dump the word that starts at this address.
      * @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
-     * @throws IOException           if error occurs during file output.
+     * @throws IOException           if error occurs during output.
      */
-    public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
+    public void dumpMemoryRange(OutputStream out, int firstAddress, int lastAddress)
             throws AddressErrorException, IOException {
-        try (PrintStream out = new PrintStream(new FileOutputStream(file))) {
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
-                if (temp == null)
-                    break;
-
-                StringBuilder string = new StringBuilder(Integer.toBinaryString(temp));
-                while (string.length() < 32)
-                    string.insert(0, '0');
-                out.println(string);
+        Writer writer = new OutputStreamWriter(out, Charset.defaultCharset());
+        String lineSeparator = System.lineSeparator();
+        StringBuilder text = new StringBuilder();
+        forEachPage(firstAddress, lastAddress, (address, words, count) -> {
+            text.setLength(0);
+            for (int i = 0; i < count; i++) {
+                int word = words[i];
+                for (int bit = 31; bit >= 0; bit--)
+                    text.append(((word >>> bit) & 1) == 0 ? '0' : '1');
+                text.append(lineSeparator);
             }
-        }
+            writer.append(text);
+        });
+        writer.flush();
     }
-
-}
\ No newline at end of file
+}
@@ -31,6 +31,8 @@ import mars.mips.hardware.AddressErrorException;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 
 /**
  * Interface for memory dump file formats.  All MARS needs to be able
@@ -76,6 +78,17 @@ public interface DumpFormat {
      */
     String toString();
 
+    /**
+     * Whether this format skips over memory that has never been allocated
+     * rather than ending the dump there.  If so, callers should pass the whole
+     * requested range instead of trimming it at the first unallocated word.
+     *
+     * @return true if unallocated memory is skipped, false if it ends the dump.
+     */
+    default boolean skipsUnallocatedMemory() {
+        return false;
+    }
+
     /**
      * Write MIPS memory contents according to the
      * specification for this format.
@@ -89,4 +102,28 @@ public interface DumpFormat {
      * @throws IOException           if error occurs during file output.
      */
     void dumpMemoryRange(File file, int firstAddress, int lastAddress) throws AddressErrorException, IOException;
+
+    /**
+     * Write MIPS memory contents according to the specification for this
+     * format to the given stream, which is left open.  By default the dump is
+     * written to a temporary file which is then copied to the stream; formats
+     * that can write to a stream directly should override this.
+     *
+     * @param out          Stream on which to write MIPS memory contents.
+     * @param firstAddress first (lowest) memory address to dump.  In bytes but
+     *                     must be on word boundary.
+     * @param lastAddress  last (highest) memory address to dump.  In bytes but
+     *                     must be on word boundary.  Will dump the word that starts at this address.
+     * @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
+     * @throws IOException           if error occurs during output.
+     */
+    default void dumpMemoryRange(OutputStream out, int firstAddress, int lastAddress) throws AddressErrorException, IOException {
+        File temporary = File.createTempFile("mars-dump", getFileExtension() == null ? null : "." + getFileExtension());
+        try {
+            dumpMemoryRange(temporary, firstAddress, lastAddress);
+            Files.copy(temporary.toPath(), out);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
 }
\ No newline at end of file
@@ -32,6 +32,8 @@ import mars.util.FilenameFinder;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
 
 /****************************************************************************/
@@ -69,6 +71,15 @@ public class DumpFormatLoader {
         // The list will be populated only the first time this method is called.
         if (formatList == null) {
             formatList = new ArrayList<>();
+            // Use the registry generated at build time if there is one, scan the classpath otherwise.
+            try {
+                for (DumpFormat format : ServiceLoader.load(DumpFormat.class, this.getClass().getClassLoader()))
+                    formatList.add(format);
+            } catch (ServiceConfigurationError e) {
+                System.out.println("Error instantiating DumpFormat from registry: " + e);
+            }
+            if (!formatList.isEmpty())
+                return formatList;
             // grab all class files in the dump directory
             List<String> candidates = FilenameFinder.getFilenameList(this.getClass().getClassLoader(),
                     DUMP_DIRECTORY_PATH, CLASS_EXTENSION);
@@ -0,0 +1,68 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.mips.dump;
+
+import mars.mips.hardware.AddressErrorException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Class that represents the "compressed binary" memory dump format.  The
+ * output is the same byte stream as the "binary" format, compressed with
+ * gzip (deflate).  Mostly empty memory compresses very well, so this is
+ * much smaller and faster to write than the uncompressed dump of a large heap.
+ */
+public class GzipBinaryDumpFormat extends AbstractDumpFormat {
+
+    private static final int COMPRESSION_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Constructor.  File extension is "gz".
+     */
+    public GzipBinaryDumpFormat() {
+        super("Compressed Binary", "GzipBinary", "Written as gzip compressed byte stream to binary file", "gz");
+    }
+
+    /**
+     * Write MIPS memory contents as a gzip compressed little-endian byte stream.
+     *
+     * @param out          Stream on which to write MIPS memory contents.
+     * @param firstAddress first (lowest) memory address to dump.  In bytes but
+     *                     must be on word boundary.
+     * @param lastAddress  last (highest) memory address to dump.  In bytes but
+     *                     must be on word boundary.  Will dump the word that starts at this address.
+     * @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
+     * @throws IOException           if error occurs during output.
+     */
+    public void dumpMemoryRange(OutputStream out, int firstAddress, int lastAddress)
+            throws AddressErrorException, IOException {
+        GZIPOutputStream compressed = new GZIPOutputStream(out, COMPRESSION_BUFFER_SIZE);
+        BinaryDumpFormat.writeWords(Channels.newChannel(compressed), firstAddress, lastAddress);
+        compressed.finish();
+    }
+}
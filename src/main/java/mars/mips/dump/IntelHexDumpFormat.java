@@ -1,13 +1,13 @@
 package mars.mips.dump;
 
-import mars.Globals;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
 /**
  * Intel's Hex memory initialization format
@@ -25,49 +25,57 @@ public class IntelHexDumpFormat extends AbstractDumpFormat {
     }
 
     /**
-     * Write MIPS memory contents according to the Memory Initialization File
-     * (MIF) specification.
+     * Write MIPS memory contents according to the Intel Hex specification,
+     * one data record per word followed by the end of file record.
      *
-     * @param file         File in which to store MIPS memory contents.
+     * @param out          Stream on which to write MIPS memory contents.
      * @param firstAddress first (lowest) memory address to dump.  In bytes but
      *                     must be on word boundary.
      * @param lastAddress  last (highest) memory address to dump.  In bytes but
      *                     must be on word boundary.  Will dump the word that starts at this address.
      * @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
-     * @throws IOException           if error occurs during file output.
+     * @throws IOException           if error occurs during output.
      */
-    public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
+    public void dumpMemoryRange(OutputStream out, int firstAddress, int lastAddress)
             throws AddressErrorException, IOException {
-        try (PrintStream out = new PrintStream(new FileOutputStream(file))) {
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
-                if (temp == null)
-                    break;
+        Writer writer = new OutputStreamWriter(out, Charset.defaultCharset());
+        String lineSeparator = System.lineSeparator();
+        StringBuilder text = new StringBuilder();
+        forEachPage(firstAddress, lastAddress, (pageAddress, words, count) -> {
+            text.setLength(0);
+            for (int i = 0; i < count; i++) {
+                int temp = words[i];
+                int offset = pageAddress + i * Memory.WORD_LENGTH_BYTES - firstAddress;
 
-                StringBuilder string = new StringBuilder(Integer.toHexString(temp));
-                while (string.length() < 8)
-                    string.insert(0, '0');
-                StringBuilder addr = new StringBuilder(Integer.toHexString(address - firstAddress));
-                while (addr.length() < 4)
-                    addr.insert(0, '0');
-
-                String chksum;
                 int tmp_chksum = 0;
                 tmp_chksum += 4;
-                tmp_chksum += 0xFF & (address - firstAddress);
-                tmp_chksum += 0xFF & ((address - firstAddress) >> 8);
+                tmp_chksum += 0xFF & offset;
+                tmp_chksum += 0xFF & (offset >> 8);
                 tmp_chksum += 0xFF & temp;
                 tmp_chksum += 0xFF & (temp >> 8);
                 tmp_chksum += 0xFF & (temp >> 16);
                 tmp_chksum += 0xFF & (temp >> 24);
                 tmp_chksum = tmp_chksum % 256;
                 tmp_chksum = ~tmp_chksum + 1;
-                chksum = Integer.toHexString(0xFF & tmp_chksum);
-                if (chksum.length() == 1) chksum = '0' + chksum;
-                String finalstr = ":04" + addr + "00" + string + chksum;
-                out.println(finalstr.toUpperCase());
+
+                text.append(":04");
+                appendHex(text, offset, 4);
+                text.append("00");
+                appendHex(text, temp, 8);
+                appendHex(text, 0xFF & tmp_chksum, 2);
+                text.append(lineSeparator);
             }
-            out.println(":00000001FF");
-        }
+            writer.append(text);
+        });
+        writer.append(":00000001FF").append(lineSeparator);
+        writer.flush();
+    }
+
+    // Append value as upper case hex digits, zero padded to at least the given width
+    private static void appendHex(StringBuilder text, int value, int minDigits) {
+        String hex = Integer.toHexString(value).toUpperCase();
+        for (int i = hex.length(); i < minDigits; i++)
+            text.append('0');
+        text.append(hex);
     }
 }
@@ -33,9 +33,8 @@ import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 import mars.util.Binary;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.Objects;
 
@@ -72,18 +71,19 @@ public class SegmentWindowDumpFormat extends AbstractDumpFormat {
      * depending on which segment is selected for the dump.  Written
      * using PrintStream's println() method.
      *
-     * @param file         File in which to store MIPS memory contents.
+     * @param out          Stream on which to write MIPS memory contents.
      * @param firstAddress first (lowest) memory address to dump.  In bytes but
      *                     must be on word boundary.
      * @param lastAddress  last (highest) memory address to dump.  In bytes but
      *                     must be on word boundary.  Will dump the word that starts at this address.
      * @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
-     * @throws IOException           if error occurs during file output.
+     * @throws IOException           if error occurs during output.
      */
-    public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
+    public void dumpMemoryRange(OutputStream stream, int firstAddress, int lastAddress)
             throws AddressErrorException, IOException {
 
-        try(PrintStream out = new PrintStream(new FileOutputStream(file))) {
+        PrintStream out = new PrintStream(stream);
+        try {
 
             boolean hexAddresses = Globals.getSettings().getDisplayAddressesInHex();
 
@@ -139,6 +139,8 @@ public class SegmentWindowDumpFormat extends AbstractDumpFormat {
                 }
                 out.println(string);
             }
+        } finally {
+            out.flush();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.mips.dump;
+
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Class that represents the "sparse binary" memory dump format.  Only memory
+ * that has been allocated is written, so the whole data segment can be dumped
+ * in little more than the space its used blocks take.  Unlike the other formats
+ * the dump does not stop at the first unallocated block, it skips over it.
+ * <p>
+ * The output is a sequence of records, each made of the address of its first
+ * word, the number of words in it and then the words themselves.  Every value
+ * is 32 bits, little-endian.  A record holds at most one page of memory, so
+ * contiguous memory may be split over several consecutive records.
+ */
+public class SparseBinaryDumpFormat extends AbstractDumpFormat {
+
+    private static final int RECORD_HEADER_WORDS = 2;
+
+    /**
+     * Constructor.  There is no standard file extension for this format.
+     */
+    public SparseBinaryDumpFormat() {
+        super("Sparse Binary", "SparseBinary", "Allocated memory written as address tagged records to binary file", null);
+    }
+
+    /**
+     * Unallocated memory is left out of the dump rather than ending it.
+     *
+     * @return true
+     */
+    public boolean skipsUnallocatedMemory() {
+        return true;
+    }
+
+    /**
+     * Write the allocated parts of the given MIPS memory range as records.
+     *
+     * @param out          Stream on which to write MIPS memory contents.
+     * @param firstAddress first (lowest) memory address to dump.  In bytes but
+     *                     must be on word boundary.
+     * @param lastAddress  last (highest) memory address to dump.  In bytes but
+     *                     must be on word boundary.  Will dump the word that starts at this address.
+     * @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
+     * @throws IOException           if error occurs during output.
+     */
+    public void dumpMemoryRange(OutputStream out, int firstAddress, int lastAddress)
+            throws AddressErrorException, IOException {
+        // Not closed, as that would close the stream
+        WritableByteChannel channel = Channels.newChannel(out);
+        ByteBuffer buffer = ByteBuffer.allocate((RECORD_HEADER_WORDS + PAGE_LENGTH_WORDS) * Memory.WORD_LENGTH_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        forEachAllocatedPage(firstAddress, lastAddress, (address, words, count) -> {
+            buffer.clear();
+            buffer.putInt(address).putInt(count);
+            buffer.asIntBuffer().put(words, 0, count);
+            buffer.limit((RECORD_HEADER_WORDS + count) * Memory.WORD_LENGTH_BYTES);
+            buffer.position(0);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        });
+    }
+}
@@ -28,11 +28,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 package mars.mips.hardware;
 
 import mars.Globals;
+import mars.simulator.EventScheduler;
+import mars.simulator.Exceptions;
 
 import java.util.Observer;
 
 /**
- * Represents Coprocessor 0.  We will use only its interrupt/exception registers.
+ * Represents Coprocessor 0.  We will use only its interrupt/exception registers,
+ * and the Count and Compare registers of its timer.
+ * <p>
+ * Count goes up by one for each instruction retired.  Once the program has written
+ * Compare, the timer interrupt bit ({@link Exceptions#TIMER_INTERRUPT}, Cause bit 15) is
+ * set each time Count becomes equal to Compare.  As on a real MIPS the interrupt is
+ * level triggered: the bit stays set, and the interrupt is taken again after eret,
+ * until the program writes Compare.  The timer is disarmed by a reset.
  *
  * @author Pete Sanderson
  * @version August 2005
@@ -42,6 +51,8 @@ public class Coprocessor0 {
      * Coprocessor register names
      */
     public static final int VADDR = 8;
+    public static final int COUNT = 9;
+    public static final int COMPARE = 11;
     public static final int STATUS = 12;
     public static final int CAUSE = 13;
     public static final int EPC = 14;
@@ -51,8 +62,12 @@ public class Coprocessor0 {
     // bit 1 (exception level) not set, bit 0 (interrupt enable) set.
     public static final int DEFAULT_STATUS_VALUE = 0x0000FF11;
 
+    private static final CountRegister count = new CountRegister();
+    private static final CompareRegister compare = new CompareRegister();
     private static final Register[] registers = {
             new Register("$8 (vaddr)", 8, 0),
+            count,
+            compare,
             new Register("$12 (status)", 12, DEFAULT_STATUS_VALUE),
             new Register("$13 (cause)", 13, 0),
             new Register("$14 (epc)", 14, 0)
@@ -147,8 +162,8 @@ public class Coprocessor0 {
 
     /**
      * Coprocessor0 implements only selected registers, so the register number
-     * (8, 12, 13, 14) does not correspond to its position in the list of registers
-     * (0, 1, 2, 3).
+     * (8, 9, 11, 12, 13, 14) does not correspond to its position in the list of registers
+     * (0, 1, 2, 3, 4, 5).
      *
      * @param r A coprocessor0 Register
      * @return the list position of given register, -1 if not found.
@@ -174,6 +189,44 @@ public class Coprocessor0 {
     }
 
 
+    /**
+     * Returns whether Count becoming equal to Compare has set the timer interrupt bit in
+     * Cause and Compare has not been written since.
+     *
+     * @return true if the timer interrupt is pending
+     */
+    public static boolean isTimerInterruptPending() {
+        return compare.pending;
+    }
+
+    /**
+     * Returns whether the timer is armed, that is whether Compare has been written since
+     * the registers were last reset.
+     *
+     * @return true if the timer is armed
+     */
+    public static boolean isTimerArmed() {
+        return compare.timer != null;
+    }
+
+    /**
+     * Put back the register values and timer state saved in a snapshot.  Unlike writing
+     * the registers one by one, this neither arms the timer nor clears the timer interrupt
+     * bit in Cause.
+     *
+     * @param values     the register values, in the order of {@link #getRegisters()}
+     * @param timerArmed whether the timer is armed
+     */
+    public static void restoreRegisters(int[] values, boolean timerArmed) {
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] != count && registers[i] != compare)
+                registers[i].setValue(values[i]);
+        }
+        count.restore(values[getRegisterPosition(count)]);
+        compare.restore(values[getRegisterPosition(compare)], timerArmed,
+                (getValue(CAUSE) & (Exceptions.TIMER_INTERRUPT << 2)) != 0);
+    }
+
     /**
      * Method to reinitialize the values of the registers.
      **/
@@ -199,4 +252,101 @@ public class Coprocessor0 {
         for (Register register : registers)
             register.deleteObserver(observer);
     }
+
+    /*
+     * The value of Count is worked out from the number of instructions retired when it is
+     * read, rather than written by every instruction.
+     */
+    private static final class CountRegister extends Register {
+        private long base; // number of instructions retired when Count was 0
+
+        CountRegister() {
+            super("$9 (count)", COUNT, 0);
+        }
+
+        int current() {
+            return (int) (EventScheduler.getTime() - base);
+        }
+
+        public synchronized int getValue() {
+            super.getValue();
+            return current();
+        }
+
+        public synchronized int getValueNoNotify() {
+            return current();
+        }
+
+        public synchronized int setValue(int val) {
+            int old = current();
+            base = EventScheduler.getTime() - val;
+            super.setValue(val);
+            compare.rearm();
+            return old;
+        }
+
+        public synchronized void resetValue() {
+            base = EventScheduler.getTime();
+            super.resetValue();
+        }
+
+        synchronized void restore(int val) {
+            base = EventScheduler.getTime() - val;
+            super.setValue(val);
+        }
+    }
+
+    /*
+     * Keeps an event scheduled for the next time Count becomes equal to Compare, once
+     * Compare has been written.
+     */
+    private static final class CompareRegister extends Register {
+        private EventScheduler.Event timer;
+        // read by the simulator before each instruction, written by the GUI too
+        private volatile boolean pending;
+
+        CompareRegister() {
+            super("$11 (compare)", COMPARE, 0);
+        }
+
+        public synchronized int setValue(int val) {
+            int old = super.setValue(val);
+            updateRegister(CAUSE, Coprocessor0.getValue(CAUSE) & ~(Exceptions.TIMER_INTERRUPT << 2));
+            pending = false;
+            arm();
+            return old;
+        }
+
+        public synchronized void resetValue() {
+            super.resetValue();
+            EventScheduler.cancel(timer);
+            timer = null;
+            pending = false;
+        }
+
+        synchronized void restore(int val, boolean armed, boolean pending) {
+            super.setValue(val);
+            EventScheduler.cancel(timer);
+            timer = null;
+            this.pending = pending;
+            if (armed) arm();
+        }
+
+        synchronized void rearm() {
+            if (timer != null) arm();
+        }
+
+        private void arm() {
+            EventScheduler.cancel(timer);
+            // Count wraps around, so if it already equals Compare the next match is 2^32 later
+            long delay = (getValueNoNotify() - count.current()) & 0xFFFFFFFFL;
+            timer = EventScheduler.schedule(delay == 0 ? 1L << 32 : delay, this::expire);
+        }
+
+        private synchronized void expire() {
+            updateRegister(CAUSE, Coprocessor0.getValue(CAUSE) | (Exceptions.TIMER_INTERRUPT << 2));
+            pending = true;
+            arm();
+        }
+    }
 }
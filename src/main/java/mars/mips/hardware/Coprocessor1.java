@@ -473,6 +473,15 @@ public class Coprocessor1 {
         condition.setValue(-1);  // sets all 32 bits to 1.
     }
 
+    /**
+     * Set all condition flags (0-7) at once.
+     *
+     * @param flags the condition flags, as returned by getConditionFlags()
+     */
+    public static void setConditionFlags(int flags) {
+        condition.setValue(flags);
+    }
+
     /**
      * Get count of condition flags.
      *
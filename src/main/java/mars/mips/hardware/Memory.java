@@ -34,6 +34,10 @@ import mars.mips.instructions.Instruction;
 import mars.simulator.Exceptions;
 import mars.util.Binary;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -227,6 +231,9 @@ public class Memory extends Observable {
      **/
     private static boolean byteOrder = LITTLE_ENDIAN;
     Collection<MemoryObservable> observables = Collections.synchronizedCollection(new ArrayList<>());
+    // Devices claiming the memory mapped I/O segment, indexed by word offset into the segment.
+    // Like the observers, they are kept when memory is cleared.
+    private final MemoryMappedDevice[] mmioDevices = new MemoryMappedDevice[MMIO_TABLE_LENGTH * BLOCK_LENGTH_WORDS];
     private int[][] dataBlockTable;
     private int[][] kernelDataBlockTable;
     private int[][] stackBlockTable;
@@ -237,6 +244,12 @@ public class Memory extends Observable {
     private int[][] memoryMapBlockTable;
     private ProgramStatement[][] textBlockTable;
     private ProgramStatement[][] kernelTextBlockTable;
+    // Write generation of each 4K page, indexed by the top 10 address bits and then the next 10.
+    // A page gets a new generation from the ever increasing writeGeneration each time it is
+    // written.  Pages not written since the last initialize have resetGeneration.
+    private long[][] pageGenerationTable;
+    private long writeGeneration;
+    private long resetGeneration;
 
     /*
      * Private constructor for Memory.  Separate data structures for text and data segments.
@@ -448,6 +461,7 @@ public class Memory extends Observable {
         kernelDataBlockTable = new int[BLOCK_TABLE_LENGTH][];
         stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
         memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
+        resetPageGenerations();
         System.gc(); // call garbage collector on any Table memory just deallocated.
     }
 
@@ -546,6 +560,8 @@ public class Memory extends Observable {
             // memory mapped I/O.
             relativeByteAddress = address - memoryMapBaseAddress;
             oldValue = storeBytesInTable(memoryMapBlockTable, relativeByteAddress, length, value);
+            MemoryMappedDevice device = mmioDevices[relativeByteAddress >> 2];
+            if (device != null && accessIsFromMIPS()) device.write(address, length, value);
         } else if (inKernelDataSegment(address)) {
             // in kernel data segment.  Will write one byte at a time, w/o regard to boundaries.
             relativeByteAddress = address - kernelDataBaseAddress; // relative to data segment start, in bytes
@@ -560,6 +576,10 @@ public class Memory extends Observable {
             throw new AddressErrorException("address out of range ",
                     Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
+        markPageWritten(address);
+        if (length > 1) {
+            markPageWritten(address + length - 1);
+        }
         notifyAnyObservers(AccessNotice.WRITE, address, length, value);
         return oldValue;
     }
@@ -621,6 +641,7 @@ public class Memory extends Observable {
             throw new AddressErrorException("store address out of range ",
                     Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
+        markPageWritten(address);
         notifyAnyObservers(AccessNotice.WRITE, address, WORD_LENGTH_BYTES, value);
         if (Globals.getSettings().getBackSteppingEnabled()) {
             Globals.program.getBackStepper().addMemoryRestoreRawWord(address, oldValue);
@@ -731,6 +752,54 @@ public class Memory extends Observable {
         } else {
             storeProgramStatement(address, statement, kernelTextBaseAddress, kernelTextBlockTable);
         }
+        markPageWritten(address);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the write generation of the 4K page holding the given address.  The generation
+     * changes every time anything in the page is written, and when memory is reset or restored,
+     * so a display can tell whether the contents it formatted from the page may have changed
+     * without reading them again.  Generations are only compared for equality.  This is not
+     * synchronized: a write in progress on another thread may not be seen until the next call.
+     *
+     * @param address any address in the page
+     * @return current write generation of the page
+     */
+    public long getPageGeneration(int address) {
+        long[] pages = pageGenerationTable[address >>> 22];
+        if (pages == null) {
+            return resetGeneration;
+        }
+        long generation = pages[(address >>> 12) & 0x3ff];
+        return (generation == 0) ? resetGeneration : generation;
+    }
+
+    /**
+     * Returns the latest write generation given to any page.  If it has not changed since
+     * an earlier call, nothing was written to memory in between.  Not synchronized either.
+     *
+     * @return the latest write generation
+     */
+    public long getWriteGeneration() {
+        return writeGeneration;
+    }
+
+    // Gives the page holding this address a new write generation.
+    private void markPageWritten(int address) {
+        long[] pages = pageGenerationTable[address >>> 22];
+        if (pages == null) {
+            pages = new long[1024];
+            pageGenerationTable[address >>> 22] = pages;
+        }
+        pages[(address >>> 12) & 0x3ff] = ++writeGeneration;
+    }
+
+    // Every page gets the same new generation, used when the whole memory is replaced.
+    private void resetPageGenerations() {
+        pageGenerationTable = new long[1024][];
+        resetGeneration = ++writeGeneration;
     }
 
     ////////////////////////////////////////////////////////////////////////////////
@@ -766,6 +835,8 @@ public class Memory extends Observable {
             // memory mapped I/O.
             relativeByteAddress = address - memoryMapBaseAddress;
             value = fetchBytesFromTable(memoryMapBlockTable, relativeByteAddress, length);
+            MemoryMappedDevice device = mmioDevices[relativeByteAddress >> 2];
+            if (notify && device != null && accessIsFromMIPS()) value = device.read(address, length, value);
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with calls to getStatementNoNotify & getBinaryStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
@@ -925,13 +996,253 @@ public class Memory extends Observable {
      * @throws AddressErrorException if the base address is not on a word boundary
      */
     public int getAddressOfFirstNull(int baseAddress, int limitAddress) throws AddressErrorException {
-        int address = baseAddress;
-        for (; address < limitAddress; address += Memory.WORD_LENGTH_BYTES) {
-            if (getRawWordOrNull(address) == null) {
+        if (baseAddress >= limitAddress) {
+            return baseAddress;
+        }
+        long length = ((long) limitAddress - baseAddress + WORD_LENGTH_BYTES - 1) / WORD_LENGTH_BYTES;
+        return baseAddress + (int) readRawWords(baseAddress, null, 0, length) * WORD_LENGTH_BYTES;
+    }
+
+    /**
+     * Bulk version of getRawWordOrNull().  Starting at the given word address, copy
+     * consecutive words into the given array until the requested number of words have
+     * been read or a word for which getRawWordOrNull() would return null is reached.
+     * Whole allocation blocks are copied at a time, so this is much faster than reading
+     * the words one by one.  Observers are not notified.
+     *
+     * @param address Starting address of first word to be read.
+     * @param words   Array to receive the words.
+     * @param offset  Index in the array of the first word read.
+     * @param length  Maximum number of words to read.
+     * @return Number of words actually read.  Less than length if a "null" word was reached.
+     * @throws AddressErrorException If address is not on word boundary or out of range.
+     */
+    public int getRawWords(int address, int[] words, int offset, int length) throws AddressErrorException {
+        return (int) readRawWords(address, words, offset, length);
+    }
+
+    /**
+     * Count the "null" words, as described for getRawWordOrNull(), starting at the given
+     * word address.  Combined with getRawWords() this allows skipping the unallocated parts
+     * of a segment without visiting them word by word.
+     *
+     * @param address Starting address of first word to be examined.
+     * @param length  Maximum number of words to examine.
+     * @return Number of consecutive "null" words starting at address, at most length.
+     * @throws AddressErrorException If address is not on word boundary or out of range.
+     */
+    public synchronized int getRawNullWordCount(int address, int length) throws AddressErrorException {
+        checkRawWordAddress(address);
+        int count = 0;
+        while (count < length) {
+            int run = readRawWordsInBlock(address, null, 0, length - count);
+            if (run >= 0) {
                 break;
             }
+            count -= run;
+            address += -run * WORD_LENGTH_BYTES;
         }
-        return address;
+        return count;
+    }
+
+    // Copy consecutive non-null words starting at address, stopping at the first null one.
+    // With a null array the words are only counted.
+    private synchronized long readRawWords(int address, int[] words, int offset, long length) throws AddressErrorException {
+        checkRawWordAddress(address);
+        long count = 0;
+        while (count < length) {
+            int run = readRawWordsInBlock(address, words, (int) (offset + count),
+                    (int) Math.min(length - count, Integer.MAX_VALUE));
+            if (run <= 0) {
+                break;
+            }
+            count += run;
+            address += run * WORD_LENGTH_BYTES;
+        }
+        return count;
+    }
+
+    private void checkRawWordAddress(int address) throws AddressErrorException {
+        if (address % WORD_LENGTH_BYTES != 0) {
+            throw new AddressErrorException("address for fetch not aligned on word boundary",
+                    Exceptions.ADDRESS_EXCEPTION_LOAD, address);
+        }
+    }
+
+    // Helper for the bulk reads.  Reads at most length words starting at address without
+    // crossing the allocation block or segment it belongs to.  Same segment rules as
+    // getRawWordOrNull().  Returns the number of words copied if the first word is allocated,
+    // otherwise minus the number of consecutive unallocated words.
+    private int readRawWordsInBlock(int address, int[] words, int offset, int length) throws AddressErrorException {
+        if (inDataSegment(address)) {
+            return readWordsFromTable(dataBlockTable, (address - dataSegmentBaseAddress) >> 2,
+                    (dataSegmentLimitAddress - address) >> 2, words, offset, length);
+        } else if (address > stackLimitAddress && address <= stackBaseAddress) {
+            // Stack table is indexed "backward", so ascending addresses walk down the block
+            int relative = (stackBaseAddress - address) >> 2;
+            int[] block = stackBlockTable[relative / BLOCK_LENGTH_WORDS];
+            int blockOffset = relative % BLOCK_LENGTH_WORDS;
+            int count = Math.min(length, blockOffset + 1);
+            if (block == null) {
+                return -count;
+            }
+            if (words != null) {
+                for (int i = 0; i < count; i++) {
+                    words[offset + i] = block[blockOffset - i];
+                }
+            }
+            return count;
+        } else if (inTextSegment(address) || inKernelTextSegment(address)) {
+            ProgramStatement statement;
+            try {
+                statement = getStatementNoNotify(address);
+            } catch (AddressErrorException aee) {
+                statement = null;
+            }
+            if (statement == null) {
+                return -1;
+            }
+            if (words != null) {
+                words[offset] = statement.getBinaryStatement();
+            }
+            return 1;
+        } else if (inKernelDataSegment(address)) {
+            return readWordsFromTable(kernelDataBlockTable, (address - kernelDataBaseAddress) >> 2,
+                    (kernelDataSegmentLimitAddress - address) >> 2, words, offset, length);
+        } else {
+            // falls outside Mars addressing range
+            throw new AddressErrorException("address out of range ", Exceptions.ADDRESS_EXCEPTION_LOAD, address);
+        }
+    }
+
+    /**
+     * Write the allocated memory blocks and the heap pointer, so that they can
+     * later be put back with readSnapshot().  Unallocated blocks are not written,
+     * so the size of the snapshot is proportional to the memory actually in use.
+     * Text segments are written as binary instructions, which also captures any
+     * self-modifying code.  Observers are not notified.
+     *
+     * @param out where to write the memory contents
+     * @throws IOException if writing fails
+     */
+    public synchronized void writeSnapshot(DataOutput out) throws IOException {
+        out.writeInt(heapAddress);
+        writeBlockTableSnapshot(out, dataBlockTable);
+        writeBlockTableSnapshot(out, kernelDataBlockTable);
+        writeBlockTableSnapshot(out, stackBlockTable);
+        writeBlockTableSnapshot(out, memoryMapBlockTable);
+        writeTextBlockTableSnapshot(out, textBlockTable);
+        writeTextBlockTableSnapshot(out, kernelTextBlockTable);
+    }
+
+    /**
+     * Read a snapshot written by writeSnapshot().  Memory is left untouched: the
+     * returned action replaces its contents with the snapshot, so that nothing is
+     * changed if reading fails half way.  The current memory configuration must be
+     * the one the snapshot was taken with.  Statements of the currently assembled
+     * program are kept where the snapshot holds the same binary instruction, so that
+     * their source information stays available.  Observers are not notified.
+     *
+     * @param in where to read the memory contents from
+     * @return action installing the snapshot contents
+     * @throws IOException if reading fails or the snapshot is malformed
+     */
+    public synchronized Runnable readSnapshot(DataInput in) throws IOException {
+        final int heap = in.readInt();
+        final int[][] data = readBlockTableSnapshot(in, BLOCK_TABLE_LENGTH);
+        final int[][] kernelData = readBlockTableSnapshot(in, BLOCK_TABLE_LENGTH);
+        final int[][] stack = readBlockTableSnapshot(in, BLOCK_TABLE_LENGTH);
+        final int[][] memoryMap = readBlockTableSnapshot(in, MMIO_TABLE_LENGTH);
+        final ProgramStatement[][] text = readTextBlockTableSnapshot(in, textBlockTable, textBaseAddress);
+        final ProgramStatement[][] kernelText = readTextBlockTableSnapshot(in, kernelTextBlockTable, kernelTextBaseAddress);
+        return () -> {
+            synchronized (this) {
+                heapAddress = heap;
+                dataBlockTable = data;
+                kernelDataBlockTable = kernelData;
+                stackBlockTable = stack;
+                memoryMapBlockTable = memoryMap;
+                textBlockTable = text;
+                kernelTextBlockTable = kernelText;
+                resetPageGenerations();
+            }
+        };
+    }
+
+    // Each allocated block is written as its index followed by its words, -1 ends the table
+    private static void writeBlockTableSnapshot(DataOutput out, int[][] blockTable) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_LENGTH_WORDS * WORD_LENGTH_BYTES);
+        for (int i = 0; i < blockTable.length; i++) {
+            if (blockTable[i] != null) {
+                out.writeInt(i);
+                buffer.asIntBuffer().put(blockTable[i]);
+                out.write(buffer.array());
+            }
+        }
+        out.writeInt(-1);
+    }
+
+    private static int[][] readBlockTableSnapshot(DataInput in, int tableLength) throws IOException {
+        int[][] blockTable = new int[tableLength][];
+        byte[] bytes = new byte[BLOCK_LENGTH_WORDS * WORD_LENGTH_BYTES];
+        for (int i = in.readInt(); i != -1; i = in.readInt()) {
+            if (i < 0 || i >= tableLength)
+                throw new IOException("Invalid memory block " + i + " in snapshot");
+            in.readFully(bytes);
+            blockTable[i] = new int[BLOCK_LENGTH_WORDS];
+            ByteBuffer.wrap(bytes).asIntBuffer().get(blockTable[i]);
+        }
+        return blockTable;
+    }
+
+    // Each allocated block is written as its index, a bitmap of the words holding a
+    // statement, then the binary instruction of those statements.  -1 ends the table.
+    private static void writeTextBlockTableSnapshot(DataOutput out, ProgramStatement[][] blockTable) throws IOException {
+        for (int i = 0; i < blockTable.length; i++) {
+            ProgramStatement[] block = blockTable[i];
+            if (block == null)
+                continue;
+            out.writeInt(i);
+            for (int word = 0; word < TEXT_BLOCK_LENGTH_WORDS; word += Integer.SIZE) {
+                int bits = 0;
+                for (int bit = 0; bit < Integer.SIZE; bit++) {
+                    if (block[word + bit] != null)
+                        bits |= 1 << bit;
+                }
+                out.writeInt(bits);
+            }
+            for (ProgramStatement statement : block) {
+                if (statement != null)
+                    out.writeInt(statement.getBinaryStatement());
+            }
+        }
+        out.writeInt(-1);
+    }
+
+    private static ProgramStatement[][] readTextBlockTableSnapshot(DataInput in, ProgramStatement[][] current,
+                                                                   int baseAddress) throws IOException {
+        ProgramStatement[][] blockTable = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
+        int[] bitmap = new int[TEXT_BLOCK_LENGTH_WORDS / Integer.SIZE];
+        for (int i = in.readInt(); i != -1; i = in.readInt()) {
+            if (i < 0 || i >= TEXT_BLOCK_TABLE_LENGTH)
+                throw new IOException("Invalid text block " + i + " in snapshot");
+            for (int j = 0; j < bitmap.length; j++)
+                bitmap[j] = in.readInt();
+            ProgramStatement[] block = new ProgramStatement[TEXT_BLOCK_LENGTH_WORDS];
+            for (int word = 0; word < TEXT_BLOCK_LENGTH_WORDS; word++) {
+                if ((bitmap[word / Integer.SIZE] & (1 << (word % Integer.SIZE))) == 0)
+                    continue;
+                int binary = in.readInt();
+                ProgramStatement statement = (current[i] == null) ? null : current[i][word];
+                if (statement == null || statement.getBinaryStatement() != binary) {
+                    statement = new ProgramStatement(binary,
+                            baseAddress + (i * TEXT_BLOCK_LENGTH_WORDS + word) * WORD_LENGTH_BYTES);
+                }
+                block[word] = statement;
+            }
+            blockTable[i] = block;
+        }
+        return blockTable;
     }
 
     /**
@@ -1155,6 +1466,74 @@ public class Memory extends Observable {
         observables = Collections.synchronizedCollection(new ArrayList<>());
     }
 
+    /**
+     * Let a device claim a range of the memory mapped I/O segment.  From then on the MIPS
+     * program's loads and stores in the range, through get() and set() and the methods
+     * built on them, are passed to the device.  The raw and "NoNotify" accessors are not,
+     * nor are accesses from other threads, such as back stepping or editing memory in the
+     * Data Segment window.
+     * The last byte included in the range is the last byte of the word specified by the
+     * ending address.
+     *
+     * @param device    the device
+     * @param startAddr the low end of memory address range, must be on word boundary
+     * @param endAddr   the high end of memory address range, must be on word boundary
+     * @throws AddressErrorException    if the range is not aligned or not within the memory mapped I/O segment
+     * @throws IllegalArgumentException if part of the range is already claimed by another device
+     */
+    public synchronized void addDevice(MemoryMappedDevice device, int startAddr, int endAddr) throws AddressErrorException {
+        if (startAddr % WORD_LENGTH_BYTES != 0 || endAddr % WORD_LENGTH_BYTES != 0) {
+            throw new AddressErrorException("address not aligned on word boundary ",
+                    Exceptions.ADDRESS_EXCEPTION_LOAD, startAddr);
+        }
+        if (startAddr < memoryMapBaseAddress || endAddr >= memoryMapLimitAddress || endAddr < startAddr) {
+            throw new AddressErrorException("device range not within memory mapped I/O segment ",
+                    Exceptions.ADDRESS_EXCEPTION_LOAD, startAddr);
+        }
+        int first = (startAddr - memoryMapBaseAddress) >> 2;
+        int last = (endAddr - memoryMapBaseAddress) >> 2;
+        for (int i = first; i <= last; i++) {
+            if (mmioDevices[i] != null && mmioDevices[i] != device) {
+                throw new IllegalArgumentException("address " + Binary.intToHexString(memoryMapBaseAddress + (i << 2))
+                        + " is already claimed by another device");
+            }
+        }
+        Arrays.fill(mmioDevices, first, last + 1, device);
+    }
+
+    // Same test as AccessNotice.accessIsFromMIPS(): the simulator thread is named "MIPS"
+    private static boolean accessIsFromMIPS() {
+        return Thread.currentThread().getName().startsWith("MIPS");
+    }
+
+    /**
+     * Tell every device that a snapshot replaced the machine state, see
+     * {@link MemoryMappedDevice#restored()}.
+     */
+    public void notifyDevicesRestored() {
+        MemoryMappedDevice[] devices;
+        synchronized (this) {
+            devices = mmioDevices.clone();
+        }
+        MemoryMappedDevice previous = null;
+        for (MemoryMappedDevice device : devices) {
+            // A device claims consecutive words, so it is told once unless it claimed several ranges
+            if (device != null && device != previous) device.restored();
+            previous = device;
+        }
+    }
+
+    /**
+     * Release all the ranges claimed by the given device.
+     *
+     * @param device the device to remove
+     */
+    public synchronized void removeDevice(MemoryMappedDevice device) {
+        for (int i = 0; i < mmioDevices.length; i++) {
+            if (mmioDevices[i] == device) mmioDevices[i] = null;
+        }
+    }
+
     /**
      * Overridden to be unavailable.  The notice that an Observer
      * receives does not come from the memory object itself, but
@@ -1352,6 +1731,28 @@ public class Memory extends Observable {
                 (source << 24);
     }
 
+    ////////////////////////////////////////////////////////////////////////////////
+    //
+    // Helper method for the bulk reads.  Copies words from a forward indexed table
+    // (data segment or kernel data segment), starting at the given relative word
+    // and up to the end of its block or of the segment.  Returns the number of words
+    // copied, or minus the number of words skipped if the block is not allocated.
+    //
+
+    private int readWordsFromTable(int[][] blockTable, int relative, int segmentWordsLeft,
+                                   int[] words, int offset, int length) {
+        int block = relative / BLOCK_LENGTH_WORDS;
+        int blockOffset = relative % BLOCK_LENGTH_WORDS;
+        int count = Math.min(length, Math.min(BLOCK_LENGTH_WORDS - blockOffset, segmentWordsLeft));
+        if (blockTable[block] == null) {
+            return -count;
+        }
+        if (words != null) {
+            System.arraycopy(blockTable[block], blockOffset, words, offset, count);
+        }
+        return count;
+    }
+
     ///////////////////////////////////////////////////////////////////////
     // Store a program statement at the given address.  Address has already been verified
     // as valid.  It may be either in user or kernel text segment, as specified by arguments.
@@ -0,0 +1,73 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.mips.hardware;
+
+/**
+ * A device emulated behind a range of the memory mapped I/O segment.
+ * <p>
+ * Once the range is claimed with {@link Memory#addDevice(MemoryMappedDevice, int, int)}
+ * every load and store the MIPS program makes in it is passed to the device directly,
+ * without the cost of memory observers watching for it.  The range is still backed by
+ * memory, which the Data Segment window displays; the device updates its own registers
+ * there with {@link Memory#setRawWord(int, int)}, which does not call it back.  Interrupts
+ * are signalled with {@link mars.simulator.Simulator#requestInterrupt(int)}.
+ * <p>
+ * Reads and writes are called on the simulator thread while it holds
+ * {@link mars.Globals#memoryAndRegistersLock}, and only for the program's own accesses:
+ * undoing a store by back stepping, or editing the range in the Data Segment window,
+ * changes memory without calling the device.
+ */
+public interface MemoryMappedDevice {
+    /**
+     * Called when the MIPS program loads from the device's range.
+     *
+     * @param address the address read
+     * @param length  number of bytes read: 1, 2 or 4
+     * @param value   the value held in memory at that address
+     * @return the value the program gets
+     */
+    int read(int address, int length, int value);
+
+    /**
+     * Called when the MIPS program has stored to the device's range.  The value is
+     * already in memory.
+     *
+     * @param address the address written
+     * @param length  number of bytes written: 1, 2 or 4
+     * @param value   the value written
+     */
+    void write(int address, int length, int value);
+
+    /**
+     * Called when a snapshot replaced the machine state, the device's range of memory
+     * included.  The events devices scheduled with {@link mars.simulator.EventScheduler}
+     * are dropped by a restore, so a device that was waiting for one, for instance to
+     * end a transfer its registers show in progress, schedules it again here.  Called
+     * while holding {@link mars.Globals#memoryAndRegistersLock}, but not necessarily on
+     * the simulator thread.
+     */
+    default void restored() {
+    }
+}
@@ -44,6 +44,9 @@ public class Register extends Observable {
     // are the only methods here used by the register collection
     // (RegisterFile, Coprocessor0, Coprocessor1) methods.
     private volatile int value;
+    // Bumped on every write, so displays can tell which registers changed since they last
+    // looked.  Only written inside synchronized methods.
+    private volatile int version;
 
     /**
      * Creates a new register with specified name, number, and value.
@@ -117,6 +120,7 @@ public class Register extends Observable {
     public synchronized int setValue(int val) {
         int old = value;
         value = val;
+        version++;
         notifyAnyObservers(AccessNotice.WRITE);
         return old;
     }
@@ -127,6 +131,18 @@ public class Register extends Observable {
      */
     public synchronized void resetValue() {
         value = resetValue;
+        version++;
+    }
+
+    /**
+     * Returns a counter incremented every time the register is written or reset.
+     * Comparing it with a previously read version tells whether the value may have changed
+     * in the meantime, without observing every write.
+     *
+     * @return The write version of the Register.
+     */
+    public int getVersion() {
+        return version;
     }
 
     /**
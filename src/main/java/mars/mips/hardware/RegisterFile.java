@@ -269,6 +269,15 @@ public class RegisterFile {
         return programCounter;
     }
 
+    /**
+     * Returns Register objects for the HI and LO registers, in this order.  Use with caution.
+     *
+     * @return array holding the HI and LO Register objects.
+     */
+    public static Register[] getHiLoRegisters() {
+        return new Register[]{hi, lo};
+    }
+
     /**
      * For returning the program counter's initial (reset) value.
      *
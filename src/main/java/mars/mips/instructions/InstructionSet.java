@@ -53,6 +53,7 @@ import java.util.*;
 public class InstructionSet {
     private final List<Instruction> instructionList;
     private List<MatchMap> opcodeMatchMaps;
+    private Map<String, List<Instruction>> operatorIndex;
     private SyscallLoader syscallLoader;
 
     /**
@@ -2352,6 +2353,10 @@ public class InstructionSet {
         syscallLoader = new SyscallLoader();
         syscallLoader.loadSyscalls();
 
+        // Operators are looked up for every token of every example below (and later on
+        // of every source line), so index them by mnemonic instead of scanning the list.
+        buildOperatorIndex();
+
         // Initialization step.  Create token list for each instruction example.  This is
         // used by parser to determine user program correct syntax.
         for (Instruction instruction : instructionList)
@@ -2451,22 +2456,24 @@ public class InstructionSet {
 
     /**
      * Given an operator mnemonic, will return the corresponding Instruction object(s)
-     * from the instruction set.  Uses straight linear search technique.
+     * from the instruction set.  Case-insensitive, uses a mnemonic index built
+     * once the set has been populated.
      *
      * @param name operator mnemonic (e.g. addi, sw,...)
      * @return list of corresponding Instruction object(s), or null if not found.
      */
     public List<Instruction> matchOperator(String name) {
-        List<Instruction> matchingInstructions = null;
-        // Linear search for now....
-        for (Instruction instruction : instructionList) {
-            if (instruction.getName().equalsIgnoreCase(name)) {
-                if (matchingInstructions == null)
-                    matchingInstructions = new ArrayList<>();
-                matchingInstructions.add(instruction);
-            }
-        }
-        return matchingInstructions;
+        if (operatorIndex == null)
+            buildOperatorIndex();
+        return operatorIndex.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    private void buildOperatorIndex() {
+        Map<String, List<Instruction>> index = new HashMap<>();
+        for (Instruction instruction : instructionList)
+            index.computeIfAbsent(instruction.getName().toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(instruction);
+        index.replaceAll((name, instructions) -> Collections.unmodifiableList(instructions));
+        operatorIndex = index;
     }
 
 
@@ -2483,7 +2490,7 @@ public class InstructionSet {
         // Linear search for now....
         if (name != null) {
             for (Instruction instruction : instructionList) {
-                if (instruction.getName().toLowerCase().startsWith(name.toLowerCase())) {
+                if (instruction.getName().toLowerCase(Locale.ROOT).startsWith(name.toLowerCase(Locale.ROOT))) {
                     if (matchingInstructions == null)
                         matchingInstructions = new ArrayList<>();
                     matchingInstructions.add(instruction);
@@ -32,10 +32,7 @@ import mars.mips.instructions.syscalls.Syscall;
 import mars.mips.instructions.syscalls.SyscallNumberOverride;
 import mars.util.FilenameFinder;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 
 /****************************************************************************/
@@ -63,6 +60,22 @@ class SyscallLoader {
      */
     void loadSyscalls() {
         syscallList = new ArrayList<>();
+        // Use the registry generated at build time if there is one (see build.gradle.kts),
+        // which saves scanning the classpath.  Fall back to scanning otherwise, e.g. when
+        // running straight from the IDE.
+        try {
+            for (Syscall syscall : ServiceLoader.load(Syscall.class, this.getClass().getClassLoader()))
+                addSyscall(syscall);
+        } catch (Exception | ServiceConfigurationError e) {
+            System.out.println("Error instantiating Syscall from registry: " + e);
+            System.exit(0);
+        }
+        if (syscallList.isEmpty())
+            scanSyscalls();
+        syscallList = processSyscallNumberOverrides(syscallList);
+    }
+
+    private void scanSyscalls() {
         // grab all class files in the same directory as Syscall
         List<String> candidates = FilenameFinder.getFilenameList(this.getClass().getClassLoader(), SYSCALLS_DIRECTORY_PATH, CLASS_EXTENSION);
         Map<String, String> syscalls = new HashMap<>();
@@ -82,21 +95,23 @@ class SyscallLoader {
                     if (!Syscall.class.isAssignableFrom(clas)) {
                         continue;
                     }
-                    Syscall syscall = (Syscall) clas.getDeclaredConstructor().newInstance();
-                    if (findSyscall(syscall.getNumber()) == null) {
-                        syscallList.add(syscall);
-                    } else {
-                        throw new Exception("Duplicate service number: " + syscall.getNumber() +
-                                " already registered to " +
-                                findSyscall(syscall.getNumber()).getName());
-                    }
+                    addSyscall((Syscall) clas.getDeclaredConstructor().newInstance());
                 } catch (Exception e) {
                     System.out.println("Error instantiating Syscall from file " + file + ": " + e);
                     System.exit(0);
                 }
             }
         }
-        syscallList = processSyscallNumberOverrides(syscallList);
+    }
+
+    private void addSyscall(Syscall syscall) throws Exception {
+        if (findSyscall(syscall.getNumber()) == null) {
+            syscallList.add(syscall);
+        } else {
+            throw new Exception("Duplicate service number: " + syscall.getNumber() +
+                    " already registered to " +
+                    findSyscall(syscall.getNumber()).getName());
+        }
     }
 
     // Will get any syscall number override specifications from MARS config file and
@@ -0,0 +1,86 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Counters indexed by instruction address, kept in <code>long</code> arrays for every
+ * 16KB of address space in which something was counted, so a count is an array update
+ * whatever the memory configuration and even for code outside the text segment.
+ */
+class AddressCounters {
+    private static final int PAGE_SHIFT = 14;
+    private static final int WORDS_PER_PAGE = 1 << (PAGE_SHIFT - 2);
+
+    private final long[][] pages = new long[1 << (32 - PAGE_SHIFT)][];
+
+    /**
+     * Adds to the counter of the given address.
+     */
+    void add(int address, long amount) {
+        long[] page = pages[address >>> PAGE_SHIFT];
+        if (page == null) {
+            page = new long[WORDS_PER_PAGE];
+            pages[address >>> PAGE_SHIFT] = page;
+        }
+        page[(address >>> 2) & (WORDS_PER_PAGE - 1)] += amount;
+    }
+
+    /**
+     * Returns the counter of the given address.
+     */
+    long get(int address) {
+        long[] page = pages[address >>> PAGE_SHIFT];
+        return (page == null) ? 0 : page[(address >>> 2) & (WORDS_PER_PAGE - 1)];
+    }
+
+    /**
+     * Passes every non-zero counter to the consumer, by increasing unsigned address.
+     */
+    void forEach(Profiler.CountConsumer consumer) {
+        for (int i = 0; i < pages.length; i++) {
+            long[] page = pages[i];
+            if (page != null) {
+                for (int word = 0; word < WORDS_PER_PAGE; word++) {
+                    if (page[word] != 0) {
+                        consumer.accept((i << PAGE_SHIFT) | (word << 2), page[word]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears all counters.
+     */
+    void reset() {
+        for (long[] page : pages) {
+            if (page != null) {
+                Arrays.fill(page, 0);
+            }
+        }
+    }
+}
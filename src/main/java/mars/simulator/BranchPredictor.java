@@ -0,0 +1,264 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A branch predictor, told the address and outcome of every conditional branch.
+ * <p>
+ * Predictors are described by <code>kind:entries[:bits]</code> where entries is the
+ * size of the prediction table, that may end with k, and kind is one of
+ * <ul>
+ * <li><code>bht</code>: the branch history table of the BHT Simulator tool, whose
+ * entries change their prediction after bits (1 by default) mispredictions in a row,</li>
+ * <li><code>bimodal</code>: a table of saturating counters of bits bits (2 by default)
+ * indexed by branch address,</li>
+ * <li><code>gshare</code>: a table of 2-bit counters indexed by branch address xor the
+ * outcomes of the last bits branches (by default as many as index bits),</li>
+ * <li><code>tournament</code>: a 2-bit bimodal and a gshare predictor with bits of
+ * history, each with the given number of entries, and a table of 2-bit counters indexed
+ * by branch address choosing which of the two to follow.</li>
+ * </ul>
+ * All entries start predicting not taken.  Tables are indexed by word address modulo the
+ * number of entries, as in the BHT Simulator tool.
+ */
+public class BranchPredictor {
+    /**
+     * Kinds of predictor, see the class comment.
+     */
+    public enum Kind {BHT, BIMODAL, GSHARE, TOURNAMENT}
+
+    private final String specification;
+    private final Kind kind;
+    private final int entries;
+    private final int bits;
+    // Per entry prediction for BHT, counters for the others
+    private final byte[] table;
+    // Mispredictions in a row for BHT, bimodal counters of a tournament
+    private final byte[] local;
+    // Choice between bimodal (below 2) and gshare for a tournament
+    private final byte[] chooser;
+    private final int counterMax;
+    private final int historyMask;
+    private int history;
+    private long branches;
+    private long correct;
+
+    /**
+     * Creates a predictor from its description.
+     *
+     * @param specification description, see the class comment
+     * @throws IllegalArgumentException if the description is not valid
+     */
+    public BranchPredictor(String specification) {
+        this.specification = specification.trim();
+        String[] fields = this.specification.split(":");
+        if (fields.length < 2 || fields.length > 3) {
+            throw new IllegalArgumentException("Branch predictor must be kind:entries[:bits], not " + specification);
+        }
+        try {
+            kind = Kind.valueOf(fields[0].trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown branch predictor " + fields[0]);
+        }
+        entries = parseNumber(fields[1]);
+        if (entries == 0) {
+            throw new IllegalArgumentException("Branch predictor needs at least one entry: " + specification);
+        }
+        int indexBits = 31 - Integer.numberOfLeadingZeros(entries);
+        bits = (fields.length == 3) ? parseNumber(fields[2]) : switch (kind) {
+            case BHT -> 1;
+            case BIMODAL -> 2;
+            case GSHARE, TOURNAMENT -> indexBits;
+        };
+        int maxBits = switch (kind) {
+            case BHT -> 8;
+            case BIMODAL -> 7;
+            case GSHARE, TOURNAMENT -> 30;
+        };
+        if (bits > maxBits || (bits == 0 && kind != Kind.GSHARE && kind != Kind.TOURNAMENT)) {
+            throw new IllegalArgumentException("Invalid number of bits in " + specification);
+        }
+        table = new byte[entries];
+        local = (kind == Kind.BHT || kind == Kind.TOURNAMENT) ? new byte[entries] : null;
+        chooser = (kind == Kind.TOURNAMENT) ? new byte[entries] : null;
+        counterMax = (kind == Kind.BIMODAL) ? (1 << bits) - 1 : 3;
+        historyMask = (kind == Kind.GSHARE || kind == Kind.TOURNAMENT) ? (1 << bits) - 1 : 0;
+        reset();
+    }
+
+    public String getSpecification() {
+        return specification;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns a readable description of the predictor.
+     *
+     * @return e.g. "1024-entry gshare, 10 bits of history"
+     */
+    public String getDescription() {
+        return switch (kind) {
+            case BHT -> entries + "-entry BHT, " + bits + "-bit history";
+            case BIMODAL -> entries + "-entry bimodal, " + bits + "-bit counters";
+            case GSHARE -> entries + "-entry gshare, " + bits + " bits of history";
+            case TOURNAMENT -> entries + "-entry tournament of bimodal and gshare, " + bits + " bits of history";
+        };
+    }
+
+    /**
+     * Clears the tables, the history and the statistics.
+     */
+    public void reset() {
+        // Counters start weakly not taken
+        Arrays.fill(table, (byte) ((kind == Kind.BHT) ? 0 : (counterMax - 1) / 2));
+        if (local != null) {
+            Arrays.fill(local, (byte) ((kind == Kind.BHT) ? 0 : 1));
+        }
+        if (chooser != null) {
+            Arrays.fill(chooser, (byte) 1);
+        }
+        history = 0;
+        branches = correct = 0;
+    }
+
+    /**
+     * Predicts the branch at the given address, then updates the predictor with its outcome.
+     *
+     * @param address address of the branch instruction
+     * @param taken   whether the branch was taken
+     * @return true if the prediction was correct
+     */
+    public boolean predict(int address, boolean taken) {
+        int word = address >>> 2;
+        int index = Integer.remainderUnsigned(word, entries);
+        boolean prediction = switch (kind) {
+            case BHT -> predictHistory(index, taken);
+            case BIMODAL -> predictCounter(table, index, taken);
+            case GSHARE -> predictCounter(table, Integer.remainderUnsigned(word ^ history, entries), taken);
+            case TOURNAMENT -> {
+                boolean bimodal = predictCounter(local, index, taken);
+                boolean gshare = predictCounter(table, Integer.remainderUnsigned(word ^ history, entries), taken);
+                boolean useGshare = chooser[index] >= 2;
+                if (bimodal != gshare) {
+                    // Move towards the one that was right
+                    updateCounter(chooser, index, gshare == taken);
+                }
+                yield useGshare ? gshare : bimodal;
+            }
+        };
+        history = ((history << 1) | (taken ? 1 : 0)) & historyMask;
+        branches++;
+        if (prediction == taken) {
+            correct++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Predicts a sequence of branches.
+     *
+     * @param outcomes branch addresses, with bit 0 set for taken branches
+     * @param count    number of branches
+     */
+    public void predict(int[] outcomes, int count) {
+        for (int i = 0; i < count; i++) {
+            predict(outcomes[i] & ~1, (outcomes[i] & 1) != 0);
+        }
+    }
+
+    public long getBranchCount() {
+        return branches;
+    }
+
+    public long getCorrectCount() {
+        return correct;
+    }
+
+    public long getMispredictionCount() {
+        return branches - correct;
+    }
+
+    /**
+     * Returns the fraction of branches correctly predicted.
+     *
+     * @return accuracy between 0 and 1, 0 if there were no branches
+     */
+    public double getAccuracy() {
+        return (branches == 0) ? 0 : (double) correct / branches;
+    }
+
+    // BHTEntry semantics: the prediction changes after bits mispredictions in a row
+    private boolean predictHistory(int index, boolean taken) {
+        boolean prediction = table[index] != 0;
+        if (prediction == taken) {
+            local[index] = 0;
+        } else if (++local[index] == bits) {
+            table[index] = (byte) (taken ? 1 : 0);
+            local[index] = 0;
+        }
+        return prediction;
+    }
+
+    private boolean predictCounter(byte[] counters, int index, boolean taken) {
+        boolean prediction = counters[index] > counterMax / 2;
+        updateCounter(counters, index, taken);
+        return prediction;
+    }
+
+    private void updateCounter(byte[] counters, int index, boolean up) {
+        if (up) {
+            if (counters[index] < counterMax) {
+                counters[index]++;
+            }
+        } else if (counters[index] > 0) {
+            counters[index]--;
+        }
+    }
+
+    private static int parseNumber(String field) {
+        String value = field.trim().toLowerCase(Locale.ROOT);
+        int multiplier = 1;
+        if (value.endsWith("k")) {
+            multiplier = 1024;
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            int number = Integer.parseInt(value);
+            if (number < 0) {
+                throw new NumberFormatException();
+            }
+            return Math.multiplyExact(number, multiplier);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid number " + field);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.ProgramStatement;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.RegisterFile;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates any number of branch predictors on the conditional branches of a running program.
+ * <p>
+ * Like {@link CacheSweep}, the simulator only appends the address and outcome of each
+ * branch to a buffer, which is replayed by every predictor as a separate task on a
+ * thread pool once full.  All predictors see the very same branches and evaluation runs
+ * in parallel with the simulation.  The outcome of a branch is decided from the registers
+ * before it executes, so delayed branching makes no difference.
+ */
+public class BranchPredictorSweep implements Simulator.InstructionListener {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final List<BranchPredictor> predictors;
+    private final ExecutorService executor;
+    private final List<Future<?>> pending = new ArrayList<>();
+    // Two buffers of branch addresses with bit 0 set if taken, one filled while the other is replayed
+    private final int[][] outcomes = new int[2][BUFFER_SIZE];
+    private int current;
+    private int count;
+
+    /**
+     * Creates a sweep over the given predictors.
+     *
+     * @param predictors branch predictors to evaluate
+     */
+    public BranchPredictorSweep(List<BranchPredictor> predictors) {
+        this.predictors = new ArrayList<>(predictors);
+        int threads = Math.max(1, Math.min(predictors.size(), Runtime.getRuntime().availableProcessors()));
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Branch prediction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public List<BranchPredictor> getPredictors() {
+        return predictors;
+    }
+
+    /**
+     * Starts following the instructions executed by the simulator.
+     */
+    public void attach() {
+        Simulator.getInstance().addInstructionListener(this);
+    }
+
+    /**
+     * Records the instruction if it is a conditional branch.
+     */
+    public void instructionStarted(int address, ProgramStatement statement) {
+        int word = statement.getBinaryStatement();
+        int rs = (word >>> 21) & 0x1F;
+        int rt = (word >>> 16) & 0x1F;
+        boolean taken;
+        switch (word >>> 26) {
+            case 0x01 -> { // bltz, bgez, bltzal, bgezal
+                if (rt == 0x00 || rt == 0x10) {
+                    taken = value(rs) < 0;
+                } else if (rt == 0x01 || rt == 0x11) {
+                    taken = value(rs) >= 0;
+                } else {
+                    return;
+                }
+            }
+            case 0x04 -> taken = value(rs) == value(rt); // beq
+            case 0x05 -> taken = value(rs) != value(rt); // bne
+            case 0x06 -> taken = value(rs) <= 0; // blez
+            case 0x07 -> taken = value(rs) > 0; // bgtz
+            case 0x11 -> { // bc1f, bc1t
+                if (rs != 0x08) {
+                    return;
+                }
+                taken = Coprocessor1.getConditionFlag(rt >>> 2) == (rt & 1);
+            }
+            default -> {
+                return;
+            }
+        }
+        record(address, taken);
+    }
+
+    /**
+     * Records a branch.
+     *
+     * @param address address of the branch instruction
+     * @param taken   whether the branch is taken
+     */
+    public void record(int address, boolean taken) {
+        outcomes[current][count] = (address & ~1) | (taken ? 1 : 0);
+        if (++count == BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Stops following the simulator and waits until every recorded branch has been
+     * predicted.  Statistics of the predictors are complete afterwards.
+     */
+    public void finish() {
+        Simulator.getInstance().removeInstructionListener(this);
+        flush();
+        awaitPending();
+        executor.shutdown();
+    }
+
+    /**
+     * Prints a table comparing the accuracy of the predictors.
+     *
+     * @param out stream to print to
+     */
+    public void printStatistics(PrintStream out) {
+        out.println("     branches  mispredicted  accuracy%  predictor");
+        for (BranchPredictor predictor : predictors) {
+            out.printf(Locale.ROOT, "%13d %13d %10.2f  %s (%s)%n", predictor.getBranchCount(),
+                    predictor.getMispredictionCount(), 100 * predictor.getAccuracy(),
+                    predictor.getSpecification(), predictor.getDescription());
+        }
+    }
+
+    private static int value(int register) {
+        return RegisterFile.getRegisters()[register].getValueNoNotify();
+    }
+
+    // Hand the current buffer to the pool, once the other one has been replayed
+    private void flush() {
+        if (count == 0) {
+            return;
+        }
+        awaitPending();
+        int[] buffer = outcomes[current];
+        int bufferCount = count;
+        for (BranchPredictor predictor : predictors) {
+            pending.add(executor.submit(() -> predictor.predict(buffer, bufferCount)));
+        }
+        current = 1 - current;
+        count = 0;
+    }
+
+    // Buffers are reused, so this waits even if interrupted
+    private void awaitPending() {
+        boolean interrupted = false;
+        for (Future<?> future : pending) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Branch prediction failed", e.getCause());
+                }
+            }
+        }
+        pending.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.Globals;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+import mars.util.Binary;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Condition of a conditional breakpoint, compiled once from its source text into a tree
+ * of small evaluators so that testing it on each hit does no parsing.
+ * <p>
+ * Conditions are C-like integer expressions over registers, written <tt>$t0</tt>,
+ * <tt>$8</tt>, <tt>$f2</tt>, <tt>pc</tt>, <tt>hi</tt> and <tt>lo</tt>, memory words, written
+ * <tt>mem[address]</tt>, and decimal or hexadecimal numbers.  The operators are, from lowest
+ * to highest precedence, <tt>||</tt>, <tt>&amp;&amp;</tt>, <tt>|</tt>, <tt>^</tt>,
+ * <tt>&amp;</tt>, <tt>== !=</tt>, <tt>&lt; &lt;= &gt; &gt;=</tt>, <tt>&lt;&lt; &gt;&gt;</tt>,
+ * <tt>+ -</tt>, <tt>* / %</tt> and the unary <tt>- ! ~</tt>.  A non-zero value is true.
+ * This class has package visibility.
+ */
+class BreakpointCondition {
+    private final String source;
+    private final IntSupplier expression;
+
+    /**
+     * Compiles the given condition.
+     *
+     * @param source the condition, e.g. <tt>$t0 == 5 &amp;&amp; mem[0x10010000] &gt; 3</tt>
+     * @throws IllegalArgumentException if the condition is not a valid expression
+     */
+    BreakpointCondition(String source) {
+        this.source = source;
+        Parser parser = new Parser(source);
+        expression = parser.parseExpression();
+        parser.skipSpaces();
+        if (parser.position < source.length()) {
+            throw parser.error("unexpected \"" + source.substring(parser.position) + "\"");
+        }
+    }
+
+    /**
+     * Evaluates the condition against the current registers and memory.
+     *
+     * @return true if the condition holds
+     */
+    boolean holds() {
+        return expression.getAsInt() != 0;
+    }
+
+    public String toString() {
+        return source;
+    }
+
+    // Reads a memory word for mem[...]; words that cannot be read count as 0
+    private static int readWord(int address) {
+        try {
+            return Globals.memory.getWordNoNotify(address);
+        } catch (AddressErrorException e) {
+            return 0;
+        }
+    }
+
+    // Recursive descent parser, one method per precedence level
+    private static class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        IntSupplier parseExpression() {
+            IntSupplier left = parseAnd();
+            while (accept("||")) {
+                IntSupplier l = left, r = parseAnd();
+                left = () -> (l.getAsInt() != 0 || r.getAsInt() != 0) ? 1 : 0;
+            }
+            return left;
+        }
+
+        private IntSupplier parseAnd() {
+            IntSupplier left = parseBitOr();
+            while (accept("&&")) {
+                IntSupplier l = left, r = parseBitOr();
+                left = () -> (l.getAsInt() != 0 && r.getAsInt() != 0) ? 1 : 0;
+            }
+            return left;
+        }
+
+        private IntSupplier parseBitOr() {
+            IntSupplier left = parseBitXor();
+            while (!lookingAt("||") && accept("|")) {
+                IntSupplier l = left, r = parseBitXor();
+                left = () -> l.getAsInt() | r.getAsInt();
+            }
+            return left;
+        }
+
+        private IntSupplier parseBitXor() {
+            IntSupplier left = parseBitAnd();
+            while (accept("^")) {
+                IntSupplier l = left, r = parseBitAnd();
+                left = () -> l.getAsInt() ^ r.getAsInt();
+            }
+            return left;
+        }
+
+        private IntSupplier parseBitAnd() {
+            IntSupplier left = parseEquality();
+            while (!lookingAt("&&") && accept("&")) {
+                IntSupplier l = left, r = parseEquality();
+                left = () -> l.getAsInt() & r.getAsInt();
+            }
+            return left;
+        }
+
+        private IntSupplier parseEquality() {
+            IntSupplier left = parseRelation();
+            while (true) {
+                IntSupplier l = left;
+                if (accept("==")) {
+                    IntSupplier r = parseRelation();
+                    left = () -> (l.getAsInt() == r.getAsInt()) ? 1 : 0;
+                } else if (accept("!=")) {
+                    IntSupplier r = parseRelation();
+                    left = () -> (l.getAsInt() != r.getAsInt()) ? 1 : 0;
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private IntSupplier parseRelation() {
+            IntSupplier left = parseShift();
+            while (true) {
+                IntSupplier l = left;
+                if (accept("<=")) {
+                    IntSupplier r = parseShift();
+                    left = () -> (l.getAsInt() <= r.getAsInt()) ? 1 : 0;
+                } else if (accept(">=")) {
+                    IntSupplier r = parseShift();
+                    left = () -> (l.getAsInt() >= r.getAsInt()) ? 1 : 0;
+                } else if (!lookingAt("<<") && accept("<")) {
+                    IntSupplier r = parseShift();
+                    left = () -> (l.getAsInt() < r.getAsInt()) ? 1 : 0;
+                } else if (!lookingAt(">>") && accept(">")) {
+                    IntSupplier r = parseShift();
+                    left = () -> (l.getAsInt() > r.getAsInt()) ? 1 : 0;
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private IntSupplier parseShift() {
+            IntSupplier left = parseSum();
+            while (true) {
+                IntSupplier l = left;
+                if (accept("<<")) {
+                    IntSupplier r = parseSum();
+                    left = () -> l.getAsInt() << r.getAsInt();
+                } else if (accept(">>")) {
+                    IntSupplier r = parseSum();
+                    left = () -> l.getAsInt() >> r.getAsInt();
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private IntSupplier parseSum() {
+            IntSupplier left = parseProduct();
+            while (true) {
+                IntSupplier l = left;
+                if (accept("+")) {
+                    IntSupplier r = parseProduct();
+                    left = () -> l.getAsInt() + r.getAsInt();
+                } else if (accept("-")) {
+                    IntSupplier r = parseProduct();
+                    left = () -> l.getAsInt() - r.getAsInt();
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private IntSupplier parseProduct() {
+            IntSupplier left = parseUnary();
+            while (true) {
+                IntSupplier l = left;
+                if (accept("*")) {
+                    IntSupplier r = parseUnary();
+                    left = () -> l.getAsInt() * r.getAsInt();
+                } else if (accept("/")) {
+                    IntSupplier r = parseUnary();
+                    left = () -> {
+                        int divisor = r.getAsInt();
+                        return (divisor == 0) ? 0 : l.getAsInt() / divisor;
+                    };
+                } else if (accept("%")) {
+                    IntSupplier r = parseUnary();
+                    left = () -> {
+                        int divisor = r.getAsInt();
+                        return (divisor == 0) ? 0 : l.getAsInt() % divisor;
+                    };
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private IntSupplier parseUnary() {
+            if (accept("-")) {
+                IntSupplier operand = parseUnary();
+                return () -> -operand.getAsInt();
+            }
+            if (!lookingAt("!=") && accept("!")) {
+                IntSupplier operand = parseUnary();
+                return () -> (operand.getAsInt() == 0) ? 1 : 0;
+            }
+            if (accept("~")) {
+                IntSupplier operand = parseUnary();
+                return () -> ~operand.getAsInt();
+            }
+            return parsePrimary();
+        }
+
+        private IntSupplier parsePrimary() {
+            skipSpaces();
+            if (accept("(")) {
+                IntSupplier inner = parseExpression();
+                expect(")");
+                return inner;
+            }
+            int start = position;
+            if (position < text.length() && text.charAt(position) == '$') {
+                position++;
+            }
+            while (position < text.length() && Character.isLetterOrDigit(text.charAt(position))) {
+                position++;
+            }
+            String word = text.substring(start, position);
+            if (word.isEmpty()) {
+                throw error(position < text.length()
+                        ? "unexpected \"" + text.charAt(position) + "\""
+                        : "missing operand");
+            }
+            if (word.equals("mem")) {
+                expect("[");
+                IntSupplier address = parseExpression();
+                expect("]");
+                return () -> readWord(address.getAsInt());
+            }
+            Register register = getRegister(word);
+            if (register != null) {
+                return register::getValueNoNotify;
+            }
+            try {
+                int value = Binary.stringToInt(word);
+                return () -> value;
+            } catch (NumberFormatException e) {
+                throw error("\"" + word + "\" is not a register or number");
+            }
+        }
+
+        private static Register getRegister(String name) {
+            switch (name) {
+                case "pc":
+                    return RegisterFile.getProgramCounterRegister();
+                case "hi":
+                    return RegisterFile.getHiLoRegisters()[0];
+                case "lo":
+                    return RegisterFile.getHiLoRegisters()[1];
+            }
+            if (name.charAt(0) != '$') {
+                return null;
+            }
+            Register register = RegisterFile.getUserRegister(name);
+            return (register != null) ? register : Coprocessor1.getRegister(name);
+        }
+
+        void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private boolean lookingAt(String token) {
+            skipSpaces();
+            return text.startsWith(token, position);
+        }
+
+        private boolean accept(String token) {
+            if (lookingAt(token)) {
+                position += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw error("\"" + token + "\" expected");
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid condition at column " + (position + 1) + ": " + message);
+        }
+    }
+}
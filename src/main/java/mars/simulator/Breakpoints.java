@@ -0,0 +1,384 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.Globals;
+import mars.mips.hardware.AddressErrorException;
+import mars.util.Binary;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Breakpoints and data watchpoints checked by the simulator after each instruction.
+ * <p>
+ * Breakpoint addresses are kept in a sparse bitmap with one bit per instruction word,
+ * so the check made after every instruction is a couple of array loads whatever the
+ * number of breakpoints.  Only when the bit for the next instruction is set is its
+ * breakpoint looked up, its hit counted and its condition, compiled once when the
+ * breakpoint was set, evaluated.  A breakpoint can require a number of hits before
+ * it pauses, e.g. to stop in the 1000th iteration of a loop.
+ * <p>
+ * Watchpoints pause execution when the value of a memory word changes.  Rather than
+ * observing every memory access, they rely on the write generations Memory keeps for
+ * each page: words are only read again once something was written to their page.
+ * <p>
+ * Breakpoints can be changed from the GUI thread while the simulator is running.  They
+ * can also be disabled as a whole, which leaves the watchpoints active.
+ */
+public class Breakpoints {
+    // Bitmap of breakpoint addresses, one bit per word, split in 1MB regions allocated on demand
+    private static final int REGION_SHIFT = 20;
+    private final long[][] bitmap = new long[1 << (32 - REGION_SHIFT)][];
+    private final Map<Integer, Breakpoint> breakpoints = new ConcurrentHashMap<>();
+    // Replaced, never modified, when watchpoints are added or removed
+    private volatile Watchpoint[] watchpoints = new Watchpoint[0];
+    private long watchedWriteGeneration = -1;
+    private volatile boolean breakpointsEnabled = true;
+    private volatile String hitDescription;
+
+    /**
+     * Creates an empty set of breakpoints.
+     */
+    public Breakpoints() {
+    }
+
+    /**
+     * Creates unconditional breakpoints at the given addresses.
+     *
+     * @param addresses instruction addresses, may be null
+     */
+    public Breakpoints(int[] addresses) {
+        if (addresses != null) {
+            for (int address : addresses) {
+                add(address);
+            }
+        }
+    }
+
+    /**
+     * Sets an unconditional breakpoint, replacing any breakpoint at the same address.
+     *
+     * @param address instruction address
+     */
+    public void add(int address) {
+        add(address, null, 1);
+    }
+
+    /**
+     * Sets a breakpoint, replacing any breakpoint at the same address.
+     *
+     * @param address   instruction address
+     * @param condition condition that must hold for the breakpoint to count a hit, null or
+     *                  blank for none.  See {@link #checkCondition(String)} for the syntax.
+     * @param hitCount  number of hits before execution pauses; it then pauses at every hit
+     * @throws IllegalArgumentException if the condition is not valid or hitCount is less than 1
+     */
+    public void add(int address, String condition, int hitCount) {
+        if (hitCount < 1) {
+            throw new IllegalArgumentException("Hit count must be at least 1");
+        }
+        BreakpointCondition compiled = (condition == null || condition.isBlank())
+                ? null : new BreakpointCondition(condition.trim());
+        breakpoints.put(address, new Breakpoint(compiled, hitCount));
+        long[] region = bitmap[address >>> REGION_SHIFT];
+        if (region == null) {
+            region = new long[1 << (REGION_SHIFT - 8)];
+            bitmap[address >>> REGION_SHIFT] = region;
+        }
+        region[(address >>> 8) & (region.length - 1)] |= 1L << (address >>> 2);
+    }
+
+    /**
+     * Removes the breakpoint at the given address, if any.
+     *
+     * @param address instruction address
+     */
+    public void remove(int address) {
+        long[] region = bitmap[address >>> REGION_SHIFT];
+        if (region != null) {
+            region[(address >>> 8) & (region.length - 1)] &= ~(1L << (address >>> 2));
+        }
+        breakpoints.remove(address);
+    }
+
+    /**
+     * Tells whether there is a breakpoint at the given address.
+     *
+     * @param address instruction address
+     * @return true if there is a breakpoint
+     */
+    public boolean contains(int address) {
+        return breakpoints.containsKey(address);
+    }
+
+    /**
+     * Returns the condition of the breakpoint at the given address.
+     *
+     * @param address instruction address
+     * @return the condition, or null if there is no breakpoint or it is unconditional
+     */
+    public String getCondition(int address) {
+        Breakpoint breakpoint = breakpoints.get(address);
+        return (breakpoint == null || breakpoint.condition == null) ? null : breakpoint.condition.toString();
+    }
+
+    /**
+     * Returns the number of hits the breakpoint at the given address needs before pausing.
+     *
+     * @param address instruction address
+     * @return the hit count, 1 if there is no breakpoint
+     */
+    public int getHitCount(int address) {
+        Breakpoint breakpoint = breakpoints.get(address);
+        return (breakpoint == null) ? 1 : breakpoint.hitCount;
+    }
+
+    /**
+     * Returns the number of times the breakpoint at the given address was reached with its
+     * condition holding since it was set or hits were last reset.
+     *
+     * @param address instruction address
+     * @return the number of hits, 0 if there is no breakpoint
+     */
+    public int getHits(int address) {
+        Breakpoint breakpoint = breakpoints.get(address);
+        return (breakpoint == null) ? 0 : breakpoint.hits.get();
+    }
+
+    /**
+     * Forgets the hits of all breakpoints, for instance when the program is reset.
+     */
+    public void resetHits() {
+        for (Breakpoint breakpoint : breakpoints.values()) {
+            breakpoint.hits.set(0);
+        }
+    }
+
+    /**
+     * Enables or disables all breakpoints, keeping them.  Watchpoints are not affected.
+     *
+     * @param enabled false to ignore the breakpoints until they are enabled again
+     */
+    public void setBreakpointsEnabled(boolean enabled) {
+        breakpointsEnabled = enabled;
+    }
+
+    /**
+     * Tells whether breakpoints are enabled.
+     *
+     * @return false if breakpoints are ignored
+     */
+    public boolean areBreakpointsEnabled() {
+        return breakpointsEnabled;
+    }
+
+    /**
+     * Sets a watchpoint on the memory word holding the given address.
+     *
+     * @param address address of the word to watch
+     */
+    public synchronized void addWatchpoint(int address) {
+        address &= ~3;
+        if (isWatched(address)) {
+            return;
+        }
+        Watchpoint[] grown = Arrays.copyOf(watchpoints, watchpoints.length + 1);
+        grown[grown.length - 1] = new Watchpoint(address);
+        watchpoints = grown;
+    }
+
+    /**
+     * Removes the watchpoint on the memory word holding the given address, if any.
+     *
+     * @param address address of the watched word
+     */
+    public synchronized void removeWatchpoint(int address) {
+        int word = address & ~3;
+        watchpoints = Arrays.stream(watchpoints).filter(w -> w.address != word).toArray(Watchpoint[]::new);
+    }
+
+    /**
+     * Tells whether the memory word holding the given address is watched.
+     *
+     * @param address memory address
+     * @return true if there is a watchpoint on the word
+     */
+    public boolean isWatched(int address) {
+        int word = address & ~3;
+        for (Watchpoint watchpoint : watchpoints) {
+            if (watchpoint.address == word) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether there are neither breakpoints nor watchpoints.
+     *
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return breakpoints.isEmpty() && watchpoints.length == 0;
+    }
+
+    /**
+     * Returns what made execution pause at the last hit, for a message to the user.  When
+     * watched words changed and a breakpoint was hit by the same instruction, all are described.
+     *
+     * @return description of the last hit, or null if it was only an unconditional breakpoint
+     */
+    public String getHitDescription() {
+        return hitDescription;
+    }
+
+    /**
+     * Compiles a breakpoint condition to check it.  Conditions are C-like integer expressions
+     * over registers (<tt>$t0</tt>, <tt>$8</tt>, <tt>$f2</tt>, <tt>pc</tt>, <tt>hi</tt>,
+     * <tt>lo</tt>), memory words (<tt>mem[address]</tt>) and numbers, for instance
+     * <tt>$t0 == 5 &amp;&amp; mem[$sp + 4] &gt; 0x10</tt>.
+     *
+     * @param condition the condition
+     * @throws IllegalArgumentException with a message describing the error if it is not valid
+     */
+    public static void checkCondition(String condition) {
+        new BreakpointCondition(condition);
+    }
+
+    /*
+     * Called by the simulator before it starts running, so watchpoints only see changes
+     * made by the program.
+     */
+    void start() {
+        hitDescription = null;
+        watchedWriteGeneration = -1;
+        for (Watchpoint watchpoint : watchpoints) {
+            watchpoint.generation = -1;
+            watchpoint.value = watchpoint.read();
+        }
+    }
+
+    /*
+     * Called by the simulator after each instruction with the address of the next one.
+     * Returns true if execution must pause.  Every watched word and the breakpoint at pc
+     * are checked even when one of them already pauses, so that each change is reported
+     * once and the breakpoint hit is counted.
+     */
+    boolean hit(int pc) {
+        String description = null;
+        boolean hit = false;
+        Watchpoint[] watched = watchpoints;
+        if (watched.length > 0 && watchedWriteGeneration != Globals.memory.getWriteGeneration()) {
+            watchedWriteGeneration = Globals.memory.getWriteGeneration();
+            for (Watchpoint watchpoint : watched) {
+                String change = watchpoint.change();
+                if (change != null) {
+                    description = (description == null) ? change : description + "; " + change;
+                    hit = true;
+                }
+            }
+        }
+        Breakpoint breakpoint = breakpointAt(pc);
+        if (breakpoint != null && (breakpoint.condition == null || breakpoint.condition.holds())) {
+            int hits = breakpoint.hits.incrementAndGet();
+            if (hits >= breakpoint.hitCount) {
+                if (description != null || breakpoint.condition != null || breakpoint.hitCount > 1) {
+                    String reached = "breakpoint at " + Binary.intToHexString(pc)
+                            + (breakpoint.condition == null ? "" : " (" + breakpoint.condition + ")")
+                            + ", hit " + hits;
+                    description = (description == null) ? reached : description + "; " + reached;
+                }
+                hit = true;
+            }
+        }
+        if (hit) {
+            hitDescription = description;
+        }
+        return hit;
+    }
+
+    // The enabled breakpoint at the given address, or null
+    private Breakpoint breakpointAt(int pc) {
+        if (!breakpointsEnabled) {
+            return null;
+        }
+        long[] region = bitmap[pc >>> REGION_SHIFT];
+        if (region == null || (region[(pc >>> 8) & (region.length - 1)] & (1L << (pc >>> 2))) == 0) {
+            return null;
+        }
+        return breakpoints.get(pc);
+    }
+
+    private static class Breakpoint {
+        final BreakpointCondition condition;
+        final int hitCount;
+        // Counted by the simulator thread, reset by the GUI
+        final AtomicInteger hits = new AtomicInteger();
+
+        Breakpoint(BreakpointCondition condition, int hitCount) {
+            this.condition = condition;
+            this.hitCount = hitCount;
+        }
+    }
+
+    private class Watchpoint {
+        final int address;
+        long generation = -1;
+        int value;
+
+        Watchpoint(int address) {
+            this.address = address;
+            this.value = read();
+        }
+
+        int read() {
+            try {
+                return Globals.memory.getWordNoNotify(address);
+            } catch (AddressErrorException e) {
+                return 0;
+            }
+        }
+
+        // Describes the change of the word since the last check, null if it did not change.
+        // Reads the word again only if its page was written since the last check.
+        String change() {
+            long pageGeneration = Globals.memory.getPageGeneration(address);
+            if (pageGeneration == generation) {
+                return null;
+            }
+            generation = pageGeneration;
+            int previous = value;
+            value = read();
+            if (value == previous) {
+                return null;
+            }
+            return "watchpoint on " + Binary.intToHexString(address) + ", changed from "
+                    + Binary.intToHexString(previous) + " to " + Binary.intToHexString(value);
+        }
+    }
+}
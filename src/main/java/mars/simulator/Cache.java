@@ -0,0 +1,371 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.mips.hardware.Memory;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * One level of a simulated cache, independent of any GUI.
+ * <p>
+ * Only tags are simulated, memory contents are not stored.  Tags, valid and dirty bits
+ * and replacement state live in primitive arrays indexed by block number, where the
+ * blocks of set <i>s</i> are numbers <i>s</i> * set size to (<i>s</i> + 1) * set size - 1,
+ * so an access allocates nothing.  Block size, number of blocks and set size must be
+ * powers of two: a set size of 1 is direct mapped, a set size equal to the number of
+ * blocks is fully associative.
+ * <p>
+ * Misses read the block from the next level, if any, write-back caches write dirty
+ * blocks to the next level when they are replaced and write-through caches forward
+ * every write.  Both write policies allocate a block on a write miss.  Traffic to the
+ * next level, or to memory for the last level, is counted in
+ * {@link #getNextLevelReads()} and {@link #getNextLevelWrites()}.
+ */
+public class Cache {
+    /**
+     * Policies choosing the block of a full set replaced on a miss.  PLRU is the usual
+     * tree pseudo-LRU.
+     */
+    public enum ReplacementPolicy {
+        LRU, FIFO, RANDOM, PLRU
+    }
+
+    /**
+     * What a write hit does: mark the block dirty or write through to the next level.
+     */
+    public enum WritePolicy {
+        WRITE_BACK, WRITE_THROUGH
+    }
+
+    private final int numberOfBlocks;
+    private final int blockSizeInWords;
+    private final int setSizeInBlocks;
+    private final int numberOfSets;
+    private final ReplacementPolicy replacementPolicy;
+    private final WritePolicy writePolicy;
+    private final Cache nextLevel;
+    private final int offsetBits;
+    private final int setBits;
+
+    private final int[] tags;
+    private final boolean[] valid;
+    private final boolean[] dirty;
+    // Time of last access for LRU, of the fill for FIFO
+    private final long[] stamps;
+    // PLRU tree, set size - 1 nodes per set numbered from 1 like a heap
+    private final boolean[] plruTree;
+    private final Random random = new Random(0);
+    private long time;
+
+    private long accesses;
+    private long hits;
+    private long writes;
+    private long writeHits;
+    private long writeBacks;
+    private long nextLevelReads;
+    private long nextLevelWrites;
+
+    /**
+     * Creates an empty cache level.
+     *
+     * @param numberOfBlocks    number of blocks in the cache
+     * @param blockSizeInWords  number of words in a block
+     * @param setSizeInBlocks   number of blocks in a set, its associativity
+     * @param replacementPolicy replacement policy within a set
+     * @param writePolicy       write policy
+     * @param nextLevel         next level of the hierarchy, null if it is memory
+     * @throws IllegalArgumentException if a size is not a power of two or the set size
+     *                                  is larger than the number of blocks
+     */
+    public Cache(int numberOfBlocks, int blockSizeInWords, int setSizeInBlocks,
+                 ReplacementPolicy replacementPolicy, WritePolicy writePolicy, Cache nextLevel) {
+        if (Integer.bitCount(numberOfBlocks) != 1 || Integer.bitCount(blockSizeInWords) != 1
+                || Integer.bitCount(setSizeInBlocks) != 1) {
+            throw new IllegalArgumentException("Cache sizes must be powers of two");
+        }
+        if (setSizeInBlocks > numberOfBlocks) {
+            throw new IllegalArgumentException("Set size larger than the number of blocks");
+        }
+        this.numberOfBlocks = numberOfBlocks;
+        this.blockSizeInWords = blockSizeInWords;
+        this.setSizeInBlocks = setSizeInBlocks;
+        this.numberOfSets = numberOfBlocks / setSizeInBlocks;
+        this.replacementPolicy = replacementPolicy;
+        this.writePolicy = writePolicy;
+        this.nextLevel = nextLevel;
+        this.offsetBits = Integer.numberOfTrailingZeros(blockSizeInWords * Memory.WORD_LENGTH_BYTES);
+        this.setBits = Integer.numberOfTrailingZeros(numberOfSets);
+        tags = new int[numberOfBlocks];
+        valid = new boolean[numberOfBlocks];
+        dirty = new boolean[numberOfBlocks];
+        stamps = new long[numberOfBlocks];
+        plruTree = new boolean[numberOfBlocks];
+    }
+
+    public int getNumberOfBlocks() {
+        return numberOfBlocks;
+    }
+
+    public int getNumberOfSets() {
+        return numberOfSets;
+    }
+
+    public int getSetSizeInBlocks() {
+        return setSizeInBlocks;
+    }
+
+    public int getBlockSizeInWords() {
+        return blockSizeInWords;
+    }
+
+    public int getCacheSizeInBytes() {
+        return numberOfBlocks << offsetBits;
+    }
+
+    public ReplacementPolicy getReplacementPolicy() {
+        return replacementPolicy;
+    }
+
+    public WritePolicy getWritePolicy() {
+        return writePolicy;
+    }
+
+    public Cache getNextLevel() {
+        return nextLevel;
+    }
+
+    /**
+     * Returns the set the given address maps to.
+     *
+     * @param address byte address
+     * @return set number
+     */
+    public int getSetNumber(int address) {
+        return (address >>> offsetBits) & (numberOfSets - 1);
+    }
+
+    /**
+     * Returns the tag of the given address.
+     *
+     * @param address byte address
+     * @return tag, the block address without its set bits
+     */
+    public int getTag(int address) {
+        return address >>> offsetBits >>> setBits;
+    }
+
+    /**
+     * Simulates an access to the given address.
+     *
+     * @param address byte address
+     * @param write   true for a write, false for a read or instruction fetch
+     * @return the number of the block holding the address if it was a hit, otherwise
+     * the bitwise complement (a negative number) of the block it was loaded into
+     */
+    public int access(int address, boolean write) {
+        int block = address >>> offsetBits;
+        int tag = block >>> setBits;
+        int first = (block & (numberOfSets - 1)) * setSizeInBlocks;
+        int last = first + setSizeInBlocks;
+        time++;
+        accesses++;
+        if (write) {
+            writes++;
+        }
+        int empty = -1;
+        for (int line = first; line < last; line++) {
+            if (valid[line]) {
+                if (tags[line] == tag) {
+                    hits++;
+                    if (write) {
+                        writeHits++;
+                        write(line, address);
+                    }
+                    touch(line, first);
+                    return line;
+                }
+            } else if (empty < 0) {
+                empty = line;
+            }
+        }
+        int line = (empty >= 0) ? empty : selectBlockToReplace(first);
+        if (valid[line] && dirty[line]) {
+            writeBacks++;
+            nextLevelWrites++;
+            if (nextLevel != null) {
+                nextLevel.access(((tags[line] << setBits) | (block & (numberOfSets - 1))) << offsetBits, true);
+            }
+        }
+        nextLevelReads++;
+        if (nextLevel != null) {
+            nextLevel.access(address, false);
+        }
+        valid[line] = true;
+        dirty[line] = false;
+        tags[line] = tag;
+        stamps[line] = time;
+        touch(line, first);
+        if (write) {
+            write(line, address);
+        }
+        return ~line;
+    }
+
+    /**
+     * Empties the cache and clears its statistics.  The next level is not reset.
+     */
+    public void reset() {
+        Arrays.fill(valid, false);
+        Arrays.fill(dirty, false);
+        Arrays.fill(stamps, 0);
+        Arrays.fill(plruTree, false);
+        random.setSeed(0);
+        time = accesses = hits = writes = writeHits = writeBacks = nextLevelReads = nextLevelWrites = 0;
+    }
+
+    public long getAccessCount() {
+        return accesses;
+    }
+
+    public long getHitCount() {
+        return hits;
+    }
+
+    public long getMissCount() {
+        return accesses - hits;
+    }
+
+    public long getWriteCount() {
+        return writes;
+    }
+
+    public long getWriteHitCount() {
+        return writeHits;
+    }
+
+    /**
+     * Returns the number of dirty blocks written back when they were replaced.
+     *
+     * @return write back count
+     */
+    public long getWriteBackCount() {
+        return writeBacks;
+    }
+
+    /**
+     * Returns the number of block reads from the next level, or from memory for the last level.
+     *
+     * @return next level read count
+     */
+    public long getNextLevelReads() {
+        return nextLevelReads;
+    }
+
+    /**
+     * Returns the number of writes to the next level, or to memory for the last level:
+     * write backs and, for write-through caches, written words.
+     *
+     * @return next level write count
+     */
+    public long getNextLevelWrites() {
+        return nextLevelWrites;
+    }
+
+    /**
+     * Returns the fraction of accesses that hit, 0 if there was none.
+     *
+     * @return hit rate between 0 and 1
+     */
+    public double getHitRate() {
+        return (accesses == 0) ? 0 : hits / (double) accesses;
+    }
+
+    /**
+     * Describes the organization of this level, e.g. "4096 bytes, 16 byte blocks, 2-way, LRU, write-back".
+     *
+     * @return description
+     */
+    public String getDescription() {
+        String placement = (setSizeInBlocks == 1) ? "direct mapped"
+                : (numberOfSets == 1) ? "fully associative" : setSizeInBlocks + "-way";
+        return getCacheSizeInBytes() + " bytes, " + (1 << offsetBits) + " byte blocks, " + placement
+                + (setSizeInBlocks == 1 ? "" : ", " + replacementPolicy)
+                + ", " + (writePolicy == WritePolicy.WRITE_BACK ? "write-back" : "write-through");
+    }
+
+    private void write(int line, int address) {
+        if (writePolicy == WritePolicy.WRITE_BACK) {
+            dirty[line] = true;
+        } else {
+            nextLevelWrites++;
+            if (nextLevel != null) {
+                nextLevel.access(address, true);
+            }
+        }
+    }
+
+    // Update replacement state after an access to the given block of the set starting at first
+    private void touch(int line, int first) {
+        if (replacementPolicy == ReplacementPolicy.LRU) {
+            stamps[line] = time;
+        } else if (replacementPolicy == ReplacementPolicy.PLRU) {
+            // Walk from the root to the leaf of the block, pointing each node away from it
+            int way = line - first;
+            int node = 1;
+            for (int bit = setSizeInBlocks >> 1; bit > 0; bit >>= 1) {
+                boolean right = (way & bit) != 0;
+                plruTree[first + node] = !right;
+                node = 2 * node + (right ? 1 : 0);
+            }
+        }
+    }
+
+    // Called when every block of the set starting at first is valid
+    private int selectBlockToReplace(int first) {
+        if (setSizeInBlocks == 1) {
+            return first;
+        }
+        if (replacementPolicy == ReplacementPolicy.RANDOM) {
+            return first + random.nextInt(setSizeInBlocks);
+        }
+        if (replacementPolicy == ReplacementPolicy.PLRU) {
+            int node = 1;
+            while (node < setSizeInBlocks) {
+                node = 2 * node + (plruTree[first + node] ? 1 : 0);
+            }
+            return first + node - setSizeInBlocks;
+        }
+        // LRU and FIFO both replace the block with the oldest stamp
+        int oldest = first;
+        for (int line = first + 1; line < first + setSizeInBlocks; line++) {
+            if (stamps[line] < stamps[oldest]) {
+                oldest = line;
+            }
+        }
+        return oldest;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.mips.hardware.Memory;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A cache hierarchy: split or unified first level caches, optionally backed by a
+ * unified second level cache, fed with instruction fetches, data reads and data writes.
+ * <p>
+ * Hierarchies are described by a comma-separated list of levels, each
+ * <code>name=size:block:ways[:replacement][:write]</code> where name is <code>l1</code>
+ * for a unified first level, <code>l1i</code> or <code>l1d</code> for split first level
+ * caches and <code>l2</code> for the second level.  Size and block size are in bytes and
+ * may end with k, ways is the set size in blocks or <code>full</code>, replacement is
+ * one of lru (default), fifo, random or plru and write is wb (write-back, default) or wt
+ * (write-through).  For instance <code>l1i=4k:16:1,l1d=4k:16:2:lru:wb,l2=64k:32:8:plru</code>.
+ * Accesses of a kind without a first level cache, e.g. fetches when only
+ * <code>l1d</code> is given, are not simulated.
+ */
+public class CacheHierarchy {
+    /**
+     * Kinds of access, see {@link #access(int, int)}.
+     */
+    public static final int FETCH = 0, READ = 1, WRITE = 2;
+
+    private final String specification;
+    private final Cache instructionCache;
+    private final Cache dataCache;
+    private final Cache secondLevelCache;
+
+    /**
+     * Creates a hierarchy from its description.
+     *
+     * @param specification description, see the class comment
+     * @throws IllegalArgumentException if the description is not valid
+     */
+    public CacheHierarchy(String specification) {
+        this.specification = specification;
+        String unified = null, instruction = null, data = null, second = null;
+        for (String level : specification.split(",")) {
+            int equals = level.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Missing '=' in cache level " + level);
+            }
+            String name = level.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+            String organization = level.substring(equals + 1);
+            switch (name) {
+                case "l1" -> unified = organization;
+                case "l1i" -> instruction = organization;
+                case "l1d" -> data = organization;
+                case "l2" -> second = organization;
+                default -> throw new IllegalArgumentException("Unknown cache level " + name);
+            }
+        }
+        if (unified != null && (instruction != null || data != null)) {
+            throw new IllegalArgumentException("Cache level l1 cannot be combined with l1i or l1d");
+        }
+        if (unified == null && instruction == null && data == null) {
+            throw new IllegalArgumentException("No first level cache in " + specification);
+        }
+        secondLevelCache = (second == null) ? null : createCache(second, null);
+        if (unified != null) {
+            instructionCache = dataCache = createCache(unified, secondLevelCache);
+        } else {
+            instructionCache = (instruction == null) ? null : createCache(instruction, secondLevelCache);
+            dataCache = (data == null) ? null : createCache(data, secondLevelCache);
+        }
+    }
+
+    public String getSpecification() {
+        return specification;
+    }
+
+    /**
+     * Returns the first level cache for instructions, the same as for data if unified.
+     *
+     * @return instruction cache, null if fetches are not simulated
+     */
+    public Cache getInstructionCache() {
+        return instructionCache;
+    }
+
+    /**
+     * Returns the first level cache for data, the same as for instructions if unified.
+     *
+     * @return data cache, null if data accesses are not simulated
+     */
+    public Cache getDataCache() {
+        return dataCache;
+    }
+
+    public Cache getSecondLevelCache() {
+        return secondLevelCache;
+    }
+
+    /**
+     * Simulates an access.
+     *
+     * @param kind    {@link #FETCH}, {@link #READ} or {@link #WRITE}
+     * @param address byte address
+     */
+    public void access(int kind, int address) {
+        Cache cache = (kind == FETCH) ? instructionCache : dataCache;
+        if (cache != null) {
+            cache.access(address, kind == WRITE);
+        }
+    }
+
+    /**
+     * Simulates a sequence of accesses.
+     *
+     * @param kinds     kind of each access
+     * @param addresses address of each access
+     * @param count     number of accesses
+     */
+    public void access(byte[] kinds, int[] addresses, int count) {
+        for (int i = 0; i < count; i++) {
+            access(kinds[i], addresses[i]);
+        }
+    }
+
+    /**
+     * Prints the organization and statistics of each level.
+     *
+     * @param out stream to print to
+     */
+    public void printStatistics(PrintStream out) {
+        out.println(specification);
+        if (instructionCache == dataCache) {
+            printStatistics(out, "L1", instructionCache);
+        } else {
+            printStatistics(out, "L1I", instructionCache);
+            printStatistics(out, "L1D", dataCache);
+        }
+        printStatistics(out, "L2", secondLevelCache);
+    }
+
+    private static void printStatistics(PrintStream out, String name, Cache cache) {
+        if (cache == null) {
+            return;
+        }
+        out.println("  " + name + ": " + cache.getDescription());
+        out.printf(Locale.ROOT, "    accesses %d  hits %d  misses %d  hit rate %.2f%%%n",
+                cache.getAccessCount(), cache.getHitCount(), cache.getMissCount(), 100 * cache.getHitRate());
+        out.printf(Locale.ROOT, "    writes %d  write backs %d  %s reads %d  %s writes %d%n",
+                cache.getWriteCount(), cache.getWriteBackCount(),
+                cache.getNextLevel() == null ? "memory" : "next level", cache.getNextLevelReads(),
+                cache.getNextLevel() == null ? "memory" : "next level", cache.getNextLevelWrites());
+    }
+
+    /**
+     * Returns the caches making up this hierarchy, first levels first.
+     *
+     * @return distinct caches
+     */
+    public List<Cache> getCaches() {
+        List<Cache> caches = new ArrayList<>();
+        for (Cache cache : new Cache[]{instructionCache, dataCache, secondLevelCache}) {
+            if (cache != null && !caches.contains(cache)) {
+                caches.add(cache);
+            }
+        }
+        return caches;
+    }
+
+    // Parses size:block:ways[:replacement][:write]
+    private static Cache createCache(String organization, Cache nextLevel) {
+        String[] fields = organization.trim().split(":");
+        if (fields.length < 3 || fields.length > 5) {
+            throw new IllegalArgumentException("Cache level must be size:block:ways[:replacement][:write], not " + organization);
+        }
+        int size = parseBytes(fields[0]);
+        int blockSize = parseBytes(fields[1]);
+        if (blockSize < Memory.WORD_LENGTH_BYTES || blockSize % Memory.WORD_LENGTH_BYTES != 0 || size % blockSize != 0) {
+            throw new IllegalArgumentException("Invalid cache or block size in " + organization);
+        }
+        int blocks = size / blockSize;
+        int ways;
+        if (fields[2].equalsIgnoreCase("full")) {
+            ways = blocks;
+        } else {
+            ways = parseBytes(fields[2]);
+        }
+        Cache.ReplacementPolicy replacement = Cache.ReplacementPolicy.LRU;
+        Cache.WritePolicy write = Cache.WritePolicy.WRITE_BACK;
+        for (int i = 3; i < fields.length; i++) {
+            String field = fields[i].trim().toLowerCase(Locale.ROOT);
+            switch (field) {
+                case "wb" -> write = Cache.WritePolicy.WRITE_BACK;
+                case "wt" -> write = Cache.WritePolicy.WRITE_THROUGH;
+                default -> {
+                    try {
+                        replacement = Cache.ReplacementPolicy.valueOf(field.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unknown cache policy " + fields[i]);
+                    }
+                }
+            }
+        }
+        return new Cache(blocks, blockSize / Memory.WORD_LENGTH_BYTES, ways, replacement, write, nextLevel);
+    }
+
+    private static int parseBytes(String field) {
+        String value = field.trim().toLowerCase(Locale.ROOT);
+        int multiplier = 1;
+        if (value.endsWith("k")) {
+            multiplier = 1024;
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            int number = Integer.parseInt(value);
+            if (number <= 0) {
+                throw new NumberFormatException();
+            }
+            return Math.multiplyExact(number, multiplier);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid number " + field);
+        }
+    }
+}
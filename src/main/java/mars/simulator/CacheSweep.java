@@ -0,0 +1,215 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.Globals;
+import mars.ProgramStatement;
+import mars.mips.hardware.AccessNotice;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.MemoryAccessNotice;
+import mars.mips.hardware.RegisterFile;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates any number of cache hierarchies on the memory accesses of a running program.
+ * <p>
+ * The simulator only appends each access of the MIPS program to a buffer: instruction
+ * fetches as instructions start, data reads and writes as memory notifies them.  When the
+ * buffer is full it is handed to a thread pool, where every hierarchy replays it as a
+ * separate task, while the simulator fills a second buffer.  All configurations thus see
+ * the very same access stream, evaluation runs in parallel with the simulation and with
+ * itself, and the simulator only waits when it gets a whole buffer ahead.
+ */
+public class CacheSweep implements Observer, Simulator.InstructionListener {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final List<CacheHierarchy> hierarchies;
+    private final ExecutorService executor;
+    private final List<Future<?>> pending = new ArrayList<>();
+    // Two buffers, one filled by the simulator while the other is replayed
+    private final byte[][] kinds = new byte[2][BUFFER_SIZE];
+    private final int[][] addresses = new int[2][BUFFER_SIZE];
+    private int current;
+    private int count;
+
+    /**
+     * Creates a sweep over the given hierarchies.
+     *
+     * @param hierarchies cache hierarchies to evaluate
+     */
+    public CacheSweep(List<CacheHierarchy> hierarchies) {
+        this.hierarchies = new ArrayList<>(hierarchies);
+        int threads = Math.max(1, Math.min(hierarchies.size(), Runtime.getRuntime().availableProcessors()));
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Cache simulation");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public List<CacheHierarchy> getHierarchies() {
+        return hierarchies;
+    }
+
+    /**
+     * Starts observing all of memory and the instructions executed.
+     */
+    public void attach() {
+        Globals.memory.addObserver(this);
+        Simulator.getInstance().addInstructionListener(this);
+    }
+
+    /**
+     * Records the fetch of an instruction.
+     */
+    public void instructionStarted(int address, ProgramStatement statement) {
+        record(CacheHierarchy.FETCH, address);
+    }
+
+    /**
+     * Records a data access of the MIPS program.
+     */
+    public void update(Observable memory, Object obj) {
+        if (!(obj instanceof MemoryAccessNotice notice) || !notice.accessIsFromMIPS()) {
+            return;
+        }
+        int address = notice.getAddress();
+        if (notice.getAccessType() == AccessNotice.WRITE) {
+            record(CacheHierarchy.WRITE, address);
+        } else if (address != RegisterFile.getProgramCounter()
+                || !(Memory.inTextSegment(address) || Memory.inKernelTextSegment(address))) {
+            // The simulator reads the next instruction at the program counter, a fetch
+            // already recorded when the instruction starts.  While an instruction runs the
+            // program counter has moved on to the next word, so only a load of that very
+            // word from the text segment is taken for a fetch.
+            record(CacheHierarchy.READ, address);
+        }
+    }
+
+    /**
+     * Records an access.
+     *
+     * @param kind    {@link CacheHierarchy#FETCH}, {@link CacheHierarchy#READ} or {@link CacheHierarchy#WRITE}
+     * @param address byte address
+     */
+    public void record(int kind, int address) {
+        kinds[current][count] = (byte) kind;
+        addresses[current][count] = address;
+        if (++count == BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Stops observing memory and waits until every recorded access has been simulated.
+     * Statistics of the hierarchies are complete afterwards.
+     */
+    public void finish() {
+        Globals.memory.deleteObserver(this);
+        Simulator.getInstance().removeInstructionListener(this);
+        flush();
+        awaitPending();
+        executor.shutdown();
+    }
+
+    /**
+     * Prints the statistics of every hierarchy followed, when there are several, by a
+     * table comparing their first level hit rates.
+     *
+     * @param out stream to print to
+     */
+    public void printStatistics(PrintStream out) {
+        for (CacheHierarchy hierarchy : hierarchies) {
+            hierarchy.printStatistics(out);
+        }
+        if (hierarchies.size() < 2) {
+            return;
+        }
+        out.println();
+        out.println("   L1I hit%   L1D hit%    L2 hit%  memory reads  configuration");
+        for (CacheHierarchy hierarchy : hierarchies) {
+            Cache second = hierarchy.getSecondLevelCache();
+            long memoryReads = 0;
+            for (Cache cache : hierarchy.getCaches()) {
+                if (cache.getNextLevel() == null) {
+                    memoryReads += cache.getNextLevelReads();
+                }
+            }
+            out.printf(Locale.ROOT, "%11s%11s%11s%14d  %s%n", hitRate(hierarchy.getInstructionCache()),
+                    hitRate(hierarchy.getDataCache()), hitRate(second), memoryReads, hierarchy.getSpecification());
+        }
+    }
+
+    private static String hitRate(Cache cache) {
+        return (cache == null) ? "-" : String.format(Locale.ROOT, "%.2f", 100 * cache.getHitRate());
+    }
+
+    // Hand the current buffer to the pool, once the other one has been replayed
+    private void flush() {
+        if (count == 0) {
+            return;
+        }
+        awaitPending();
+        byte[] bufferKinds = kinds[current];
+        int[] bufferAddresses = addresses[current];
+        int bufferCount = count;
+        for (CacheHierarchy hierarchy : hierarchies) {
+            pending.add(executor.submit(() -> hierarchy.access(bufferKinds, bufferAddresses, bufferCount)));
+        }
+        current = 1 - current;
+        count = 0;
+    }
+
+    // Buffers are reused, so this waits even if interrupted
+    private void awaitPending() {
+        boolean interrupted = false;
+        for (Future<?> future : pending) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Cache simulation failed", e.getCause());
+                }
+            }
+        }
+        pending.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.ProgramStatement;
+import mars.Settings;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.MemoryAccessNotice;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Measures how expensive each procedure of a program is, counting the instructions and
+ * memory accesses made by each one alone (exclusive) and together with the procedures
+ * it calls (inclusive).
+ * <p>
+ * Calls are the taken <code>jal</code>, <code>jalr</code>, <code>bgezal</code> and
+ * <code>bltzal</code> instructions, and the profiler keeps a shadow call stack holding
+ * the return address of each.  A <code>jr</code> to one of those return addresses
+ * returns from that call, and from any call made after it that did not return the
+ * normal way.  Any other <code>jr</code> is a jump within the procedure, like a switch
+ * table.  Counts are kept per path of calls from the first instruction executed,
+ * which can be written as collapsed stacks for flame graph tools.  Calls more than
+ * {@link #MAX_DEPTH} deep are counted in the deepest procedure tracked, so neither the
+ * stack nor the call tree grow without bound on deep recursion or calls that never
+ * return.  The return addresses of the most recent of those calls are still kept, so
+ * that returning from them is told apart from returning to a procedure tracked.
+ * <p>
+ * Procedures are named after the label at or before their entry address, looked up in
+ * the global and local symbol tables.
+ */
+public class CallGraphProfiler implements Simulator.InstructionListener, Observer {
+    /**
+     * Maximum depth of calls tracked.
+     */
+    public static final int MAX_DEPTH = 1024;
+
+    // Return addresses kept of the calls too deep to track, a power of two
+    private static final int UNTRACKED_RETURN_ADDRESSES = 4096;
+
+    private static final int NONE = 0;
+    private static final int CALL = 1;
+    private static final int RETURN = 2;
+
+    // A procedure reached by a given path of calls; its children are the procedures it called
+    private static final class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        final Node parent;
+        final int entry;
+        final int depth;
+        // Open addressing table of the children by entry address, so lookups do not box
+        Node[] children = NO_CHILDREN;
+        private int childCount;
+        long calls;
+        long instructions;
+        long memoryAccesses;
+
+        Node(Node parent, int entry) {
+            this.parent = parent;
+            this.entry = entry;
+            this.depth = (parent == null) ? 0 : parent.depth + 1;
+        }
+
+        // Returns the child entered at the given address, added if it is not there yet
+        Node child(int entry) {
+            if (children.length == 0) {
+                children = new Node[4];
+            }
+            int mask = children.length - 1;
+            int slot = slot(entry, mask);
+            while (children[slot] != null) {
+                if (children[slot].entry == entry) {
+                    return children[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            Node child = new Node(this, entry);
+            children[slot] = child;
+            if (++childCount * 4 > children.length * 3) {
+                Node[] old = children;
+                children = new Node[2 * old.length];
+                for (Node node : old) {
+                    if (node != null) {
+                        int free = slot(node.entry, children.length - 1);
+                        while (children[free] != null) {
+                            free = (free + 1) & (children.length - 1);
+                        }
+                        children[free] = node;
+                    }
+                }
+            }
+            return child;
+        }
+
+        private static int slot(int entry, int mask) {
+            int hash = (entry >>> 2) * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+
+    // Return address of the call that entered the node at depth d is at index d - 1
+    private final int[] returnAddresses = new int[MAX_DEPTH];
+    private Node root;
+    private Node current;
+    private int untrackedDepth;
+    private long untrackedCalls;
+    // Ring of the return addresses of the last untrackedKnown calls too deep to track
+    private final int[] untrackedReturnAddresses = new int[UNTRACKED_RETURN_ADDRESSES];
+    private int untrackedKnown;
+    private int lastUntrackedReturnAddress;
+    private boolean delayedBranching;
+    private boolean executing;
+    // Call or return waiting for the next instruction to tell where it went
+    private int pending = NONE;
+    private int pendingAddress;
+    private int pendingReturnAddress;
+    private boolean inDelaySlot;
+
+    /**
+     * Starts profiling the instructions executed by the simulator.
+     */
+    public void start() {
+        delayedBranching = Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED);
+        Simulator.getInstance().addInstructionListener(this);
+        Globals.memory.addObserver(this);
+    }
+
+    /**
+     * Stops profiling.  Counts are kept.
+     */
+    public void stop() {
+        Simulator.getInstance().removeInstructionListener(this);
+        Globals.memory.deleteObserver(this);
+    }
+
+    /**
+     * Clears all counts and the call stack.
+     */
+    public void reset() {
+        root = current = null;
+        untrackedDepth = 0;
+        untrackedCalls = 0;
+        untrackedKnown = 0;
+        pending = NONE;
+        inDelaySlot = false;
+    }
+
+    public void instructionStarted(int address, ProgramStatement statement) {
+        if (pending != NONE) {
+            resolvePending(address);
+        }
+        if (current == null) {
+            root = current = new Node(null, address);
+            root.calls = 1;
+        }
+        current.instructions++;
+        int word = statement.getBinaryStatement();
+        int opcode = word >>> 26;
+        int funct = word & 0x3F;
+        int rt = (word >>> 16) & 0x1F;
+        if (opcode == 0x03 || (opcode == 0x00 && funct == 0x09) || (opcode == 0x01 && (rt == 0x10 || rt == 0x11))) {
+            // jal, jalr, bltzal, bgezal
+            pending = CALL;
+            pendingAddress = address;
+            pendingReturnAddress = address + (delayedBranching ? 8 : 4);
+        } else if (opcode == 0x00 && funct == 0x08) {
+            // jr
+            pending = RETURN;
+            pendingAddress = address;
+        }
+        executing = true;
+    }
+
+    public void instructionCompleted(int address, ProgramStatement statement) {
+        executing = false;
+    }
+
+    /**
+     * Counts a memory access made by the instruction being executed.
+     */
+    public void update(Observable memory, Object obj) {
+        if (executing && obj instanceof MemoryAccessNotice notice && notice.accessIsFromMIPS()) {
+            current.memoryAccesses++;
+        }
+    }
+
+    // The instruction at address follows the pending call or return
+    private void resolvePending(int address) {
+        if (delayedBranching && !inDelaySlot && address == pendingAddress + 4) {
+            // The delay slot still belongs to the caller
+            inDelaySlot = true;
+            return;
+        }
+        inDelaySlot = false;
+        int kind = pending;
+        pending = NONE;
+        if (kind == CALL) {
+            if (address != pendingReturnAddress) {
+                call(address, pendingReturnAddress);
+            }
+        } else {
+            returnTo(address);
+        }
+    }
+
+    private void call(int entry, int returnAddress) {
+        if (current.depth == MAX_DEPTH) {
+            untrackedReturnAddresses[untrackedDepth & (UNTRACKED_RETURN_ADDRESSES - 1)] = returnAddress;
+            untrackedKnown = Math.min(untrackedKnown + 1, UNTRACKED_RETURN_ADDRESSES);
+            untrackedDepth++;
+            untrackedCalls++;
+            return;
+        }
+        returnAddresses[current.depth] = returnAddress;
+        Node callee = current.child(entry);
+        callee.calls++;
+        current = callee;
+    }
+
+    private void returnTo(int address) {
+        for (int i = 1; i <= untrackedKnown; i++) {
+            int returnAddress = untrackedReturnAddresses[(untrackedDepth - i) & (UNTRACKED_RETURN_ADDRESSES - 1)];
+            if (returnAddress == address) {
+                untrackedDepth -= i;
+                untrackedKnown -= i;
+                lastUntrackedReturnAddress = returnAddress;
+                return;
+            }
+        }
+        if (untrackedDepth > untrackedKnown && address == lastUntrackedReturnAddress) {
+            // Return addresses of the oldest untracked calls are lost; deep recursion
+            // returns to the same address over and over
+            untrackedDepth--;
+            return;
+        }
+        for (Node node = current; node.parent != null; node = node.parent) {
+            if (returnAddresses[node.depth - 1] == address) {
+                // Also returns from any call too deep to track that did not return
+                untrackedDepth = untrackedKnown = 0;
+                current = node.parent;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes a report of the procedures with the most instructions executed in them and
+     * in the procedures they call.  A procedure calling itself, directly or not, counts
+     * once in its inclusive counts.
+     *
+     * @param out   stream to write to
+     * @param limit maximum number of procedures in the report
+     */
+    public void writeReport(PrintStream out, int limit) {
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        long[] executed = (root == null) ? new long[2] : totalNode(root, labels(), totals, new HashMap<>());
+        out.println("Instructions executed: " + executed[0]);
+        out.println("Memory accesses: " + executed[1]);
+        if (untrackedCalls != 0) {
+            out.println("Calls deeper than " + MAX_DEPTH + " not tracked: " + untrackedCalls);
+        }
+        out.println();
+        out.println("Procedures by inclusive instructions");
+        out.println(String.format("%12s %14s %7s %14s %7s %12s %12s  %s", "calls", "inclusive", "%",
+                "exclusive", "%", "incl. mem", "excl. mem", "procedure"));
+        List<Map.Entry<String, long[]>> procedures = new ArrayList<>(totals.entrySet());
+        procedures.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        for (Map.Entry<String, long[]> procedure : procedures.subList(0, Math.min(limit, procedures.size()))) {
+            long[] counts = procedure.getValue();
+            out.println(String.format("%12d %14d %7s %14d %7s %12d %12d  %s", counts[0],
+                    counts[1], percent(counts[1], executed[0]), counts[2], percent(counts[2], executed[0]),
+                    counts[3], counts[4], procedure.getKey()));
+        }
+    }
+
+    /**
+     * Writes the instructions executed in each path of calls as collapsed stacks, one
+     * line per path made of the procedure names separated by semicolons followed by the
+     * count, the input format of flame graph tools.
+     *
+     * @param out stream to write to
+     */
+    public void writeCollapsedStacks(PrintStream out) {
+        if (root == null) {
+            return;
+        }
+        TextLabels labels = labels();
+        Map<String, Long> stacks = new LinkedHashMap<>();
+        Deque<Node> nodes = new ArrayDeque<>();
+        Deque<String> paths = new ArrayDeque<>();
+        nodes.push(root);
+        paths.push(labels.getEnclosingLabel(root.entry));
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            String path = paths.pop();
+            if (node.instructions != 0) {
+                stacks.merge(path, node.instructions, Long::sum);
+            }
+            for (Node child : node.children) {
+                if (child != null) {
+                    nodes.push(child);
+                    paths.push(path + ";" + labels.getEnclosingLabel(child.entry));
+                }
+            }
+        }
+        stacks.forEach((path, count) -> out.println(path + " " + count));
+    }
+
+    // Adds the counts of the node and its callees to the procedure totals (calls, inclusive
+    // and exclusive instructions, inclusive and exclusive memory accesses), returns the
+    // inclusive instructions and memory accesses of the node.  active counts the procedures
+    // on the path to the node, so recursive calls are not counted twice as inclusive.
+    private static long[] totalNode(Node node, TextLabels labels, Map<String, long[]> totals,
+                                    Map<String, Integer> active) {
+        String name = labels.getEnclosingLabel(node.entry);
+        boolean outermost = active.merge(name, 1, Integer::sum) == 1;
+        long[] inclusive = {node.instructions, node.memoryAccesses};
+        for (Node child : node.children) {
+            if (child != null) {
+                long[] childInclusive = totalNode(child, labels, totals, active);
+                inclusive[0] += childInclusive[0];
+                inclusive[1] += childInclusive[1];
+            }
+        }
+        active.merge(name, -1, Integer::sum);
+        long[] counts = totals.computeIfAbsent(name, k -> new long[5]);
+        counts[0] += node.calls;
+        counts[2] += node.instructions;
+        counts[4] += node.memoryAccesses;
+        if (outermost) {
+            counts[1] += inclusive[0];
+            counts[3] += inclusive[1];
+        }
+        return inclusive;
+    }
+
+    // Labels of the programs the procedures come from
+    private TextLabels labels() {
+        Set<MIPSprogram> programs = new LinkedHashSet<>();
+        Deque<Node> nodes = new ArrayDeque<>();
+        nodes.push(root);
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            try {
+                ProgramStatement statement = Globals.memory.getStatementNoNotify(node.entry);
+                if (statement != null && statement.getSourceMIPSprogram() != null) {
+                    programs.add(statement.getSourceMIPSprogram());
+                }
+            } catch (AddressErrorException ignored) {
+            }
+            for (Node child : node.children) {
+                if (child != null) {
+                    nodes.push(child);
+                }
+            }
+        }
+        return new TextLabels(programs);
+    }
+
+    private static String percent(long count, long executed) {
+        return String.format(Locale.ROOT, "%.2f", (executed == 0) ? 0.0 : 100.0 * count / executed);
+    }
+}
@@ -154,4 +154,24 @@ public class DelayedBranch {
         return branchTargetAddress;
     }
 
-}  // DelayedBranch
\ No newline at end of file
+
+    /**
+     * Get the complete state, branch target included, as a single value.
+     * Used by snapshots.  This method has package visibility.
+     *
+     * @return the state in the upper 32 bits, the branch target address in the lower ones.
+     */
+    static long getState() {
+        return ((long) state << 32) | (branchTargetAddress & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Restore a state obtained from getState().  This method has package visibility.
+     *
+     * @param savedState the state to restore
+     */
+    static void setState(long savedState) {
+        state = (int) (savedState >>> 32);
+        branchTargetAddress = (int) savedState;
+    }
+}
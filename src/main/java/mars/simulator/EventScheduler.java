@@ -0,0 +1,140 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import java.util.PriorityQueue;
+
+/**
+ * Queue of events due after a given number of MIPS instructions have been executed.
+ * <p>
+ * Time is counted in instructions retired, that is executed to completion, by the
+ * simulator since it was created.  Devices that need to act after a delay, such as a
+ * timer or a display that takes some instructions to process a character, schedule an
+ * event here rather than counting instructions themselves.  After each instruction the
+ * simulator only compares the time with that of the earliest event, so the cost does not
+ * grow with the number of devices, and the events happen at the same instruction however
+ * fast the program runs.
+ * <p>
+ * As with the delayed branch, there is only one simulated machine so everything here is
+ * static.  The methods must be called on the simulator thread, for instance from a
+ * {@link mars.mips.hardware.MemoryMappedDevice} or from an event, or while holding
+ * {@link mars.Globals#memoryAndRegistersLock}.  Events run on the simulator thread while it
+ * holds the lock.
+ */
+public class EventScheduler {
+    private static final PriorityQueue<Event> events = new PriorityQueue<>();
+    private static long time;
+    // time of the earliest event, kept apart so that tick() does not look into the queue
+    private static long nextEventTime = Long.MAX_VALUE;
+    // orders events due at the same time by scheduling order
+    private static long sequence;
+
+    /**
+     * Returns the number of instructions retired so far.
+     *
+     * @return the current time
+     */
+    public static long getTime() {
+        return time;
+    }
+
+    /**
+     * Schedule an action to run once the given number of further instructions have retired.
+     *
+     * @param delay  number of instructions, at least 1
+     * @param action the action to run
+     * @return the scheduled event, to cancel it
+     * @throws IllegalArgumentException if delay is less than 1
+     */
+    public static Event schedule(long delay, Runnable action) {
+        if (delay < 1)
+            throw new IllegalArgumentException("delay must be at least 1 instruction: " + delay);
+        Event event = new Event(time + delay, sequence++, action);
+        events.add(event);
+        nextEventTime = events.peek().time;
+        return event;
+    }
+
+    /**
+     * Cancel an event if it has not run yet.
+     *
+     * @param event the event to cancel, null is ignored
+     */
+    public static void cancel(Event event) {
+        if (event != null && events.remove(event))
+            nextEventTime = events.isEmpty() ? Long.MAX_VALUE : events.peek().time;
+    }
+
+    // Drops all the events, when the machine state is replaced by a snapshot
+    static void clear() {
+        events.clear();
+        nextEventTime = Long.MAX_VALUE;
+    }
+
+    /**
+     * Called by the simulator after each instruction retired.
+     */
+    static void tick() {
+        if (++time >= nextEventTime)
+            runDueEvents();
+    }
+
+    private static void runDueEvents() {
+        // An event may schedule others, including ones already due
+        while (!events.isEmpty() && events.peek().time <= time) {
+            Event event = events.poll();
+            nextEventTime = events.isEmpty() ? Long.MAX_VALUE : events.peek().time;
+            event.action.run();
+        }
+    }
+
+    /**
+     * An action scheduled to run at a given time.
+     */
+    public static final class Event implements Comparable<Event> {
+        private final long time;
+        private final long sequence;
+        private final Runnable action;
+
+        private Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        /**
+         * Returns the number of instructions retired when the event runs.
+         *
+         * @return the event's time
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public int compareTo(Event other) {
+            return time != other.time ? Long.compare(time, other.time) : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -54,6 +54,9 @@ public class Exceptions {
      */
     public static final int EXTERNAL_INTERRUPT_KEYBOARD = 0x00000040; // see comment above.
     public static final int EXTERNAL_INTERRUPT_DISPLAY = 0x00000080; // see comment above.
+    // Coprocessor 0 Count reached Compare: hardware interrupt 5, Cause bit 15.  Unlike bits 8
+    // and 9 it stays set after the exception, until the program writes Compare.
+    public static final int TIMER_INTERRUPT = 0x00002000;
     public static final int ADDRESS_EXCEPTION_LOAD = 4;
     public static final int ADDRESS_EXCEPTION_STORE = 5;
     public static final int SYSCALL_EXCEPTION = 8;
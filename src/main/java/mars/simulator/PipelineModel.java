@@ -0,0 +1,536 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.ProgramStatement;
+import mars.Settings;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.RegisterFile;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Approximates the cycles a classic 5-stage MIPS pipeline (IF, ID, EX, MEM, WB) with
+ * full forwarding would take to execute the program run by the simulator.
+ * <p>
+ * Each instruction enters EX one cycle after the previous one unless it has to wait
+ * for an operand.  A scoreboard holds for every register the first cycle in which its
+ * new value can be forwarded: the next cycle for ALU results, one more for loads (the
+ * load-use stall) and several more for multiply and divide results in HI, LO or the
+ * destination of <code>mul</code>.  Branches and jumps are resolved in ID, so their
+ * operands are needed one cycle earlier, and a taken branch or jump costs one cycle
+ * to refetch unless delayed branching is enabled, in which case the delay slot fills
+ * that cycle.  Store data is needed in MEM.  Floating point operations are timed like
+ * ALU operations.
+ * <p>
+ * The cycles of each instruction are counted by address and reported per function,
+ * a function being the code from the target of a call (<code>jal</code>,
+ * <code>jalr</code>, <code>bgezal</code>, <code>bltzal</code>) or the first instruction
+ * executed up to the next such target.
+ */
+public class PipelineModel implements Simulator.InstructionListener {
+    /**
+     * Cycles until the result of a multiplication can be used.
+     */
+    public static final int MULTIPLY_LATENCY = 5;
+    /**
+     * Cycles until the result of a division can be used.
+     */
+    public static final int DIVIDE_LATENCY = 35;
+    /**
+     * Cycles lost refetching after a taken branch or jump, without delayed branching.
+     */
+    public static final int BRANCH_PENALTY = 1;
+    /**
+     * Cycles to fill the pipeline before the first instruction completes.
+     */
+    public static final int PIPELINE_FILL = 4;
+
+    // Scoreboard indices: general purpose registers, then HI, LO, FP registers and FP condition flags
+    private static final int HI = 32, LO = 33, FIRST_FP = 34, CONDITION_FLAGS = 66, REGISTERS = 67;
+    // What produced a register, to tell the cause of a stall
+    private static final byte ALU = 0, LOAD = 1, MULTIPLY_DIVIDE = 2;
+
+    private final long[] ready = new long[REGISTERS];
+    private final byte[] producer = new byte[REGISTERS];
+    private final AddressCounters cycleCounts = new AddressCounters();
+    private final AddressCounters instructionCounts = new AddressCounters();
+    /** Counts the calls seen to each address, only to mark it as a function entry. */
+    private final AddressCounters functionEntries = new AddressCounters();
+    private boolean delayedBranching;
+    // Earliest cycle for the next instruction to enter EX
+    private long time;
+    private long instructions;
+    private long cycles;
+    private long loadUseStalls;
+    private long dependencyStalls;
+    private long multiplyDivideStalls;
+    private long branchPenalties;
+
+    // Decoding state of the current instruction
+    private long need;
+    private byte stallCause;
+    private int destination, destination2;
+    private int latency;
+    private byte result;
+    private boolean control;
+
+    /**
+     * Starts timing the instructions executed by the simulator.
+     */
+    public void start() {
+        delayedBranching = Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED);
+        Simulator.getInstance().addInstructionListener(this);
+    }
+
+    /**
+     * Stops timing.  Counts are kept.
+     */
+    public void stop() {
+        Simulator.getInstance().removeInstructionListener(this);
+    }
+
+    /**
+     * Clears all counts and the scoreboard.
+     */
+    public void reset() {
+        Arrays.fill(ready, 0);
+        cycleCounts.reset();
+        instructionCounts.reset();
+        functionEntries.reset();
+        time = instructions = cycles = 0;
+        loadUseStalls = dependencyStalls = multiplyDivideStalls = branchPenalties = 0;
+    }
+
+    public void instructionStarted(int address, ProgramStatement statement) {
+        if (instructions == 0) {
+            functionEntries.add(address, 1);
+        }
+        need = time;
+        stallCause = ALU;
+        destination = destination2 = 0;
+        latency = 1;
+        result = ALU;
+        control = false;
+        decode(address, statement.getBinaryStatement());
+        long stall = need - time;
+        if (stall > 0) {
+            switch (stallCause) {
+                case LOAD -> loadUseStalls += stall;
+                case MULTIPLY_DIVIDE -> multiplyDivideStalls += stall;
+                default -> dependencyStalls += stall;
+            }
+        }
+        // Register 0 is never written, so its entry stays 0
+        ready[destination] = need + latency;
+        producer[destination] = result;
+        ready[destination2] = need + latency;
+        producer[destination2] = result;
+        ready[0] = 0;
+        time = need + 1;
+        cycleCounts.add(address, stall + 1);
+        instructionCounts.add(address, 1);
+        instructions++;
+        cycles += stall + 1;
+    }
+
+    public void instructionCompleted(int address, ProgramStatement statement) {
+        if (control && !delayedBranching && RegisterFile.getProgramCounter() != address + 4) {
+            time += BRANCH_PENALTY;
+            cycleCounts.add(address, BRANCH_PENALTY);
+            cycles += BRANCH_PENALTY;
+            branchPenalties += BRANCH_PENALTY;
+        }
+    }
+
+    public long getInstructionCount() {
+        return instructions;
+    }
+
+    /**
+     * Returns the cycles taken so far, including those to fill the pipeline.
+     *
+     * @return number of cycles
+     */
+    public long getCycleCount() {
+        return (instructions == 0) ? 0 : cycles + PIPELINE_FILL;
+    }
+
+    /**
+     * Returns the average cycles per instruction.
+     *
+     * @return CPI, 0 if nothing was executed
+     */
+    public double getCPI() {
+        return (instructions == 0) ? 0 : (double) getCycleCount() / instructions;
+    }
+
+    // Operand read in EX
+    private void read(int register) {
+        if (ready[register] > need) {
+            need = ready[register];
+            stallCause = producer[register];
+        }
+    }
+
+    // Operand read in ID by a branch or jump.  A register never written is ready from the start.
+    private void readEarly(int register) {
+        if (ready[register] > 0 && ready[register] + 1 > need) {
+            need = ready[register] + 1;
+            stallCause = producer[register];
+        }
+    }
+
+    // Store data, read in MEM
+    private void readLate(int register) {
+        if (ready[register] - 1 > need) {
+            need = ready[register] - 1;
+            stallCause = producer[register];
+        }
+    }
+
+    private void write(int register) {
+        if (destination == 0) {
+            destination = register;
+        } else {
+            destination2 = register;
+        }
+    }
+
+    private void writeMultiplyDivide(int register, int cycles) {
+        write(register);
+        latency = cycles;
+        result = MULTIPLY_DIVIDE;
+    }
+
+    private void load(int register) {
+        write(register);
+        latency = 2;
+        result = LOAD;
+    }
+
+    // Collects the operands and results of the instruction
+    private void decode(int address, int word) {
+        int opcode = word >>> 26;
+        int rs = (word >>> 21) & 0x1F;
+        int rt = (word >>> 16) & 0x1F;
+        int rd = (word >>> 11) & 0x1F;
+        int funct = word & 0x3F;
+        switch (opcode) {
+            case 0x00 -> decodeSpecial(rs, rt, rd, funct);
+            case 0x01 -> { // bltz, bgez, bltzal, bgezal, trap immediate
+                if (rt < 0x08 || rt >= 0x10) {
+                    readEarly(rs);
+                    control = true;
+                    if (rt >= 0x10) {
+                        write(31);
+                        int value = RegisterFile.getRegisters()[rs].getValueNoNotify();
+                        if ((rt == 0x10) == (value < 0)) {
+                            functionEntries.add(address + 4 + ((short) word << 2), 1);
+                        }
+                    }
+                } else {
+                    read(rs);
+                }
+            }
+            case 0x02 -> control = true; // j
+            case 0x03 -> { // jal
+                control = true;
+                write(31);
+                functionEntries.add(((address + 4) & 0xF0000000) | ((word & 0x03FFFFFF) << 2), 1);
+            }
+            case 0x04, 0x05 -> { // beq, bne
+                readEarly(rs);
+                readEarly(rt);
+                control = true;
+            }
+            case 0x06, 0x07 -> { // blez, bgtz
+                readEarly(rs);
+                control = true;
+            }
+            case 0x0F -> write(rt); // lui
+            case 0x10 -> { // mfc0, mtc0, eret
+                if (rs == 0x00) {
+                    write(rt);
+                } else if (rs == 0x04) {
+                    read(rt);
+                } else {
+                    control = true;
+                }
+            }
+            case 0x11 -> decodeCoprocessor1(rs, rt, rd, (word >>> 6) & 0x1F, funct);
+            case 0x1C -> { // madd, maddu, mul, msub, msubu, clz, clo
+                read(rs);
+                if (funct == 0x20 || funct == 0x21) {
+                    write(rd);
+                } else if (funct == 0x02) {
+                    read(rt);
+                    writeMultiplyDivide(rd, MULTIPLY_LATENCY);
+                } else {
+                    read(rt);
+                    read(HI);
+                    read(LO);
+                    writeMultiplyDivide(HI, MULTIPLY_LATENCY);
+                    write(LO);
+                }
+            }
+            case 0x20, 0x21, 0x23, 0x24, 0x25, 0x30 -> { // lb, lh, lw, lbu, lhu, ll
+                read(rs);
+                load(rt);
+            }
+            case 0x22, 0x26 -> { // lwl, lwr merge into rt
+                read(rs);
+                read(rt);
+                load(rt);
+            }
+            case 0x28, 0x29, 0x2A, 0x2B, 0x2E -> { // sb, sh, swl, sw, swr
+                read(rs);
+                readLate(rt);
+            }
+            case 0x38 -> { // sc
+                read(rs);
+                readLate(rt);
+                load(rt);
+            }
+            case 0x31 -> { // lwc1
+                read(rs);
+                load(FIRST_FP + rt);
+            }
+            case 0x35 -> { // ldc1
+                read(rs);
+                load(FIRST_FP + rt);
+                write(FIRST_FP + (rt | 1));
+            }
+            case 0x39 -> { // swc1
+                read(rs);
+                readLate(FIRST_FP + rt);
+            }
+            case 0x3D -> { // sdc1
+                read(rs);
+                readLate(FIRST_FP + rt);
+                readLate(FIRST_FP + (rt | 1));
+            }
+            default -> { // addi, addiu, slti, sltiu, andi, ori, xori
+                if (opcode >= 0x08 && opcode <= 0x0E) {
+                    read(rs);
+                    write(rt);
+                }
+            }
+        }
+    }
+
+    private void decodeSpecial(int rs, int rt, int rd, int funct) {
+        switch (funct) {
+            case 0x00, 0x02, 0x03 -> { // sll, srl, sra
+                read(rt);
+                write(rd);
+            }
+            case 0x01 -> { // movf, movt
+                read(rs);
+                read(CONDITION_FLAGS);
+                read(rd);
+                write(rd);
+            }
+            case 0x08 -> { // jr
+                readEarly(rs);
+                control = true;
+            }
+            case 0x09 -> { // jalr
+                readEarly(rs);
+                control = true;
+                write(rd);
+                functionEntries.add(RegisterFile.getRegisters()[rs].getValueNoNotify(), 1);
+            }
+            case 0x0A, 0x0B -> { // movz, movn
+                read(rs);
+                read(rt);
+                read(rd);
+                write(rd);
+            }
+            case 0x0C -> { // syscall reads its number and arguments, may return values
+                read(2);
+                read(4);
+                read(5);
+                read(6);
+                read(7);
+                write(2);
+                write(3);
+            }
+            case 0x10 -> { // mfhi
+                read(HI);
+                write(rd);
+            }
+            case 0x11 -> { // mthi
+                read(rs);
+                write(HI);
+            }
+            case 0x12 -> { // mflo
+                read(LO);
+                write(rd);
+            }
+            case 0x13 -> { // mtlo
+                read(rs);
+                write(LO);
+            }
+            case 0x18, 0x19 -> { // mult, multu
+                read(rs);
+                read(rt);
+                writeMultiplyDivide(HI, MULTIPLY_LATENCY);
+                write(LO);
+            }
+            case 0x1A, 0x1B -> { // div, divu
+                read(rs);
+                read(rt);
+                writeMultiplyDivide(HI, DIVIDE_LATENCY);
+                write(LO);
+            }
+            default -> {
+                if ((funct >= 0x04 && funct <= 0x07) || (funct >= 0x20 && funct <= 0x2B)) {
+                    // sllv, srlv, srav, add, addu, sub, subu, and, or, xor, nor, slt, sltu
+                    read(rs);
+                    read(rt);
+                    write(rd);
+                } else if (funct >= 0x30 && funct <= 0x36) {
+                    // teq, tne, tge, tgeu, tlt, tltu
+                    read(rs);
+                    read(rt);
+                }
+            }
+        }
+    }
+
+    private void decodeCoprocessor1(int format, int ft, int fs, int fd, int funct) {
+        switch (format) {
+            case 0x00 -> { // mfc1
+                read(FIRST_FP + fs);
+                write(ft);
+            }
+            case 0x04 -> { // mtc1
+                read(ft);
+                write(FIRST_FP + fs);
+            }
+            case 0x08 -> { // bc1f, bc1t
+                readEarly(CONDITION_FLAGS);
+                control = true;
+            }
+            default -> { // single, double and word formats
+                boolean isDouble = format == 0x11;
+                readFloat(fs, isDouble);
+                if (funct >= 0x30) { // c.cond
+                    readFloat(ft, isDouble);
+                    write(CONDITION_FLAGS);
+                    return;
+                }
+                if (funct <= 0x03) { // add, sub, mul, div
+                    readFloat(ft, isDouble);
+                } else if (funct == 0x11) { // movf, movt
+                    read(CONDITION_FLAGS);
+                    readFloat(fd, isDouble);
+                } else if (funct == 0x12 || funct == 0x13) { // movz, movn
+                    read(ft);
+                    readFloat(fd, isDouble);
+                }
+                // Conversions to double write a pair, from double a single register
+                boolean writesDouble = (funct == 0x21) || (isDouble && funct != 0x20 && funct != 0x24
+                        && (funct < 0x0C || funct > 0x0F));
+                write(FIRST_FP + fd);
+                if (writesDouble) {
+                    write(FIRST_FP + (fd | 1));
+                }
+            }
+        }
+    }
+
+    private void readFloat(int register, boolean isDouble) {
+        read(FIRST_FP + register);
+        if (isDouble) {
+            read(FIRST_FP + (register | 1));
+        }
+    }
+
+    /**
+     * Writes the total cycles, CPI and stalls, then the functions taking the most cycles.
+     *
+     * @param out   stream to write to
+     * @param limit maximum number of functions in the report
+     */
+    public void writeReport(PrintStream out, int limit) {
+        out.println("Instructions executed: " + instructions);
+        out.println("Cycles: " + getCycleCount() + " (" + PIPELINE_FILL + " to fill the pipeline)");
+        out.println("CPI: " + String.format(Locale.ROOT, "%.3f", getCPI()));
+        out.println("Stall cycles: load-use " + loadUseStalls + ", other data dependencies " + dependencyStalls
+                + ", multiply/divide " + multiplyDivideStalls);
+        out.println("Taken branch and jump penalty cycles: " + branchPenalties
+                + (delayedBranching ? " (delayed branching)" : ""));
+
+        // Every address belongs to the closest function entry at or before it.  Flipping
+        // the sign bit makes the signed order of the keys the unsigned order of addresses.
+        int[][] entries = {new int[64]};
+        int[] entryCount = {0};
+        functionEntries.forEach((address, count) -> {
+            if (entryCount[0] == entries[0].length) {
+                entries[0] = Arrays.copyOf(entries[0], entryCount[0] * 2);
+            }
+            entries[0][entryCount[0]++] = address ^ Integer.MIN_VALUE;
+        });
+        int[] entryKeys = Arrays.copyOf(entries[0], entryCount[0]);
+        Map<Integer, long[]> functions = new LinkedHashMap<>();
+        cycleCounts.forEach((address, count) -> {
+            int i = Arrays.binarySearch(entryKeys, address ^ Integer.MIN_VALUE);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            int entry = (i >= 0) ? entryKeys[i] ^ Integer.MIN_VALUE : address;
+            long[] totals = functions.computeIfAbsent(entry, k -> new long[2]);
+            totals[0] += count;
+            totals[1] += instructionCounts.get(address);
+        });
+        Set<MIPSprogram> programs = new LinkedHashSet<>();
+        for (int entry : functions.keySet()) {
+            try {
+                ProgramStatement statement = Globals.memory.getStatementNoNotify(entry);
+                if (statement != null && statement.getSourceMIPSprogram() != null) {
+                    programs.add(statement.getSourceMIPSprogram());
+                }
+            } catch (AddressErrorException ignored) {
+            }
+        }
+        TextLabels labels = new TextLabels(programs);
+        List<Map.Entry<Integer, long[]>> sorted = new ArrayList<>(functions.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        out.println();
+        out.println("Functions by cycles");
+        out.println(String.format("%14s %7s %14s %7s  %s", "cycles", "%", "instructions", "CPI", "function"));
+        for (Map.Entry<Integer, long[]> function : sorted.subList(0, Math.min(limit, sorted.size()))) {
+            long[] totals = function.getValue();
+            out.println(String.format(Locale.ROOT, "%14d %7.2f %14d %7.3f  %s", totals[0],
+                    (cycles == 0) ? 0.0 : 100.0 * totals[0] / cycles, totals[1],
+                    (totals[1] == 0) ? 0.0 : (double) totals[0] / totals[1], labels.getEnclosingLabel(function.getKey())));
+        }
+    }
+}
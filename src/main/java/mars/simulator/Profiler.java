@@ -0,0 +1,220 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.util.Binary;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Counts how many times each instruction is executed, to find the hot spots of a program.
+ * <p>
+ * Counts are kept in {@link AddressCounters}, so counting an instruction is an array
+ * increment.  The profiler is an instruction listener of the
+ * simulator; while it is not started the simulator does not call it.  Counts are
+ * updated on the simulator thread and may be read at any time, e.g. for display while
+ * the program runs.
+ * <p>
+ * The report lists the most executed instructions, source lines and labels, counting
+ * for a label the instructions from it up to the next label.
+ */
+public class Profiler implements Simulator.InstructionListener {
+    private final AddressCounters executions = new AddressCounters();
+    private long total;
+
+    /**
+     * Receives the count of an executed instruction.
+     */
+    public interface CountConsumer {
+        void accept(int address, long count);
+    }
+
+    /**
+     * Starts counting the instructions executed by the simulator.
+     */
+    public void start() {
+        Simulator.getInstance().addInstructionListener(this);
+    }
+
+    /**
+     * Stops counting.  Counts are kept.
+     */
+    public void stop() {
+        Simulator.getInstance().removeInstructionListener(this);
+    }
+
+    public void instructionStarted(int address, ProgramStatement statement) {
+        executions.add(address, 1);
+        total++;
+    }
+
+    /**
+     * Clears all counts.  The simulator counts while holding
+     * {@link Globals#memoryAndRegistersLock}, so the counts are cleared under it too and
+     * a reset during a run does not interleave with an instruction being counted.
+     */
+    public void reset() {
+        synchronized (Globals.memoryAndRegistersLock) {
+            executions.reset();
+            total = 0;
+        }
+    }
+
+    /**
+     * Returns the number of instructions executed.
+     *
+     * @return total count
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the number of times the instruction at the given address was executed.
+     *
+     * @param address instruction address
+     * @return count
+     */
+    public long getCount(int address) {
+        return executions.get(address);
+    }
+
+    /**
+     * Passes every executed instruction and its count to the consumer, by increasing address.
+     *
+     * @param consumer receives the counts
+     */
+    public void forEachCount(CountConsumer consumer) {
+        executions.forEach(consumer);
+    }
+
+    /**
+     * Writes a report of the hottest instructions, source lines and labels.
+     *
+     * @param out   stream to write to
+     * @param limit maximum number of entries in each part of the report
+     */
+    public void writeReport(PrintStream out, int limit) {
+        List<Integer> addresses = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        forEachCount((address, count) -> {
+            addresses.add(address);
+            counts.add(count);
+        });
+        long executed = 0;
+        for (long count : counts) {
+            executed += count;
+        }
+        out.println("Instructions executed: " + executed);
+
+        // Statements and the programs they come from, for source lines and local labels
+        ProgramStatement[] statements = new ProgramStatement[addresses.size()];
+        Set<MIPSprogram> programs = new LinkedHashSet<>();
+        for (int i = 0; i < statements.length; i++) {
+            try {
+                statements[i] = Globals.memory.getStatementNoNotify(addresses.get(i));
+            } catch (AddressErrorException ignored) {
+            }
+            if (statements[i] != null && statements[i].getSourceMIPSprogram() != null) {
+                programs.add(statements[i].getSourceMIPSprogram());
+            }
+        }
+        TextLabels labels = new TextLabels(programs);
+
+        out.println();
+        out.println("Hottest instructions");
+        out.println(String.format("%14s %7s  %-10s  %-30s  %s", "count", "%", "address", "instruction", "source"));
+        Integer[] order = sortByCount(counts);
+        for (int n = 0; n < Math.min(limit, order.length); n++) {
+            int i = order[n];
+            ProgramStatement statement = statements[i];
+            String instruction = (statement == null) ? "" : statement.getPrintableBasicAssemblyStatement();
+            String source = (statement == null) ? "" : (sourceLocation(statement) + "  " + statement.getSource().trim());
+            out.println(String.format("%14d %7s  %-10s  %-30s  %s", counts.get(i), percent(counts.get(i), executed),
+                    Binary.intToHexString(addresses.get(i)), instruction, source.trim()));
+        }
+
+        // Instructions expanded from a pseudo instruction share its line, only the first has its source
+        Map<String, Long> lineCounts = new LinkedHashMap<>();
+        Map<String, String> lineSources = new HashMap<>();
+        Map<String, Long> labelCounts = new LinkedHashMap<>();
+        for (int i = 0; i < statements.length; i++) {
+            String location = sourceLocation(statements[i]);
+            if (!location.isEmpty()) {
+                lineCounts.merge(location, counts.get(i), Long::sum);
+                if (!statements[i].getSource().isBlank()) {
+                    lineSources.putIfAbsent(location, statements[i].getSource().trim());
+                }
+            }
+            labelCounts.merge(labels.getEnclosingLabel(addresses.get(i)), counts.get(i), Long::sum);
+        }
+        Map<String, Long> sourceCounts = new LinkedHashMap<>();
+        lineCounts.forEach((location, count) -> sourceCounts.put(location + "  " + lineSources.getOrDefault(location, ""), count));
+        writeTotals(out, "Hottest source lines", "source", sourceCounts, executed, limit);
+        writeTotals(out, "Hottest labels", "label", labelCounts, executed, limit);
+    }
+
+    private static void writeTotals(PrintStream out, String title, String heading, Map<String, Long> totals,
+                                    long executed, int limit) {
+        List<String> keys = new ArrayList<>(totals.keySet());
+        List<Long> counts = new ArrayList<>(totals.values());
+        out.println();
+        out.println(title);
+        out.println(String.format("%14s %7s  %s", "count", "%", heading));
+        Integer[] order = sortByCount(counts);
+        for (int n = 0; n < Math.min(limit, order.length); n++) {
+            int i = order[n];
+            out.println(String.format("%14d %7s  %s", counts.get(i), percent(counts.get(i), executed), keys.get(i)));
+        }
+    }
+
+    // Indices of the counts, largest count first
+    private static Integer[] sortByCount(List<Long> counts) {
+        Integer[] order = new Integer[counts.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(counts.get(b), counts.get(a)));
+        return order;
+    }
+
+    private static String percent(long count, long executed) {
+        return String.format(Locale.ROOT, "%.2f", (executed == 0) ? 0.0 : 100.0 * count / executed);
+    }
+
+    // file:line of the statement, empty if it has no source
+    private static String sourceLocation(ProgramStatement statement) {
+        if (statement == null || statement.getSourceLine() <= 0) {
+            return "";
+        }
+        return new File(statement.getSourceFile()).getName() + ":" + statement.getSourceLine();
+    }
+}
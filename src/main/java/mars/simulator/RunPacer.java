@@ -0,0 +1,107 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.venus.RunSpeedPanel;
+
+import javax.swing.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Paces a timed run at the speed selected on the {@link RunSpeedPanel}.
+ * <p>
+ * Rather than sleeping after every instruction, which limits the reachable speed to
+ * what <tt>Thread.sleep</tt> granularity allows, instructions are executed in batches
+ * worth about a millisecond each and the thread then waits for the <tt>System.nanoTime</tt>
+ * deadline at which the batch is due.  Deadlines are computed from the start of the run,
+ * so sleep overshoot does not accumulate and the average rate stays accurate from
+ * fractions of an instruction per second up to hundreds of thousands.  The run speed
+ * is read again at each batch boundary, so the slider takes effect while running.
+ * This class has package visibility.
+ */
+class RunPacer {
+    // Batches are sized to last about this long at the selected speed
+    private static final long BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // At unlimited speed, check the slider again after this many instructions
+    private static final int UNLIMITED_BATCH = 1024;
+    // Falling further behind than this (e.g. while the GUI was busy) is forgiven rather than caught up with
+    private static final long MAX_LAG_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // Longest uninterrupted sleep, so that a stop request is noticed even at very slow speeds
+    private static final long MAX_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Runnable guiUpdater;
+    private final BooleanSupplier stopRequested;
+    private double runSpeed = -1;
+    private long origin;
+    private long executed;
+    private int remaining;
+
+    /**
+     * @param guiUpdater    posted to the event thread after each instruction at interactive
+     *                      speeds, see {@link RunSpeedPanel#INTERACTION_LIMIT_SPEED}.  Can be null.
+     * @param stopRequested tells whether the run has been asked to stop, ending any wait early
+     */
+    RunPacer(Runnable guiUpdater, BooleanSupplier stopRequested) {
+        this.guiUpdater = guiUpdater;
+        this.stopRequested = stopRequested;
+    }
+
+    /**
+     * Account for one executed instruction, waiting if the run is ahead of schedule.
+     */
+    void instructionExecuted() {
+        if (--remaining > 0)
+            return;
+        double speed = RunSpeedPanel.getInstance().getRunSpeed();
+        long now = System.nanoTime();
+        if (speed != runSpeed) {
+            runSpeed = speed;
+            origin = now;
+            executed = 0;
+        }
+        if (speed == RunSpeedPanel.UNLIMITED_SPEED) {
+            remaining = UNLIMITED_BATCH;
+            return;
+        }
+        if (guiUpdater != null && speed <= RunSpeedPanel.INTERACTION_LIMIT_SPEED)
+            SwingUtilities.invokeLater(guiUpdater);
+
+        remaining = (int) Math.max(1, speed * BATCH_NANOS / TimeUnit.SECONDS.toNanos(1));
+        executed += remaining;
+        long deadline = origin + (long) (executed * TimeUnit.SECONDS.toNanos(1) / speed);
+        if (now - deadline > MAX_LAG_NANOS) {
+            origin = now;
+            executed = 0;
+            return;
+        }
+        for (long wait = deadline - now; wait > 0 && !stopRequested.getAsBoolean(); wait = deadline - System.nanoTime()) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(wait, MAX_SLEEP_NANOS));
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+}
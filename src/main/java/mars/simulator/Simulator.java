@@ -42,7 +42,11 @@ import mars.venus.RunStepAction;
 import javax.swing.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Observable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Used to simulate the execution of an assembled MIPS program.
@@ -65,10 +69,22 @@ public class Simulator extends Observable {
     public static final int NORMAL_TERMINATION = 4;
     public static final int CLIFF_TERMINATION = 5; // run off bottom of program
     public static final int PAUSE_OR_STOP = 6;
+    /**
+     * @deprecated a single field loses all but one of simultaneous requests; use
+     * {@link #requestInterrupt(int)} instead.
+     */
+    @Deprecated
     public static volatile int externalInterruptingDevice = NO_DEVICE;
+    // Cause codes of interrupts requested by devices, in order, taken one per instruction.
+    // A cause is queued once however many times it is requested before being taken.
+    private static final Queue<Integer> interruptRequests = new ConcurrentLinkedQueue<>();
+    // The causes in interruptRequests
+    private static final AtomicInteger requestedCauses = new AtomicInteger();
     private static Simulator simulator = null;  // Singleton object
     private static Runnable interactiveGUIUpdater = null;
     private final ArrayList<StopListener> stopListeners = new ArrayList<>(1);
+    // Replaced, never modified, when listeners are added or removed
+    private volatile InstructionListener[] instructionListeners = new InstructionListener[0];
     private SimThread simulatorThread;
 
     private Simulator() {
@@ -107,6 +123,90 @@ public class Simulator extends Observable {
         return DelayedBranch.isTriggered();
     }
 
+    /**
+     * Discard any pending delayed branch left over from a previous execution,
+     * so that a new program can be started from a clean state.
+     */
+    public static void clearDelayedBranch() {
+        DelayedBranch.clear();
+    }
+
+    /**
+     * Request an external interrupt.  Requests are kept in order and one is taken before
+     * executing an instruction while the Interrupt Enable bit of the Status register is set,
+     * its Exception Level bit is clear and the Interrupt Mask bit matching the request is
+     * set, so requests from several devices, or arriving while the exception handler runs
+     * or the interrupt is masked, are not lost.  Like a device holding its interrupt line,
+     * a request for a cause that is already waiting is merged with it: a device requesting
+     * over and over while its interrupt is disabled gets a single interrupt once it is
+     * enabled.  Can be called from any thread.
+     *
+     * @param cause the interrupt's bits in the Cause register, shifted right by 2, for
+     *              instance {@link Exceptions#EXTERNAL_INTERRUPT_KEYBOARD}
+     */
+    public static void requestInterrupt(int cause) {
+        if ((requestedCauses.getAndUpdate(causes -> causes | cause) & cause) == 0)
+            interruptRequests.offer(cause);
+    }
+
+    /**
+     * Discard the interrupt requests not taken yet, so that a new program run does not
+     * start with those of the previous one.
+     */
+    public static void clearInterruptRequests() {
+        // In this order a concurrent request is at worst queued twice, never left out of the queue
+        interruptRequests.clear();
+        requestedCauses.set(0);
+        externalInterruptingDevice = NO_DEVICE;
+    }
+
+    // Interrupt requests not taken yet, oldest first, for snapshots
+    static int[] getInterruptRequests() {
+        int device = externalInterruptingDevice;
+        int[] causes = interruptRequests.stream().mapToInt(Integer::intValue).toArray();
+        if (device != NO_DEVICE) {
+            causes = Arrays.copyOf(causes, causes.length + 1);
+            causes[causes.length - 1] = device;
+        }
+        return causes;
+    }
+
+    static void setInterruptRequests(int[] causes) {
+        clearInterruptRequests();
+        for (int cause : causes)
+            requestInterrupt(cause);
+    }
+
+    /*
+     * Returns the cause of the interrupt to take before the next instruction, or NO_DEVICE.
+     * Interrupts are taken while Status has interrupts enabled and the exception level
+     * clear, and only those whose bit in the interrupt mask of Status is set.  The timer
+     * interrupt is level triggered and is taken as long as its bit in Cause is set, device
+     * requests are taken once each in order, the masked ones waiting in the queue.
+     */
+    private static int nextInterrupt() {
+        int status = Coprocessor0.getValue(Coprocessor0.STATUS);
+        if ((status & 3) != 1)
+            return NO_DEVICE;
+        int enabled = status & 0xFF00;
+        if ((Coprocessor0.getValue(Coprocessor0.CAUSE) & enabled & (Exceptions.TIMER_INTERRUPT << 2)) != 0)
+            return Exceptions.TIMER_INTERRUPT;
+        for (Integer cause : interruptRequests) {
+            if (((cause << 2) & enabled) != 0) {
+                // Forget the cause first, so that a request made meanwhile is queued again
+                requestedCauses.getAndUpdate(causes -> causes & ~cause);
+                interruptRequests.remove(cause); // the first equal request, which is this one
+                return cause;
+            }
+        }
+        int device = externalInterruptingDevice;
+        if (device != NO_DEVICE && ((device << 2) & enabled) != 0) {
+            externalInterruptingDevice = NO_DEVICE;
+            return device;
+        }
+        return NO_DEVICE;
+    }
+
     /**
      * Simulate execution of given MIPS program.  It must have already been assembled.
      *
@@ -119,15 +219,32 @@ public class Simulator extends Observable {
      * @throws ProcessingException Throws exception if run-time exception occurs.
      **/
     public boolean simulate(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction actor) throws ProcessingException {
-        simulatorThread = new SimThread(p, pc, maxSteps, breakPoints, actor);
-        simulatorThread.start();
+        return simulate(p, pc, maxSteps, (breakPoints == null) ? null : new Breakpoints(breakPoints), actor);
+    }
+
+    /**
+     * Simulate execution of given MIPS program.  It must have already been assembled.
+     *
+     * @param p           The MIPSprogram to be simulated.
+     * @param pc          address of first instruction to simulate; this goes into program counter
+     * @param maxSteps    maximum number of steps to perform before returning false (0 or less means no max)
+     * @param breakpoints breakpoints and watchpoints, use null if none
+     * @param actor       the GUI component responsible for this call, usually GO or STEP.  null if none.
+     * @return true if execution completed, false otherwise
+     * @throws ProcessingException Throws exception if run-time exception occurs.
+     **/
+    public boolean simulate(MIPSprogram p, int pc, int maxSteps, Breakpoints breakpoints, AbstractAction actor) throws ProcessingException {
+        // Kept in a local: stopExecution() may clear the field from another thread meanwhile
+        SimThread thread = new SimThread(p, pc, maxSteps, breakpoints, actor);
+        simulatorThread = thread;
+        thread.start();
 
         // Condition should only be true if run from command-line instead of GUI.
         // If so, just stick around until execution thread is finished.
         if (actor == null) {
-            @SuppressWarnings("unused") Object dun = simulatorThread.get(); // this should emulate join()
-            ProcessingException pe = simulatorThread.pe;
-            boolean done = simulatorThread.done;
+            @SuppressWarnings("unused") Object dun = thread.get(); // this should emulate join()
+            ProcessingException pe = thread.pe;
+            boolean done = thread.done;
             if (done) SystemIO.resetFiles(); // close any files opened in MIPS progra
             this.simulatorThread = null;
             if (pe != null) {
@@ -164,6 +281,29 @@ public class Simulator extends Observable {
         stopListeners.remove(l);
     }
 
+    /**
+     * Adds a listener called for every instruction the simulator executes, from the
+     * next instruction on.
+     *
+     * @param l the listener
+     */
+    public synchronized void addInstructionListener(InstructionListener l) {
+        InstructionListener[] listeners = Arrays.copyOf(instructionListeners, instructionListeners.length + 1);
+        listeners[listeners.length - 1] = l;
+        instructionListeners = listeners;
+    }
+
+    /**
+     * Removes a listener added by {@link #addInstructionListener(InstructionListener)}.
+     *
+     * @param l the listener
+     */
+    public synchronized void removeInstructionListener(InstructionListener l) {
+        List<InstructionListener> listeners = new ArrayList<>(Arrays.asList(instructionListeners));
+        listeners.remove(l);
+        instructionListeners = listeners.toArray(new InstructionListener[0]);
+    }
+
     // The Simthread object will call this method when it enters and returns from
     // its construct() method.  These signal start and stop, respectively, of
     // simulation execution.  The observer can then adjust its own state depending
@@ -174,13 +314,22 @@ public class Simulator extends Observable {
     private void notifyObserversOfExecutionStart(int maxSteps, int programCounter) {
         this.setChanged();
         this.notifyObservers(new SimulatorNotice(SimulatorNotice.SIMULATOR_START,
-                maxSteps, RunSpeedPanel.getInstance().getRunSpeed(), programCounter));
+                maxSteps, getRunSpeed(), programCounter));
     }
 
     private void notifyObserversOfExecutionStop(int maxSteps, int programCounter) {
         this.setChanged();
         this.notifyObservers(new SimulatorNotice(SimulatorNotice.SIMULATOR_STOP,
-                maxSteps, RunSpeedPanel.getInstance().getRunSpeed(), programCounter));
+                maxSteps, getRunSpeed(), programCounter));
+    }
+
+    // RunSpeedPanel is a Swing component, so only ask it for the run speed when
+    // the GUI or a stand-alone tool has created it.  Command mode always runs
+    // at unlimited speed and must not load any Swing classes.
+    private static double getRunSpeed() {
+        return (Globals.getGui() != null || Globals.runSpeedPanelExists)
+                ? RunSpeedPanel.getInstance().getRunSpeed()
+                : RunSpeedPanel.UNLIMITED_SPEED;
     }
 
     /* This interface is required by the Asker class in MassagesPane
@@ -191,6 +340,34 @@ public class Simulator extends Observable {
         void stopped(Simulator s);
     }
 
+    /**
+     * Receives every instruction executed by the simulator, on the simulator thread and
+     * while it holds {@link Globals#memoryAndRegistersLock}.  When no listener is added the
+     * simulator loop does not pay for them.
+     */
+    public interface InstructionListener {
+        /**
+         * Called before an instruction is executed.  The program counter already holds
+         * the address of the following instruction.
+         *
+         * @param address   address of the instruction
+         * @param statement the instruction
+         */
+        void instructionStarted(int address, ProgramStatement statement);
+
+        /**
+         * Called after an instruction has been executed, or has raised an exception taken
+         * by the exception handler, and delayed branching has been handled, so the program
+         * counter holds the address of the next instruction.  Not called for the instruction
+         * that ends the program, nor for one preempted by an interrupt before it started.
+         *
+         * @param address   address of the instruction
+         * @param statement the instruction
+         */
+        default void instructionCompleted(int address, ProgramStatement statement) {
+        }
+    }
+
     /**
      * SwingWorker subclass to perform the simulated execution in background thread.
      * It is "interrupted" when main thread sets the "stop" variable to true.
@@ -205,7 +382,7 @@ public class Simulator extends Observable {
         private final int pc;
         private final int maxSteps;
         private final AbstractAction starter;
-        private int[] breakPoints;
+        private Breakpoints breakpoints;
         private boolean done;
         private ProcessingException pe;
         private volatile boolean stop = false;
@@ -219,15 +396,15 @@ public class Simulator extends Observable {
          * @param p           the MIPSprogram to be simulated
          * @param pc          address in text segment of first instruction to simulate
          * @param maxSteps    maximum number of instruction steps to simulate.  Default of -1 means no maximum
-         * @param breakPoints array of breakpoints (instruction addresses) specified by user
+         * @param breakpoints breakpoints and watchpoints specified by user
          * @param starter     the GUI component responsible for this call, usually GO or STEP.  null if none.
          */
-        SimThread(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction starter) {
+        SimThread(MIPSprogram p, int pc, int maxSteps, Breakpoints breakpoints, AbstractAction starter) {
             super(Globals.getGui() != null);
             this.p = p;
             this.pc = pc;
             this.maxSteps = maxSteps;
-            this.breakPoints = breakPoints;
+            this.breakpoints = breakpoints;
             this.done = false;
             this.pe = null;
             this.starter = starter;
@@ -262,10 +439,8 @@ public class Simulator extends Observable {
             Thread.currentThread().setPriority(Thread.NORM_PRIORITY - 1);
             Thread.yield();  // let the main thread run a bit to finish updating the GUI
 
-            if (breakPoints == null || breakPoints.length == 0) {
-                breakPoints = null;
-            } else {
-                Arrays.sort(breakPoints);  // must be pre-sorted for binary search
+            if (breakpoints != null) {
+                breakpoints.start();
             }
 
             Simulator.getInstance().notifyObserversOfExecutionStart(maxSteps, pc);
@@ -290,6 +465,9 @@ public class Simulator extends Observable {
                 return done;
             }
             int steps = 0;
+            // Only runs using Go, from the GUI or a stand-alone tool, are paced. OR added by DPS 24 July 2008
+            RunPacer pacer = (maxSteps != 1 && (Globals.getGui() != null || Globals.runSpeedPanelExists))
+                    ? new RunPacer(interactiveGUIUpdater, () -> stop) : null;
 
             // *******************  PS addition 26 July 2006  **********************
             // A couple statements below were added for the purpose of assuring that when
@@ -322,20 +500,31 @@ public class Simulator extends Observable {
             // *********************************************************************
 
             int pc = 0;  // added: 7/26/06 (explanation above)
+            Simulator simulator = Simulator.getInstance();
+            boolean started, completed;
 
             while (statement != null) {
                 pc = RegisterFile.getProgramCounter(); // added: 7/26/06 (explanation above)
                 RegisterFile.incrementPC();
+                InstructionListener[] listeners = simulator.instructionListeners;
                 // Perform the MIPS instruction in synchronized block.  If external threads agree
                 // to access MIPS memory and registers only through synchronized blocks on same
                 // lock variable, then full (albeit heavy-handed) protection of MIPS memory and
                 // registers is assured.  Not as critical for reading from those resources.
                 synchronized (Globals.memoryAndRegistersLock) {
+                    started = completed = false;
                     try {
-                        if (Simulator.externalInterruptingDevice != NO_DEVICE) {
-                            int deviceInterruptCode = externalInterruptingDevice;
-                            Simulator.externalInterruptingDevice = NO_DEVICE;
-                            throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
+                        if (!interruptRequests.isEmpty() || externalInterruptingDevice != NO_DEVICE
+                                || Coprocessor0.isTimerInterruptPending()) {
+                            int deviceInterruptCode = nextInterrupt();
+                            if (deviceInterruptCode != NO_DEVICE)
+                                throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
+                        }
+                        started = true;
+                        if (listeners.length != 0) {
+                            for (InstructionListener listener : listeners) {
+                                listener.instructionStarted(pc, statement);
+                            }
                         }
                         BasicInstruction instruction = (BasicInstruction) statement.getInstruction();
                         if (instruction == null) {
@@ -350,6 +539,8 @@ public class Simulator extends Observable {
                         if (Globals.getSettings().getBackSteppingEnabled()) {
                             Globals.program.getBackStepper().addDoNothing(pc);
                         }
+                        completed = true;
+                        EventScheduler.tick();
                     } catch (ProcessingException pe) {
                         if (pe.errors() == null) {
                             this.constructReturnReason = NORMAL_TERMINATION;
@@ -365,11 +556,12 @@ public class Simulator extends Observable {
                             // MIPS program with appropriate error message.
                             ProgramStatement exceptionHandler = null;
                             try {
-                                exceptionHandler = Globals.memory.getStatement(Memory.exceptionHandlerAddress);
+                                exceptionHandler = Globals.memory.getStatementNoNotify(Memory.exceptionHandlerAddress);
                             } catch (AddressErrorException ignored) {
                             } // will not occur with this well-known addres
                             if (exceptionHandler != null) {
                                 RegisterFile.setProgramCounter(Memory.exceptionHandlerAddress);
+                                completed = true;
                             } else {
                                 this.constructReturnReason = EXCEPTION;
                                 this.pe = pe;
@@ -390,6 +582,15 @@ public class Simulator extends Observable {
                     DelayedBranch.trigger();
                 }//////////////////////////////////////////////////////////////////////
 
+                // An interrupt taken before the instruction started is not completed either
+                if (listeners.length != 0 && started && completed) {
+                    synchronized (Globals.memoryAndRegistersLock) {
+                        for (InstructionListener listener : listeners) {
+                            listener.instructionCompleted(pc, statement);
+                        }
+                    }
+                }
+
                 // Volatile variable initialized false but can be set true by the main thread.
                 // Used to stop or pause a running MIPS program.  See stopSimulation() above.
                 if (stop) {
@@ -398,9 +599,9 @@ public class Simulator extends Observable {
                     Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
                     return done;
                 }
-                //	Return if we've reached a breakpoint.
-                if ((breakPoints != null) &&
-                        (Arrays.binarySearch(breakPoints, RegisterFile.getProgramCounter()) >= 0)) {
+                //	Return if we've reached a breakpoint or a watched word has changed.
+                // Breakpoints can be set while running, so an empty set is still checked for
+                if (breakpoints != null && !breakpoints.isEmpty() && breakpoints.hit(RegisterFile.getProgramCounter())) {
                     this.constructReturnReason = BREAKPOINT;
                     this.done = false;
                     Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
@@ -417,22 +618,9 @@ public class Simulator extends Observable {
                     }
                 }
 
-                // schedule GUI update only if: there is in fact a GUI! AND
-                //                              using Run,  not Step (maxSteps > 1) AND
-                //                              running slowly enough for GUI to keep up
-                //if (Globals.getGui() != null && maxSteps != 1 &&
-                if (interactiveGUIUpdater != null && maxSteps != 1 &&
-                        RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
-                    SwingUtilities.invokeLater(interactiveGUIUpdater);
-                }
-                if (Globals.getGui() != null || Globals.runSpeedPanelExists) { // OR added by DPS 24 July 2008 to enable speed control by stand-alone tool
-                    if (maxSteps != 1 &&
-                            RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
-                        try {
-                            Thread.sleep((int) (1000 / RunSpeedPanel.getInstance().getRunSpeed())); // make sure it's never zero!
-                        } catch (InterruptedException ignored) {
-                        }
-                    }
+                // Pace timed runs and schedule the per-instruction GUI update at interactive speeds
+                if (pacer != null) {
+                    pacer.instructionExecuted();
                 }
 
 
@@ -0,0 +1,197 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.Globals;
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.MemoryConfigurations;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+import mars.util.SystemIO;
+
+import java.io.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Saves and restores the complete state of the simulated machine: general purpose,
+ * HI/LO, PC, Coprocessor 0 and Coprocessor 1 registers, whether the timer is armed,
+ * the interrupt requests not taken yet, the delayed branch state, the allocated memory
+ * blocks together with the heap pointer and the files opened by the MIPS program.
+ * <p>
+ * The image is a compressed binary stream which only holds the memory actually
+ * allocated, so both its size and the time taken to restore it are proportional to
+ * the number of pages in use.  A snapshot can only be restored with the memory
+ * configuration it was taken with, and is meant to be restored over the same
+ * assembled program so that source information of the statements is preserved.
+ * The contents of the files opened by the program are not part of the snapshot, nor
+ * are the events devices have scheduled with {@link EventScheduler}: those are dropped
+ * on restore, and the devices connected then schedule again the ones their restored
+ * registers wait for, see {@link mars.mips.hardware.MemoryMappedDevice#restored()}.
+ */
+public class Snapshot {
+    private static final int MAGIC = 0x4D415253; // "MARS"
+    private static final int VERSION = 3;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Write a snapshot of the machine state to the given file.
+     *
+     * @param file the file to write, overwritten if it exists
+     * @throws IOException if writing fails
+     */
+    public static void save(File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            save(out);
+        }
+    }
+
+    /**
+     * Write a snapshot of the machine state to the given stream.  The stream is not closed.
+     *
+     * @param stream where to write the snapshot
+     * @throws IOException if writing fails
+     */
+    public static void save(OutputStream stream) throws IOException {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            final DeflaterOutputStream compressed = new DeflaterOutputStream(stream, deflater, 1 << 16);
+            final DataOutputStream out = new DataOutputStream(compressed);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier());
+            synchronized (Globals.memoryAndRegistersLock) {
+                writeRegisters(out, RegisterFile.getRegisters());
+                out.writeInt(RegisterFile.getProgramCounter());
+                writeRegisters(out, RegisterFile.getHiLoRegisters());
+                writeRegisters(out, Coprocessor0.getRegisters());
+                out.writeBoolean(Coprocessor0.isTimerArmed());
+                int[] interrupts = Simulator.getInterruptRequests();
+                out.writeInt(interrupts.length);
+                for (int cause : interrupts)
+                    out.writeInt(cause);
+                writeRegisters(out, Coprocessor1.getRegisters());
+                out.writeInt(Coprocessor1.getConditionFlags());
+                out.writeLong(DelayedBranch.getState());
+                Globals.memory.writeSnapshot(out);
+                SystemIO.writeFilesSnapshot(out);
+            }
+            out.flush();
+            compressed.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Restore the machine state from a snapshot file written by {@link #save(File)}.
+     *
+     * @param file the file to read
+     * @throws IOException if reading fails or the file is not a valid snapshot for
+     *                     the current memory configuration
+     */
+    public static void restore(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            restore(in);
+        }
+    }
+
+    /**
+     * Restore the machine state from a snapshot written by {@link #save(OutputStream)}.
+     * The whole snapshot is read before anything is changed, so the machine state is
+     * left untouched if the stream is invalid or truncated.  Memory observers are not
+     * notified.
+     *
+     * @param stream where to read the snapshot from
+     * @throws IOException if reading fails or the stream is not a valid snapshot for
+     *                     the current memory configuration
+     */
+    public static void restore(InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(stream), 1 << 16));
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a MARS snapshot");
+        final int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported snapshot version " + version);
+        final String configuration = in.readUTF();
+        if (!configuration.equals(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier()))
+            throw new IOException("Snapshot was taken with memory configuration " + configuration);
+        final int[] registers = readRegisters(in, RegisterFile.getRegisters());
+        final int programCounter = in.readInt();
+        final int[] hiLo = readRegisters(in, RegisterFile.getHiLoRegisters());
+        final int[] coprocessor0 = readRegisters(in, Coprocessor0.getRegisters());
+        final boolean timerArmed = in.readBoolean();
+        final int interruptCount = in.readInt();
+        if (interruptCount < 0 || interruptCount > (1 << 20))
+            throw new IOException("Invalid interrupt request count " + interruptCount + " in snapshot");
+        final int[] interrupts = new int[interruptCount];
+        for (int i = 0; i < interruptCount; i++)
+            interrupts[i] = in.readInt();
+        final int[] coprocessor1 = readRegisters(in, Coprocessor1.getRegisters());
+        final int conditionFlags = in.readInt();
+        final long delayedBranch = in.readLong();
+        final Runnable memory = Globals.memory.readSnapshot(in);
+        // Files come last: reopening them is the only step with effects outside the snapshot
+        final Runnable files = SystemIO.readFilesSnapshot(in);
+        synchronized (Globals.memoryAndRegistersLock) {
+            setRegisters(RegisterFile.getRegisters(), registers);
+            RegisterFile.getProgramCounterRegister().setValue(programCounter);
+            setRegisters(RegisterFile.getHiLoRegisters(), hiLo);
+            EventScheduler.clear();
+            Simulator.setInterruptRequests(interrupts);
+            Coprocessor0.restoreRegisters(coprocessor0, timerArmed);
+            setRegisters(Coprocessor1.getRegisters(), coprocessor1);
+            Coprocessor1.setConditionFlags(conditionFlags);
+            DelayedBranch.setState(delayedBranch);
+            memory.run();
+            files.run();
+            Globals.memory.notifyDevicesRestored();
+        }
+    }
+
+    private static void writeRegisters(DataOutput out, Register[] registers) throws IOException {
+        out.writeInt(registers.length);
+        for (Register register : registers)
+            out.writeInt(register.getValueNoNotify());
+    }
+
+    private static int[] readRegisters(DataInput in, Register[] registers) throws IOException {
+        if (in.readInt() != registers.length)
+            throw new IOException("Snapshot register count mismatch");
+        int[] values = new int[registers.length];
+        for (int i = 0; i < values.length; i++)
+            values[i] = in.readInt();
+        return values;
+    }
+
+    private static void setRegisters(Register[] registers, int[] values) {
+        for (int i = 0; i < registers.length; i++)
+            registers[i].setValue(values[i]);
+    }
+}
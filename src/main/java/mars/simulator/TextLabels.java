@@ -0,0 +1,104 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.assembler.Symbol;
+import mars.assembler.SymbolTable;
+import mars.util.Binary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Text segment labels of the assembled program sorted by address, to find the label
+ * an instruction belongs to.  Global labels come from {@link Globals#symbolTable},
+ * local ones from the symbol tables of the given programs.
+ */
+class TextLabels {
+    // Address in the high half, see key(), index into names in the low half
+    private final long[] index;
+    private final String[] names;
+
+    TextLabels(Collection<MIPSprogram> programs) {
+        List<Symbol> symbols = new ArrayList<>();
+        if (Globals.symbolTable != null) {
+            symbols.addAll(Globals.symbolTable.getTextSymbols());
+        }
+        for (MIPSprogram program : programs) {
+            SymbolTable table = program.getLocalSymbolTable();
+            if (table != null) {
+                symbols.addAll(table.getTextSymbols());
+            }
+        }
+        names = new String[symbols.size()];
+        index = new long[symbols.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = symbols.get(i).getName();
+            index[i] = key(symbols.get(i).getAddress()) | i;
+        }
+        // Labels of the same address stay in the order found, globals first
+        Arrays.sort(index);
+    }
+
+    /**
+     * Returns the label at the given address, null if none.
+     */
+    String getLabelAt(int address) {
+        int i = find(address);
+        return (i >= 0 && addressAt(i) == address) ? names[(int) index[i]] : null;
+    }
+
+    /**
+     * Returns the closest label at or before the given address, or the address in hex
+     * if there is none.
+     */
+    String getEnclosingLabel(int address) {
+        int i = find(address);
+        return (i >= 0) ? names[(int) index[i]] : Binary.intToHexString(address);
+    }
+
+    // Index of the first label with the greatest address not above the given one, -1 if none
+    private int find(int address) {
+        // Sorts after every label at the address, the low half being larger than any index
+        int i = -Arrays.binarySearch(index, key(address) | 0xFFFFFFFFL) - 2;
+        while (i > 0 && addressAt(i - 1) == addressAt(i)) {
+            i--;
+        }
+        return i;
+    }
+
+    // Flipping the sign bit makes signed order of keys the unsigned order of addresses
+    private static long key(int address) {
+        return (long) (address ^ Integer.MIN_VALUE) << 32;
+    }
+
+    private int addressAt(int i) {
+        return (int) (index[i] >> 32) ^ Integer.MIN_VALUE;
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.ProgramStatement;
+import mars.mips.hardware.RegisterFile;
+import mars.util.Binary;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Reads an execution trace written by {@link TraceRecorder}, one record at a time.
+ * <p>
+ * Typical use:
+ * <pre>
+ * try (TraceReader reader = new TraceReader(new FileInputStream(file))) {
+ *     while (reader.next()) {
+ *         if (reader.getKind() == TraceReader.MEMORY_READ) ... reader.getAddress() ...
+ *     }
+ * }
+ * </pre>
+ * An instruction record is followed by the memory accesses and register writes made
+ * by that instruction.  The trace may also begin with register writes giving the
+ * initial value of the registers that were not zero.
+ */
+public class TraceReader implements Closeable {
+    /**
+     * Kinds of record, see {@link #getKind()}.
+     */
+    public static final int INSTRUCTION = 0, MEMORY_READ = 1, MEMORY_WRITE = 2, REGISTER_WRITE = 3;
+    /**
+     * Register numbers used by register write records: general registers are numbered
+     * 0 to 31, followed by HI, LO and the floating point registers $f0 to $f31.
+     */
+    public static final int HI_REGISTER = 32, LO_REGISTER = 33, FIRST_FP_REGISTER = 34, REGISTER_COUNT = 66;
+    // Encoding of the tag byte starting each record
+    static final int END = 7;
+    static final int KIND_MASK = 7;
+    static final int CACHED_WORD_FLAG = 8;
+    static final int SIZE_SHIFT = 3;
+
+    private final InputStream in;
+    private final int[] registerValues = new int[REGISTER_COUNT];
+    private final int[] cachedAddresses = new int[TraceRecorder.INSTRUCTION_WORD_CACHE_SIZE];
+    private final int[] cachedWords = new int[TraceRecorder.INSTRUCTION_WORD_CACHE_SIZE];
+    private int nextAddress;
+    private int memoryAddress;
+    private boolean ended;
+
+    private int kind;
+    private int address;
+    private int value;
+    private int size;
+    private int register;
+
+    /**
+     * Creates a reader of the given stream, which it closes when closed.
+     *
+     * @param in stream holding a trace
+     * @throws IOException if the stream does not start with a trace header
+     */
+    public TraceReader(InputStream in) throws IOException {
+        this.in = (in instanceof BufferedInputStream) ? in : new BufferedInputStream(in, 1 << 16);
+        byte[] magic = this.in.readNBytes(TraceRecorder.MAGIC.length);
+        if (!Arrays.equals(magic, TraceRecorder.MAGIC)) {
+            throw new IOException("Not a MARS execution trace");
+        }
+        Arrays.fill(cachedAddresses, 1);
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return false at the end of the trace
+     * @throws IOException if reading fails or the trace is truncated or corrupt
+     */
+    public boolean next() throws IOException {
+        if (ended) {
+            return false;
+        }
+        int tag = in.read();
+        if (tag < 0) {
+            throw new EOFException("Trace ends without an end record, it may be incomplete");
+        }
+        kind = tag & KIND_MASK;
+        switch (kind) {
+            case INSTRUCTION -> {
+                address = nextAddress + readSigned();
+                int index = (address >>> 2) & (TraceRecorder.INSTRUCTION_WORD_CACHE_SIZE - 1);
+                if ((tag & CACHED_WORD_FLAG) != 0) {
+                    if (cachedAddresses[index] != address) {
+                        throw new IOException("Corrupt trace: unknown instruction word at " + Binary.intToHexString(address));
+                    }
+                    value = cachedWords[index];
+                } else {
+                    value = readByte() | (readByte() << 8) | (readByte() << 16) | (readByte() << 24);
+                    cachedAddresses[index] = address;
+                    cachedWords[index] = value;
+                }
+                size = 4;
+                nextAddress = address + 4;
+            }
+            case MEMORY_READ, MEMORY_WRITE -> {
+                size = 1 << (tag >> SIZE_SHIFT);
+                address = memoryAddress + readSigned();
+                value = readSigned();
+                memoryAddress = address;
+            }
+            case REGISTER_WRITE -> {
+                register = readByte();
+                if (register >= REGISTER_COUNT) {
+                    throw new IOException("Corrupt trace: register number " + register);
+                }
+                value = registerValues[register] + readSigned();
+                registerValues[register] = value;
+                size = 4;
+            }
+            case END -> {
+                ended = true;
+                return false;
+            }
+            default -> throw new IOException("Corrupt trace: record kind " + kind);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the kind of the current record.
+     *
+     * @return {@link #INSTRUCTION}, {@link #MEMORY_READ}, {@link #MEMORY_WRITE} or {@link #REGISTER_WRITE}
+     */
+    public int getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the instruction address of an instruction record, the accessed address
+     * of a memory access record.
+     *
+     * @return address
+     */
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the instruction word of an instruction record, the value read or written
+     * by a memory access or the value written to a register.
+     *
+     * @return value
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the number of bytes accessed by a memory access record: 1, 2 or 4.
+     *
+     * @return size in bytes
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the register written by a register write record.
+     *
+     * @return register number, see {@link #HI_REGISTER}
+     */
+    public int getRegister() {
+        return register;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Returns the name of a register number used in register write records.
+     *
+     * @param register register number
+     * @return name such as $t0, hi or $f12
+     */
+    public static String getRegisterName(int register) {
+        if (register < HI_REGISTER) {
+            return RegisterFile.getRegisters()[register].getName();
+        }
+        if (register == HI_REGISTER) {
+            return "hi";
+        }
+        if (register == LO_REGISTER) {
+            return "lo";
+        }
+        return "$f" + (register - FIRST_FP_REGISTER);
+    }
+
+    /**
+     * Writes a trace as text, one line per record.  Instructions are disassembled, so
+     * the MIPS instruction set must have been initialized.
+     *
+     * @param in  stream holding a trace
+     * @param stream stream to write the text to
+     * @throws IOException if reading the trace fails
+     */
+    public static void convertToText(InputStream in, PrintStream stream) throws IOException {
+        // The given stream may flush every line, which would dominate the conversion time
+        PrintStream out = new PrintStream(new BufferedOutputStream(stream, 1 << 16), false);
+        // Lines of recently seen instructions, so loops are only disassembled once
+        String[] instructionLines = new String[TraceRecorder.INSTRUCTION_WORD_CACHE_SIZE];
+        try (TraceReader reader = new TraceReader(in)) {
+            while (reader.next()) {
+                switch (reader.getKind()) {
+                    case INSTRUCTION -> {
+                        int index = (reader.getAddress() >>> 2) & (instructionLines.length - 1);
+                        String prefix = Binary.intToHexString(reader.getAddress()) + "  " + Binary.intToHexString(reader.getValue()) + "  ";
+                        String line = instructionLines[index];
+                        if (line == null || !line.startsWith(prefix)) {
+                            line = prefix + new ProgramStatement(reader.getValue(), reader.getAddress()).getPrintableBasicAssemblyStatement();
+                            instructionLines[index] = line;
+                        }
+                        out.println(line);
+                    }
+                    case MEMORY_READ, MEMORY_WRITE -> out.println((reader.getKind() == MEMORY_READ ? "    read  " : "    write ")
+                            + Binary.intToHexString(reader.getAddress()) + " (" + reader.getSize() + ") "
+                            + Binary.intToHexString(reader.getValue()));
+                    default -> out.println("    " + getRegisterName(reader.getRegister()) + " = "
+                            + Binary.intToHexString(reader.getValue()));
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Trace ends in the middle of a record");
+        }
+        return b;
+    }
+
+    private int readSigned() throws IOException {
+        int bits = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            bits |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (bits >>> 1) ^ -(bits & 1);
+            }
+        }
+        throw new IOException("Corrupt trace: variable length integer too long");
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.Globals;
+import mars.ProgramStatement;
+import mars.mips.hardware.AccessNotice;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.MemoryAccessNotice;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records an execution trace in the compact binary format read by {@link TraceReader}.
+ * <p>
+ * For every executed instruction the trace holds its address and instruction word,
+ * followed by the memory accesses and register writes it made.  Addresses are stored as
+ * the difference from the expected address, values of registers as the difference from
+ * their previous value, all as variable length integers, and instruction words are only
+ * stored the first time they are seen at an address, so most instructions take a
+ * couple of bytes.  Register writes are found by comparing register write versions
+ * before each instruction instead of observing every register.
+ * <p>
+ * The simulator thread only encodes records into buffers.  A background thread writes
+ * full buffers to the stream; when it falls more than a few buffers behind, the
+ * simulator waits for it.
+ */
+public class TraceRecorder implements Simulator.InstructionListener, Observer, Closeable {
+    static final byte[] MAGIC = {'M', 'A', 'R', 'S', 'T', 'R', 'C', 1};
+    static final int INSTRUCTION_WORD_CACHE_SIZE = 4096;
+    static final int BUFFER_SIZE = 1 << 16;
+    private static final int QUEUED_BUFFERS = 8;
+    // Largest record, a memory access: tag and two 5 byte variable length integers
+    static final int MAX_RECORD_LENGTH = 11;
+
+    private final OutputStream out;
+    private final BlockingQueue<Buffer> full = new ArrayBlockingQueue<>(QUEUED_BUFFERS + 1);
+    private final BlockingQueue<Buffer> free = new ArrayBlockingQueue<>(QUEUED_BUFFERS + 1);
+    private final Thread writer;
+    private volatile IOException failure;
+    private Buffer buffer;
+    private boolean closed;
+
+    private final Register[] registers = new Register[TraceReader.REGISTER_COUNT];
+    private final int[] registerVersions = new int[TraceReader.REGISTER_COUNT];
+    private final int[] registerValues = new int[TraceReader.REGISTER_COUNT];
+    private final int[] cachedAddresses = new int[INSTRUCTION_WORD_CACHE_SIZE];
+    private final int[] cachedWords = new int[INSTRUCTION_WORD_CACHE_SIZE];
+    private int nextAddress;
+    private int memoryAddress;
+    private boolean executing;
+
+    private static final class Buffer {
+        final byte[] bytes = new byte[BUFFER_SIZE];
+        int length;
+    }
+
+    /**
+     * Creates a recorder writing to the given stream, which it closes when closed.
+     *
+     * @param out stream to write the trace to
+     * @throws IOException if the header cannot be written
+     */
+    public TraceRecorder(OutputStream out) throws IOException {
+        this.out = out;
+        out.write(MAGIC);
+        for (int i = 0; i < QUEUED_BUFFERS; i++) {
+            free.add(new Buffer());
+        }
+        buffer = new Buffer();
+        // An unaligned address never matches an instruction address
+        Arrays.fill(cachedAddresses, 1);
+        Register[] generalRegisters = RegisterFile.getRegisters();
+        System.arraycopy(generalRegisters, 0, registers, 0, TraceReader.HI_REGISTER);
+        registers[TraceReader.HI_REGISTER] = RegisterFile.getHiLoRegisters()[0];
+        registers[TraceReader.LO_REGISTER] = RegisterFile.getHiLoRegisters()[1];
+        System.arraycopy(Coprocessor1.getRegisters(), 0, registers, TraceReader.FIRST_FP_REGISTER,
+                TraceReader.REGISTER_COUNT - TraceReader.FIRST_FP_REGISTER);
+        writer = new Thread(this::writeBuffers, "Trace writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Starts recording the instructions executed by the simulator.  The current
+     * value of every register that is not zero is recorded first.
+     */
+    public void start() {
+        for (int register = 0; register < registers.length; register++) {
+            registerVersions[register] = registers[register].getVersion();
+            int value = registers[register].getValueNoNotify();
+            if (value != 0) {
+                writeRegister(register, value);
+            }
+        }
+        Simulator.getInstance().addInstructionListener(this);
+        Globals.memory.addObserver(this);
+    }
+
+    /**
+     * Records an instruction, after the register writes of the previous one.
+     */
+    public void instructionStarted(int address, ProgramStatement statement) {
+        recordRegisterWrites();
+        int word = statement.getBinaryStatement();
+        int index = (address >>> 2) & (INSTRUCTION_WORD_CACHE_SIZE - 1);
+        boolean cached = cachedAddresses[index] == address && cachedWords[index] == word;
+        reserve();
+        putByte(TraceReader.INSTRUCTION | (cached ? TraceReader.CACHED_WORD_FLAG : 0));
+        putSigned(address - nextAddress);
+        if (!cached) {
+            cachedAddresses[index] = address;
+            cachedWords[index] = word;
+            putByte(word);
+            putByte(word >> 8);
+            putByte(word >> 16);
+            putByte(word >> 24);
+        }
+        nextAddress = address + 4;
+        executing = true;
+    }
+
+    public void instructionCompleted(int address, ProgramStatement statement) {
+        executing = false;
+    }
+
+    /**
+     * Records a memory access made by the instruction being executed.  Instruction
+     * fetches, which happen between instructions, are left out.
+     */
+    public void update(Observable memory, Object obj) {
+        if (!executing || !(obj instanceof MemoryAccessNotice notice) || !notice.accessIsFromMIPS()) {
+            return;
+        }
+        int kind = (notice.getAccessType() == AccessNotice.WRITE) ? TraceReader.MEMORY_WRITE : TraceReader.MEMORY_READ;
+        int length = notice.getLength();
+        int sizeCode = (length == 1) ? 0 : (length == 2) ? 1 : 2;
+        reserve();
+        putByte(kind | (sizeCode << TraceReader.SIZE_SHIFT));
+        putSigned(notice.getAddress() - memoryAddress);
+        putSigned(notice.getValue());
+        memoryAddress = notice.getAddress();
+    }
+
+    /**
+     * Stops recording, waits until the whole trace has been written and closes the stream.
+     *
+     * @throws IOException if writing the trace failed
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Simulator.getInstance().removeInstructionListener(this);
+        Globals.memory.deleteObserver(this);
+        recordRegisterWrites();
+        reserve();
+        putByte(TraceReader.END);
+        handOff(buffer);
+        handOff(new Buffer()); // empty buffer tells the writer to stop
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void recordRegisterWrites() {
+        for (int register = 0; register < registers.length; register++) {
+            int version = registers[register].getVersion();
+            if (version != registerVersions[register]) {
+                registerVersions[register] = version;
+                writeRegister(register, registers[register].getValueNoNotify());
+            }
+        }
+    }
+
+    private void writeRegister(int register, int value) {
+        reserve();
+        putByte(TraceReader.REGISTER_WRITE);
+        putByte(register);
+        putSigned(value - registerValues[register]);
+        registerValues[register] = value;
+    }
+
+    // Makes room for one record, handing the buffer to the writer if needed
+    private void reserve() {
+        if (buffer.length > BUFFER_SIZE - MAX_RECORD_LENGTH) {
+            handOff(buffer);
+            buffer = take(free);
+            buffer.length = 0;
+        }
+    }
+
+    private void handOff(Buffer full) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                this.full.put(full);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Buffer take(BlockingQueue<Buffer> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void putByte(int value) {
+        buffer.bytes[buffer.length++] = (byte) value;
+    }
+
+    // Zigzag then variable length encoding, so small negative numbers are short too
+    private void putSigned(int value) {
+        int bits = (value << 1) ^ (value >> 31);
+        while ((bits & ~0x7F) != 0) {
+            buffer.bytes[buffer.length++] = (byte) ((bits & 0x7F) | 0x80);
+            bits >>>= 7;
+        }
+        buffer.bytes[buffer.length++] = (byte) bits;
+    }
+
+    // Body of the writer thread.  After a failure buffers are still taken, so the
+    // simulator never blocks, but dropped.
+    private void writeBuffers() {
+        while (true) {
+            Buffer next = take(full);
+            if (next.length == 0) {
+                return;
+            }
+            if (failure == null) {
+                try {
+                    out.write(next.bytes, 0, next.length);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            free.offer(next);
+        }
+    }
+}
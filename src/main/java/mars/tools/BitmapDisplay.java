@@ -27,13 +27,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package mars.tools;
 
+import mars.Globals;
 import mars.mips.hardware.AccessNotice;
+import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.MemoryAccessNotice;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 import java.util.Observable;
 
 /**
@@ -46,6 +51,8 @@ public class BitmapDisplay extends AbstractMarsToolAndApplication {
 
     private static final String version = "Version 1.0";
     private static final String heading = "Bitmap Display";
+    // Upper limit on display refreshes per second while the program draws
+    private static final int FRAMES_PER_SECOND = 60;
     // Some GUI settings
     private final EmptyBorder emptyBorder = new EmptyBorder(4, 4, 4, 4);
     private final Font countFonts = new Font("Times", Font.BOLD, 12);
@@ -65,6 +72,8 @@ public class BitmapDisplay extends AbstractMarsToolAndApplication {
     private Graphics drawingArea;
     private JPanel canvas;
     private JPanel results;
+    // Repaints what was drawn since the previous frame, started by the first write of a frame
+    private Timer frameTimer;
 
     // Values for display canvas.  Note their initialization uses the identifiers just above.
     private int unitPixelWidth = Integer.parseInt(visualizationUnitPixelWidthChoices[defaultVisualizationUnitPixelWidthIndex]);
@@ -79,7 +88,7 @@ public class BitmapDisplay extends AbstractMarsToolAndApplication {
     private int defaultBaseAddressIndex;
     private int baseAddress;
 
-    private Grid theGrid;
+    private volatile Grid theGrid;
 
     /**
      * Simple constructor, likely used to run a stand-alone bitmap display tool.
@@ -212,12 +221,25 @@ public class BitmapDisplay extends AbstractMarsToolAndApplication {
     }
 
     /**
-     * Updates display immediately after each update (AccessNotice) is processed, after
+     * Updates display after each update (AccessNotice) is processed, after
      * display configuration changes as needed, and after each execution step when Mars
      * is running in timed mode.  Overrides inherited method that does nothing.
+     * Only the part of the display drawn since the previous frame is repainted, at most
+     * FRAMES_PER_SECOND times per second.
      */
     protected void updateDisplay() {
-        canvas.repaint();
+        if (theGrid.scheduleFrame() && frameTimer != null) {
+            frameTimer.restart();
+        }
+    }
+
+    // Repaint the units drawn since the previous frame.  Runs on the event dispatch thread.
+    private void paintFrame() {
+        Rectangle drawn = theGrid.takeDrawnArea();
+        if (drawn != null) {
+            canvas.repaint(drawn.x * unitPixelWidth, drawn.y * unitPixelHeight,
+                    drawn.width * unitPixelWidth, drawn.height * unitPixelHeight);
+        }
     }
 
 
@@ -367,6 +389,8 @@ public class BitmapDisplay extends AbstractMarsToolAndApplication {
         canvas = new GraphicsPanel();
         canvas.setPreferredSize(getDisplayAreaDimension());
         canvas.setToolTipText("Bitmap display area");
+        frameTimer = new Timer(1000 / FRAMES_PER_SECOND, e -> paintFrame());
+        frameTimer.setRepeats(false);
         return canvas;
     }
 
@@ -434,21 +458,32 @@ public class BitmapDisplay extends AbstractMarsToolAndApplication {
 
     // Method to determine grid dimensions based on current control settings.
     // Each grid element corresponds to one visualization unit.
+    // The new grid starts with the colors already in memory.
     private Grid createNewGrid() {
         int rows = displayAreaHeightInPixels / unitPixelHeight;
         int columns = displayAreaWidthInPixels / unitPixelWidth;
-        return new Grid(rows, columns);
+        Grid grid = new Grid(rows, columns);
+        grid.load(baseAddress);
+        return grid;
     }
 
     // Given memory address, update color for the corresponding grid element.
     private void updateColorForAddress(MemoryAccessNotice notice) {
         int address = notice.getAddress();
         int value = notice.getValue();
+        if (notice.getLength() != Memory.WORD_LENGTH_BYTES) {
+            // A byte or halfword store changes part of the color, use the whole word
+            try {
+                value = Globals.memory.getRawWord(address - address % Memory.WORD_LENGTH_BYTES);
+            } catch (AddressErrorException e) {
+                return;
+            }
+        }
         int offset = (address - baseAddress) / Memory.WORD_LENGTH_BYTES;
-        try {
-            theGrid.setElement(offset / theGrid.getColumns(), offset % theGrid.getColumns(), value);
-        } catch (IndexOutOfBoundsException e) {
-            // If address is out of range for display, do nothing.
+        Grid grid = theGrid;
+        // If address is out of range for display, do nothing.
+        if (address - baseAddress >= 0 && offset < grid.getRows() * grid.getColumns()) {
+            grid.setElement(offset / grid.getColumns(), offset % grid.getColumns(), value);
         }
     }
 
@@ -469,31 +504,30 @@ public class BitmapDisplay extends AbstractMarsToolAndApplication {
             paintGrid(g, theGrid);
         }
 
-        // Paint the color codes.
+        // Paint the color codes, scaling each grid element to a unit.  Only the area to
+        // repaint, the clip, is actually drawn.
         private void paintGrid(Graphics g, Grid grid) {
-            int upperLeftX = 0, upperLeftY = 0;
-            for (int i = 0; i < grid.getRows(); i++) {
-                for (int j = 0; j < grid.getColumns(); j++) {
-                    g.setColor(grid.getElementFast(i, j));
-                    g.fillRect(upperLeftX, upperLeftY, unitPixelWidth, unitPixelHeight);
-                    upperLeftX += unitPixelWidth;   // faster than multiplying
-                }
-                // get ready for next row...
-                upperLeftX = 0;
-                upperLeftY += unitPixelHeight;     // faster than multiplying
-            }
+            g.drawImage(grid.getImage(), 0, 0, grid.getColumns() * unitPixelWidth,
+                    grid.getRows() * unitPixelHeight, null);
         }
     }
 
     ////////////////////////////////////////////////////////////////////////
-    // Represents grid of colors
+    // Represents grid of colors, as an image with one pixel per grid element.  The
+    // simulator thread writes the pixels directly, the event dispatch thread draws them.
     private static class Grid {
 
-        Color[][] grid;
-        int rows, columns;
+        private final BufferedImage image;
+        private final int[] pixels;
+        private final int rows, columns;
+        // Bounding box of the elements drawn since the last frame, empty if minRow > maxRow,
+        // and whether a frame has been scheduled to repaint it.  Guarded by this.
+        private int minRow, maxRow, minColumn, maxColumn;
+        private boolean frameScheduled;
 
         private Grid(int rows, int columns) {
-            grid = new Color[rows][columns];
+            image = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
             this.rows = rows;
             this.columns = columns;
             reset();
@@ -507,36 +541,66 @@ public class BitmapDisplay extends AbstractMarsToolAndApplication {
             return columns;
         }
 
-        // Returns value in given grid element; null if row or column is out of range.
-        private Color getElement(int row, int column) {
-            return (row >= 0 && row <= rows && column >= 0 && column <= columns) ? grid[row][column] : null;
-        }
-
-        // Returns value in given grid element without doing any row/column index checking.
-        // Is faster than getElement but will throw array index out of bounds exception if
-        // parameter values are outside the bounds of the grid.
-        private Color getElementFast(int row, int column) {
-            return grid[row][column];
+        private BufferedImage getImage() {
+            return image;
         }
 
-        // Set the grid element.
+        // Set the grid element, the upper 8 bits of the color are ignored.
         private void setElement(int row, int column, int color) {
-            grid[row][column] = new Color(color);
+            pixels[row * columns + column] = color;
+            synchronized (this) {
+                minRow = Math.min(minRow, row);
+                maxRow = Math.max(maxRow, row);
+                minColumn = Math.min(minColumn, column);
+                maxColumn = Math.max(maxColumn, column);
+            }
         }
 
-        // Set the grid element.
-        private void setElement(int row, int column, Color color) {
-            grid[row][column] = color;
+        // Copy the colors from the memory words starting at the given address.  Elements
+        // for unallocated or invalid memory are left as they are.
+        private void load(int baseAddress) {
+            try {
+                Globals.memory.getRawWords(baseAddress, pixels, 0, pixels.length);
+            } catch (AddressErrorException | IndexOutOfBoundsException ignored) {
+                // Display extends beyond the end of memory, show what was read
+            }
+            drawnAll();
         }
 
         // Just set all grid elements to black.
         private void reset() {
-            for (int i = 0; i < rows; i++) {
-                for (int j = 0; j < columns; j++) {
-                    grid[i][j] = Color.BLACK;
-                }
+            Arrays.fill(pixels, 0);
+            drawnAll();
+        }
+
+        private synchronized void drawnAll() {
+            minRow = 0;
+            maxRow = rows - 1;
+            minColumn = 0;
+            maxColumn = columns - 1;
+        }
+
+        // Returns true if a frame must be scheduled to repaint what was drawn, false if one
+        // already is.
+        private synchronized boolean scheduleFrame() {
+            if (frameScheduled || minRow > maxRow) {
+                return false;
             }
+            frameScheduled = true;
+            return true;
         }
-    }
 
-}
\ No newline at end of file
+        // Returns the area drawn since the last frame in grid elements, null if none, and
+        // starts the next frame.
+        private synchronized Rectangle takeDrawnArea() {
+            frameScheduled = false;
+            if (minRow > maxRow) {
+                return null;
+            }
+            Rectangle drawn = new Rectangle(minColumn, minRow, maxColumn - minColumn + 1, maxRow - minRow + 1);
+            minRow = minColumn = Integer.MAX_VALUE;
+            maxRow = maxColumn = Integer.MIN_VALUE;
+            return drawn;
+        }
+    }
+}
@@ -4,13 +4,14 @@ import mars.Globals;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Coprocessor0;
 import mars.mips.hardware.Memory;
-import mars.mips.hardware.MemoryAccessNotice;
+import mars.mips.hardware.MemoryMappedDevice;
+import mars.simulator.EventScheduler;
+import mars.simulator.Simulator;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.util.Observable;
 
 /* Add these two lines in exceptions.java file
  * public static final int EXTERNAL_INTERRUPT_TIMER = 0x00000100; //Add for digital Lab Sim
@@ -39,7 +40,6 @@ public class DigitalLabSim extends AbstractMarsToolAndApplication {
     // Keyboard
     private static int KeyBoardValueButtonClick = -1; // -1 no button click
     private static boolean KeyboardInterruptOnOff = false;
-    private static int CounterValue = CounterValueMax;
     private static boolean CounterInterruptOnOff = false;
     private static OneSecondCounter SecondCounter;
 
@@ -63,39 +63,66 @@ public class DigitalLabSim extends AbstractMarsToolAndApplication {
         return "Digital Lab Sim";
     }
 
+    private final MemoryMappedDevice device = new MemoryMappedDevice() {
+        public int read(int address, int length, int value) {
+            return value;
+        }
+
+        public void write(int address, int length, int value) {
+            char data = (char) value;
+            if (address == IN_ADRESS_DISPLAY_1)
+                updateSevenSegment(1, data);
+            else if (address == IN_ADRESS_DISPLAY_2)
+                updateSevenSegment(0, data);
+            else if (address == IN_ADRESS_HEXA_KEYBOARD)
+                updateHexaKeyboard(data);
+            else if (address == IN_ADRESS_COUNTER)
+                updateOneSecondCounter(data);
+        }
+
+        // A snapshot was restored: follow the restored keyboard and counter commands
+        public void restored() {
+            KeyboardInterruptOnOff = (readCommandByte(IN_ADRESS_HEXA_KEYBOARD) & 0xF0) != 0;
+            updateOneSecondCounter((char) readCommandByte(IN_ADRESS_COUNTER));
+        }
+    };
+
+    // Next counter interrupt, every CounterValueMax instructions while enabled
+    private EventScheduler.Event counterTick;
+
+    private static int readCommandByte(int address) {
+        try {
+            int word = Globals.memory.getRawWord(address & ~3);
+            int byteInWord = (Globals.memory.getByteOrder() == Memory.LITTLE_ENDIAN) ? address & 3 : 3 - (address & 3);
+            return (word >>> (byteInWord * 8)) & 0xFF;
+        } catch (AddressErrorException aee) {
+            System.out.println("Tool author specified incorrect MMIO address!" + aee);
+            System.exit(0);
+        }
+        return 0; // to satisfy the compiler -- this will never happen.
+    }
+
     protected void addAsObserver() {
-        addAsObserver(IN_ADRESS_DISPLAY_1, IN_ADRESS_DISPLAY_1);
-        addAsObserver(Memory.textBaseAddress, Memory.textLimitAddress);
+        try {
+            Globals.memory.addDevice(device, IN_ADRESS_DISPLAY_1, OUT_ADRESS_HEXA_KEYBOARD);
+        } catch (AddressErrorException aee) {
+            System.out.println("Tool author specified incorrect MMIO address!" + aee);
+            System.exit(0);
+        } catch (IllegalArgumentException iae) {
+            JOptionPane.showMessageDialog(theWindow, "Cannot connect: " + iae.getMessage());
+        }
     }
 
-    @Override
-    public void update(Observable ressource, Object accessNotice) {
-        MemoryAccessNotice notice = (MemoryAccessNotice) accessNotice;
-        int address = notice.getAddress();
-        char value = (char) notice.getValue();
-        if (address == IN_ADRESS_DISPLAY_1)
-            updateSevenSegment(1, value);
-        else if (address == IN_ADRESS_DISPLAY_2)
-            updateSevenSegment(0, value);
-        else if (address == IN_ADRESS_HEXA_KEYBOARD)
-            updateHexaKeyboard(value);
-        else if (address == IN_ADRESS_COUNTER)
-            updateOneSecondCounter(value);
-        if (CounterInterruptOnOff)
-            if (CounterValue > 0) {
-                CounterValue--;
-            } else {
-                CounterValue = CounterValueMax;
-                if ((Coprocessor0.getValue(Coprocessor0.STATUS) & 2) == 0) {
-                    mars.simulator.Simulator.externalInterruptingDevice = /*Exceptions.*/EXTERNAL_INTERRUPT_TIMER;
-                }
-            }
+    protected void deleteAsObserver() {
+        Globals.memory.removeDevice(device);
+        stopCounter();
     }
 
     protected void reset() {
         sevenSegPanel.resetSevenSegment();
         hexaKeyPanel.resetHexaKeyboard();
         SecondCounter.resetOneSecondCounter();
+        stopCounter();
     }
 
     protected JComponent buildMainDisplayArea() {
@@ -178,14 +205,32 @@ public class DigitalLabSim extends AbstractMarsToolAndApplication {
     /* ....................Hexa Keyboard end here................................... */
     /* ....................Timer start here................................... */
     public void updateOneSecondCounter(char value) {
+        stopCounter();
         if (value != 0) {
             CounterInterruptOnOff = true;
-            CounterValue = CounterValueMax;
+            scheduleCounterTick();
         } else {
             CounterInterruptOnOff = false;
         }
     }
 
+    private void scheduleCounterTick() {
+        counterTick = EventScheduler.schedule(CounterValueMax, () -> {
+            // A tick while the previous one is being handled is dropped rather than queued
+            if ((Coprocessor0.getValue(Coprocessor0.STATUS) & 2) == 0) {
+                Simulator.requestInterrupt(/*Exceptions.*/EXTERNAL_INTERRUPT_TIMER);
+            }
+            scheduleCounterTick();
+        });
+    }
+
+    private void stopCounter() {
+        synchronized (Globals.memoryAndRegistersLock) {
+            EventScheduler.cancel(counterTick);
+            counterTick = null;
+        }
+    }
+
     public static class SevenSegmentDisplay extends JComponent {
         public char aff;
 
@@ -356,8 +401,8 @@ public class DigitalLabSim extends AbstractMarsToolAndApplication {
                 } else { // new button pressed
                     KeyBoardValueButtonClick = buttonValue;
                     button[KeyBoardValueButtonClick].setBackground(Color.GREEN);
-                    if (KeyboardInterruptOnOff && (Coprocessor0.getValue(Coprocessor0.STATUS) & 2) == 0) {
-                        mars.simulator.Simulator.externalInterruptingDevice = /*Exceptions.*/EXTERNAL_INTERRUPT_HEXA_KEYBOARD;
+                    if (KeyboardInterruptOnOff) {
+                        Simulator.requestInterrupt(/*Exceptions.*/EXTERNAL_INTERRUPT_HEXA_KEYBOARD);
                     }
                 }
             }
@@ -371,7 +416,6 @@ public class DigitalLabSim extends AbstractMarsToolAndApplication {
 
         public void resetOneSecondCounter() {
             CounterInterruptOnOff = false;
-            CounterValue = CounterValueMax;
         }
     }
 }
\ No newline at end of file
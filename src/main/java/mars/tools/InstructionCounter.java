@@ -26,23 +26,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package mars.tools;
 
+import mars.Globals;
 import mars.ProgramStatement;
-import mars.mips.hardware.AccessNotice;
 import mars.mips.hardware.AddressErrorException;
-import mars.mips.hardware.Memory;
-import mars.mips.hardware.MemoryAccessNotice;
 import mars.mips.instructions.BasicInstruction;
 import mars.mips.instructions.BasicInstructionFormat;
+import mars.simulator.Profiler;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.Observable;
 
 /**
  * Instruction counter tool. Can be used to know how many instructions
  * were executed to complete a given program.
  * <p>
- * Code slightly based on MemoryReferenceVisualization.
+ * Code slightly based on MemoryReferenceVisualization.  Instructions are counted by a
+ * {@link Profiler} while the tool is connected, and the display is refreshed from its
+ * counts a few times per second.
  *
  * @author Felipe Lessa <felipe.lessa@gmail.com>
  */
@@ -50,29 +50,26 @@ public class InstructionCounter extends AbstractMarsToolAndApplication {
     private static final String name = "Instruction Counter";
     private static final String version = "Version 1.0 (Felipe Lessa)";
     private static final String heading = "Counting the number of instructions executed";
+    private static final int REFRESH_INTERVAL = 100;
 
     /**
      * Number of instructions executed until now.
      */
-    protected int counter = 0;
+    protected long counter = 0;
     /**
      * Number of instructions of type R.
      */
-    protected int counterR = 0;
+    protected long counterR = 0;
     /**
      * Number of instructions of type I.
      */
-    protected int counterI = 0;
+    protected long counterI = 0;
     /**
      * Number of instructions of type J.
      */
-    protected int counterJ = 0;
-    /**
-     * The last address we saw. We ignore it because the only way for a
-     * program to execute twice the same instruction is to enter an infinite
-     * loop, which is not insteresting in the POV of counting instructions.
-     */
-    protected int lastAddress = -1;
+    protected long counterJ = 0;
+    private final Profiler profiler = new Profiler();
+    private final Timer refreshTimer = new Timer(REFRESH_INTERVAL, e -> updateDisplay());
     private JTextField counterField;
     private JTextField counterRField;
     private JProgressBar progressbarR;
@@ -184,73 +181,74 @@ public class InstructionCounter extends AbstractMarsToolAndApplication {
 
     @Override
     protected void addAsObserver() {
-        addAsObserver(Memory.textBaseAddress, Memory.textLimitAddress);
+        profiler.start();
+        refreshTimer.start();
     }
 
     @Override
-    protected void processMIPSUpdate(Observable resource, AccessNotice notice) {
-        if (!notice.accessIsFromMIPS()) return;
-        if (notice.getAccessType() != AccessNotice.READ) return;
-        MemoryAccessNotice m = (MemoryAccessNotice) notice;
-        int a = m.getAddress();
-        if (a == lastAddress) return;
-        lastAddress = a;
-        counter++;
-        try {
-            ProgramStatement stmt = Memory.getInstance().getStatement(a);
-            BasicInstruction instr = (BasicInstruction) stmt.getInstruction();
-            BasicInstructionFormat format = instr.getInstructionFormat();
-            if (format == BasicInstructionFormat.R_FORMAT)
-                counterR++;
-            else if (format == BasicInstructionFormat.I_FORMAT
-                    || format == BasicInstructionFormat.I_BRANCH_FORMAT)
-                counterI++;
-            else if (format == BasicInstructionFormat.J_FORMAT)
-                counterJ++;
-        } catch (AddressErrorException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+    protected void deleteAsObserver() {
+        profiler.stop();
+        refreshTimer.stop();
         updateDisplay();
     }
 
     @Override
     protected void initializePreGUI() {
         counter = counterR = counterI = counterJ = 0;
-        lastAddress = -1;
     }
 
     @Override
     protected void reset() {
-        counter = counterR = counterI = counterJ = 0;
-        lastAddress = -1;
+        profiler.reset();
         updateDisplay();
     }
 
+    // Count the instructions of each format, weighting every executed instruction by its count
+    private void countFormats() {
+        counter = profiler.getTotal();
+        counterR = counterI = counterJ = 0;
+        profiler.forEachCount((address, count) -> {
+            ProgramStatement stmt;
+            try {
+                stmt = Globals.memory.getStatementNoNotify(address);
+            } catch (AddressErrorException e) {
+                return;
+            }
+            if (stmt == null || !(stmt.getInstruction() instanceof BasicInstruction instr))
+                return;
+            BasicInstructionFormat format = instr.getInstructionFormat();
+            if (format == BasicInstructionFormat.R_FORMAT)
+                counterR += count;
+            else if (format == BasicInstructionFormat.I_FORMAT
+                    || format == BasicInstructionFormat.I_BRANCH_FORMAT)
+                counterI += count;
+            else if (format == BasicInstructionFormat.J_FORMAT)
+                counterJ += count;
+        });
+    }
+
     @Override
     protected void updateDisplay() {
+        if (counterField == null)
+            return;
+        countFormats();
         counterField.setText(String.valueOf(counter));
 
         counterRField.setText(String.valueOf(counterR));
-        progressbarR.setMaximum(counter);
-        progressbarR.setValue(counterR);
+        progressbarR.setValue(percent(counterR));
 
         counterIField.setText(String.valueOf(counterI));
-        progressbarI.setMaximum(counter);
-        progressbarI.setValue(counterI);
+        progressbarI.setValue(percent(counterI));
 
         counterJField.setText(String.valueOf(counterJ));
-        progressbarJ.setMaximum(counter);
-        progressbarJ.setValue(counterJ);
-
-        if (counter == 0) {
-            progressbarR.setString("0%");
-            progressbarI.setString("0%");
-            progressbarJ.setString("0%");
-        } else {
-            progressbarR.setString((counterR * 100) / counter + "%");
-            progressbarI.setString((counterI * 100) / counter + "%");
-            progressbarJ.setString((counterJ * 100) / counter + "%");
-        }
+        progressbarJ.setValue(percent(counterJ));
+
+        progressbarR.setString(percent(counterR) + "%");
+        progressbarI.setString(percent(counterI) + "%");
+        progressbarJ.setString(percent(counterJ) + "%");
+    }
+
+    private int percent(long count) {
+        return (counter == 0) ? 0 : (int) (count * 100 / counter);
     }
 }
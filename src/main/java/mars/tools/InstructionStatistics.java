@@ -27,20 +27,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package mars.tools;
 
+import mars.Globals;
 import mars.ProgramStatement;
-import mars.mips.hardware.AccessNotice;
 import mars.mips.hardware.AddressErrorException;
-import mars.mips.hardware.Memory;
-import mars.mips.hardware.MemoryAccessNotice;
+import mars.simulator.Profiler;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.Observable;
 
 /**
  * A MARS tool for obtaining instruction statistics by instruction category.
  * <p>
  * The code of this tools is initially based on the Instruction counter tool by Felipe Lassa.
+ * Instructions are counted by a {@link Profiler} while the tool is connected, and the
+ * display is refreshed from its counts a few times per second.
  *
  * @author Ingo Kofler <ingo.kofler@itec.uni-klu.ac.at>
  */
@@ -92,20 +92,27 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication {
      * constant for any other instruction category
      */
     private static final int CATEGORY_OTHER = 4;
+
+    /**
+     * milliseconds between refreshes of the display while connected
+     */
+    private static final int REFRESH_INTERVAL = 100;
     /**
      * array of counter variables - one for each instruction category
      */
-    private final int[] m_counters = new int[MAX_CATEGORY];
+    private final long[] m_counters = new long[MAX_CATEGORY];
     /**
      * names of the instruction categories as array
      */
     private final String[] m_categoryLabels = {"ALU", "Jump", "Branch", "Memory", "Other"};
     /**
-     * The last address we saw. We ignore it because the only way for a
-     * program to execute twice the same instruction is to enter an infinite
-     * loop, which is not insteresting in the POV of counting instructions.
+     * counts the executed instructions while the tool is connected
      */
-    protected int lastAddress = -1;
+    private final Profiler m_profiler = new Profiler();
+    /**
+     * refreshes the display while the tool is connected
+     */
+    private final Timer m_refreshTimer = new Timer(REFRESH_INTERVAL, e -> updateDisplay());
     /**
      * text field for visualizing the total number of instructions processed
      */
@@ -119,13 +126,10 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication {
      */
     private JProgressBar[] m_pbCounters;
 
-
-    // From Felipe Lessa's instruction counter.  Prevent double-counting of instructions 
-    // which happens because 2 read events are generated.   
     /**
      * counter for the total number of instructions processed
      */
-    private int m_totalCounter = 0;
+    private long m_totalCounter = 0;
 
     /**
      * Simple constructor, likely used to run a stand-alone enhanced instruction counter.
@@ -206,10 +210,20 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication {
     }
 
     /**
-     * registers the tool as observer for the text segment of the MIPS program
+     * starts counting the instructions executed by the MIPS program
      */
     protected void addAsObserver() {
-        addAsObserver(Memory.textBaseAddress, Memory.textLimitAddress);
+        m_profiler.start();
+        m_refreshTimer.start();
+    }
+
+    /**
+     * stops counting and shows the final counts
+     */
+    protected void deleteAsObserver() {
+        m_profiler.stop();
+        m_refreshTimer.stop();
+        updateDisplay();
     }
 
     /**
@@ -267,46 +281,22 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication {
     }
 
     /**
-     * method that is called each time the MIPS simulator accesses the text segment.
-     * Before an instruction is executed by the simulator, the instruction is fetched from the program memory.
-     * This memory access is observed and the corresponding instruction is decoded and categorized by the tool.
-     * According to the category the counter values are increased and the display gets updated.
-     *
-     * @param resource the observed resource
-     * @param notice   signals the type of access (memory, register etc.)
+     * categorizes the executed instructions, weighting each by its execution count.
      */
-    protected void processMIPSUpdate(Observable resource, AccessNotice notice) {
-
-        if (!notice.accessIsFromMIPS())
-            return;
-
-        // check for a read access in the text segment
-        if (notice.getAccessType() == AccessNotice.READ && notice instanceof MemoryAccessNotice memAccNotice) {
-
-            // The next three statments are from Felipe Lessa's instruction counter.  Prevents double-counting.
-            int a = memAccNotice.getAddress();
-            if (a == lastAddress)
-                return;
-            lastAddress = a;
-
+    private void countCategories() {
+        m_totalCounter = m_profiler.getTotal();
+        for (int i = 0; i < InstructionStatistics.MAX_CATEGORY; i++)
+            m_counters[i] = 0;
+        m_profiler.forEachCount((address, count) -> {
             try {
-
                 // access the statement in the text segment without notifying other tools etc.
-                ProgramStatement stmt = Memory.getInstance().getStatementNoNotify(memAccNotice.getAddress());
-
-                // necessary to handle possible null pointers at the end of the program
-                // (e.g., if the simulator tries to execute the next instruction after the last instruction in the text segment)
-                if (stmt != null) {
-                    int category = getInstructionCategory(stmt);
-
-                    m_totalCounter++;
-                    m_counters[category]++;
-                    updateDisplay();
-                }
+                ProgramStatement stmt = Globals.memory.getStatementNoNotify(address);
+                if (stmt != null)
+                    m_counters[getInstructionCategory(stmt)] += count;
             } catch (AddressErrorException e) {
                 // silently ignore these exceptions
             }
-        }
+        });
     }
 
     /**
@@ -314,7 +304,6 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication {
      */
     protected void initializePreGUI() {
         m_totalCounter = 0;
-        lastAddress = -1; // from Felipe Lessa's instruction counter tool
         for (int i = 0; i < InstructionStatistics.MAX_CATEGORY; i++)
             m_counters[i] = 0;
     }
@@ -323,10 +312,7 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication {
      * resets the counter values of the tool and updates the display.
      */
     protected void reset() {
-        m_totalCounter = 0;
-        lastAddress = -1; // from Felipe Lessa's instruction counter tool
-        for (int i = 0; i < InstructionStatistics.MAX_CATEGORY; i++)
-            m_counters[i] = 0;
+        m_profiler.reset();
         updateDisplay();
     }
 
@@ -334,12 +320,14 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication {
      * updates the text fields and progress bars according to the current counter values.
      */
     protected void updateDisplay() {
+        if (m_tfTotalCounter == null)
+            return;
+        countCategories();
         m_tfTotalCounter.setText(String.valueOf(m_totalCounter));
 
         for (int i = 0; i < InstructionStatistics.MAX_CATEGORY; i++) {
             m_tfCounters[i].setText(String.valueOf(m_counters[i]));
-            m_pbCounters[i].setMaximum(m_totalCounter);
-            m_pbCounters[i].setValue(m_counters[i]);
+            m_pbCounters[i].setValue((m_totalCounter == 0) ? 0 : (int) (m_counters[i] * 100 / m_totalCounter));
         }
     }
 }
@@ -29,6 +29,7 @@ package mars.tools;
 
 import mars.Globals;
 import mars.mips.hardware.*;
+import mars.simulator.EventScheduler;
 import mars.simulator.Exceptions;
 import mars.util.Binary;
 import mars.venus.AbstractFontSettingDialog;
@@ -41,7 +42,6 @@ import javax.swing.text.DefaultCaret;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.Arrays;
-import java.util.Observable;
 import java.util.Random;
 
 /**
@@ -89,12 +89,10 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
             new NormallyDistributedDelay()
     };
     private final KeyboardAndDisplaySimulator simulator;
+    private final MemoryMappedDevice device = new KeyboardAndDisplayDevice();
     private final Font defaultFont = new Font(Font.MONOSPACED, Font.PLAIN, 12);
-    // These are used to track instruction counts to simulate driver delay of Transmitter Data
-    private boolean countingInstructions;
-    private int instructionCount;
-    private int transmitDelayInstructionCountLimit;
-    private int currentDelayInstructionLimit;
+    // End of the simulated driver delay of Transmitter Data, null when not transmitting
+    private EventScheduler.Event transmitDelay;
     // Should the transmitted character be displayed before the transmitter delay period?
     // If not, hold onto it and print at the end of delay period.
     private int intWithCharacterToDisplay;
@@ -152,7 +150,7 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
     // Have to preserve the value of Interrupt Enable bit (bit 1)
     private static boolean isReadyBitSet(int mmioControlRegister) {
         try {
-            return (Globals.memory.get(mmioControlRegister, Memory.WORD_LENGTH_BYTES) & 1) == 1;
+            return (Globals.memory.getRawWord(mmioControlRegister) & 1) == 1;
         } catch (AddressErrorException aee) {
             System.out.println("Tool author specified incorrect MMIO address!" + aee);
             System.exit(0);
@@ -165,7 +163,7 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
     // Have to preserve the value of Interrupt Enable bit (bit 1)
     private static int readyBitSet(int mmioControlRegister) {
         try {
-            return Globals.memory.get(mmioControlRegister, Memory.WORD_LENGTH_BYTES) | 1;
+            return Globals.memory.getRawWord(mmioControlRegister) | 1;
         } catch (AddressErrorException aee) {
             System.out.println("Tool author specified incorrect MMIO address!" + aee);
             System.exit(0);
@@ -184,7 +182,7 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
     // Have to preserve the value of Interrupt Enable bit (bit 1). Bits 2 and higher don't matter.
     private static int readyBitCleared(int mmioControlRegister) {
         try {
-            return Globals.memory.get(mmioControlRegister, Memory.WORD_LENGTH_BYTES) & 2;
+            return Globals.memory.getRawWord(mmioControlRegister) & 2;
         } catch (AddressErrorException aee) {
             System.out.println("Tool author specified incorrect MMIO address!" + aee);
             System.exit(0);
@@ -216,11 +214,11 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
 
     /**
      * Override the inherited method, which registers us as an Observer over the static data segment
-     * (starting address 0x10010000) only.
+     * (starting address 0x10010000) only.  Instead we claim the four MMIO registers as a device.
      * <p>
      * When user enters keystroke, set RECEIVER_CONTROL and RECEIVER_DATA using the action listener.
-     * When user loads word (lw) from RECEIVER_DATA (we are notified of the read), then clear RECEIVER_CONTROL.
-     * When user stores word (sw) to TRANSMITTER_DATA (we are notified of the write), then clear TRANSMITTER_CONTROL, read TRANSMITTER_DATA,
+     * When user loads word (lw) from RECEIVER_DATA (the device is called for the read), then clear RECEIVER_CONTROL.
+     * When user stores word (sw) to TRANSMITTER_DATA (the device is called for the write), then clear TRANSMITTER_CONTROL, read TRANSMITTER_DATA,
      * echo the character to display, wait for delay period, then set TRANSMITTER_CONTROL.
      * <p>
      * If you use the inherited GUI buttons, this method is invoked when you click "Connect" button on MarsTool or the
@@ -229,16 +227,22 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
     protected void addAsObserver() {
         // Set transmitter Control ready bit to 1, means we're ready to accept display character.
         updateMMIOControl(TRANSMITTER_CONTROL, readyBitSet(TRANSMITTER_CONTROL));
-        // We want to be an observer only of MIPS reads from RECEIVER_DATA and writes to TRANSMITTER_DATA.
-        // Use the Globals.memory.addObserver() methods instead of inherited method to achieve this.
-        addAsObserver(RECEIVER_DATA, RECEIVER_DATA);
-        addAsObserver(TRANSMITTER_DATA, TRANSMITTER_DATA);
-        // We want to be notified of each instruction execution, because instruction count is the
-        // basis for delay in re-setting (literally) the TRANSMITTER_CONTROL register.  SPIM does
-        // this too.  This simulates the time required for the display unit to process the
-        // TRANSMITTER_DATA.
-        addAsObserver(Memory.textBaseAddress, Memory.textLimitAddress);
-        addAsObserver(Memory.kernelTextBaseAddress, Memory.kernelTextLimitAddress);
+        try {
+            Globals.memory.addDevice(device, RECEIVER_CONTROL, TRANSMITTER_DATA);
+        } catch (AddressErrorException aee) {
+            System.out.println("Tool author specified incorrect MMIO address!" + aee);
+            System.exit(0);
+        } catch (IllegalArgumentException iae) {
+            JOptionPane.showMessageDialog(theWindow, "Cannot connect: " + iae.getMessage());
+        }
+    }
+
+    /**
+     * Release the MMIO registers and drop the character being transmitted, if any.
+     */
+    protected void deleteAsObserver() {
+        Globals.memory.removeDevice(device);
+        initializeTransmitDelaySimulator();
     }
 
     /**
@@ -265,59 +269,6 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
         return keyboardAndDisplay;
     }
 
-    /**
-     * Update display when connected MIPS program accesses (data) memory.
-     *
-     * @param memory       the attached memory
-     * @param accessNotice information provided by memory in MemoryAccessNotice object
-     */
-    protected void processMIPSUpdate(Observable memory, AccessNotice accessNotice) {
-        MemoryAccessNotice notice = (MemoryAccessNotice) accessNotice;
-        // If MIPS program has just read (loaded) the receiver (keyboard) data register,
-        // then clear the Ready bit to indicate there is no longer a keystroke available.
-        // If Ready bit was initially clear, they'll get the old keystroke -- serves 'em right
-        // for not checking!
-        if (notice.getAddress() == RECEIVER_DATA && notice.getAccessType() == AccessNotice.READ) {
-            updateMMIOControl(RECEIVER_CONTROL, readyBitCleared(RECEIVER_CONTROL));
-        }
-        // MIPS program has just written (stored) the transmitter (display) data register.  If transmitter
-        // Ready bit is clear, device is not ready yet so ignore this event -- serves 'em right for not checking!
-        // If transmitter Ready bit is set, then clear it to indicate the display device is processing the character.
-        // Also start an intruction counter that will simulate the delay of the slower
-        // display device processing the character.
-        if (isReadyBitSet(TRANSMITTER_CONTROL) && notice.getAddress() == TRANSMITTER_DATA && notice.getAccessType() == AccessNotice.WRITE) {
-            updateMMIOControl(TRANSMITTER_CONTROL, readyBitCleared(TRANSMITTER_CONTROL));
-            intWithCharacterToDisplay = notice.getValue();
-            if (!displayAfterDelay) displayCharacter(intWithCharacterToDisplay);
-            this.countingInstructions = true;
-            this.instructionCount = 0;
-            this.transmitDelayInstructionCountLimit = generateDelay();
-        }
-        // We have been notified of a MIPS instruction execution.
-        // If we are in transmit delay period, increment instruction count and if limit
-        // has been reached, set the transmitter Ready flag to indicate the MIPS program
-        // can write another character to the transmitter data register.  If the Interrupt-Enabled
-        // bit had been set by the MIPS program, generate an interrupt!
-        if (this.countingInstructions &&
-                notice.getAccessType() == AccessNotice.READ &&
-                (Memory.inTextSegment(notice.getAddress()) || Memory.inKernelTextSegment(notice.getAddress()))) {
-            this.instructionCount++;
-            if (this.instructionCount >= this.transmitDelayInstructionCountLimit) {
-                if (displayAfterDelay) displayCharacter(intWithCharacterToDisplay);
-                this.countingInstructions = false;
-                int updatedTransmitterControl = readyBitSet(TRANSMITTER_CONTROL);
-                updateMMIOControl(TRANSMITTER_CONTROL, updatedTransmitterControl);
-                if (updatedTransmitterControl != 1
-                        && (Coprocessor0.getValue(Coprocessor0.STATUS) & 2) == 0  // Added by Carl Hauser Nov 2008
-                        && (Coprocessor0.getValue(Coprocessor0.STATUS) & 1) == 1) {
-                    // interrupt-enabled bit is set in both Tranmitter Control and in
-                    // Coprocessor0 Status register, and Interrupt Level Bit is 0, so trigger external interrupt.
-                    mars.simulator.Simulator.externalInterruptingDevice = Exceptions.EXTERNAL_INTERRUPT_DISPLAY;
-                }
-            }
-        }
-    }
-
     // Method to display the character stored in the low-order byte of
     // the parameter.  We also recognize two non-printing characters:
     //  Decimal 12 (Ascii Form Feed) to clear the display
@@ -634,7 +585,6 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
         displayOptions = new JPanel();
         delayTechniqueChooser = new JComboBox<>(delayTechniques);
         delayTechniqueChooser.setToolTipText("Technique for determining simulated transmitter device processing delay");
-        delayTechniqueChooser.addActionListener(e -> transmitDelayInstructionCountLimit = generateDelay());
         delayLengthPanel = new DelayLengthPanel();
         displayAfterDelayCheckBox = new JCheckBox("DAD", true);
         displayAfterDelayCheckBox.setToolTipText("Display After Delay: if checked, transmitter data not displayed until after delay");
@@ -706,13 +656,25 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
         }
     }
 
+    // Update an MMIO Control register from the device, which runs on the simulator thread and
+    // already holds the memory lock.
+    private static void setMMIOControl(int controlAddr, int controlValue) {
+        try {
+            Globals.memory.setRawWord(controlAddr, controlValue);
+        } catch (AddressErrorException aee) {
+            System.out.println("Tool author specified incorrect MMIO address!" + aee);
+            System.exit(0);
+        }
+    }
+
     /////////////////////////////////////////////////////////////////////
     // Transmit delay is simulated by counting instruction executions.
-    // Here we simly initialize (or reset) the variables.
+    // Here we simply cancel the delay in progress, if any.
     private void initializeTransmitDelaySimulator() {
-        this.countingInstructions = false;
-        this.instructionCount = 0;
-        this.transmitDelayInstructionCountLimit = this.generateDelay();
+        synchronized (Globals.memoryAndRegistersLock) {
+            EventScheduler.cancel(transmitDelay);
+            transmitDelay = null;
+        }
     }
 
     private int generateDelay() {
@@ -730,6 +692,70 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
     }
 
 
+    ///////////////////////////////////////////////////////////////////////////////////
+    //
+    //  The MMIO registers, called for MIPS program loads and stores to them.
+    //
+    private class KeyboardAndDisplayDevice implements MemoryMappedDevice {
+        // If MIPS program has just read (loaded) the receiver (keyboard) data register,
+        // then clear the Ready bit to indicate there is no longer a keystroke available.
+        // If Ready bit was initially clear, they'll get the old keystroke -- serves 'em right
+        // for not checking!
+        public int read(int address, int length, int value) {
+            if (address == RECEIVER_DATA) {
+                setMMIOControl(RECEIVER_CONTROL, readyBitCleared(RECEIVER_CONTROL));
+            }
+            return value;
+        }
+
+        // MIPS program has just written (stored) the transmitter (display) data register.  If transmitter
+        // Ready bit is clear, device is not ready yet so ignore this event -- serves 'em right for not checking!
+        // If transmitter Ready bit is set, then clear it to indicate the display device is processing the character.
+        // Also schedule the end of the delay of the slower display device processing the character,
+        // which is a number of instruction executions.  SPIM does this too.
+        public void write(int address, int length, int value) {
+            if (address == TRANSMITTER_DATA && isReadyBitSet(TRANSMITTER_CONTROL)) {
+                setMMIOControl(TRANSMITTER_CONTROL, readyBitCleared(TRANSMITTER_CONTROL));
+                intWithCharacterToDisplay = value;
+                if (!displayAfterDelay) displayCharacter(intWithCharacterToDisplay);
+                transmitDelay = EventScheduler.schedule(Math.max(1, generateDelay()), KeyboardAndDisplaySimulator.this::transmitDone);
+            }
+        }
+
+        // A snapshot was restored.  If it was taken while a character was being transmitted,
+        // the restored Ready bit is clear: start the delay again for the character in
+        // Transmitter Data, so the program does not wait for the Ready bit forever.
+        public void restored() {
+            EventScheduler.cancel(transmitDelay);
+            transmitDelay = null;
+            if (!isReadyBitSet(TRANSMITTER_CONTROL)) {
+                try {
+                    intWithCharacterToDisplay = Globals.memory.getRawWord(TRANSMITTER_DATA);
+                } catch (AddressErrorException aee) {
+                    System.out.println("Tool author specified incorrect MMIO address!" + aee);
+                    System.exit(0);
+                }
+                transmitDelay = EventScheduler.schedule(Math.max(1, generateDelay()), KeyboardAndDisplaySimulator.this::transmitDone);
+            }
+        }
+    }
+
+    // The transmit delay period is over.  Set the transmitter Ready flag to indicate the MIPS program
+    // can write another character to the transmitter data register.  If the Interrupt-Enabled
+    // bit had been set by the MIPS program, generate an interrupt!
+    private void transmitDone() {
+        transmitDelay = null;
+        if (displayAfterDelay) displayCharacter(intWithCharacterToDisplay);
+        int updatedTransmitterControl = readyBitSet(TRANSMITTER_CONTROL);
+        setMMIOControl(TRANSMITTER_CONTROL, updatedTransmitterControl);
+        if (updatedTransmitterControl != 1
+                && (Coprocessor0.getValue(Coprocessor0.STATUS) & 1) == 1) {
+            // interrupt-enabled bit is set in both Tranmitter Control and in
+            // Coprocessor0 Status register, so request external interrupt.
+            mars.simulator.Simulator.requestInterrupt(Exceptions.EXTERNAL_INTERRUPT_DISPLAY);
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////
     //
     //  Class to grab keystrokes going to keyboard echo area and send them to MMIO area
@@ -754,11 +780,11 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
             int updatedReceiverControl = readyBitSet(RECEIVER_CONTROL);
             updateMMIOControlAndData(RECEIVER_CONTROL, updatedReceiverControl, RECEIVER_DATA, e.getKeyChar() & 0x00000ff);
             if (updatedReceiverControl != 1
-                    && (Coprocessor0.getValue(Coprocessor0.STATUS) & 2) == 0   // Added by Carl Hauser Nov 2008
                     && (Coprocessor0.getValue(Coprocessor0.STATUS) & 1) == 1) {
                 // interrupt-enabled bit is set in both Receiver Control and in
-                // Coprocessor0 Status register, and Interrupt Level Bit is 0, so trigger external interrupt.
-                mars.simulator.Simulator.externalInterruptingDevice = Exceptions.EXTERNAL_INTERRUPT_KEYBOARD;
+                // Coprocessor0 Status register, so request external interrupt.  The simulator
+                // holds it until the Exception Level bit is 0.
+                mars.simulator.Simulator.requestInterrupt(Exceptions.EXTERNAL_INTERRUPT_KEYBOARD);
             }
         }
 
@@ -820,7 +846,6 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
                 JSlider source = (JSlider) e.getSource();
                 if (!source.getValueIsAdjusting()) {
                     delayLengthIndex = source.getValue();
-                    transmitDelayInstructionCountLimit = generateDelay();
                 } else {
                     sliderLabel.setText(setLabel(source.getValue()));
                 }
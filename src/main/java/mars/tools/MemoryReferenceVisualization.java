@@ -36,6 +36,8 @@ import javax.swing.border.EmptyBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.Arrays;
 import java.util.Observable;
 
@@ -44,11 +46,20 @@ import java.util.Observable;
  * access to the mars package, or through MARS as an item in its Tools menu.  It makes
  * maximum use of methods inherited from its abstract superclass AbstractMarsToolAndApplication.
  * Pete Sanderson, verison 1.0, 14 November 2006.
+ * <p>
+ * The simulator thread only increments a counter per unit.  The counters are turned into
+ * a heat map image FRAMES_PER_SECOND times per second, recoloring only the units whose
+ * count changed, so units can span whole cache lines or pages and the display can cover
+ * a multi-megabyte segment without slowing the simulation.  Optionally the counters
+ * decay, halving every half-life worth of memory references, so the display follows the
+ * working set as the program runs.  Counting the half-life in references rather than
+ * seconds keeps the decay still while the program is paused and the same at any speed.
  */
 public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication {
 
     private static final String version = "Version 1.0";
     private static final String heading = "Visualizing memory reference patterns";
+    private static final int FRAMES_PER_SECOND = 30;
     // Some GUI settings
     private final EmptyBorder emptyBorder = new EmptyBorder(4, 4, 4, 4);
     private final Font countFonts = new Font("Times", Font.BOLD, 12);
@@ -65,6 +76,9 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
     private final String[] displayAreaPixelHeightChoices = {"64", "128", "256", "512", "1024"};
     private final int defaultDisplayHeightIndex = 2;
     private final boolean defaultDrawHashMarks = true;
+    // Half-life of the counters in memory references, none means counters never decay
+    private final String[] decayChoices = {"None", "1000", "10000", "100000", "1000000", "10000000"};
+    private final int defaultDecayIndex = 0;
     // This array of (count,color) pairs must be kept sorted! count is low end of subrange.
     // This array will grow if user adds colors at additional counter points (see below).
     private final CounterColor[] defaultCounterColors = {
@@ -87,12 +101,14 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
     private static final int COUNT_INDEX_INIT = 10;  // array element #10, arbitrary starting point
     // Major GUI components
     private JComboBox<String> wordsPerUnitSelector, visualizationUnitPixelWidthSelector, visualizationUnitPixelHeightSelector,
-            visualizationPixelWidthSelector, visualizationPixelHeightSelector, displayBaseAddressSelector;
+            visualizationPixelWidthSelector, visualizationPixelHeightSelector, displayBaseAddressSelector, decaySelector;
     private JCheckBox drawHashMarksSelector;
 
     // Values for display canvas.  Note their initialization uses the identifiers just above.
-    private Graphics drawingArea;
     private JPanel canvas;
+    private Timer frameTimer;
+    // References between two halvings of the counters, 0 if they do not decay
+    private long decayReferences;
     private JPanel results;
     private int unitPixelWidth = Integer.parseInt(visualizationUnitPixelWidthChoices[defaultVisualizationUnitPixelWidthIndex]);
     private int unitPixelHeight = Integer.parseInt(visualizationUnitPixelHeightChoices[defaultVisualizationUnitPixelHeightIndex]);
@@ -107,7 +123,7 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
     private int defaultBaseAddressIndex;
     private int baseAddress;
 
-    private Grid theGrid;
+    private volatile Grid theGrid;
     private CounterColorScale counterColorScale;
 
     /**
@@ -166,6 +182,16 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
             highAddress = -4;
         }
         addAsObserver(baseAddress, highAddress);
+        frameTimer.start();
+    }
+
+    /**
+     * Stops observing memory and the periodic frames, showing the final counts.
+     */
+    protected void deleteAsObserver() {
+        super.deleteAsObserver();
+        frameTimer.stop();
+        updateDisplay();
     }
 
     /**
@@ -233,12 +259,43 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
     }
 
     /**
-     * Updates display immediately after each update (AccessNotice) is processed, after
-     * display configuration changes as needed, and after each execution step when Mars
-     * is running in timed mode.  Overrides inherited method that does nothing.
+     * Updates display after display configuration changes.  While connected the display is
+     * instead refreshed FRAMES_PER_SECOND times per second, so nothing is done after each
+     * update (AccessNotice).  Overrides inherited method that does nothing.
      */
     protected void updateDisplay() {
-        canvas.repaint();
+        if (frameTimer == null || frameTimer.isRunning()) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            Grid grid = theGrid;
+            decayIfDue(grid);
+            grid.render(counterColorScale);
+            canvas.repaint();
+        });
+    }
+
+    // Decay the counters when due and repaint the units whose count changed.  Runs on the
+    // event dispatch thread.
+    private void paintFrame() {
+        Grid grid = theGrid;
+        decayIfDue(grid);
+        if (grid.render(counterColorScale)) {
+            canvas.repaint();
+        }
+    }
+
+    // Halve the counters once for every half-life of references made since the last halving.
+    // Runs on the event dispatch thread.
+    private void decayIfDue(Grid grid) {
+        if (decayReferences == 0) {
+            return;
+        }
+        long halvings = (grid.references - grid.decayedReferences) / decayReferences;
+        if (halvings > 0) {
+            grid.decayedReferences += halvings * decayReferences;
+            grid.decay((int) Math.min(halvings, Integer.SIZE - 1));
+        }
     }
 
 
@@ -259,7 +316,12 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
             on the display represents one or more memory words (default 1)
             and each time a memory word is accessed by the MIPS program,
             its reference count is incremented then rendered in the color
-            assigned to the count value.  You can change the count-color
+            assigned to the count value.  A unit may represent a whole cache
+            line or page and the display is refreshed 30 times per second,
+            so large segments can be watched at full simulation speed.  With
+            a half-life, counts are halved each time the program has made
+            that many memory references, to show how the working set moves
+            as the program runs.  You can change the count-color
             assignments using the count slider and color patch.  Select a
             counter value then click on the color patch to change the color.
             This color will apply beginning at the selected count and
@@ -279,7 +341,7 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
 
     // UI components and layout for left half of GUI, where settings are specified.
     private JComponent buildOrganizationArea() {
-        JPanel organization = new JPanel(new GridLayout(9, 1));
+        JPanel organization = new JPanel(new GridLayout(10, 1));
 
         drawHashMarksSelector = new JCheckBox();
         drawHashMarksSelector.setSelected(defaultDrawHashMarks);
@@ -334,6 +396,11 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
             canvas.repaint();
             updateDisplay();
         });
+        decaySelector = new JComboBox<>(decayChoices);
+        decaySelector.setEditable(false);
+        decaySelector.setSelectedIndex(defaultDecayIndex);
+        decaySelector.setToolTipText("Memory references after which reference counts are halved, to show recent references only");
+        decaySelector.addActionListener(e -> updateDecay());
         displayBaseAddressSelector = new JComboBox<>(displayBaseAddressChoices);
         displayBaseAddressSelector.setEditable(false);
         displayBaseAddressSelector.setSelectedIndex(defaultBaseAddressIndex);
@@ -393,6 +460,11 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
         baseAddressRow.add(new JLabel("Base address for display "), BorderLayout.WEST);
         baseAddressRow.add(displayBaseAddressSelector, BorderLayout.EAST);
 
+        JPanel decayRow = getPanelWithBorderLayout();
+        decayRow.setBorder(emptyBorder);
+        decayRow.add(new JLabel("Half-life of counts in references "), BorderLayout.WEST);
+        decayRow.add(decaySelector, BorderLayout.EAST);
+
         ColorChooserControls colorChooserControls = new ColorChooserControls();
 
         // Lay 'em out in the grid...
@@ -403,6 +475,7 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
         organization.add(widthInPixelsRow);
         organization.add(heightInPixelsRow);
         organization.add(baseAddressRow);
+        organization.add(decayRow);
         organization.add(colorChooserControls.colorChooserRow);
         organization.add(colorChooserControls.countDisplayRow);
         return organization;
@@ -413,6 +486,7 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
         canvas = new GraphicsPanel();
         canvas.setPreferredSize(getDisplayAreaDimension());
         canvas.setToolTipText("Memory reference count visualization area");
+        frameTimer = new Timer(1000 / FRAMES_PER_SECOND, e -> paintFrame());
         return canvas;
     }
 
@@ -447,6 +521,14 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
       	*/
     }
 
+    // update based on half-life selection, counting the new half-life from now
+    private void updateDecay() {
+        int index = decaySelector.getSelectedIndex();
+        decayReferences = (index <= 0) ? 0 : Long.parseLong(decayChoices[index]);
+        Grid grid = theGrid;
+        grid.decayedReferences = grid.references;
+    }
+
     // Returns Dimension object with current width and height of display area as determined
     // by current settings of respective combo boxes.
     private Dimension getDisplayAreaDimension() {
@@ -490,10 +572,9 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
     // If address maps to invalid grid element (e.g. is outside the current bounds based on all
     // display settings) then nothing happens.
     private void incrementReferenceCountForAddress(int address) {
-        int offset = (address - baseAddress) / Memory.WORD_LENGTH_BYTES / wordsPerUnit;
-        // If you care to do anything with it, the following will return -1 if the address
-        // maps outside the dimensions of the grid (e.g. below the base address or beyond end).
-        theGrid.incrementElement(offset / theGrid.getColumns(), offset % theGrid.getColumns());
+        // Unsigned, so addresses below the base address fall beyond the end of the grid
+        long offset = ((address - baseAddress) & 0xFFFFFFFFL) / ((long) Memory.WORD_LENGTH_BYTES * wordsPerUnit);
+        theGrid.incrementElement(offset);
     }
 
 
@@ -536,19 +617,10 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
             }
         }
 
-        // Paint the color codes for reference counts.
+        // Paint the color codes for reference counts, scaling each grid element to a unit.
         private void paintGrid(Graphics g, Grid grid) {
-            int upperLeftX = 0, upperLeftY = 0;
-            for (int i = 0; i < grid.getRows(); i++) {
-                for (int j = 0; j < grid.getColumns(); j++) {
-                    g.setColor(counterColorScale.getColor(grid.getElementFast(i, j)));
-                    g.fillRect(upperLeftX, upperLeftY, unitPixelWidth, unitPixelHeight);
-                    upperLeftX += unitPixelWidth;   // faster than multiplying
-                }
-                // get ready for next row...
-                upperLeftX = 0;
-                upperLeftY += unitPixelHeight;     // faster than multiplying
-            }
+            g.drawImage(grid.getImage(), 0, 0, grid.getColumns() * unitPixelWidth,
+                    grid.getRows() * unitPixelHeight, null);
         }
 
         private Color getContrastingColor(Color color) {
@@ -599,6 +671,7 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
                 if (newColor != null && !newColor.equals(counterColorScale.getColor(counterValue))) {
                     counterColorScale.insertOrReplace(new CounterColor(counterValue, newColor));
                     currentColorButton.setBackground(newColor);
+                    theGrid.recolor();
                     updateDisplay();
                 }
             });
@@ -710,17 +783,31 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
     }
 
     ////////////////////////////////////////////////////////////////////////
-    // Represents grid of memory access counts
+    // Represents grid of memory access counts, with an image of one pixel per grid element
+    // showing them.  The simulator thread increments the counts, the event dispatch thread
+    // renders them into the image.
     private static class Grid {
 
-        int[][] grid;
-        int rows, columns;
+        private final int[] counts;
+        // Count each pixel was last rendered for, -1 to render it again
+        private final int[] shown;
+        private final BufferedImage image;
+        private final int[] pixels;
+        private final int rows, columns;
+        // References counted, including those beyond the end of the grid.  Only the
+        // simulator thread writes it.
+        private volatile long references;
+        // References counted when the counts were last halved, or the half-life changed
+        private long decayedReferences;
 
         private Grid(int rows, int columns) {
-            grid = new int[rows][columns];
+            counts = new int[rows * columns];
+            shown = new int[counts.length];
+            image = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
             this.rows = rows;
             this.columns = columns;
-            // automatically initialized to 0, so I won't bother to....
+            recolor();
         }
 
         private int getRows() {
@@ -731,32 +818,51 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
             return columns;
         }
 
-        // Returns value in given grid element; -1 if row or column is out of range.
-        private int getElement(int row, int column) {
-            return (row >= 0 && row <= rows && column >= 0 && column <= columns) ? grid[row][column] : -1;
-        }
-
-        // Returns value in given grid element without doing any row/column index checking.
-        // Is faster than getElement but will throw array index out of bounds exception if
-        // parameter values are outside the bounds of the grid.
-        private int getElementFast(int row, int column) {
-            return grid[row][column];
+        private BufferedImage getImage() {
+            return image;
         }
 
-        // Increment the given grid element and return incremented value.
-        // Returns -1 if row or column is out of range.
-        private int incrementElement(int row, int column) {
-            return (row >= 0 && row <= rows && column >= 0 && column <= columns) ? ++grid[row][column] : -1;
+        // Increment the element at the given offset in row-major order, nothing if it is
+        // beyond the end of the grid.
+        private void incrementElement(long offset) {
+            references++;
+            if (offset < counts.length) {
+                counts[(int) offset]++;
+            }
         }
 
         // Just set all grid elements to 0.
         private void reset() {
-            for (int i = 0; i < rows; i++) {
-                for (int j = 0; j < columns; j++) {
-                    grid[i][j] = 0;
+            Arrays.fill(counts, 0);
+            decayedReferences = references;
+        }
+
+        // Halve all counts the given number of times, steps of exponential decay.  An
+        // increment made by the simulator at the same time may be lost, which does not
+        // matter for the display.
+        private void decay(int halvings) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] >>= halvings;
+            }
+        }
+
+        // Render every element again on the next frame, e.g. after a color change.
+        private void recolor() {
+            Arrays.fill(shown, -1);
+        }
+
+        // Render the elements whose count changed since the last frame.  Returns true if any did.
+        private boolean render(CounterColorScale scale) {
+            boolean changed = false;
+            for (int i = 0; i < counts.length; i++) {
+                int count = counts[i];
+                if (count != shown[i]) {
+                    shown[i] = count;
+                    pixels[i] = scale.getColor(count).getRGB();
+                    changed = true;
                 }
             }
+            return changed;
         }
     }
-
-}
\ No newline at end of file
+}
@@ -114,9 +114,8 @@ public class FilenameFinder {
                         filenameList.addAll(getListFromJar(extractJarFilename(f.toString()), directoryPath, fileExtension));
                     }
                 } else {  // have array of File objects; convert to names and add to list
-                    FileFilter filter = getFileFilter(fileExtension, "", NO_DIRECTORIES);
                     for (File file : files) {
-                        if (filter.accept(file)) {
+                        if (acceptFile(file, fileExtension, NO_DIRECTORIES)) {
                             filenameList.add(file.getName());
                         }
                     }
@@ -215,10 +214,9 @@ public class FilenameFinder {
         File directory = new File(directoryPath);
         if (directory.isDirectory()) {
             File[] allFiles = directory.listFiles();
-            FileFilter filter = getFileFilter(fileExtension, "", NO_DIRECTORIES);
             if (allFiles != null) {
                 for (File allFile : allFiles) {
-                    if (filter.accept(allFile)) {
+                    if (acceptFile(allFile, fileExtension, NO_DIRECTORIES)) {
                         filenameList.add(allFile.getAbsolutePath());
                     }
                 }
@@ -269,10 +267,9 @@ public class FilenameFinder {
     public static List<String> getFilenameList(List<String> nameList, String fileExtension) {
         fileExtension = checkFileExtension(fileExtension);
         List<String> filenameList = new ArrayList<>();
-        FileFilter filter = getFileFilter(fileExtension, "", NO_DIRECTORIES);
         for (String s : nameList) {
             File file = new File(s);
-            if (filter.accept(file)) {
+            if (acceptFile(file, fileExtension, NO_DIRECTORIES)) {
                 filenameList.add(file.getAbsolutePath());
             }
         }
@@ -333,7 +330,7 @@ public class FilenameFinder {
      * @return a FileFilter object that accepts files with given extensions, and directories if so indicated.
      */
     public static FileFilter getFileFilter(List<String> extensions, String description, boolean acceptDirectories) {
-        return new MarsFileFilter(extensions, description, acceptDirectories);
+        return MarsFileFilter.create(extensions, description, acceptDirectories);
     }
 
     /**
@@ -357,7 +354,7 @@ public class FilenameFinder {
      * @return a FileFilter object that accepts files with given extensions, and directories if so indicated.
      */
     public static FileFilter getFileFilter(String extension, String description, boolean acceptDirectories) {
-        return new MarsFileFilter(Collections.singletonList(extension), description, acceptDirectories);
+        return MarsFileFilter.create(Collections.singletonList(extension), description, acceptDirectories);
     }
 
     /**
@@ -423,6 +420,28 @@ public class FilenameFinder {
         return (jarPosition >= 0) ? path.substring(0, jarPosition + JAR_EXTENSION.length()) : path;
     }
 
+    // Filtering criteria shared with MarsFileFilter.  The file listing methods use this directly
+    // rather than through a FileFilter, so that command mode never loads the Swing class.
+    private static boolean acceptFile(File file, String extension, boolean acceptDirectories) {
+        return acceptFile(file, Collections.singletonList(extension), acceptDirectories);
+    }
+
+    private static boolean acceptFile(File file, List<String> extensions, boolean acceptDirectories) {
+        if (file.isDirectory()) {
+            return acceptDirectories;
+        }
+        String fileExtension = getExtension(file);
+        if (fileExtension != null) {
+            for (String s : extensions) {
+                String extension = checkFileExtension(s);
+                if (extension.equals(MATCH_ALL_EXTENSIONS) || fileExtension.equals(extension)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     // make sure file extension, if it is real, does not start with '.' -- remove it.
     private static String checkFileExtension(String fileExtension) {
         return (fileExtension == null || fileExtension.length() == 0 || !fileExtension.startsWith("."))
@@ -433,7 +452,9 @@ public class FilenameFinder {
 
     ///////////////////////////////////////////////////////////////////////////
     //  FileFilter subclass to be instantiated by the getFileFilter method above.
-    //  This extends javax.swing.filechooser.FileFilter
+    //  This extends javax.swing.filechooser.FileFilter.  Instances are only created
+    //  through create(), whose return type keeps the bytecode verifier from loading
+    //  the Swing superclass whenever FilenameFinder itself is loaded.
 
     private static class MarsFileFilter extends FileFilter {
 
@@ -447,6 +468,10 @@ public class FilenameFinder {
             this.acceptDirectories = acceptDirectories;
         }
 
+        private static FileFilter create(List<String> extensions, String description, boolean acceptDirectories) {
+            return new MarsFileFilter(extensions, description, acceptDirectories);
+        }
+
         // User provides descriptive phrase to be parenthesized.
         // We will attach it to description of the extensions.  For example, if the extensions
         // given are s and asm and the description is "Assembler Programs" the full description
@@ -475,19 +500,7 @@ public class FilenameFinder {
 
         // required by the abstract superclass.
         public boolean accept(File file) {
-            if (file.isDirectory()) {
-                return acceptDirectories;
-            }
-            String fileExtension = getExtension(file);
-            if (fileExtension != null) {
-                for (String s : extensions) {
-                    String extension = checkFileExtension(s);
-                    if (extension.equals(MATCH_ALL_EXTENSIONS) || fileExtension.equals(extension)) {
-                        return true;
-                    }
-                }
-            }
-            return false;
+            return acceptFile(file, extensions, acceptDirectories);
         }
 
     } // MarsFileFilter class
@@ -0,0 +1,288 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader and writer, just enough for the line based protocol spoken
+ * by the simulation server.  Objects are mapped to {@link Map}s (preserving key order),
+ * arrays to {@link List}s, numbers to {@link Long} or {@link Double}, and the rest to
+ * {@link String}, {@link Boolean} or null.
+ */
+public final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * Parse a JSON text.
+     *
+     * @param text the text to parse
+     * @return the parsed value
+     * @throws IllegalArgumentException if the text is not valid JSON
+     */
+    public static Object parse(String text) {
+        final Parser parser = new Parser(text);
+        final Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.pos != text.length())
+            throw parser.error("Unexpected trailing characters");
+        return value;
+    }
+
+    /**
+     * Serialize the given value as JSON text on a single line.
+     *
+     * @param value a {@link Map}, {@link Iterable}, array of ints, {@link String},
+     *              {@link Number}, {@link Boolean} or null
+     * @return the JSON representation of the value
+     */
+    public static String write(Object value) {
+        final StringBuilder sb = new StringBuilder();
+        write(sb, value);
+        return sb.toString();
+    }
+
+    private static void write(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof String s) {
+            quote(sb, s);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        } else if (value instanceof Map<?, ?> map) {
+            sb.append('{');
+            final Iterator<? extends Map.Entry<?, ?>> iter = map.entrySet().iterator();
+            while (iter.hasNext()) {
+                final Map.Entry<?, ?> entry = iter.next();
+                quote(sb, String.valueOf(entry.getKey()));
+                sb.append(':');
+                write(sb, entry.getValue());
+                if (iter.hasNext())
+                    sb.append(',');
+            }
+            sb.append('}');
+        } else if (value instanceof Iterable<?> iterable) {
+            sb.append('[');
+            final Iterator<?> iter = iterable.iterator();
+            while (iter.hasNext()) {
+                write(sb, iter.next());
+                if (iter.hasNext())
+                    sb.append(',');
+            }
+            sb.append(']');
+        } else if (value instanceof int[] array) {
+            sb.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0)
+                    sb.append(',');
+                sb.append(array[i]);
+            }
+            sb.append(']');
+        } else {
+            quote(sb, value.toString());
+        }
+    }
+
+    private static void quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                case '\b' -> sb.append("\\b");
+                case '\f' -> sb.append("\\f");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static class Parser {
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Object readValue() {
+            skipWhitespace();
+            if (pos >= text.length())
+                throw error("Unexpected end of input");
+            final char c = text.charAt(pos);
+            return switch (c) {
+                case '{' -> readObject();
+                case '[' -> readArray();
+                case '"' -> readString();
+                case 't' -> readLiteral("true", Boolean.TRUE);
+                case 'f' -> readLiteral("false", Boolean.FALSE);
+                case 'n' -> readLiteral("null", null);
+                default -> {
+                    if (c == '-' || (c >= '0' && c <= '9'))
+                        yield readNumber();
+                    throw error("Unexpected character '" + c + "'");
+                }
+            };
+        }
+
+        private Map<String, Object> readObject() {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            pos++; // {
+            skipWhitespace();
+            if (consume('}'))
+                return map;
+            do {
+                skipWhitespace();
+                if (pos >= text.length() || text.charAt(pos) != '"')
+                    throw error("Expected object key");
+                final String key = readString();
+                skipWhitespace();
+                if (!consume(':'))
+                    throw error("Expected ':'");
+                map.put(key, readValue());
+                skipWhitespace();
+            } while (consume(','));
+            if (!consume('}'))
+                throw error("Expected ',' or '}'");
+            return map;
+        }
+
+        private List<Object> readArray() {
+            final List<Object> list = new ArrayList<>();
+            pos++; // [
+            skipWhitespace();
+            if (consume(']'))
+                return list;
+            do {
+                list.add(readValue());
+                skipWhitespace();
+            } while (consume(','));
+            if (!consume(']'))
+                throw error("Expected ',' or ']'");
+            return list;
+        }
+
+        private String readString() {
+            final StringBuilder sb = new StringBuilder();
+            pos++; // "
+            while (pos < text.length()) {
+                final char c = text.charAt(pos++);
+                if (c == '"')
+                    return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= text.length())
+                    break;
+                final char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case '"', '\\', '/' -> sb.append(escaped);
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        if (pos + 4 > text.length())
+                            throw error("Truncated unicode escape");
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("Invalid unicode escape");
+                        }
+                        pos += 4;
+                    }
+                    default -> throw error("Invalid escape '\\" + escaped + "'");
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private Object readNumber() {
+            final int start = pos;
+            boolean integral = true;
+            if (text.charAt(pos) == '-')
+                pos++;
+            while (pos < text.length()) {
+                final char c = text.charAt(pos);
+                if (c >= '0' && c <= '9') {
+                    pos++;
+                } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                    integral = false;
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            final String number = text.substring(start, pos);
+            try {
+                return integral ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+            } catch (NumberFormatException ex) {
+                throw error("Invalid number " + number);
+            }
+        }
+
+        private Object readLiteral(String literal, Object value) {
+            if (!text.startsWith(literal, pos))
+                throw error("Unexpected token");
+            pos += literal.length();
+            return value;
+        }
+
+        private boolean consume(char c) {
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+                pos++;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos);
+        }
+    }
+}
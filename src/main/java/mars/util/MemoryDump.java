@@ -120,13 +120,7 @@ public class MemoryDump {
      * @throws AddressErrorException if the base address is not on a word boundary
      */
     public static int getAddressOfFirstNull(int baseAddress, int limitAddress) throws AddressErrorException {
-        int address = baseAddress;
-        for (; address < limitAddress; address += Memory.WORD_LENGTH_BYTES) {
-            if (Globals.memory.getRawWordOrNull(address) == null) {
-                break;
-            }
-        }
-        return address;
+        return Globals.memory.getAddressOfFirstNull(baseAddress, limitAddress);
     }
 
 }
\ No newline at end of file
@@ -69,6 +69,12 @@ public class SystemIO {
     // Will use one buffered reader for all keyboard/redirected/piped input.
     // Added by DPS 28 Feb 2008.  See getInputReader() below.
     private static BufferedReader inputReader = null;
+    // Streams standing in for the process' own standard streams when running from the
+    // command line.  They can be redirected, e.g. by the simulation server, which must
+    // keep its own protocol channel clean.
+    private static InputStream standardInput = System.in;
+    private static PrintStream standardOutput = System.out;
+    private static PrintStream standardError = System.err;
 
     /**
      * Implements syscall to read an integer value.
@@ -155,7 +161,7 @@ public class SystemIO {
      */
     public static void printString(String string) {
         if (Globals.getGui() == null) {
-            System.out.print(string);
+            standardOutput.print(string);
         } else {
             Globals.getGui().getMessagesPane().postRunMessage(string);
         }
@@ -402,6 +408,56 @@ public class SystemIO {
         FileIOData.resetFiles();
     }
 
+    /**
+     * Write the state of the files opened by the MIPS program: for each open file
+     * descriptor its file name, flags and current position.  File contents are
+     * not saved.  Standard input, output and error are not included.
+     *
+     * @param out where to write the file descriptors
+     * @throws IOException if writing fails or the position of a file cannot be determined
+     */
+    public static void writeFilesSnapshot(DataOutput out) throws IOException {
+        FileIOData.writeSnapshot(out);
+    }
+
+    /**
+     * Read the files recorded by writeFilesSnapshot() and reopen them at their recorded
+     * positions.  The returned action closes all the files currently open by the MIPS
+     * program, truncates the files open for writing back to their recorded position and
+     * installs the reopened files with the same file descriptors; if reading fails,
+     * the files already reopened are closed and the open files are left untouched.
+     *
+     * @param in where to read the file descriptors from
+     * @return action installing the reopened files
+     * @throws IOException if reading fails or one of the files cannot be reopened
+     */
+    public static Runnable readFilesSnapshot(DataInput in) throws IOException {
+        return FileIOData.readSnapshot(in);
+    }
+
+    /**
+     * Redirect the standard input, output and error streams used by the MIPS program
+     * when running from the command line.  Takes effect for file descriptors 0-2 at the
+     * next {@link #resetFiles()}.
+     *
+     * @param in  stream to read keyboard input from
+     * @param out stream to write standard output to
+     * @param err stream to write standard error to
+     */
+    public static void setStandardStreams(InputStream in, PrintStream out, PrintStream err) {
+        standardInput = in;
+        standardOutput = out;
+        standardError = err;
+        inputReader = null;
+    }
+
+    /**
+     * Restore the standard streams to the ones of the running process.
+     */
+    public static void resetStandardStreams() {
+        setStandardStreams(System.in, System.out, System.err);
+    }
+
     /**
      * Retrieve file operation or error message
      *
@@ -419,7 +475,7 @@ public class SystemIO {
 
     private static BufferedReader getInputReader() {
         if (inputReader == null) {
-            inputReader = new BufferedReader(new InputStreamReader(System.in));
+            inputReader = new BufferedReader(new InputStreamReader(standardInput));
         }
         return inputReader;
     }
@@ -449,11 +505,11 @@ public class SystemIO {
             fileFlags[STDIN] = SystemIO.O_RDONLY;
             fileFlags[STDOUT] = SystemIO.O_WRONLY;
             fileFlags[STDERR] = SystemIO.O_WRONLY;
-            streams[STDIN] = System.in;
-            streams[STDOUT] = System.out;
-            streams[STDERR] = System.err;
-            System.out.flush();
-            System.err.flush();
+            streams[STDIN] = standardInput;
+            streams[STDOUT] = standardOutput;
+            streams[STDERR] = standardError;
+            standardOutput.flush();
+            standardError.flush();
         }
 
         // Preserve a stream that is in use
@@ -519,6 +575,75 @@ public class SystemIO {
             }
         }
 
+        private static void writeSnapshot(DataOutput out) throws IOException {
+            for (int fd = STDERR + 1; fd < SYSCALL_MAXFILES; fd++) {
+                if (fileNames[fd] == null || streams[fd] == null)
+                    continue;
+                out.writeInt(fd);
+                out.writeUTF(fileNames[fd]);
+                out.writeInt(fileFlags[fd]);
+                out.writeLong(fileFlags[fd] == O_RDONLY
+                        ? ((FileInputStream) streams[fd]).getChannel().position()
+                        : ((FileOutputStream) streams[fd]).getChannel().position());
+            }
+            out.writeInt(-1);
+        }
+
+        private static Runnable readSnapshot(DataInput in) throws IOException {
+            final String[] names = new String[SYSCALL_MAXFILES];
+            final int[] flags = new int[SYSCALL_MAXFILES];
+            final long[] positions = new long[SYSCALL_MAXFILES];
+            final Closeable[] opened = new Closeable[SYSCALL_MAXFILES];
+            try {
+                for (int fd = in.readInt(); fd != -1; fd = in.readInt()) {
+                    String filename = in.readUTF();
+                    int flag = in.readInt();
+                    long position = in.readLong();
+                    if (fd <= STDERR || fd >= SYSCALL_MAXFILES || names[fd] != null)
+                        throw new IOException("Invalid file descriptor " + fd + " in snapshot");
+                    if (flag == O_RDONLY) {
+                        FileInputStream inputStream = new FileInputStream(filename);
+                        opened[fd] = inputStream;
+                        inputStream.getChannel().position(position);
+                    } else {
+                        // Truncated once the whole snapshot is read, see below
+                        opened[fd] = new FileOutputStream(filename, true);
+                    }
+                    names[fd] = filename;
+                    flags[fd] = flag;
+                    positions[fd] = position;
+                }
+            } catch (IOException e) {
+                for (Closeable stream : opened) {
+                    if (stream != null) {
+                        try {
+                            stream.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                }
+                throw e;
+            }
+            return () -> {
+                resetFiles();
+                for (int fd = STDERR + 1; fd < SYSCALL_MAXFILES; fd++) {
+                    if (names[fd] == null)
+                        continue;
+                    if (flags[fd] != O_RDONLY) {
+                        // Appending after truncating resumes writing where the snapshot was taken.
+                        // Should truncating fail, the program writes after the current end instead.
+                        try {
+                            ((FileOutputStream) opened[fd]).getChannel().truncate(positions[fd]);
+                        } catch (IOException ignored) {
+                        }
+                    }
+                    streams[fd] = opened[fd];
+                    fileNames[fd] = names[fd];
+                    fileFlags[fd] = flags[fd];
+                }
+            };
+        }
+
         // Attempt to open a new file with the given flag, using the lowest available file descriptor.
         // Check that filename is not in use, flag is reasonable, and there is an available file descriptor.
         // Return: file descriptor in 0...(SYSCALL_MAXFILES-1), or -1 if error
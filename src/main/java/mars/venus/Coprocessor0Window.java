@@ -180,7 +180,7 @@ public class Coprocessor0Window extends JPanel implements Observer {
             if (notice.getAction() == SimulatorNotice.SIMULATOR_START) {
                 // Simulated MIPS execution starts.  Respond to memory changes if running in timed
                 // or stepped mode.
-                if (notice.getRunSpeed() != RunSpeedPanel.UNLIMITED_SPEED || notice.getMaxSteps() == 1) {
+                if (notice.getRunSpeed() <= RunSpeedPanel.INTERACTION_LIMIT_SPEED || notice.getMaxSteps() == 1) {
                     Coprocessor0.addRegistersObserver(this);
                     this.highlighting = true;
                 }
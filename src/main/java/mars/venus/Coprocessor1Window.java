@@ -63,6 +63,10 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
     private boolean highlighting;
     private int highlightRow;
     private ExecutePane executePane;
+    // Register versions and number base of the values currently displayed, so that updates
+    // only convert, format and repaint rows whose registers changed.
+    private long[] displayedVersions;
+    private int displayedBase;
 
     /**
      * Constructor which sets up a fresh window with a table that contains the register values.
@@ -138,9 +142,13 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
         registers = Coprocessor1.getRegisters();
         this.highlighting = false;
         tableData = new Object[registers.length][3];
+        displayedVersions = new long[registers.length];
+        displayedBase = NumberDisplayBaseChooser.getBase(settings.getDisplayValuesInHex());
         for (int i = 0; i < registers.length; i++) {
+            // Read the version first: a write racing with the formatting is caught next update
+            displayedVersions[i] = registers[i].getVersion();
             tableData[i][0] = registers[i].getName();
-            tableData[i][1] = NumberDisplayBaseChooser.formatFloatNumber(registers[i].getValue(), NumberDisplayBaseChooser.getBase(settings.getDisplayValuesInHex()));//formatNumber(floatValue,NumberDisplayBaseChooser.getBase(settings.getDisplayValuesInHex()));
+            tableData[i][1] = NumberDisplayBaseChooser.formatFloatNumber(registers[i].getValueNoNotify(), displayedBase);
             if (i % 2 == 0) { // even numbered double registers
                 long longValue = 0;
                 try {
@@ -148,7 +156,7 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
                 } catch (InvalidRegisterAccessException ignored) {
                     // cannot happen since i must be even
                 }
-                tableData[i][2] = NumberDisplayBaseChooser.formatDoubleNumber(longValue, NumberDisplayBaseChooser.getBase(settings.getDisplayValuesInHex()));
+                tableData[i][2] = NumberDisplayBaseChooser.formatDoubleNumber(longValue, displayedBase);
             } else {
                 tableData[i][2] = "";
             }
@@ -172,9 +180,7 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
      */
     public void clearHighlighting() {
         highlighting = false;
-        if (table != null) {
-            table.tableChanged(new TableModelEvent(table.getModel()));
-        }
+        repaintRow(highlightRow);
         highlightRow = -1; // assure highlight will not occur upon re-assemble.
     }
 
@@ -195,22 +201,36 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
     }
 
     /**
-     * Redisplay registers using specified display number base (10 or 16)
+     * Redisplay registers using specified display number base (10 or 16).  Only registers
+     * written since the last update are formatted again, unless the base changed.  A double
+     * is formatted again when either register of its pair changed.
      *
      * @param base number base for display (10 or 16)
      */
     public void updateRegisters(int base) {
         registers = Coprocessor1.getRegisters();
-        for (int i = 0; i < registers.length; i++) {
-            updateFloatRegisterValue(registers[i].getNumber(), registers[i].getValue(), base);
-            if (i % 2 == 0) {
+        RegTableModel model = (RegTableModel) table.getModel();
+        boolean baseChanged = base != displayedBase;
+        displayedBase = base;
+        for (int i = 0; i < registers.length; i += 2) {
+            boolean pairChanged = false;
+            for (int number = i; number < i + 2; number++) {
+                int version = registers[number].getVersion();
+                if (baseChanged || version != displayedVersions[number]) {
+                    displayedVersions[number] = version;
+                    model.setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatFloatNumber(
+                            registers[number].getValueNoNotify(), base), number, FLOAT_COLUMN);
+                    pairChanged = true;
+                }
+            }
+            if (pairChanged) {
                 updateDoubleRegisterValue(i, base);
             }
         }
         updateConditionFlagDisplay();
     }
 
-    private void updateConditionFlagDisplay() {
+    void updateConditionFlagDisplay() {
         for (int i = 0; i < conditionFlagCheckBox.length; i++) {
             conditionFlagCheckBox[i].setSelected(Coprocessor1.getConditionFlag(i) != 0);
         }
@@ -224,6 +244,7 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
      * @param base   the number base for display (e.g. 10, 16)
      **/
     public void updateFloatRegisterValue(int number, int val, int base) {
+        displayedVersions[number] = -1; // not known to match a version, format again next update
         ((RegTableModel) table.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatFloatNumber(val, base), number, FLOAT_COLUMN);
 
     }
@@ -262,7 +283,7 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
             if (notice.getAction() == SimulatorNotice.SIMULATOR_START) {
                 // Simulated MIPS execution starts.  Respond to memory changes if running in timed
                 // or stepped mode.
-                if (notice.getRunSpeed() != RunSpeedPanel.UNLIMITED_SPEED || notice.getMaxSteps() == 1) {
+                if (notice.getRunSpeed() <= RunSpeedPanel.INTERACTION_LIMIT_SPEED || notice.getMaxSteps() == 1) {
                     Coprocessor1.addRegistersObserver(this);
                     this.highlighting = true;
                 }
@@ -293,8 +314,12 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
      * @param register Register object corresponding to row to be selected.
      */
     void highlightCellForRegister(Register register) {
+        int previousRow = this.highlightRow;
         this.highlightRow = register.getNumber();
-        table.tableChanged(new TableModelEvent(table.getModel()));
+        if (previousRow != highlightRow) {
+            repaintRow(previousRow);
+        }
+        repaintRow(highlightRow);
       	/*
          int registerColumn = FLOAT_COLUMN;
          registerColumn = table.convertColumnIndexToView(registerColumn); 
@@ -312,6 +337,12 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
       	*/
     }
 
+    private void repaintRow(int row) {
+        if (table != null && row >= 0) {
+            table.tableChanged(new TableModelEvent(table.getModel(), row));
+        }
+    }
+
     /*
      * Cell renderer for displaying register entries.  This does highlighting, so if you
      * don't want highlighting for a given column, don't use this.  Currently we highlight
@@ -471,6 +502,8 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
          * Update cell contents in table model.  Does not affect MIPS register.
          */
         private void setDisplayAndModelValueAt(Object value, int row, int col) {
+            if (value.equals(data[row][col]))
+                return;
             data[row][col] = value;
             fireTableCellUpdated(row, col);
         }
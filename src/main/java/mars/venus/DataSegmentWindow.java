@@ -35,14 +35,14 @@ import mars.simulator.SimulatorNotice;
 import mars.util.Binary;
 
 import javax.swing.*;
-import javax.swing.event.TableModelEvent;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.JTableHeader;
-import javax.swing.table.TableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -64,8 +64,6 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
     // MEMORY_CHUNK_SIZE means scroll a full table's worth.  Scrolls through memory faster.  DPS 26-Jan-09
     static final int PREV_NEXT_CHUNK_SIZE = MEMORY_CHUNK_SIZE / 2;
     static final int ADDRESS_COLUMN = 0;
-    static final boolean USER_MODE = false;
-    static final boolean KERNEL_MODE = true;
     private static final String[] dataSegmentNames = {"Data", "Stack", "Kernel"};
     ////////////////////////////////////////////////////////////////////////
     // Initalize arrays used with Base Address combo box chooser.
@@ -78,7 +76,6 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
     private static final int STACK_POINTER_BASE_ADDRESS_INDEX = 4; //5;
     private static final int KERNEL_DATA_BASE_ADDRESS_INDEX = 6;
     private static final int MMIO_BASE_ADDRESS_INDEX = 7;
-    private static Object[][] dataData;
     private static JTable dataTable;
     private final Container contentPane;
     private final JPanel tablePanel;
@@ -91,7 +88,8 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
             Memory.memoryMapBaseAddress,};
     int firstAddress;
     int homeAddress;
-    boolean userOrKernelMode;
+    // Bounds of the memory segment covered by the table rows, the high one exclusive.
+    private int segmentLowAddress, segmentHighAddress;
     // The combo box replaced the row of buttons when number of buttons expanded to 7!
     // We'll keep the button objects however and manually invoke their action listeners
     // when the corresponding combo box item is selected.  DPS 22-Nov-2006
@@ -123,7 +121,6 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
 
         homeAddress = Memory.dataBaseAddress;  // address for Home button
         firstAddress = homeAddress;  // first address to display at any given time
-        userOrKernelMode = USER_MODE;
         addressHighlighting = false;
         contentPane = this.getContentPane();
         tablePanel = new JPanel(new GridLayout(1, 2, 10, 0));
@@ -232,16 +229,19 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         if (rowColumn == null || rowColumn.x < 0 || rowColumn.y < 0) {
             return;
         }
+        DataTableModel model = (DataTableModel) dataTable.getModel();
+        int previousRow = model.getRowForAddress(this.addressRowFirstAddress);
         this.addressRow = rowColumn.x;
         this.addressColumn = rowColumn.y;
-        this.addressRowFirstAddress = Binary.stringToInt(dataTable.getValueAt(this.addressRow, ADDRESS_COLUMN).toString());
-        //System.out.println("Address "+Binary.intToHexString(address)+" becomes row "+ addressRow + " column "+addressColumn+
-        //" starting addr "+dataTable.getValueAt(this.addressRow,ADDRESS_COLUMN));
-        // Tell the system that table contents have changed.  This will trigger re-rendering
-        // during which cell renderers are obtained.  The cell of interest (identified by
-        // instance variables this.addressRow and this.addressColumn) will get a renderer
-        // with highlight background color and all others get renderer with default background.
-        dataTable.tableChanged(new TableModelEvent(dataTable.getModel(), 0, dataData.length - 1));
+        this.addressRowFirstAddress = model.getAddressAtRow(this.addressRow);
+        // Tell the system that the rows of the previous and the new highlighted cell have changed.
+        // This will trigger re-rendering during which cell renderers are obtained.  The cell of
+        // interest (identified by instance variables this.addressRow and this.addressColumn) will
+        // get a renderer with highlight background color and all others get renderer with default background.
+        if (previousRow >= 0) {
+            model.fireTableRowsUpdated(previousRow, previousRow);
+        }
+        model.fireTableRowsUpdated(this.addressRow, this.addressRow);
     }
 
     // Given address, will compute table cell location, adjusting table if necessary to
@@ -265,49 +265,34 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
             // It is not a data segment address so good bye!
             return null;
         }
-        // STEP 2:  Set the combo box appropriately.  This will also display the
-        // first chunk of addresses from that segment.
-        baseAddressSelector.setSelectedIndex(desiredComboBoxIndex);
-        ((CustomComboBoxModel<?>) baseAddressSelector.getModel()).forceComboBoxUpdate(desiredComboBoxIndex);
-        baseAddressButtons[desiredComboBoxIndex].getActionListeners()[0].actionPerformed(null);
-        // STEP 3:  Display memory chunk containing this address, which may be
-        // different than the one just displayed.
-        int baseAddress = displayBaseAddressArray[desiredComboBoxIndex];
-        if (baseAddress == -1) {
-            if (desiredComboBoxIndex == GLOBAL_POINTER_ADDRESS_INDEX) {
-                baseAddress = RegisterFile.getValue(RegisterFile.GLOBAL_POINTER_REGISTER)
-                        - (RegisterFile.getValue(RegisterFile.GLOBAL_POINTER_REGISTER) % BYTES_PER_ROW);
-            } else if (desiredComboBoxIndex == STACK_POINTER_BASE_ADDRESS_INDEX) {
-                baseAddress = RegisterFile.getValue(RegisterFile.STACK_POINTER_REGISTER)
-                        - (RegisterFile.getValue(RegisterFile.STACK_POINTER_REGISTER) % BYTES_PER_ROW);
-            } else {
-                return null;// shouldn't happen since these are the only two
-            }
+        // STEP 2:  If the table does not cover that segment yet, set the combo box
+        // appropriately.  This will also display the segment holding that address,
+        // scrolled to its base address.
+        DataTableModel model = (DataTableModel) dataTable.getModel();
+        if (model.getRowForAddress(address) < 0) {
+            baseAddressSelector.setSelectedIndex(desiredComboBoxIndex);
+            ((CustomComboBoxModel<?>) baseAddressSelector.getModel()).forceComboBoxUpdate(desiredComboBoxIndex);
+            baseAddressButtons[desiredComboBoxIndex].getActionListeners()[0].actionPerformed(null);
+        }
+        // STEP 3:  Find the table row holding this address.  The table covers the whole
+        // segment, so nothing has to be loaded, but the address may fall between segments.
+        int addrRow = model.getRowForAddress(address);
+        if (addrRow < 0) {
+            return null;
         }
-        int byteOffset = address - baseAddress;
-        int chunkOffset = byteOffset / MEMORY_CHUNK_SIZE;
-        int byteOffsetIntoChunk = byteOffset % MEMORY_CHUNK_SIZE;
-        // Subtract 1 from chunkOffset because we're gonna call the "next" action
-        // listener to get the correct chunk loaded and displayed, and the first
-        // thing it does is increment firstAddress by MEMORY_CHUNK_SIZE.  Here
-        // we do an offsetting decrement in advance because we don't want the
-        // increment but we want the other actions that method provides.
-        firstAddress = firstAddress + chunkOffset * MEMORY_CHUNK_SIZE - PREV_NEXT_CHUNK_SIZE;
-        nextButton.getActionListeners()[0].actionPerformed(null);
         // STEP 4:  Find cell containing this address.  Add 1 to column calculation
         // because table column 0 displays address, not memory contents.  The
         // "convertColumnIndexToView()" is not necessary because the columns cannot be
         // reordered, but I included it as a precautionary measure in case that changes.
-        int addrRow = byteOffsetIntoChunk / BYTES_PER_ROW;
-        int addrColumn = byteOffsetIntoChunk % BYTES_PER_ROW / BYTES_PER_VALUE + 1;
+        int addrColumn = (address - model.getAddressAtRow(addrRow)) / BYTES_PER_VALUE + 1;
         addrColumn = dataTable.convertColumnIndexToView(addrColumn);
-        Rectangle addressCell = dataTable.getCellRect(addrRow, addrColumn, true);
-        // STEP 5:  Center the row containing the cell of interest, to the extent possible.
-        double cellHeight = addressCell.getHeight();
-        double viewHeight = dataTableScroller.getViewport().getExtentSize().getHeight();
-        int numberOfVisibleRows = (int) (viewHeight / cellHeight);
-        int newViewPositionY = Math.max((int) ((addrRow - (numberOfVisibleRows / 2)) * cellHeight), 0);
-        dataTableScroller.getViewport().setViewPosition(new Point(0, newViewPositionY));
+        // STEP 5:  If it is not visible yet, center the row containing the cell of interest,
+        // to the extent possible.
+        int firstVisibleRow = model.getRowForAddress(firstAddress);
+        int numberOfVisibleRows = getVisibleRowCount();
+        if (addrRow < firstVisibleRow || addrRow >= firstVisibleRow + numberOfVisibleRows) {
+            scrollToRow(addrRow - numberOfVisibleRows / 2);
+        }
         return new Point(addrRow, addrColumn);
     }
 
@@ -396,26 +381,18 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
     //  Generates the Address/Data part of the Data Segment window.
     //   Returns the JScrollPane for the Address/Data part of the Data Segment window.
     private JScrollPane generateDataPanel() {
-        dataData = new Object[NUMBER_OF_ROWS][NUMBER_OF_COLUMNS];
-        int valueBase = Globals.getGui().getMainPane().getExecutePane().getValueDisplayBase();
         int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-        int address = this.homeAddress;
-        for (int row = 0; row < NUMBER_OF_ROWS; row++) {
-            dataData[row][ADDRESS_COLUMN] = NumberDisplayBaseChooser.formatUnsignedInteger(address, addressBase);
-            for (int column = 1; column < NUMBER_OF_COLUMNS; column++) {
-                try {
-                    dataData[row][column] = NumberDisplayBaseChooser.formatNumber(Globals.memory.getRawWord(address), valueBase);
-                } catch (AddressErrorException aee) {
-                    dataData[row][column] = NumberDisplayBaseChooser.formatNumber(0, valueBase);
-                }
-                address += BYTES_PER_VALUE;
-            }
-        }
         String[] names = new String[NUMBER_OF_COLUMNS];
         for (int i = 0; i < NUMBER_OF_COLUMNS; i++) {
             names[i] = getHeaderStringForColumn(i, addressBase);
         }
-        dataTable = new MyTippedJTable(new DataTableModel(dataData, names));
+        setSegmentForAddress(homeAddress);
+        DataTableModel model = new DataTableModel(names, segmentLowAddress, segmentHighAddress,
+                addressBase, getValueDisplayFormat());
+        dataTable = new MyTippedJTable(model);
+        // The segment may have to be cut short for the row height of the new table
+        setSegmentForAddress(homeAddress);
+        model.setSegment(segmentLowAddress, segmentHighAddress);
         // Do not allow user to re-order columns; column order corresponds to MIPS memory order
         dataTable.getTableHeader().setReorderingAllowed(false);
         dataTable.setRowSelectionAllowed(false);
@@ -429,11 +406,121 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
             dataTable.getColumnModel().getColumn(i).setPreferredWidth(60);
             dataTable.getColumnModel().getColumn(i).setCellRenderer(addressCellRenderer);
         }
+        // Right-click on a value to watch it
+        dataTable.addMouseListener(new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                showWatchpointPopup(e);
+            }
+
+            public void mouseReleased(MouseEvent e) {
+                showWatchpointPopup(e);
+            }
+        });
         dataTableScroller = new JScrollPane(dataTable, ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS,
                 ScrollPaneConstants.HORIZONTAL_SCROLLBAR_ALWAYS);
+        dataTableScroller.getViewport().addChangeListener(e -> viewportScrolled());
+        scrollToRow(Math.max(model.getRowForAddress(firstAddress), 0));
         return dataTableScroller;
     }
 
+    // Offers to set or remove a watchpoint on the value under the mouse, if the event is a popup trigger.
+    private void showWatchpointPopup(MouseEvent e) {
+        int row = dataTable.rowAtPoint(e.getPoint());
+        int column = dataTable.columnAtPoint(e.getPoint());
+        if (!e.isPopupTrigger() || row < 0 || column <= ADDRESS_COLUMN) {
+            return;
+        }
+        int address = getAddressAtCell(row, column);
+        TextSegmentWindow textSegment = Globals.getGui().getMainPane().getExecutePane().getTextSegmentWindow();
+        JCheckBoxMenuItem watchItem = new JCheckBoxMenuItem("Pause when " + Binary.intToHexString(address) + " changes",
+                textSegment.isWatched(address));
+        watchItem.addActionListener(a -> {
+            textSegment.setWatched(address, watchItem.isSelected());
+            dataTable.repaint(dataTable.getCellRect(row, column, true));
+        });
+        JPopupMenu popup = new JPopupMenu();
+        popup.add(watchItem);
+        popup.show(dataTable, e.getX(), e.getY());
+    }
+
+    // Address of the value displayed in the given table cell
+    private int getAddressAtCell(int row, int column) {
+        return ((DataTableModel) dataTable.getModel()).getAddressAtRow(row) + (column - 1) * BYTES_PER_VALUE;
+    }
+
+    // Table rows cover the whole memory segment holding the given address, so the user can
+    // scroll through it.  Addresses outside any segment get the data segment.
+    private void setSegmentForAddress(int address) {
+        int lowAddress, highAddress;
+        if (Memory.inDataSegment(address)) {
+            lowAddress = Memory.dataSegmentBaseAddress;
+            highAddress = Memory.dataSegmentLimitAddress;
+        } else if (address > Memory.stackLimitAddress && address <= Memory.stackBaseAddress) {
+            lowAddress = Memory.stackLimitAddress + Memory.WORD_LENGTH_BYTES;
+            highAddress = Memory.stackBaseAddress + Memory.WORD_LENGTH_BYTES;
+        } else if (Memory.inTextSegment(address)) {
+            lowAddress = Memory.textBaseAddress;
+            highAddress = Memory.textLimitAddress;
+        } else if (Memory.inMemoryMapSegment(address)) {
+            lowAddress = Memory.memoryMapBaseAddress;
+            highAddress = Memory.memoryMapLimitAddress;
+        } else if (Memory.inKernelDataSegment(address)) {
+            lowAddress = Memory.kernelDataBaseAddress;
+            highAddress = Memory.kernelDataSegmentLimitAddress;
+        } else {
+            lowAddress = Memory.dataSegmentBaseAddress;
+            highAddress = Memory.dataSegmentLimitAddress;
+        }
+        // Rows start at multiples of BYTES_PER_ROW.  Differences are taken so that a limit
+        // wrapping around past 0xffffffff still works.
+        segmentLowAddress = lowAddress - Math.floorMod(lowAddress, BYTES_PER_ROW);
+        segmentHighAddress = highAddress + Math.floorMod(-highAddress, BYTES_PER_ROW);
+        if (dataTable != null) {
+            // JTable places rows at int pixel offsets, so rows that would be placed past
+            // Integer.MAX_VALUE are left out, e.g. the end of the kernel data segment with large fonts.
+            long maxBytes = (long) (Integer.MAX_VALUE / dataTable.getRowHeight()) * BYTES_PER_ROW;
+            if (Integer.toUnsignedLong(segmentHighAddress - segmentLowAddress) > maxBytes) {
+                segmentHighAddress = segmentLowAddress + (int) maxBytes;
+            }
+        }
+        if (dataTable != null && tablePanel.getComponentCount() > 0) {
+            ((DataTableModel) dataTable.getModel()).setSegment(segmentLowAddress, segmentHighAddress);
+        }
+    }
+
+    // Number of table rows that fit in the viewport, or the number shown initially if it is not laid out yet.
+    private int getVisibleRowCount() {
+        int rows = (dataTableScroller == null) ? 0
+                : dataTableScroller.getViewport().getExtentSize().height / dataTable.getRowHeight();
+        return (rows > 0) ? rows : NUMBER_OF_ROWS;
+    }
+
+    // Scroll the viewport so the given row is at its top, as far as the table allows.
+    private void scrollToRow(int row) {
+        JViewport viewport = dataTableScroller.getViewport();
+        int rowHeight = dataTable.getRowHeight();
+        long maxPositionY = Math.max(0, (long) dataTable.getModel().getRowCount() * rowHeight - viewport.getExtentSize().height);
+        viewport.setViewPosition(new Point(0, (int) Math.max(0, Math.min((long) row * rowHeight, maxPositionY))));
+    }
+
+    // Keep firstAddress at the first visible row, and the Prev and Next buttons enabled
+    // only while there is more of the segment to see in their direction.
+    private void viewportScrolled() {
+        JViewport viewport = dataTableScroller.getViewport();
+        DataTableModel model = (DataTableModel) dataTable.getModel();
+        if (model.getRowCount() == 0) {
+            return;
+        }
+        int positionY = viewport.getViewPosition().y;
+        int row = Math.min(positionY / dataTable.getRowHeight(), model.getRowCount() - 1);
+        firstAddress = model.getAddressAtRow(row);
+        if (baseAddressSelector.isEnabled()) {
+            prevButton.setEnabled(positionY > 0);
+            nextButton.setEnabled((long) positionY + viewport.getExtentSize().height
+                    < (long) model.getRowCount() * dataTable.getRowHeight());
+        }
+    }
+
     // Little helper.  Is called when headers set up and each time number base changes.
     private String getHeaderStringForColumn(int i, int base) {
         return (i == ADDRESS_COLUMN) ? "Address" : "Value (+" + Integer.toString((i - 1) * BYTES_PER_VALUE, base) + ")";
@@ -463,7 +550,11 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
      */
     public void clearHighlighting() {
         addressHighlighting = false;
-        dataTable.tableChanged(new TableModelEvent(dataTable.getModel(), 0, dataData.length - 1));
+        DataTableModel model = (DataTableModel) dataTable.getModel();
+        int row = model.getRowForAddress(addressRowFirstAddress);
+        if (row >= 0) {
+            model.fireTableRowsUpdated(row, row);
+        }
         // The below addresses situation in which addressRow and addressColum hold their
         // values across assemble operations.  Whereupon at the first step of the next
         // run the last cells from the previous run are highlighted!  This method is called
@@ -474,74 +565,23 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
     }
 
 
-    private int getValueDisplayFormat() {
+    int getValueDisplayFormat() {
         return (asciiDisplay) ? NumberDisplayBaseChooser.ASCII :
                 Globals.getGui().getMainPane().getExecutePane().getValueDisplayBase();
     }
 
     /**
-     * Update table model with contents of new memory "chunk".  Mars supports megabytes of
-     * data segment space so we only plug a "chunk" at a time into the table.
+     * Scroll the table to the given memory range.  The table holds the whole memory segment,
+     * but its rows are only read from memory and formatted when displayed, so Mars can support
+     * megabytes of data segment space.
      *
-     * @param firstAddr the first address in the memory range to be placed in the model.
+     * @param firstAddr the first address in the memory range to be displayed.
      */
     public void updateModelForMemoryRange(int firstAddr) {
         if (tablePanel.getComponentCount() == 0)
             return; // ignore if no content to change
-        int valueBase = getValueDisplayFormat();
-        int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-        int address = firstAddr;
-        TableModel dataModel = dataTable.getModel();
-        for (int row = 0; row < NUMBER_OF_ROWS; row++) {
-            ((DataTableModel) dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatUnsignedInteger(address, addressBase), row, ADDRESS_COLUMN);
-            for (int column = 1; column < NUMBER_OF_COLUMNS; column++) {
-                try {
-                    ((DataTableModel) dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(Globals.memory.getWordNoNotify(address), valueBase), row, column);
-                } catch (AddressErrorException aee) {
-                    // Bit of a hack here.  Memory will throw an exception if you try to read directly from text segment when the
-                    // self-modifying code setting is disabled.  This is a good thing if it is the executing MIPS program trying to
-                    // read.  But not a good thing if it is the DataSegmentDisplay trying to read.  I'll trick Memory by
-                    // temporarily enabling the setting as "non persistent" so it won't write through to the registry.
-                    if (Memory.inTextSegment(address)) {
-                        int displayValue = 0;
-                        if (!Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
-                            Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, true);
-                            try {
-                                displayValue = Globals.memory.getWordNoNotify(address);
-                            } catch (AddressErrorException e) {
-                                // Still got an exception?  Doesn't seem possible but if we drop through it will write default value 0.
-                            }
-                            Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, false);
-                        }
-                        ((DataTableModel) dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(displayValue, valueBase), row, column);
-                    }
-                    // Bug Fix: the following line of code disappeared during the release 4.4 mods, but is essential to
-                    // display values of 0 for valid MIPS addresses that are outside the MARS simulated address space.  Such
-                    // addresses cause an AddressErrorException.  Prior to 4.4, they performed this line of code unconditionally.
-                    // With 4.4, I added the above IF statement to work with the text segment but inadvertently removed this line!
-                    // Now it becomes the "else" part, executed when not in text segment.  DPS 8-July-2014.
-                    else {
-                        ((DataTableModel) dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(0, valueBase), row, column);
-                    }
-                }
-                address += BYTES_PER_VALUE;
-            }
-        }
-    }
-
-    /**
-     * Update data display to show this value (I'm not sure it is being called).
-     */
-    public void updateCell(int address, int value) {
-        int offset = address - this.firstAddress;
-        if (offset < 0 || offset >= MEMORY_CHUNK_SIZE) { // out of range
-            return;
-        }
-        int row = offset / BYTES_PER_ROW;
-        int column = (offset % BYTES_PER_ROW) / BYTES_PER_VALUE + 1; // column 0 reserved for address
-        int valueBase = Globals.getGui().getMainPane().getExecutePane().getValueDisplayBase();
-        ((DataTableModel) dataTable.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(value, valueBase),
-                row, column);
+        int row = ((DataTableModel) dataTable.getModel()).getRowForAddress(firstAddr);
+        scrollToRow(Math.max(row, 0));
     }
 
     /**
@@ -552,13 +592,7 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         if (tablePanel.getComponentCount() == 0)
             return; // ignore if no content to change
         int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-        int address = this.firstAddress;
-        String formattedAddress;
-        for (int i = 0; i < NUMBER_OF_ROWS; i++) {
-            formattedAddress = NumberDisplayBaseChooser.formatUnsignedInteger(address, addressBase);
-            ((DataTableModel) dataTable.getModel()).setDisplayAndModelValueAt(formattedAddress, i, 0);
-            address += BYTES_PER_ROW;
-        }
+        ((DataTableModel) dataTable.getModel()).setAddressBase(addressBase);
         // column headers include address offsets, so translate them too
         for (int i = 1; i < NUMBER_OF_COLUMNS; i++) {
             dataTable.getColumnModel().getColumn(i).setHeaderValue(getHeaderStringForColumn(i, addressBase));
@@ -567,10 +601,27 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
     }
 
     /**
-     * Update data display to show all values
+     * Update data display to show all values.  Only the visible rows on memory pages written
+     * since they were last displayed are read and formatted again, unless the value display
+     * format changed.
      */
     public void updateValues() {
-        updateModelForMemoryRange(this.firstAddress);
+        if (tablePanel.getComponentCount() == 0)
+            return; // ignore if no content to change
+        DataTableModel model = (DataTableModel) dataTable.getModel();
+        if (model.setValueFormat(getValueDisplayFormat())) {
+            return;
+        }
+        Rectangle visible = dataTableScroller.getViewport().getViewRect();
+        int firstRow = dataTable.rowAtPoint(new Point(0, visible.y));
+        int lastRow = dataTable.rowAtPoint(new Point(0, visible.y + visible.height - 1));
+        if (firstRow < 0) {
+            firstRow = 0;
+        }
+        if (lastRow < 0) {
+            lastRow = Math.min(firstRow + NUMBER_OF_ROWS, model.getRowCount()) - 1;
+        }
+        model.fireWrittenRowsUpdated(firstRow, lastRow);
     }
 
     /**
@@ -581,16 +632,10 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
     }
 
     /**
-     * Reset all data display values to 0
+     * Reset all data display values to the current, typically just cleared, memory contents
      */
     public void resetValues() {
-        int valueBase = Globals.getGui().getMainPane().getExecutePane().getValueDisplayBase();
-        TableModel dataModel = dataTable.getModel();
-        for (int row = 0; row < NUMBER_OF_ROWS; row++) {
-            for (int column = 1; column < NUMBER_OF_COLUMNS; column++) {
-                ((DataTableModel) dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(0, valueBase), row, column);
-            }
-        }
+        ((DataTableModel) dataTable.getModel()).clearFormattedRows();
         disableAllButtons();
     }
 
@@ -657,7 +702,6 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         // Currently there is no memory upper bound so next button always enabled.
 
         globButton.addActionListener(ae -> {
-            userOrKernelMode = USER_MODE;
             // get $gp global pointer, but guard against it having value below data segment
             firstAddress = Math.max(Memory.dataSegmentBaseAddress, RegisterFile.getValue(RegisterFile.GLOBAL_POINTER_REGISTER));
             // updateModelForMemoryRange requires argument to be multiple of 4
@@ -670,7 +714,6 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         });
 
         stakButton.addActionListener(ae -> {
-            userOrKernelMode = USER_MODE;
             // get $sp stack pointer, but guard against it having value below data segment
             firstAddress = Math.max(Memory.dataSegmentBaseAddress, RegisterFile.getValue(RegisterFile.STACK_POINTER_REGISTER));
             // See comment above for gloButton...
@@ -681,21 +724,18 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         });
 
         heapButton.addActionListener(ae -> {
-            userOrKernelMode = USER_MODE;
             homeAddress = Memory.heapBaseAddress;
             firstAddress = setFirstAddressAndPrevNextButtonEnableStatus(homeAddress);
             updateModelForMemoryRange(firstAddress);
         });
 
         extnButton.addActionListener(ae -> {
-            userOrKernelMode = USER_MODE;
             homeAddress = Memory.externBaseAddress;
             firstAddress = setFirstAddressAndPrevNextButtonEnableStatus(homeAddress);
             updateModelForMemoryRange(firstAddress);
         });
 
         kernButton.addActionListener(ae -> {
-            userOrKernelMode = KERNEL_MODE;
             homeAddress = Memory.kernelDataBaseAddress;
             firstAddress = homeAddress;
             firstAddress = setFirstAddressAndPrevNextButtonEnableStatus(firstAddress);
@@ -703,7 +743,6 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         });
 
         mmioButton.addActionListener(ae -> {
-            userOrKernelMode = KERNEL_MODE;
             homeAddress = Memory.memoryMapBaseAddress;
             firstAddress = homeAddress;
             firstAddress = setFirstAddressAndPrevNextButtonEnableStatus(firstAddress);
@@ -711,7 +750,6 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         });
 
         textButton.addActionListener(ae -> {
-            userOrKernelMode = USER_MODE;
             homeAddress = Memory.textBaseAddress;
             firstAddress = homeAddress;
             firstAddress = setFirstAddressAndPrevNextButtonEnableStatus(firstAddress);
@@ -719,7 +757,6 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         });
 
         dataButton.addActionListener(ae -> {
-            userOrKernelMode = USER_MODE;
             homeAddress = Memory.dataBaseAddress;
             firstAddress = homeAddress;
             firstAddress = setFirstAddressAndPrevNextButtonEnableStatus(firstAddress);
@@ -731,11 +768,9 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
     }
 
     ////////////////////////////////////////////////////////////////////////////////////
-    // This will assure that user cannot view memory locations outside the data segment
-    // for selected mode.  For user mode, this means no lower than data segment base,
-    // or higher than user memory boundary.  For kernel mode, this means no lower than
-    // kernel data segment base or higher than kernel memory.  It is called by the
-    // above action listeners.
+    // This will assure that user cannot view memory locations outside the memory segment
+    // holding the home address, which is the one covered by the table rows.  It is called
+    // by the above action listeners.
     //
     // lowAddress is lowest desired address to view, it is adjusted if necessary
     // and returned.
@@ -743,20 +778,18 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
     // PrevButton and NextButton are enabled/disabled appropriately.
     //
     private int setFirstAddressAndPrevNextButtonEnableStatus(int lowAddress) {
-        int lowLimit = (userOrKernelMode == USER_MODE) ? Math.min(Math.min(Memory.textBaseAddress,
-                Memory.dataSegmentBaseAddress),
-                Memory.dataBaseAddress)
-                : Memory.kernelDataBaseAddress;
-        int highLimit = (userOrKernelMode == USER_MODE) ? Memory.userHighAddress
-                : Memory.kernelHighAddress;
-        if (lowAddress <= lowLimit) {
-            lowAddress = lowLimit;
+        setSegmentForAddress(homeAddress);
+        // Offsets from the segment base, so that segments at the top of the address space compare right
+        int offset = lowAddress - segmentLowAddress;
+        int lastOffset = Math.max(0, segmentHighAddress - segmentLowAddress - getVisibleRowCount() * BYTES_PER_ROW);
+        if (offset <= 0) {
+            lowAddress = segmentLowAddress;
             prevButton.setEnabled(false);
         } else {
             prevButton.setEnabled(true);
         }
-        if (lowAddress >= highLimit - MEMORY_CHUNK_SIZE) {
-            lowAddress = highLimit - MEMORY_CHUNK_SIZE + 1;
+        if (offset >= lastOffset) {
+            lowAddress = segmentLowAddress + lastOffset;
             nextButton.setEnabled(false);
         } else {
             nextButton.setEnabled(true);
@@ -784,7 +817,7 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
 
                 // Simulated MIPS execution starts.  Respond to memory changes if running in timed
                 // or stepped mode.
-                if (notice.getRunSpeed() != RunSpeedPanel.UNLIMITED_SPEED || notice.getMaxSteps() == 1) {
+                if (notice.getRunSpeed() <= RunSpeedPanel.INTERACTION_LIMIT_SPEED || notice.getMaxSteps() == 1) {
                     Memory.getInstance().addObserver(this);
                     addressHighlighting = true;
                 }
@@ -793,6 +826,10 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
                 Memory.getInstance().deleteObserver(this);
             }
         } else if (observable == settings) {
+            // Colors and fonts may have changed.  The formatted rows are still valid, so this only repaints.
+            if (tablePanel.getComponentCount() > 0) {
+                dataTable.repaint();
+            }
             // Suspended work in progress. Intended to disable combobox item for text segment. DPS 9-July-2013.
             //baseAddressSelector.getModel().getElementAt(TEXT_BASE_ADDRESS_INDEX)
             //*.setEnabled(settings.getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED));
@@ -800,8 +837,9 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
             if (access.getAccessType() == AccessNotice.WRITE) {
                 int address = access.getAddress();
                 // Use the same highlighting technique as for Text Segment -- see
-                // AddressCellRenderer class below.
-                this.highlightCellForAddress(address);
+                // AddressCellRenderer class below.  Notices come from the simulator thread,
+                // while the table and its formatted rows belong to the event dispatch thread.
+                SwingUtilities.invokeLater(() -> highlightCellForAddress(address));
             }
         }
     }
@@ -832,12 +870,28 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
     // Class representing memory data table data
 
     class DataTableModel extends AbstractTableModel {
+        // Enough for several screens of rows, so scrolling back and forth rarely reformats
+        private static final int FORMATTED_ROWS_CACHE_SIZE = 512;
+
         String[] columnNames;
-        Object[][] data;
+        private int lowAddress;
+        private int rowCount;
+        private int addressBase;
+        private int valueFormat;
+        // Formatted rows, each with the write generation of its memory page when it was formatted
+        private final Map<Integer, FormattedRow> formattedRows =
+                new LinkedHashMap<>(FORMATTED_ROWS_CACHE_SIZE * 4 / 3, 0.75f, true) {
+                    protected boolean removeEldestEntry(Map.Entry<Integer, FormattedRow> eldest) {
+                        return size() > FORMATTED_ROWS_CACHE_SIZE;
+                    }
+                };
 
-        public DataTableModel(Object[][] d, String[] n) {
-            data = d;
+        public DataTableModel(String[] n, int lowAddress, int highAddress, int addressBase, int valueFormat) {
             columnNames = n;
+            this.lowAddress = lowAddress;
+            this.rowCount = (highAddress - lowAddress) / BYTES_PER_ROW;
+            this.addressBase = addressBase;
+            this.valueFormat = valueFormat;
         }
 
         public int getColumnCount() {
@@ -845,15 +899,25 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         }
 
         public int getRowCount() {
-            return data.length;
+            return rowCount;
         }
 
         public String getColumnName(int col) {
             return columnNames[col];
         }
 
+        /*
+         * Rows are read from memory and formatted the first time they are displayed.  They are
+         * formatted again only once their memory page has been written since.
+         */
         public Object getValueAt(int row, int col) {
-            return data[row][col];
+            long generation = Globals.memory.getPageGeneration(getAddressAtRow(row));
+            FormattedRow formattedRow = formattedRows.get(row);
+            if (formattedRow == null || formattedRow.generation != generation) {
+                formattedRow = formatRow(row, generation);
+                formattedRows.put(row, formattedRow);
+            }
+            return formattedRow.cells[col];
         }
 
         /*
@@ -876,7 +940,7 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
          * editor for each cell.
          */
         public Class<?> getColumnClass(int c) {
-            return getValueAt(0, c).getClass();
+            return String.class;
         }
 
 
@@ -887,22 +951,19 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
          */
         public void setValueAt(Object value, int row, int col) {
             int val;
-            int address = 0;
             try {
                 val = Binary.stringToInt((String) value);
             } catch (NumberFormatException nfe) {
-                data[row][col] = "INVALID";
+                FormattedRow formattedRow = formattedRows.get(row);
+                if (formattedRow != null) {
+                    formattedRow.cells[col] = "INVALID";
+                }
                 fireTableCellUpdated(row, col);
                 return;
             }
 
             // calculate address from row and column
-            try {
-                address = Binary.stringToInt((String) data[row][ADDRESS_COLUMN]) + (col - 1) * BYTES_PER_VALUE;  // KENV 1/6/05
-            } catch (NumberFormatException nfe) {
-                //  can't really happen since memory addresses are completely under
-                // the control of my software.
-            }
+            int address = getAddressAtRow(row) + (col - 1) * BYTES_PER_VALUE;  // KENV 1/6/05
             //  Assures that if changed during MIPS program execution, the update will
             //  occur only between MIPS instructions.
             synchronized (Globals.memoryAndRegistersLock) {
@@ -915,17 +976,96 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
                     return;
                 }
             }// end synchronized block
-            int valueBase = Globals.getGui().getMainPane().getExecutePane().getValueDisplayBase();
-            data[row][col] = NumberDisplayBaseChooser.formatNumber(val, valueBase);
+            // The write moved the page to a new generation, so the row is formatted again
             fireTableCellUpdated(row, col);
         }
 
+        int getAddressAtRow(int row) {
+            return lowAddress + row * BYTES_PER_ROW;
+        }
+
         /*
-         * Update cell contents in table model.  Does not affect MIPS memory.
+         * Returns the table row holding the given address, -1 if it is outside the table.
          */
-        private void setDisplayAndModelValueAt(Object value, int row, int col) {
-            data[row][col] = value;
-            fireTableCellUpdated(row, col);
+        int getRowForAddress(int address) {
+            int offset = address - lowAddress;
+            return (offset >= 0 && offset < rowCount * BYTES_PER_ROW) ? offset / BYTES_PER_ROW : -1;
+        }
+
+        /*
+         * Make the rows cover the given memory range, the high address exclusive.
+         */
+        void setSegment(int lowAddress, int highAddress) {
+            int rows = (highAddress - lowAddress) / BYTES_PER_ROW;
+            if (lowAddress == this.lowAddress && rows == rowCount) {
+                return;
+            }
+            this.lowAddress = lowAddress;
+            this.rowCount = rows;
+            formattedRows.clear();
+            fireTableDataChanged();
+        }
+
+        void setAddressBase(int addressBase) {
+            this.addressBase = addressBase;
+            clearFormattedRows();
+        }
+
+        /*
+         * Returns false if the values were already displayed in this format.
+         */
+        boolean setValueFormat(int valueFormat) {
+            if (valueFormat == this.valueFormat) {
+                return false;
+            }
+            this.valueFormat = valueFormat;
+            clearFormattedRows();
+            return true;
+        }
+
+        /*
+         * Forget all formatted rows and display them again.
+         */
+        void clearFormattedRows() {
+            formattedRows.clear();
+            if (rowCount > 0) {
+                fireTableRowsUpdated(0, rowCount - 1);
+            }
+        }
+
+        /*
+         * Display again the rows in the given range whose memory page was written since they
+         * were formatted.  Consecutive rows are reported together.
+         */
+        void fireWrittenRowsUpdated(int firstRow, int lastRow) {
+            int changedFrom = -1;
+            for (int row = firstRow; row <= lastRow + 1; row++) {
+                boolean changed = false;
+                if (row <= lastRow) {
+                    FormattedRow formattedRow = formattedRows.get(row);
+                    changed = formattedRow == null
+                            || formattedRow.generation != Globals.memory.getPageGeneration(getAddressAtRow(row));
+                }
+                if (changed && changedFrom < 0) {
+                    changedFrom = row;
+                } else if (!changed && changedFrom >= 0) {
+                    fireTableRowsUpdated(changedFrom, row - 1);
+                    changedFrom = -1;
+                }
+            }
+        }
+
+        // Formats the address and value columns of the given row.
+        private FormattedRow formatRow(int row, long generation) {
+            int address = getAddressAtRow(row);
+            int[] words = new int[VALUES_PER_ROW];
+            readDisplayWords(address, words);
+            String[] cells = new String[NUMBER_OF_COLUMNS];
+            cells[ADDRESS_COLUMN] = NumberDisplayBaseChooser.formatUnsignedInteger(address, addressBase);
+            for (int column = 1; column < NUMBER_OF_COLUMNS; column++) {
+                cells[column] = NumberDisplayBaseChooser.formatNumber(words[column - 1], valueFormat);
+            }
+            return new FormattedRow(generation, cells);
         }
 
         private void printDebugData() {
@@ -935,7 +1075,7 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
             for (int i = 0; i < numRows; i++) {
                 System.out.print("    row " + i + ":");
                 for (int j = 0; j < numCols; j++) {
-                    System.out.print("  " + data[i][j]);
+                    System.out.print("  " + getValueAt(i, j));
                 }
                 System.out.println();
             }
@@ -943,6 +1083,45 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         }
     }
 
+    // The displayed strings of one row, valid while its memory page keeps the same write generation
+    private static class FormattedRow {
+        private final long generation;
+        private final String[] cells;
+
+        FormattedRow(long generation, String[] cells) {
+            this.generation = generation;
+            this.cells = cells;
+        }
+    }
+
+    // Reads the words displayed in a row starting at the given address.
+    private static void readDisplayWords(int address, int[] words) {
+        // Bit of a hack here.  Memory will throw an exception if you try to read directly from text segment when the
+        // self-modifying code setting is disabled.  This is a good thing if it is the executing MIPS program trying to
+        // read.  But not a good thing if it is the DataSegmentDisplay trying to read.  I'll trick Memory by
+        // temporarily enabling the setting as "non persistent" so it won't write through to the registry.
+        boolean textReadsDisabled = Memory.inTextSegment(address)
+                && !Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED);
+        if (textReadsDisabled) {
+            Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, true);
+        }
+        try {
+            for (int i = 0; i < words.length; i++) {
+                try {
+                    words[i] = Globals.memory.getWordNoNotify(address + i * BYTES_PER_VALUE);
+                } catch (AddressErrorException aee) {
+                    // Display values of 0 for valid MIPS addresses that are outside the MARS simulated
+                    // address space.  Such addresses cause an AddressErrorException.
+                    words[i] = 0;
+                }
+            }
+        } finally {
+            if (textReadsDisabled) {
+                Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, false);
+            }
+        }
+    }
+
 
     // Special renderer capable of highlighting cells by changing background color.
     // Will set background to highlight color if certain conditions met.
@@ -955,7 +1134,7 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
                     isSelected, hasFocus, row, column);
 
             cell.setHorizontalAlignment(SwingConstants.RIGHT);
-            int rowFirstAddress = Binary.stringToInt(table.getValueAt(row, ADDRESS_COLUMN).toString());
+            int rowFirstAddress = ((DataTableModel) table.getModel()).getAddressAtRow(row);
             if (settings.getDataSegmentHighlighting() && addressHighlighting && rowFirstAddress == addressRowFirstAddress && column == addressColumn) {
                 cell.setBackground(settings.getColorSettingByPosition(Settings.DATASEGMENT_HIGHLIGHT_BACKGROUND));
                 cell.setForeground(settings.getColorSettingByPosition(Settings.DATASEGMENT_HIGHLIGHT_FOREGROUND));
@@ -969,6 +1148,14 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
                 cell.setForeground(settings.getColorSettingByPosition(Settings.ODD_ROW_FOREGROUND));
                 cell.setFont(settings.getFontByPosition(Settings.ODD_ROW_FONT));
             }
+            // Watched values are bold
+            if (Globals.getGui().getMainPane().getExecutePane().getTextSegmentWindow()
+                    .isWatched(rowFirstAddress + (column - 1) * BYTES_PER_VALUE)) {
+                cell.setFont(cell.getFont().deriveFont(Font.BOLD));
+                cell.setToolTipText("Watched: execution pauses when this value changes");
+            } else {
+                cell.setToolTipText(null);
+            }
             return cell;
         }
 
@@ -87,6 +87,7 @@ public class ExecutePane extends JDesktopPane implements Observer {
         textSegment.setVisible(true);
         dataSegment.setVisible(true);
         labelValues.setVisible(labelWindowVisible);
+        new RefreshScheduler(this);
     }
 
     /**
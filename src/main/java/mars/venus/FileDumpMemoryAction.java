@@ -58,10 +58,12 @@ public class FileDumpMemoryAction extends GuiAction {
     private int[] baseAddressArray;
     private int[] limitAddressArray;
     private int[] highAddressArray;
-    // These three are allocated and filled by buildDialogPanel() and used by action listeners.
+    // These four are allocated and filled by buildDialogPanel() and used by action listeners.
     private String[] segmentListArray;
     private int[] segmentListBaseArray;
     private int[] segmentListHighArray;
+    // Last word of each listed segment, for the formats that skip unallocated memory
+    private int[] segmentListLimitArray;
 
     private JComboBox<String> segmentListSelector;
     private JComboBox<DumpFormat> formatListSelector;
@@ -113,10 +115,11 @@ public class FileDumpMemoryAction extends GuiAction {
         highAddressArray = new int[segmentArray.length];
 
 
-        // These three are allocated and filled by buildDialogPanel() and used by action listeners.
+        // These four are allocated and filled by buildDialogPanel() and used by action listeners.
         segmentListArray = new String[segmentArray.length];
         segmentListBaseArray = new int[segmentArray.length];
         segmentListHighArray = new int[segmentArray.length];
+        segmentListLimitArray = new int[segmentArray.length];
 
         // Calculate the actual highest address to be dumped.  For text segment, this depends on the
         // program length (number of machine code instructions).  For data segment, this depends on
@@ -139,6 +142,7 @@ public class FileDumpMemoryAction extends GuiAction {
             if (highAddressArray[i] >= baseAddressArray[i]) {
                 segmentListBaseArray[segmentCount] = baseAddressArray[i];
                 segmentListHighArray[segmentCount] = highAddressArray[i];
+                segmentListLimitArray[segmentCount] = limitAddressArray[i] - Memory.WORD_LENGTH_BYTES;
                 segmentListArray[segmentCount] =
                         segmentArray[i] + " (" + Binary.intToHexString(baseAddressArray[i]) +
                                 " - " + Binary.intToHexString(highAddressArray[i]) + ")";
@@ -186,10 +190,12 @@ public class FileDumpMemoryAction extends GuiAction {
         Box controlPanel = Box.createHorizontalBox();
         JButton dumpButton = new JButton("Dump To File...");
         dumpButton.addActionListener(e -> {
-            if (performDump(
-                    segmentListBaseArray[segmentListSelector.getSelectedIndex()],
-                    segmentListHighArray[segmentListSelector.getSelectedIndex()],
-                    (DumpFormat) formatListSelector.getSelectedItem())) {
+            int segment = segmentListSelector.getSelectedIndex();
+            DumpFormat format = (DumpFormat) formatListSelector.getSelectedItem();
+            // Formats that skip unallocated memory go on to the end of the segment, as from the command line
+            int lastAddress = format.skipsUnallocatedMemory()
+                    ? segmentListLimitArray[segment] : segmentListHighArray[segment];
+            if (performDump(segmentListBaseArray[segment], lastAddress, format)) {
                 closeDialog();
             }
         });
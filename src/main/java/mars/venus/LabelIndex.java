@@ -0,0 +1,170 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.venus;
+
+import mars.assembler.Symbol;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sorted index of the labels of one symbol table, built once per assembly for the Labels window.
+ * <p>
+ * Labels are identified by their position in the symbol list the index was built from.  The
+ * index keeps them sorted by lower case name, which doubles as a prefix index: the labels
+ * starting with a given prefix are a contiguous range of that order, found by binary search.
+ * It also keeps (address, name rank) pairs packed in longs and sorted, so that labels are
+ * listed by address, ties broken by name, by scanning that array and keeping the ranks
+ * within the prefix range.  Neither narrowing by prefix nor changing the sort order sorts again.
+ */
+class LabelIndex {
+    private final String[] names;
+    private final int[] addresses;
+    private final boolean[] data;
+    // Lower case names in name order, and the label at each position of that order
+    private final String[] sortedLowerNames;
+    private final int[] byName;
+    // Unsigned address in the high half, position in name order in the low half
+    private final long[] byAddress;
+
+    LabelIndex(List<Symbol> symbols) {
+        int size = symbols.size();
+        names = new String[size];
+        addresses = new int[size];
+        data = new boolean[size];
+        String[] lowerNames = new String[size];
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            Symbol symbol = symbols.get(i);
+            names[i] = symbol.getName();
+            addresses[i] = symbol.getAddress();
+            data[i] = symbol.getType() == Symbol.DATA_SYMBOL;
+            lowerNames[i] = names[i].toLowerCase(Locale.ROOT);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> lowerNames[a].compareTo(lowerNames[b]));
+        sortedLowerNames = new String[size];
+        byName = new int[size];
+        byAddress = new long[size];
+        for (int rank = 0; rank < size; rank++) {
+            int label = order[rank];
+            sortedLowerNames[rank] = lowerNames[label];
+            byName[rank] = label;
+            // Flipping the sign bit makes signed order of the high half unsigned order of addresses
+            byAddress[rank] = ((long) (addresses[label] ^ Integer.MIN_VALUE) << 32) | rank;
+        }
+        Arrays.sort(byAddress);
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    String getName(int label) {
+        return names[label];
+    }
+
+    int getAddress(int label) {
+        return addresses[label];
+    }
+
+    /**
+     * Labels whose name starts with the given prefix, ignoring case, in display order.
+     *
+     * @param prefix     name prefix, empty for all labels
+     * @param text       include labels defined in the text segment
+     * @param data       include labels defined in the data segment
+     * @param byName     sort by name rather than by address
+     * @param descending sort in descending rather than ascending order
+     * @return labels to display, in order
+     */
+    int[] select(String prefix, boolean text, boolean data, boolean byName, boolean descending) {
+        if (!text && !data) {
+            return new int[0];
+        }
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        int from = firstRankNotBelow(lowerPrefix);
+        int to = firstRankWithoutPrefix(lowerPrefix, from);
+        int[] selected = new int[to - from];
+        int count = 0;
+        if (byName) {
+            for (int rank = from; rank < to; rank++) {
+                int label = this.byName[rank];
+                if (this.data[label] ? data : text) {
+                    selected[count++] = label;
+                }
+            }
+        } else if (to > from) {
+            for (long entry : byAddress) {
+                int rank = (int) entry;
+                if (rank >= from && rank < to) {
+                    int label = this.byName[rank];
+                    if (this.data[label] ? data : text) {
+                        selected[count++] = label;
+                    }
+                }
+            }
+        }
+        if (descending) {
+            for (int i = 0, j = count - 1; i < j; i++, j--) {
+                int swap = selected[i];
+                selected[i] = selected[j];
+                selected[j] = swap;
+            }
+        }
+        return (count == selected.length) ? selected : Arrays.copyOf(selected, count);
+    }
+
+    // First position in name order whose name is not below the prefix
+    private int firstRankNotBelow(String lowerPrefix) {
+        int low = 0;
+        int high = sortedLowerNames.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedLowerNames[middle].compareTo(lowerPrefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Names starting with the prefix follow each other from position from on
+    private int firstRankWithoutPrefix(String lowerPrefix, int from) {
+        int low = from;
+        int high = sortedLowerNames.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedLowerNames[middle].startsWith(lowerPrefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -29,12 +29,13 @@ package mars.venus;
 
 import mars.Globals;
 import mars.MIPSprogram;
-import mars.assembler.Symbol;
 import mars.assembler.SymbolTable;
 import mars.mips.hardware.Memory;
 import mars.util.Binary;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.JTableHeader;
 import javax.swing.table.TableCellRenderer;
@@ -43,7 +44,6 @@ import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -93,6 +93,7 @@ public class LabelsWindow extends JInternalFrame {
     private final JPanel labelPanel;      // holds J
     private final JCheckBox dataLabels;
     private final JCheckBox textLabels;
+    private final JTextField labelFilter;
     private final LabelsWindow labelsWindow;
     /////////////////////////////////////////////////////////////////////////////////////
     // Use 8-state machine to track sort status for displaying tables
@@ -108,19 +109,11 @@ public class LabelsWindow extends JInternalFrame {
     // "Click Name" column shows which state to go to when Name column is clicked.
     // "Click Addr" column shows which state to go to when Addr column is clicked.
     //////////////////////////////////////////////////////////////////////////////////////
-    // The array of comparators; index corresponds to state in table above.
-    private final List<Comparator<Symbol>> tableSortingComparators = List.of(
-            /*  0  */  new LabelAddressAscendingComparator(),
-            /*  1  */  new DescendingComparator<>(new LabelAddressAscendingComparator()),
-            /*  2  */  new LabelAddressAscendingComparator(),
-            /*  3  */  new DescendingComparator<>(new LabelAddressAscendingComparator()),
-            /*  4  */  new LabelNameAscendingComparator(),
-            /*  5  */  new LabelNameAscendingComparator(),
-            /*  6  */  new DescendingComparator<>(new LabelNameAscendingComparator()),
-            /*  7  */  new DescendingComparator<>(new LabelNameAscendingComparator())
-    );
+    // The sort column and order; index corresponds to state in table above.  Labels are
+    // listed from each symbol table's LabelIndex, which is already sorted both ways.
+    private static final boolean[] sortByName = {false, false, false, false, true, true, true, true};
+    private static final boolean[] sortDescending = {false, true, false, true, false, false, true, true};
     private List<LabelsForSymbolTable> listOfLabelsForSymbolTable;
-    private Comparator<Symbol> tableSortComparator;
     // Current sort state (0-7, see table above).  Will be set from saved Settings in construtor.
     private int sortState;
 
@@ -135,7 +128,6 @@ public class LabelsWindow extends JInternalFrame {
             sortState = 0;
         }
         columnNames = sortColumnHeadings[sortState];
-        tableSortComparator = tableSortingComparators.get(sortState);
         labelsWindow = this;
         contentPane = this.getContentPane();
         labelPanel = new JPanel(new GridLayout(1, 2, 10, 0));
@@ -148,6 +140,11 @@ public class LabelsWindow extends JInternalFrame {
         textLabels.setToolTipText("If checked, will display labels defined in text segment");
         features.add(dataLabels);
         features.add(textLabels);
+        labelFilter = new JTextField(10);
+        labelFilter.setToolTipText("Display only labels starting with this text, ignoring case");
+        labelFilter.getDocument().addDocumentListener(new LabelFilterListener());
+        features.add(new JLabel("Filter"));
+        features.add(labelFilter);
         contentPane.add(features, BorderLayout.SOUTH);
         contentPane.add(labelPanel);
     }
@@ -156,6 +153,17 @@ public class LabelsWindow extends JInternalFrame {
      * Initialize table of labels (symbol table)
      */
     public void setupTable() {
+        listOfLabelsForSymbolTable = new ArrayList<>();
+        listOfLabelsForSymbolTable.add(new LabelsForSymbolTable(null));// global symtab
+        List<MIPSprogram> MIPSprogramsAssembled = RunAssembleAction.getMIPSprogramsToAssemble();
+        for (MIPSprogram mipSprogram : MIPSprogramsAssembled) {
+            listOfLabelsForSymbolTable.add(new LabelsForSymbolTable(mipSprogram));
+        }
+        showTables();
+    }
+
+    // Display the tables of labels, for instance after the sort order changed.
+    private void showTables() {
         labelPanel.removeAll();
         labelPanel.add(generateLabelScrollPane());
     }
@@ -169,13 +177,7 @@ public class LabelsWindow extends JInternalFrame {
 
     //
     private JScrollPane generateLabelScrollPane() {
-        listOfLabelsForSymbolTable = new ArrayList<>();
-        listOfLabelsForSymbolTable.add(new LabelsForSymbolTable(null));// global symtab
-        List<MIPSprogram> MIPSprogramsAssembled = RunAssembleAction.getMIPSprogramsToAssemble();
         Box allSymtabTables = Box.createVerticalBox();
-        for (MIPSprogram mipSprogram : MIPSprogramsAssembled) {
-            listOfLabelsForSymbolTable.add(new LabelsForSymbolTable(mipSprogram));
-        }
         List<JComponent> tableNames = new ArrayList<>();
         JTableHeader tableHeader = null;
         for (LabelsForSymbolTable symtab : listOfLabelsForSymbolTable) {
@@ -192,6 +194,7 @@ public class LabelsWindow extends JInternalFrame {
                 nameLabel.add(Box.createHorizontalStrut(1));
                 tableNames.add(nameLabel);
                 allSymtabTables.add(nameLabel);
+                symtab.nameLabel = nameLabel;
                 JTable table = symtab.generateLabelTable();
                 tableHeader = table.getTableHeader();
                 // The following is selfish on my part.  Column re-ordering doesn't work correctly when
@@ -237,11 +240,35 @@ public class LabelsWindow extends JInternalFrame {
     //   Listener class to respond to "Text" or "Data" checkbox click
     private class LabelItemListener implements ItemListener {
         public void itemStateChanged(ItemEvent ie) {
-            for (LabelsForSymbolTable labelsForSymbolTable : listOfLabelsForSymbolTable)
-                labelsForSymbolTable.generateLabelTable();
+            filterTables();
         }
     }
 
+    ///////////////////////////////////////////////////////////////
+    //   Listener class to narrow the labels displayed as the filter is typed
+    private class LabelFilterListener implements DocumentListener {
+        public void insertUpdate(DocumentEvent e) {
+            filterTables();
+        }
+
+        public void removeUpdate(DocumentEvent e) {
+            filterTables();
+        }
+
+        public void changedUpdate(DocumentEvent e) {
+        }
+    }
+
+    private void filterTables() {
+        if (listOfLabelsForSymbolTable == null || labelPanel.getComponentCount() == 0)
+            return;
+        for (LabelsForSymbolTable labelsForSymbolTable : listOfLabelsForSymbolTable)
+            if (labelsForSymbolTable.hasSymbols())
+                labelsForSymbolTable.generateLabelTable();
+        labelPanel.revalidate();
+        labelPanel.repaint();
+    }
+
 
     /////////////////////////////////////////////////////////////////
     //  Private listener class to sense clicks on a table entry's
@@ -280,22 +307,21 @@ public class LabelsWindow extends JInternalFrame {
     ///////////////////////////////////////////////////////////////////
     // Represents one symbol table for the display.
     private class LabelsForSymbolTable {
-        private final MIPSprogram myMIPSprogram;
-        private final SymbolTable symbolTable;
         private final String tableName;
-        private Object[][] labelData;
+        private final LabelIndex labelIndex;
         private JTable labelTable;
-        private List<Symbol> symbols;
+        // Displays the file name above the table, hidden with it when no label matches the filter
+        private JComponent nameLabel;
 
         // Associated MIPSprogram object.  If null, this represents global symbol table.
         public LabelsForSymbolTable(MIPSprogram myMIPSprogram) {
-            this.myMIPSprogram = myMIPSprogram;
-            symbolTable = (myMIPSprogram == null)
+            SymbolTable symbolTable = (myMIPSprogram == null)
                     ? Globals.symbolTable
                     : myMIPSprogram.getLocalSymbolTable();
             tableName = (myMIPSprogram == null)
                     ? "(global)"
                     : new File(myMIPSprogram.getFilename()).getName();
+            labelIndex = new LabelIndex(symbolTable.getAllSymbols());
         }
 
         // Returns file name of associated file for local symbol table or "(global)"
@@ -304,70 +330,55 @@ public class LabelsWindow extends JInternalFrame {
         }
 
         public boolean hasSymbols() {
-            return symbolTable.getSize() != 0;
+            return labelIndex.size() != 0;
         }
 
 
-        // builds the Table containing labels and addresses for this symbol table.
+        // builds the Table containing the labels selected by the check boxes and filter, in the current sort order.
         private JTable generateLabelTable() {
-            SymbolTable symbolTable = (myMIPSprogram == null)
-                    ? Globals.symbolTable
-                    : myMIPSprogram.getLocalSymbolTable();
             int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-            if (textLabels.isSelected() && dataLabels.isSelected()) {
-                symbols = symbolTable.getAllSymbols();
-            } else if (textLabels.isSelected() && !dataLabels.isSelected()) {
-                symbols = symbolTable.getTextSymbols();
-            } else if (!textLabels.isSelected() && dataLabels.isSelected()) {
-                symbols = symbolTable.getDataSymbols();
-            } else {
-                symbols = new ArrayList<>();
-            }
-            symbols.sort(tableSortComparator); // DPS 25 Dec 2008
-            labelData = new Object[symbols.size()][2];
-
-            for (int i = 0; i < symbols.size(); i++) {//sets up the label table
-                Symbol s = symbols.get(i);
-                labelData[i][LABEL_COLUMN] = s.getName();
-                labelData[i][ADDRESS_COLUMN] = NumberDisplayBaseChooser.formatNumber(s.getAddress(), addressBase);
-            }
-            LabelTableModel m = new LabelTableModel(labelData, LabelsWindow.columnNames);
+            String filter = labelFilter.getText();
+            int[] labels = labelIndex.select(filter, textLabels.isSelected(), dataLabels.isSelected(),
+                    sortByName[sortState], sortDescending[sortState]);
+            LabelTableModel m = new LabelTableModel(labelIndex, labels, LabelsWindow.columnNames, addressBase);
             if (labelTable == null) {
                 labelTable = new MyTippedJTable(m);
             } else {
                 labelTable.setModel(m);
             }
             labelTable.getColumnModel().getColumn(ADDRESS_COLUMN).setCellRenderer(new MonoRightCellRenderer());
+            boolean visible = labels.length > 0 || filter.isEmpty();
+            labelTable.setVisible(visible);
+            if (nameLabel != null) {
+                nameLabel.setVisible(visible);
+            }
             return labelTable;
         }
 
 
         public void updateLabelAddresses() {
-            if (labelPanel.getComponentCount() == 0)
+            if (labelPanel.getComponentCount() == 0 || labelTable == null)
                 return; // ignore if no content to change
             int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-            int address;
-            String formattedAddress;
-            int numSymbols = (labelData == null) ? 0 : labelData.length;
-            for (int i = 0; i < numSymbols; i++) {
-                address = symbols.get(i).getAddress();
-                formattedAddress = NumberDisplayBaseChooser.formatNumber(address, addressBase);
-                labelTable.getModel().setValueAt(formattedAddress, i, ADDRESS_COLUMN);
-            }
+            ((LabelTableModel) labelTable.getModel()).setAddressBase(addressBase);
         }
     }
     //////////////////////  end of LabelsForOneSymbolTable class //////////////////
 
 
     ///////////////////////////////////////////////////////////////
-    // Class representing label table data
+    // Class representing label table data.  Addresses are formatted as rows are displayed.
     static class LabelTableModel extends AbstractTableModel {
+        final LabelIndex labelIndex;
+        final int[] labels;
         String[] columns;
-        Object[][] data;
+        private int addressBase;
 
-        public LabelTableModel(Object[][] d, String[] n) {
-            data = d;
-            columns = n;
+        public LabelTableModel(LabelIndex labelIndex, int[] labels, String[] n, int addressBase) {
+            this.labelIndex = labelIndex;
+            this.labels = labels;
+            this.columns = n;
+            this.addressBase = addressBase;
         }
 
         public int getColumnCount() {
@@ -375,7 +386,7 @@ public class LabelsWindow extends JInternalFrame {
         }
 
         public int getRowCount() {
-            return data.length;
+            return labels.length;
         }
 
         public String getColumnName(int col) {
@@ -383,7 +394,9 @@ public class LabelsWindow extends JInternalFrame {
         }
 
         public Object getValueAt(int row, int col) {
-            return data[row][col];
+            return (col == LABEL_COLUMN)
+                    ? labelIndex.getName(labels[row])
+                    : NumberDisplayBaseChooser.formatNumber(labelIndex.getAddress(labels[row]), addressBase);
         }
 
         /*
@@ -391,16 +404,17 @@ public class LabelsWindow extends JInternalFrame {
          * editor for each cell.
          */
         public Class<?> getColumnClass(int c) {
-            return getValueAt(0, c).getClass();
+            return String.class;
         }
 
         /*
-         * Don't need to implement this method unless your table's
-         * data can change.
+         * Display the addresses in another number base.
          */
-        public void setValueAt(Object value, int row, int col) {
-            data[row][col] = value;
-            fireTableCellUpdated(row, col);
+        void setAddressBase(int addressBase) {
+            this.addressBase = addressBase;
+            if (labels.length > 0) {
+                fireTableRowsUpdated(0, labels.length - 1);
+            }
         }
 
         private void printDebugData() {
@@ -410,7 +424,7 @@ public class LabelsWindow extends JInternalFrame {
             for (int i = 0; i < numRows; i++) {
                 System.out.print("    row " + i + ":");
                 for (int j = 0; j < numCols; j++) {
-                    System.out.print("  " + data[i][j]);
+                    System.out.print("  " + getValueAt(i, j));
                 }
                 System.out.println();
             }
@@ -475,10 +489,9 @@ public class LabelsWindow extends JInternalFrame {
                     int index = columnModel.getColumnIndexAtX(p.x);
                     int realIndex = columnModel.getColumn(index).getModelIndex();
                     sortState = sortStateTransitions[sortState][realIndex];
-                    tableSortComparator = tableSortingComparators.get(sortState);
                     columnNames = sortColumnHeadings[sortState];
                     Globals.getSettings().setLabelSortState(Integer.toString(sortState));
-                    setupTable();
+                    showTables();
                     Globals.getGui().getMainPane().getExecutePane().setLabelWindowVisibility(false);
                     Globals.getGui().getMainPane().getExecutePane().setLabelWindowVisibility(true);
                 }
@@ -497,52 +510,4 @@ public class LabelsWindow extends JInternalFrame {
             }
         }
     }
-
-
-    ////////////////////////////////////////////////////////////////////////////
-    //
-    //  Comparator class used to sort in ascending order a List of symbols alphabetically by name
-    private static class LabelNameAscendingComparator implements Comparator<Symbol> {
-        public int compare(Symbol a, Symbol b) {
-            return a.getName().toLowerCase().compareTo(b.getName().toLowerCase());
-        }
-    }
-
-
-    ////////////////////////////////////////////////////////////////////////////
-    //
-    //  Comparator class used to sort in ascending order a List of symbols numerically
-    //  by address. The kernel address space is all negative integers, so we need some
-    //  special processing to treat int address as unsigned 32 bit value.
-    //  Note: Integer.signum() is Java 1.5 and MARS is 1.4 so I can't use it.
-    //  Remember, if not equal then any value with correct sign will work.
-    //  If both have same sign, a-b will yield correct result.
-    //  If signs differ, b will yield correct result (think about it).
-    private static class LabelAddressAscendingComparator implements Comparator<Symbol> {
-        public int compare(Symbol a, Symbol b) {
-            int addrA = a.getAddress();
-            int addrB = b.getAddress();
-            return (addrA >= 0 && addrB >= 0 || addrA < 0 && addrB < 0) ? addrA - addrB : addrB;
-        }
-    }
-
-    ////////////////////////////////////////////////////////////////////////////
-    //
-    //  Comparator class used to sort in descending order a List of symbols.  It will
-    //  sort either alphabetically by name or numerically by address, depending on the
-    //  Comparator object provided as the argument constructor.  This works because it
-    //  is implemented by returning the result of the Ascending comparator when
-    //  arguments are reversed.
-    private static class DescendingComparator<T> implements Comparator<T> {
-        private final Comparator<T> opposite;
-
-        private DescendingComparator(Comparator<T> opposite) {
-            this.opposite = opposite;
-        }
-
-        public int compare(T a, T b) {
-            return opposite.compare(b, a);
-        }
-    }
 }
-	   	
@@ -34,13 +34,13 @@ import mars.simulator.Simulator;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.NavigationFilter;
+import javax.swing.text.*;
 import javax.swing.text.Position.Bias;
-import javax.swing.undo.UndoableEdit;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.ArrayBlockingQueue;
 
 /**
@@ -54,12 +54,19 @@ public class MessagesPane extends JTabbedPane {
     // seems to slow things down as new text is appended).  Once it
     // reaches MAXIMUM_SCROLLED_CHARACTERS in length then cut off
     // the first NUMBER_OF_CHARACTERS_TO_CUT characters.  The latter
-    // must obviously be smaller than the former.
+    // must obviously be smaller than the former.  The Run I/O tab cuts
+    // whole lines and can keep what it cut in a temporary file.
     public static final int MAXIMUM_SCROLLED_CHARACTERS = Globals.maximumMessageCharacters;
     public static final int NUMBER_OF_CHARACTERS_TO_CUT = Globals.maximumMessageCharacters / 10; // 10%
 
     JTextArea assemble, run;
     JPanel assembleTab, runTab;
+    private final ProfilePanel profilePanel;
+    private final RunOutputDocument runDocument;
+    // Run messages posted but not yet in runDocument.  Posts coming faster than the event
+    // thread can take them are gathered here and appended at once.
+    private final StringBuilder pendingRunMessages = new StringBuilder();
+    private boolean runMessagesFlushScheduled;
 
     /**
      * Constructor for the class, sets up two fresh tabbed text areas for program feedback.
@@ -68,7 +75,9 @@ public class MessagesPane extends JTabbedPane {
         super();
         this.setMinimumSize(new Dimension(0, 0));
         assemble = new JTextArea();
-        run = new JTextArea();
+        runDocument = new RunOutputDocument(MAXIMUM_SCROLLED_CHARACTERS, NUMBER_OF_CHARACTERS_TO_CUT,
+                Globals.maximumRunOutputSpill);
+        run = new JTextArea(runDocument);
         assemble.setEditable(false);
         run.setEditable(false);
         // Set both text areas to mono font.  For assemble
@@ -151,26 +160,35 @@ public class MessagesPane extends JTabbedPane {
 
         JButton runTabClearButton = new JButton("Clear");
         runTabClearButton.setToolTipText("Clear the Run I/O area");
-        runTabClearButton.addActionListener(e -> run.setText(""));
+        runTabClearButton.addActionListener(e -> clearRunMessages());
+        JButton runTabSaveButton = new JButton("Save");
+        runTabSaveButton.setToolTipText("Save the complete Run I/O output to a file");
+        runTabSaveButton.addActionListener(e -> saveRunMessages());
         runTab = new JPanel(new BorderLayout());
-        runTab.add(createBoxForButton(runTabClearButton), BorderLayout.WEST);
+        runTab.add(createBoxForButton(runTabClearButton, runTabSaveButton), BorderLayout.WEST);
         runTab.add(new JScrollPane(run, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
                 ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED), BorderLayout.CENTER);
+        profilePanel = new ProfilePanel();
         this.addTab("Mars Messages", assembleTab);
         this.addTab("Run I/O", runTab);
+        this.addTab("Profile", profilePanel);
         this.setToolTipTextAt(0, "Messages produced by Run menu. Click on assemble error message to select erroneous line");
         this.setToolTipTextAt(1, "Simulated MIPS console input and output");
+        this.setToolTipTextAt(2, "Most executed instructions, source lines and labels");
     }
 
-    // Center given button in a box, centered vertically and 6 pixels on left and right
-    private Box createBoxForButton(JButton button) {
-        Box buttonRow = Box.createHorizontalBox();
-        buttonRow.add(Box.createHorizontalStrut(6));
-        buttonRow.add(button);
-        buttonRow.add(Box.createHorizontalStrut(6));
+    // Center given buttons in a box, one above the other, centered vertically and 6 pixels on left and right
+    static Box createBoxForButton(AbstractButton... buttons) {
         Box buttonBox = Box.createVerticalBox();
         buttonBox.add(Box.createVerticalGlue());
-        buttonBox.add(buttonRow);
+        for (AbstractButton button : buttons) {
+            Box buttonRow = Box.createHorizontalBox();
+            buttonRow.add(Box.createHorizontalStrut(6));
+            buttonRow.add(button);
+            buttonRow.add(Box.createHorizontalStrut(6));
+            button.setMaximumSize(new Dimension(Short.MAX_VALUE, button.getPreferredSize().height));
+            buttonBox.add(buttonRow);
+        }
         buttonBox.add(Box.createVerticalGlue());
         return buttonBox;
     }
@@ -286,22 +304,71 @@ public class MessagesPane extends JTabbedPane {
     // "print" syscalls. "invokeLater" schedules the code to be
     // run under the event-processing thread no matter what.
     // DPS, 23 Aug 2005.
+    // Messages posted while a flush is already scheduled join it, so a program
+    // printing millions of lines does not flood the event queue.
     public void postRunMessage(String message) {
-        final String mess = message;
-        SwingUtilities.invokeLater(() -> {
-            setSelectedComponent(runTab);
-            run.append(mess);
-            // can do some crude cutting here.  If the document gets "very large",
-            // let's cut off the oldest text. This will limit scrolling but the limit
-            // can be set reasonably high.
-            if (run.getDocument().getLength() > MAXIMUM_SCROLLED_CHARACTERS) {
-                try {
-                    run.getDocument().remove(0, NUMBER_OF_CHARACTERS_TO_CUT);
-                } catch (BadLocationException ble) {
-                    // only if NUMBER_OF_CHARACTERS_TO_CUT > MAXIMUM_SCROLLED_CHARACTERS
-                }
+        synchronized (pendingRunMessages) {
+            pendingRunMessages.append(message);
+            if (runMessagesFlushScheduled) {
+                return;
             }
-        });
+            runMessagesFlushScheduled = true;
+        }
+        SwingUtilities.invokeLater(this::flushRunMessages);
+    }
+
+    // Append the pending run messages to the display.  The document cuts off the
+    // oldest text if it gets "very large".  Runs on the event-processing thread.
+    private void flushRunMessages() {
+        String messages;
+        synchronized (pendingRunMessages) {
+            messages = pendingRunMessages.toString();
+            pendingRunMessages.setLength(0);
+            runMessagesFlushScheduled = false;
+        }
+        setSelectedComponent(runTab);
+        if (!messages.isEmpty()) {
+            runDocument.append(messages);
+        }
+    }
+
+    // Clear the runtime display, including messages not displayed yet.
+    private void clearRunMessages() {
+        synchronized (pendingRunMessages) {
+            pendingRunMessages.setLength(0);
+        }
+        runDocument.clear();
+    }
+
+    // Save the complete runtime output to a file chosen by the user, including
+    // any text already cut off the top of the display.
+    private void saveRunMessages() {
+        flushRunMessages();
+        JFileChooser saveDialog = new JFileChooser(Globals.getGui().getEditor().getCurrentSaveDirectory());
+        saveDialog.setDialogTitle("Save Run I/O");
+        if (saveDialog.showSaveDialog(Globals.getGui()) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = saveDialog.getSelectedFile();
+        if (file.exists() && JOptionPane.showConfirmDialog(Globals.getGui(),
+                "File " + file.getName() + " already exists.  Do you wish to overwrite it?",
+                "Overwrite existing file?",
+                JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) {
+            return;
+        }
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            runDocument.write(out);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(Globals.getGui(), "Could not save " + file.getName() + ": " + e.getMessage(),
+                    "Save Run I/O", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Returns the Profile tab, whose counts are cleared when a program is assembled or reset.
+     */
+    ProfilePanel getProfilePanel() {
+        return profilePanel;
     }
 
     /**
@@ -409,17 +476,26 @@ public class MessagesPane extends JTabbedPane {
             }
 
             public void removeUpdate(final DocumentEvent e) {
-                EventQueue.invokeLater(() -> {
-                    if ((e.getDocument().getLength() < initialPos || e.getOffset() < initialPos) && e instanceof UndoableEdit) {
-                        ((UndoableEdit) e).undo();
-                        run.setCaretPosition(e.getOffset() + e.getLength());
-                    }
-                });
             }
 
             public void changedUpdate(DocumentEvent e) {
             }
         };
+        // Output before the input cannot be removed or replaced
+        final DocumentFilter documentFilter = new DocumentFilter() {
+            public void remove(FilterBypass fb, int offset, int length) throws BadLocationException {
+                int start = Math.max(offset, initialPos);
+                if (offset + length > start) {
+                    fb.remove(start, offset + length - start);
+                }
+            }
+
+            public void replace(FilterBypass fb, int offset, int length, String text, AttributeSet attrs)
+                    throws BadLocationException {
+                int start = Math.max(offset, initialPos);
+                fb.replace(start, Math.max(offset + length - start, 0), text, attrs);
+            }
+        };
         final Simulator.StopListener stopListener = s -> returnResponse();
 
         Asker(int maxLen) {
@@ -434,6 +510,7 @@ public class MessagesPane extends JTabbedPane {
             run.setCaretPosition(run.getDocument().getLength());
             initialPos = run.getCaretPosition();
             run.setNavigationFilter(navigationFilter);
+            runDocument.setDocumentFilter(documentFilter);
             run.getDocument().addDocumentListener(listener);
             Simulator.getInstance().addStopListener(stopListener);
         }
@@ -441,6 +518,7 @@ public class MessagesPane extends JTabbedPane {
         void cleanup() { // not required to be called from the GUI thread
             EventQueue.invokeLater(() -> {
                 run.getDocument().removeDocumentListener(listener);
+                runDocument.setDocumentFilter(null);
                 run.setEditable(false);
                 run.setNavigationFilter(null);
                 run.setCaretPosition(run.getDocument().getLength());
@@ -0,0 +1,149 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.venus;
+
+import mars.Globals;
+import mars.simulator.Profiler;
+import mars.simulator.Simulator;
+import mars.simulator.SimulatorNotice;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Observable;
+import java.util.Observer;
+
+/**
+ * Profile tab of the messages pane: while profiling is on, counts the executions of
+ * each instruction and shows the most executed instructions, source lines and labels.
+ * The report is refreshed every second during a run and when execution stops.
+ */
+class ProfilePanel extends JPanel implements Observer {
+    private static final int REPORT_LENGTH = 30;
+    private static final int REFRESH_INTERVAL = 1000;
+
+    private final Profiler profiler = new Profiler();
+    private final JTextArea report = new JTextArea();
+    private final JToggleButton enableButton = new JToggleButton("Profile");
+    private final Timer timer = new Timer(REFRESH_INTERVAL, e -> refresh());
+
+    ProfilePanel() {
+        super(new BorderLayout());
+        report.setEditable(false);
+        report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        enableButton.setToolTipText("Count how many times each instruction is executed");
+        enableButton.addActionListener(e -> setProfiling(enableButton.isSelected()));
+        JButton resetButton = new JButton("Reset");
+        resetButton.setToolTipText("Clear the execution counts");
+        resetButton.addActionListener(e -> reset());
+        JButton saveButton = new JButton("Save");
+        saveButton.setToolTipText("Save the profile report to a file");
+        saveButton.addActionListener(e -> saveReport());
+        add(MessagesPane.createBoxForButton(enableButton, resetButton, saveButton), BorderLayout.WEST);
+        add(new JScrollPane(report, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
+                ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED), BorderLayout.CENTER);
+        report.setText("Select Profile, then run the program to find its most executed instructions.");
+        Simulator.getInstance().addObserver(this);
+    }
+
+    /**
+     * Clears the execution counts, e.g. when a program is assembled or reset.
+     */
+    void reset() {
+        profiler.reset();
+        if (enableButton.isSelected()) {
+            refresh();
+        }
+    }
+
+    /**
+     * Refreshes the report periodically during a run and once at its end.  Notices come
+     * from the simulator thread, so they are handled on the event dispatch thread.
+     */
+    public void update(Observable observable, Object obj) {
+        boolean starting = ((SimulatorNotice) obj).getAction() == SimulatorNotice.SIMULATOR_START;
+        SwingUtilities.invokeLater(() -> {
+            if (!enableButton.isSelected()) {
+                return;
+            }
+            if (starting) {
+                timer.start();
+            } else {
+                timer.stop();
+                refresh();
+            }
+        });
+    }
+
+    private void setProfiling(boolean profiling) {
+        if (profiling) {
+            profiler.start();
+            refresh();
+        } else {
+            profiler.stop();
+            timer.stop();
+        }
+    }
+
+    private void refresh() {
+        int caret = report.getCaretPosition();
+        report.setText(getReport());
+        report.setCaretPosition(Math.min(caret, report.getDocument().getLength()));
+    }
+
+    private String getReport() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PrintStream out = new PrintStream(bytes, false, StandardCharsets.UTF_8)) {
+            profiler.writeReport(out, REPORT_LENGTH);
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    private void saveReport() {
+        JFileChooser saveDialog = new JFileChooser(Globals.getGui().getEditor().getCurrentSaveDirectory());
+        saveDialog.setDialogTitle("Save Profile");
+        if (saveDialog.showSaveDialog(Globals.getGui()) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = saveDialog.getSelectedFile();
+        if (file.exists() && JOptionPane.showConfirmDialog(Globals.getGui(),
+                "File " + file.getName() + " already exists.  Do you wish to overwrite it?",
+                "Overwrite existing file?",
+                JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) {
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(getReport().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(Globals.getGui(), "Could not save " + file.getName() + ": " + e.getMessage(),
+                    "Save Profile", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
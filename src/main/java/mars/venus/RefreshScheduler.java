@@ -0,0 +1,171 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.venus;
+
+import mars.Globals;
+import mars.mips.hardware.*;
+import mars.simulator.Simulator;
+import mars.simulator.SimulatorNotice;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Observable;
+import java.util.Observer;
+
+/**
+ * Keeps the Execute pane alive while a program runs faster than the interaction limit.
+ * <p>
+ * Slow timed and stepped execution update the windows after every instruction, while
+ * faster runs used to show nothing until the program stopped.  This
+ * scheduler instead samples registers and PC on a Swing timer at a fixed frame rate,
+ * compares their write versions with the previous frame and only pushes the cells of
+ * registers written since.  The
+ * Data Segment window likewise only displays again the visible rows on memory pages
+ * written since the previous frame.  Sampling happens on the event dispatch thread, so
+ * the simulator thread does no extra work.
+ */
+class RefreshScheduler implements Observer, ActionListener {
+    /**
+     * Number of times per second the windows are refreshed during a run.
+     */
+    static final int FRAMES_PER_SECOND = 30;
+
+    private static final int PC_ROW = 32;
+    private static final int HI_ROW = 33;
+    private static final int LO_ROW = 34;
+
+    private final ExecutePane executePane;
+    private final Timer timer;
+    private volatile boolean running;
+    private volatile boolean newRun;
+
+    // Register write versions of the last frame pushed to the windows
+    private final int[] registerVersions = new int[LO_ROW + 1];
+    private final int[] fpRegisterVersions = new int[Coprocessor1.getRegisters().length];
+    private int conditionFlags;
+    private int valueBase;
+
+    RefreshScheduler(ExecutePane executePane) {
+        this.executePane = executePane;
+        this.timer = new Timer(1000 / FRAMES_PER_SECOND, this);
+        this.timer.setCoalesce(true);
+        Simulator.getInstance().addObserver(this);
+    }
+
+    /**
+     * Start refreshing when a run above the interaction limit speed begins, stop when it ends.
+     * Slower and stepped runs are already updated by the simulator after each step.
+     */
+    public void update(Observable observable, Object obj) {
+        SimulatorNotice notice = (SimulatorNotice) obj;
+        if (notice.getAction() == SimulatorNotice.SIMULATOR_START) {
+            if (notice.getRunSpeed() > RunSpeedPanel.INTERACTION_LIMIT_SPEED && notice.getMaxSteps() != 1) {
+                newRun = true;
+                running = true;
+                timer.start();
+            }
+        } else {
+            // A frame already queued on the event thread checks this before touching the windows
+            running = false;
+            timer.stop();
+        }
+    }
+
+    /**
+     * Timer tick: sample the machine state and push what changed since the last frame.
+     */
+    public void actionPerformed(ActionEvent e) {
+        if (!running)
+            return;
+        boolean full = newRun;
+        newRun = false;
+        int base = executePane.getValueDisplayBase();
+        if (base != valueBase) {
+            valueBase = base;
+            full = true;
+        }
+        refreshRegisters(full);
+        refreshCoprocessor1(full);
+        executePane.getDataSegmentWindow().updateValues();
+    }
+
+    private void refreshRegisters(boolean full) {
+        RegistersWindow window = executePane.getRegistersWindow();
+        for (Register register : RegisterFile.getRegisters()) {
+            int number = register.getNumber();
+            if (written(register, registerVersions, number, full)) {
+                window.updateRegisterValue(number, register.getValueNoNotify(), valueBase);
+            }
+        }
+        Register[] hiLo = RegisterFile.getHiLoRegisters();
+        for (int row = HI_ROW; row <= LO_ROW; row++) {
+            Register register = hiLo[row - HI_ROW];
+            if (written(register, registerVersions, row, full)) {
+                window.updateRegisterValue(row, register.getValueNoNotify(), valueBase);
+            }
+        }
+        Register pcRegister = RegisterFile.getProgramCounterRegister();
+        if (written(pcRegister, registerVersions, PC_ROW, full)) {
+            int pc = pcRegister.getValueNoNotify();
+            window.updateRegisterUnsignedValue(PC_ROW, pc, valueBase);
+            TextSegmentWindow textSegment = executePane.getTextSegmentWindow();
+            textSegment.setCodeHighlighting(true);
+            textSegment.highlightStepAtAddress(pc);
+        }
+    }
+
+    private void refreshCoprocessor1(boolean full) {
+        Coprocessor1Window window = executePane.getCoprocessor1Window();
+        Register[] registers = Coprocessor1.getRegisters();
+        for (int i = 0; i < registers.length; i += 2) {
+            boolean pairChanged = false;
+            for (int number = i; number < i + 2; number++) {
+                if (written(registers[number], fpRegisterVersions, number, full)) {
+                    window.updateFloatRegisterValue(number, registers[number].getValueNoNotify(), valueBase);
+                    pairChanged = true;
+                }
+            }
+            if (pairChanged)
+                window.updateDoubleRegisterValue(i, valueBase);
+        }
+        int flags = Coprocessor1.getConditionFlags();
+        if (full || flags != conditionFlags) {
+            conditionFlags = flags;
+            window.updateConditionFlagDisplay();
+        }
+    }
+
+    // Tells whether the register was written since the last frame, or a full frame is due,
+    // and remembers its version in the given slot.
+    private static boolean written(Register register, int[] versions, int slot, boolean full) {
+        int version = register.getVersion();
+        if (!full && version == versions[slot]) {
+            return false;
+        }
+        versions[slot] = version;
+        return true;
+    }
+}
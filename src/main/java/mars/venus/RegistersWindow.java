@@ -63,6 +63,11 @@ public class RegistersWindow extends JPanel implements Observer {
     private boolean highlighting;
     private int highlightRow;
     private ExecutePane executePane;
+    // Registers shown in each row, followed by the register versions and number base of the
+    // values currently displayed, so that updates only format and repaint rows that changed.
+    private Register[] rowRegisters;
+    private final long[] displayedVersions = new long[35];
+    private int displayedBase;
 
     /**
      * Constructor which sets up a fresh window with a table that contains the register values.
@@ -94,23 +99,31 @@ public class RegistersWindow extends JPanel implements Observer {
         int valueBase = NumberDisplayBaseChooser.getBase(settings.getDisplayValuesInHex());
         tableData = new Object[35][3];
         registers = RegisterFile.getRegisters();
+        Register[] hiLo = RegisterFile.getHiLoRegisters();
+        rowRegisters = new Register[35];
+        System.arraycopy(registers, 0, rowRegisters, 0, registers.length);
+        rowRegisters[32] = RegisterFile.getProgramCounterRegister();
+        rowRegisters[33] = hiLo[0];
+        rowRegisters[34] = hiLo[1];
         for (int i = 0; i < registers.length; i++) {
             tableData[i][0] = registers[i].getName();
             tableData[i][1] = registers[i].getNumber();
-            tableData[i][2] = NumberDisplayBaseChooser.formatNumber(registers[i].getValue(), valueBase);
         }
         tableData[32][0] = "pc";
         tableData[32][1] = "";//new Integer(32);
-        tableData[32][2] = NumberDisplayBaseChooser.formatUnsignedInteger(RegisterFile.getProgramCounter(), valueBase);
 
         tableData[33][0] = "hi";
         tableData[33][1] = "";//new Integer(33);
-        tableData[33][2] = NumberDisplayBaseChooser.formatNumber(RegisterFile.getValue(33), valueBase);
 
         tableData[34][0] = "lo";
         tableData[34][1] = "";//new Integer(34);
-        tableData[34][2] = NumberDisplayBaseChooser.formatNumber(RegisterFile.getValue(34), valueBase);
 
+        displayedBase = valueBase;
+        for (int row = 0; row < rowRegisters.length; row++) {
+            // Read the version first: a write racing with the formatting is caught next update
+            displayedVersions[row] = rowRegisters[row].getVersion();
+            tableData[row][2] = formatValue(row, rowRegisters[row].getValueNoNotify(), valueBase);
+        }
         return tableData;
     }
 
@@ -128,9 +141,7 @@ public class RegistersWindow extends JPanel implements Observer {
      */
     public void clearHighlighting() {
         highlighting = false;
-        if (table != null) {
-            table.tableChanged(new TableModelEvent(table.getModel()));
-        }
+        repaintRow(highlightRow);
         highlightRow = -1; // assure highlight will not occur upon re-assemble.
     }
 
@@ -151,17 +162,22 @@ public class RegistersWindow extends JPanel implements Observer {
     }
 
     /**
-     * update register display using specified number base (10 or 16)
+     * update register display using specified number base (10 or 16).  Only registers
+     * written since the last update are formatted again, unless the base changed.
      *
      * @param base desired number base
      */
     public void updateRegisters(int base) {
-        registers = RegisterFile.getRegisters();
-        for (Register register : registers)
-            updateRegisterValue(register.getNumber(), register.getValue(), base);
-        updateRegisterUnsignedValue(32, RegisterFile.getProgramCounter(), base);
-        updateRegisterValue(33, RegisterFile.getValue(33), base);
-        updateRegisterValue(34, RegisterFile.getValue(34), base);
+        boolean baseChanged = base != displayedBase;
+        displayedBase = base;
+        for (int row = 0; row < rowRegisters.length; row++) {
+            int version = rowRegisters[row].getVersion();
+            if (baseChanged || version != displayedVersions[row]) {
+                displayedVersions[row] = version;
+                ((RegTableModel) table.getModel()).setDisplayAndModelValueAt(
+                        formatValue(row, rowRegisters[row].getValueNoNotify(), base), row, VALUE_COLUMN);
+            }
+        }
     }
 
     /**
@@ -171,13 +187,22 @@ public class RegistersWindow extends JPanel implements Observer {
      * @param val    New value.
      **/
     public void updateRegisterValue(int number, int val, int base) {
+        displayedVersions[number] = -1; // not known to match a version, format again next update
         ((RegTableModel) table.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(val, base), number, 2);
     }
 
-    private void updateRegisterUnsignedValue(int number, int val, int base) {
+    void updateRegisterUnsignedValue(int number, int val, int base) {
+        displayedVersions[number] = -1;
         ((RegTableModel) table.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatUnsignedInteger(val, base), number, 2);
     }
 
+    // The pc is displayed as an unsigned address, all other rows as signed values.
+    private static String formatValue(int row, int value, int base) {
+        return (row == 32)
+                ? NumberDisplayBaseChooser.formatUnsignedInteger(value, base)
+                : NumberDisplayBaseChooser.formatNumber(value, base);
+    }
+
     /**
      * Required by Observer interface.  Called when notified by an Observable that we are registered with.
      * Observables include:
@@ -195,7 +220,7 @@ public class RegistersWindow extends JPanel implements Observer {
             if (notice.getAction() == SimulatorNotice.SIMULATOR_START) {
                 // Simulated MIPS execution starts.  Respond to memory changes if running in timed
                 // or stepped mode.
-                if (notice.getRunSpeed() != RunSpeedPanel.UNLIMITED_SPEED || notice.getMaxSteps() == 1) {
+                if (notice.getRunSpeed() <= RunSpeedPanel.INTERACTION_LIMIT_SPEED || notice.getMaxSteps() == 1) {
                     RegisterFile.addRegistersObserver(this);
                     this.highlighting = true;
                 }
@@ -223,12 +248,22 @@ public class RegistersWindow extends JPanel implements Observer {
      * @param register Register object corresponding to row to be selected.
      */
     void highlightCellForRegister(Register register) {
+        int previousRow = this.highlightRow;
         this.highlightRow = register.getNumber();
-        // Tell the system that table contents have changed.  This will trigger re-rendering
-        // during which cell renderers are obtained.  The row of interest (identified by
-        // instance variabls this.registerRow) will get a renderer
-        // with highlight background color and all others get renderer with default background.
-        table.tableChanged(new TableModelEvent(table.getModel()));
+        // Tell the system that the previously and newly highlighted rows have changed.  This
+        // will trigger their re-rendering during which cell renderers are obtained.  The row of
+        // interest (identified by instance variable this.highlightRow) will get a renderer
+        // with highlight background color and the other one gets renderer with default background.
+        if (previousRow != highlightRow) {
+            repaintRow(previousRow);
+        }
+        repaintRow(highlightRow);
+    }
+
+    private void repaintRow(int row) {
+        if (table != null && row >= 0) {
+            table.tableChanged(new TableModelEvent(table.getModel(), row));
+        }
     }
 
     /*
@@ -342,6 +377,8 @@ public class RegistersWindow extends JPanel implements Observer {
          * Update cell contents in table model.  Does not affect MIPS register.
          */
         private void setDisplayAndModelValueAt(Object value, int row, int col) {
+            if (value.equals(data[row][col]))
+                return;
             data[row][col] = value;
             fireTableCellUpdated(row, col);
         }
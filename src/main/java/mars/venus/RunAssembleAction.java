@@ -28,10 +28,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 package mars.venus;
 
 import mars.*;
+import mars.assembler.AssemblyProgress;
 import mars.mips.hardware.Coprocessor0;
 import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.Simulator;
 import mars.util.FilenameFinder;
 import mars.util.SystemIO;
 
@@ -40,6 +42,7 @@ import java.awt.event.ActionEvent;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Action class for the Run -> Assemble menu item (and toolbar icon)
@@ -51,6 +54,10 @@ public class RunAssembleAction extends GuiAction {
     private static List<MIPSprogram> MIPSprogramsToAssemble;
     private static boolean extendedAssemblerEnabled;
     private static boolean warningsAreErrors;
+    // Progress of the assembly running in the background, null if none
+    private static AssemblyProgress assemblyProgress;
+    // Set when assembleAgain() is called while an assembly is running
+    private static boolean assemblyQueued;
 
     public RunAssembleAction(String name, Icon icon, String descrip,
                              Integer mnemonic, KeyStroke accel, VenusUI gui) {
@@ -70,93 +77,282 @@ public class RunAssembleAction extends GuiAction {
         return warningsAreErrors;
     }
 
+    /**
+     * Cancel the assembly running in the background, if any.
+     *
+     * @return true if an assembly was running
+     */
+    static boolean cancelAssembly() {
+        if (assemblyProgress == null) {
+            return false;
+        }
+        assemblyProgress.cancel();
+        return true;
+    }
+
+    /**
+     * Assembles the current file again, e.g. after a setting the assembly depends on changed.
+     * If an assembly is running, it may have used the old setting, so the file is assembled
+     * again once that assembly succeeded.
+     */
+    void assembleAgain() {
+        if (assemblyProgress != null) {
+            assemblyQueued = true;
+        } else {
+            actionPerformed(null);
+        }
+    }
+
+    /**
+     * Assembles the programs of the last assembly again in the background, without reading
+     * their files, then runs whenAssembled on the event dispatch thread if that succeeded.
+     * Nothing is done if an assembly is running.
+     *
+     * @param name          name of the operation, for the messages
+     * @param whenAssembled what to do once assembled
+     */
+    void reassemble(String name, Runnable whenAssembled) {
+        if (assemblyProgress != null || MIPSprogramsToAssemble == null) {
+            return;
+        }
+        assemblyProgress = new AssemblyProgress();
+        new AssemblyWorker(name, Globals.program, MIPSprogramsToAssemble, assemblyProgress, whenAssembled).execute();
+    }
+
     public void actionPerformed(ActionEvent e) {
+        if (assemblyProgress != null) {
+            return; // one assembly at a time, Stop cancels the running one
+        }
         String name = this.getValue(Action.NAME).toString();
-//        Component editPane = mainUI.getMainPane().getEditPane();
-        ExecutePane executePane = mainUI.getMainPane().getExecutePane();
-        RegistersPane registersPane = mainUI.getRegistersPane();
         extendedAssemblerEnabled = Globals.getSettings().getExtendedAssemblerEnabled();
         warningsAreErrors = Globals.getSettings().getWarningsAreErrors();
         if (FileStatus.getFile() != null) {
             if (FileStatus.get() == FileStatus.EDITED) {
                 mainUI.editor.save();
             }
+            Globals.program = new MIPSprogram();
+            List<String> filesToAssemble;
+            if (Globals.getSettings().getAssembleAllEnabled()) {// setting calls for multiple file assembly
+                filesToAssemble = FilenameFinder.getFilenameList(
+                        new File(FileStatus.getName()).getParent(), Globals.fileExtensions);
+            } else {
+                filesToAssemble = new ArrayList<>();
+                filesToAssemble.add(FileStatus.getName());
+            }
+            String exceptionHandler = null;
+            if (Globals.getSettings().getExceptionHandlerEnabled() &&
+                    Globals.getSettings().getExceptionHandler() != null &&
+                    Globals.getSettings().getExceptionHandler().length() > 0) {
+                exceptionHandler = Globals.getSettings().getExceptionHandler();
+            }
+            // Tokenizing and assembling large programs takes long enough to freeze the UI,
+            // so they run in the background.  Run menu and tool bar are disabled meanwhile,
+            // except for Stop which cancels the assembly, like the progress dialog does.
+            assemblyProgress = new AssemblyProgress();
+            new AssemblyWorker(name, Globals.program, filesToAssemble, FileStatus.getFile().getPath(),
+                    exceptionHandler, assemblyProgress, e != null).execute();
+        }
+    }
+
+    /*
+     * Reads, tokenizes and assembles the program in the background, then updates the
+     * messages and the Execute pane on the event dispatch thread.  While it runs, a
+     * progress dialog pops up if the assembly takes more than a moment.  Programs already
+     * read and tokenized can also be assembled again, to reset them.
+     */
+    private class AssemblyWorker extends SwingWorker<ErrorList, String> {
+        // Interval between updates of the progress dialog, in milliseconds
+        private static final int PROGRESS_INTERVAL = 100;
+
+        private final String name;
+        private final MIPSprogram program;
+        private final List<String> filesToAssemble;
+        private final String leadFilename;
+        private final String exceptionHandler;
+        private final AssemblyProgress progress;
+        private final boolean selectEditorLine;
+        // Run instead of setting up the Execute pane after assembling again, null otherwise
+        private final Runnable whenReassembled;
+        private final int menuState;
+        private final ProgressMonitor progressMonitor;
+        private final Timer progressTimer;
+        private volatile List<MIPSprogram> preparedPrograms;
+
+        AssemblyWorker(String name, MIPSprogram program, List<String> filesToAssemble, String leadFilename,
+                       String exceptionHandler, AssemblyProgress progress, boolean selectEditorLine) {
+            this(name, program, filesToAssemble, leadFilename, exceptionHandler, null, progress, selectEditorLine, null);
+        }
+
+        AssemblyWorker(String name, MIPSprogram program, List<MIPSprogram> preparedPrograms,
+                       AssemblyProgress progress, Runnable whenReassembled) {
+            this(name, program, null, null, null, preparedPrograms, progress, false, whenReassembled);
+        }
+
+        private AssemblyWorker(String name, MIPSprogram program, List<String> filesToAssemble, String leadFilename,
+                               String exceptionHandler, List<MIPSprogram> preparedPrograms, AssemblyProgress progress,
+                               boolean selectEditorLine, Runnable whenReassembled) {
+            this.name = name;
+            this.program = program;
+            this.filesToAssemble = filesToAssemble;
+            this.leadFilename = leadFilename;
+            this.exceptionHandler = exceptionHandler;
+            this.preparedPrograms = preparedPrograms;
+            this.progress = progress;
+            this.selectEditorLine = selectEditorLine;
+            this.whenReassembled = whenReassembled;
+            this.menuState = VenusUI.getMenuState();
+            this.progressMonitor = new ProgressMonitor(mainUI, name + ": assembling", "", 0, 100);
+            this.progressTimer = new Timer(PROGRESS_INTERVAL, event -> showProgress());
+            mainUI.setMenuStateAssembling();
+            // The assembler fills memory and the symbol table from the background thread, so
+            // the tables showing them are taken down until done() sets them up again.  The
+            // Text Segment and Labels windows keep their own copies, so assembling the same
+            // programs again leaves them, and the breakpoints, in place.
+            ExecutePane executePane = mainUI.getMainPane().getExecutePane();
+            if (whenReassembled == null) {
+                executePane.getTextSegmentWindow().clearWindow();
+                executePane.getLabelsWindow().clearWindow();
+            }
+            executePane.getDataSegmentWindow().clearWindow();
+            executePane.revalidate();
+            executePane.repaint();
+            progressTimer.start();
+        }
+
+        protected ErrorList doInBackground() throws ProcessingException {
+            List<MIPSprogram> programs = preparedPrograms;
+            if (programs == null) {
+                programs = program.prepareFilesForAssembly(filesToAssemble, leadFilename, exceptionHandler, progress);
+                preparedPrograms = programs;
+                publish(buildFileNameList(name + ": assembling ", programs));
+            }
+            // added logic to receive any warnings and output them.... DPS 11/28/06
+            return program.assemble(programs, extendedAssemblerEnabled, warningsAreErrors, progress);
+        }
+
+        protected void process(List<String> messages) {
+            for (String message : messages) {
+                mainUI.messagesPane.postMarsMessage(message);
+            }
+        }
+
+        private void showProgress() {
+            if (progressMonitor.isCanceled()) {
+                progress.cancel();
+                return;
+            }
+            // Stay below the maximum, which would close the dialog
+            progressMonitor.setProgress(Math.min(progress.getPercentComplete(), 99));
+            progressMonitor.setNote(progress.getFilesTokenized() + " of " + progress.getFilesToTokenize()
+                    + " files tokenized, " + progress.getLinesParsed() + " lines parsed, "
+                    + progress.getStatementsGenerated() + " statements generated");
+        }
+
+        protected void done() {
+            progressTimer.stop();
+            progressMonitor.close();
+            assemblyProgress = null;
+            boolean queued = assemblyQueued;
+            assemblyQueued = false;
+            if (preparedPrograms != null) {
+                MIPSprogramsToAssemble = preparedPrograms;
+            }
+            ErrorList warnings;
             try {
-                Globals.program = new MIPSprogram();
-                List<String> filesToAssemble;
-                if (Globals.getSettings().getAssembleAllEnabled()) {// setting calls for multiple file assembly
-                    filesToAssemble = FilenameFinder.getFilenameList(
-                            new File(FileStatus.getName()).getParent(), Globals.fileExtensions);
-                } else {
-                    filesToAssemble = new ArrayList<>();
-                    filesToAssemble.add(FileStatus.getName());
+                warnings = get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ee) {
+                if (!(ee.getCause() instanceof ProcessingException pe)) {
+                    failed();
+                    throw new RuntimeException(ee.getCause());
                 }
-                String exceptionHandler = null;
-                if (Globals.getSettings().getExceptionHandlerEnabled() &&
-                        Globals.getSettings().getExceptionHandler() != null &&
-                        Globals.getSettings().getExceptionHandler().length() > 0) {
-                    exceptionHandler = Globals.getSettings().getExceptionHandler();
+                if (progress.isCancelled()) {
+                    mainUI.messagesPane.postMarsMessage(name + ": operation cancelled.\n\n");
+                } else {
+                    reportErrors(pe);
                 }
-                MIPSprogramsToAssemble = Globals.program.prepareFilesForAssembly(filesToAssemble, FileStatus.getFile().getPath(), exceptionHandler);
-                mainUI.messagesPane.postMarsMessage(buildFileNameList(name + ": assembling ", MIPSprogramsToAssemble));
-                // added logic to receive any warnings and output them.... DPS 11/28/06
-                ErrorList warnings = Globals.program.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
-                if (warnings.warningsOccurred()) {
-                    mainUI.messagesPane.postMarsMessage(warnings.generateWarningReport());
+                failed();
+                return;
+            }
+            if (whenReassembled != null) {
+                whenReassembled.run();
+            } else {
+                assembled(warnings);
+            }
+            if (queued) {
+                RunAssembleAction.this.actionPerformed(null);
+            }
+        }
+
+        // Reports the warnings and sets up the Execute pane for the assembled program.
+        private void assembled(ErrorList warnings) {
+            if (warnings.warningsOccurred()) {
+                mainUI.messagesPane.postMarsMessage(warnings.generateWarningReport());
+            }
+            mainUI.messagesPane.postMarsMessage(
+                    name + ": operation completed successfully.\n\n");
+            ExecutePane executePane = mainUI.getMainPane().getExecutePane();
+            RegistersPane registersPane = mainUI.getRegistersPane();
+            FileStatus.setAssembled(true);
+            FileStatus.set(FileStatus.RUNNABLE);
+            RegisterFile.resetRegisters();
+            Coprocessor1.resetRegisters();
+            Coprocessor0.resetRegisters();
+            Simulator.clearInterruptRequests();
+            executePane.getTextSegmentWindow().setupTable();
+            executePane.getDataSegmentWindow().setupTable();
+            executePane.getDataSegmentWindow().highlightCellForAddress(Memory.dataBaseAddress);
+            executePane.getDataSegmentWindow().clearHighlighting();
+            executePane.getLabelsWindow().setupTable();
+            executePane.getTextSegmentWindow().setCodeHighlighting(true);
+            executePane.getTextSegmentWindow().highlightStepAtPC();
+            registersPane.getRegistersWindow().clearWindow();
+            registersPane.getCoprocessor1Window().clearWindow();
+            registersPane.getCoprocessor0Window().clearWindow();
+            mainUI.getMessagesPane().getProfilePanel().reset();
+            VenusUI.setReset(true);
+            VenusUI.setStarted(false);
+            mainUI.getMainPane().setSelectedComponent(executePane);
+
+            // Aug. 24, 2005 Ken Vollmar
+            SystemIO.resetFiles();  // Ensure that I/O "file descriptors" are initialized for a new program run
+        }
+
+        private void reportErrors(ProcessingException pe) {
+            String errorReport = pe.errors().generateErrorAndWarningReport();
+            mainUI.messagesPane.postMarsMessage(errorReport);
+            mainUI.messagesPane.postMarsMessage(
+                    name + ": operation completed with errors.\n\n");
+            // Select editor line containing first error, and corresponding error message.
+            List<ErrorMessage> errorMessages = pe.errors().getErrorMessages();
+            for (ErrorMessage em : errorMessages) {
+                // No line or position may mean File Not Found (e.g. exception file). Don't try to open. DPS 3-Oct-2010
+                if (em.getLine() == 0 && em.getPosition() == 0) {
+                    continue;
                 }
-                mainUI.messagesPane.postMarsMessage(
-                        name + ": operation completed successfully.\n\n");
-                FileStatus.setAssembled(true);
-                FileStatus.set(FileStatus.RUNNABLE);
-                RegisterFile.resetRegisters();
-                Coprocessor1.resetRegisters();
-                Coprocessor0.resetRegisters();
-                executePane.getTextSegmentWindow().setupTable();
-                executePane.getDataSegmentWindow().setupTable();
-                executePane.getDataSegmentWindow().highlightCellForAddress(Memory.dataBaseAddress);
-                executePane.getDataSegmentWindow().clearHighlighting();
-                executePane.getLabelsWindow().setupTable();
-                executePane.getTextSegmentWindow().setCodeHighlighting(true);
-                executePane.getTextSegmentWindow().highlightStepAtPC();
-                registersPane.getRegistersWindow().clearWindow();
-                registersPane.getCoprocessor1Window().clearWindow();
-                registersPane.getCoprocessor0Window().clearWindow();
-                VenusUI.setReset(true);
-                VenusUI.setStarted(false);
-                mainUI.getMainPane().setSelectedComponent(executePane);
-
-                // Aug. 24, 2005 Ken Vollmar
-                SystemIO.resetFiles();  // Ensure that I/O "file descriptors" are initialized for a new program run
-
-            } catch (ProcessingException pe) {
-                String errorReport = pe.errors().generateErrorAndWarningReport();
-                mainUI.messagesPane.postMarsMessage(errorReport);
-                mainUI.messagesPane.postMarsMessage(
-                        name + ": operation completed with errors.\n\n");
-                // Select editor line containing first error, and corresponding error message.
-                List<ErrorMessage> errorMessages = pe.errors().getErrorMessages();
-                for (ErrorMessage em : errorMessages) {
-                    // No line or position may mean File Not Found (e.g. exception file). Don't try to open. DPS 3-Oct-2010
-                    if (em.getLine() == 0 && em.getPosition() == 0) {
-                        continue;
-                    }
-                    if (!em.isWarning() || warningsAreErrors) {
-                        Globals.getGui().getMessagesPane().selectErrorMessage(em.getFilename(), em.getLine(), em.getPosition());
-                        // Bug workaround: Line selection does not work correctly for the JEditTextArea editor
-                        // when the file is opened then automatically assembled (assemble-on-open setting).
-                        // Automatic assemble happens in EditTabbedPane's openFile() method, by invoking
-                        // this method (actionPerformed) explicitly with null argument.  Thus e!=null test.
-                        // DPS 9-Aug-2010
-                        if (e != null) {
-                            Globals.getGui().getMessagesPane().selectEditorTextLine(em.getFilename(), em.getLine(), em.getPosition());
-                        }
-                        break;
+                if (!em.isWarning() || warningsAreErrors) {
+                    Globals.getGui().getMessagesPane().selectErrorMessage(em.getFilename(), em.getLine(), em.getPosition());
+                    // Bug workaround: Line selection does not work correctly for the JEditTextArea editor
+                    // when the file is opened then automatically assembled (assemble-on-open setting).
+                    // Automatic assemble happens in EditTabbedPane's openFile() method, by invoking
+                    // actionPerformed explicitly with null argument.  Thus selectEditorLine test.
+                    // DPS 9-Aug-2010
+                    if (selectEditorLine) {
+                        Globals.getGui().getMessagesPane().selectEditorTextLine(em.getFilename(), em.getLine(), em.getPosition());
                     }
+                    break;
                 }
-                FileStatus.setAssembled(false);
-                FileStatus.set(FileStatus.NOT_EDITED);
             }
         }
+
+        // Back to the menu state from before the assembly, then to that of an unassembled file.
+        private void failed() {
+            mainUI.setMenuState(menuState);
+            FileStatus.setAssembled(false);
+            FileStatus.set(FileStatus.NOT_EDITED);
+        }
     }
 
     // Handy little utility for building comma-separated list of filenames
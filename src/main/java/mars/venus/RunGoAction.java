@@ -30,6 +30,7 @@ package mars.venus;
 import mars.Globals;
 import mars.ProcessingException;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.Breakpoints;
 import mars.simulator.ProgramArgumentList;
 import mars.simulator.Simulator;
 import mars.util.SystemIO;
@@ -46,6 +47,7 @@ public class RunGoAction extends GuiAction {
     public static int maxSteps = defaultMaxSteps;
     private String name;
     private ExecutePane executePane;
+    private Breakpoints breakpoints;
 
     public RunGoAction(String name, Icon icon, String descrip,
                        Integer mnemonic, KeyStroke accel, VenusUI gui) {
@@ -81,8 +83,8 @@ public class RunGoAction extends GuiAction {
                 //FileStatus.set(FileStatus.RUNNING);
                 mainUI.setMenuState(FileStatus.RUNNING);
                 try {
-                    int[] breakPoints = executePane.getTextSegmentWindow().getSortedBreakPointsArray();
-                    Globals.program.simulateFromPC(breakPoints, maxSteps, this);
+                    breakpoints = executePane.getTextSegmentWindow().getBreakpoints();
+                    Globals.program.simulateFromPC(breakpoints, maxSteps, this);
                 } catch (ProcessingException ignored) {
                 }
             } else {
@@ -108,8 +110,10 @@ public class RunGoAction extends GuiAction {
             return;
         }
         if (pauseReason == Simulator.BREAKPOINT) {
+            String hit = (breakpoints == null) ? null : breakpoints.getHitDescription();
             mainUI.messagesPane.postMarsMessage(
-                    name + ": execution paused at breakpoint: " + FileStatus.getFile().getName() + "\n\n");
+                    name + ": execution paused at " + ((hit == null) ? "breakpoint" : hit) + ": "
+                            + FileStatus.getFile().getName() + "\n\n");
         } else {
             mainUI.messagesPane.postMarsMessage(
                     name + ": execution paused by user: " + FileStatus.getFile().getName() + "\n\n");
@@ -0,0 +1,673 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.venus;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.*;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.UndoableEdit;
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Document for the Run I/O tab.  Program output is appended at the end, and once the
+ * document grows past its limit the oldest lines are cut from the start.  Neither moves
+ * the rest of the text: characters are kept in a ring buffer and lines in a ring of line
+ * elements indexed by their absolute position in the output, so a program printing
+ * millions of lines costs the same per line as one printing a few.
+ * <p>
+ * Text cut from the start can be spilled to a temporary file, so that the complete
+ * output can still be saved with {@link #write(Writer)}.  Edits in the middle of the
+ * document, as made while typing program input, work but move the text after them.
+ */
+class RunOutputDocument extends AbstractDocument {
+    private final RingContent content;
+    private final LineRoot root;
+    private final int maximumCharacters;
+    private final int charactersToCut;
+    private final long maximumSpilledCharacters;
+    private File spillFile;
+    private Writer spill;
+    private long spilledCharacters;
+    private long discardedCharacters;
+    // Whether the spilled text ends with a line break, so the note on missing text starts a line
+    private boolean spillEndsLine = true;
+
+    /**
+     * @param maximumCharacters        length past which the oldest text is cut
+     * @param charactersToCut          how much is cut at once, rounded up to the end of a line
+     * @param maximumSpilledCharacters how much cut text is kept in the temporary file, 0 for none
+     */
+    RunOutputDocument(int maximumCharacters, int charactersToCut, long maximumSpilledCharacters) {
+        super(new RingContent());
+        this.content = (RingContent) getContent();
+        this.root = new LineRoot();
+        this.maximumCharacters = maximumCharacters;
+        this.charactersToCut = Math.max(1, Math.min(charactersToCut, maximumCharacters));
+        this.maximumSpilledCharacters = maximumSpilledCharacters;
+        putProperty(PlainDocument.tabSizeAttribute, 8);
+    }
+
+    /**
+     * Append text at the end, cutting the oldest text if the document becomes too long.
+     * Must be called on the event dispatch thread.
+     *
+     * @param text the text to append
+     */
+    void append(String text) {
+        try {
+            if (text.length() > maximumCharacters) {
+                // Would be cut right away; skip putting it in the document
+                int skipped = text.length() - maximumCharacters;
+                cut(getLength());
+                spill(text, 0, skipped);
+                text = text.substring(skipped);
+            }
+            insertString(getLength(), text, null);
+            if (getLength() > maximumCharacters) {
+                cut(getLength() - maximumCharacters + charactersToCut);
+            }
+        } catch (BadLocationException e) {
+            // cannot happen, only the end and start of the document are used
+        }
+    }
+
+    /**
+     * Remove all text, including the text spilled to the temporary file.
+     */
+    void clear() {
+        try {
+            remove(0, getLength());
+        } catch (BadLocationException e) {
+            // cannot happen
+        }
+        closeSpill();
+        spilledCharacters = 0;
+        discardedCharacters = 0;
+        spillEndsLine = true;
+    }
+
+    /**
+     * Write the complete output: the text spilled to the temporary file followed by the
+     * text of the document.  If more was cut than the temporary file may hold, a line
+     * noting how much is missing comes between them.
+     *
+     * @param out where to write the output
+     * @throws IOException if writing fails
+     */
+    void write(Writer out) throws IOException {
+        if (spill != null) {
+            spill.flush();
+            try (Reader in = new InputStreamReader(new FileInputStream(spillFile), StandardCharsets.UTF_8)) {
+                char[] buffer = new char[8192];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                }
+            }
+        }
+        if (discardedCharacters > 0) {
+            if (!spillEndsLine) {
+                out.write('\n');
+            }
+            out.write("[" + discardedCharacters + " characters of output not kept]\n");
+        }
+        try {
+            Segment text = new Segment();
+            text.setPartialReturn(true);
+            int offset = 0;
+            while (offset < getLength()) {
+                getText(offset, getLength() - offset, text);
+                out.write(text.array, text.offset, text.count);
+                offset += text.count;
+            }
+        } catch (BadLocationException e) {
+            // cannot happen
+        }
+    }
+
+    // Remove at least the given number of characters from the start, up to the end of the
+    // line they end in if it is not too far, and spill them.
+    private void cut(int length) throws BadLocationException {
+        Element line = root.getElement(root.getElementIndex(length));
+        if (line.getStartOffset() < length && line.getEndOffset() - length <= charactersToCut
+                && line.getEndOffset() <= getLength()) {
+            length = line.getEndOffset();
+        }
+        if (length == 0) {
+            return;
+        }
+        if (spilledCharacters < maximumSpilledCharacters) {
+            spill(getText(0, length), 0, length);
+        } else {
+            discardedCharacters += length;
+        }
+        remove(0, length);
+    }
+
+    // Save text cut from the document to the temporary file, as long as it may grow.
+    private void spill(String text, int start, int end) {
+        int length = (int) Math.min(end - start, maximumSpilledCharacters - spilledCharacters);
+        discardedCharacters += (end - start) - Math.max(length, 0);
+        if (length <= 0) {
+            return;
+        }
+        try {
+            if (spill == null) {
+                spillFile = File.createTempFile("mars-run-io", ".txt");
+                spillFile.deleteOnExit();
+                spill = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile), StandardCharsets.UTF_8));
+            }
+            spill.write(text, start, length);
+            spilledCharacters += length;
+            spillEndsLine = text.charAt(start + length - 1) == '\n';
+        } catch (IOException e) {
+            // The complete output cannot be kept, the document still works
+            closeSpill();
+            discardedCharacters += spilledCharacters + length;
+            spilledCharacters = maximumSpilledCharacters;
+        }
+    }
+
+    private void closeSpill() {
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException ignored) {
+            }
+            spillFile.delete();
+            spill = null;
+            spillFile = null;
+        }
+    }
+
+    public Element getDefaultRootElement() {
+        return root;
+    }
+
+    public Element getParagraphElement(int pos) {
+        return root.getElement(root.getElementIndex(pos));
+    }
+
+    /*
+     * Update the lines for inserted text.  Only text with line breaks changes the line
+     * structure: the line holding the insertion is replaced by the lines it is split into.
+     */
+    protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+        int offset = chng.getOffset();
+        int length = chng.getLength();
+        int index = root.getElementIndex(offset);
+        Line line = root.getLine(index);
+        long start = content.toAbsolute(offset);
+        List<Line> added = new ArrayList<>();
+        long lineStart = line.start;
+        try {
+            Segment text = new Segment();
+            text.setPartialReturn(true);
+            int done = 0;
+            while (done < length) {
+                content.getChars(offset + done, length - done, text);
+                for (int i = 0; i < text.count; i++) {
+                    if (text.array[text.offset + i] == '\n') {
+                        long lineEnd = start + done + i + 1;
+                        added.add(new Line(lineStart, lineEnd));
+                        lineStart = lineEnd;
+                    }
+                }
+                done += text.count;
+            }
+        } catch (BadLocationException e) {
+            // cannot happen, the text was just inserted
+        }
+        root.shiftLines(index + 1, length);
+        if (added.isEmpty()) {
+            line.end += length;
+        } else {
+            added.add(new Line(lineStart, line.end + length));
+            Line[] addedLines = added.toArray(new Line[0]);
+            root.replace(index, 1, addedLines);
+            chng.addEdit(new LineChange(index, new Element[]{line}, addedLines));
+        }
+        super.insertUpdate(chng, attr);
+    }
+
+    /*
+     * Update the lines for text about to be removed.  Lines entirely removed are dropped and
+     * the lines holding the two ends of the removed text are joined.  Text removed from the
+     * start does not move the rest, so the following lines keep their absolute positions.
+     */
+    protected void removeUpdate(DefaultDocumentEvent chng) {
+        int offset = chng.getOffset();
+        int length = chng.getLength();
+        int first = root.getElementIndex(offset);
+        int last = root.getElementIndex(offset + length);
+        Line firstLine = root.getLine(first);
+        Line lastLine = root.getLine(last);
+        long shift = (offset == 0) ? 0 : -length;
+        long newStart = (offset == 0) ? content.toAbsolute(length) : firstLine.start;
+        root.shiftLines(last + 1, shift);
+        if (first == last) {
+            firstLine.start = newStart;
+            firstLine.end += shift;
+        } else if (offset == firstLine.getStartOffset() && offset + length == lastLine.getStartOffset()) {
+            // Whole lines removed, the line after them is left as it is
+            Element[] removed = root.replace(first, last - first, new Line[0]);
+            lastLine.start = newStart;
+            lastLine.end += shift;
+            chng.addEdit(new LineChange(first, removed, new Element[0]));
+        } else {
+            Line joined = new Line(newStart, lastLine.end + shift);
+            Element[] removed = root.replace(first, last - first + 1, new Line[]{joined});
+            chng.addEdit(new LineChange(first, removed, new Element[]{joined}));
+        }
+        super.removeUpdate(chng);
+    }
+
+    /**
+     * Characters of the document in a ring buffer.  Positions and lines refer to absolute
+     * offsets from the start of all the text ever appended, so cutting text from the start
+     * only moves the start.
+     */
+    private static class RingContent implements AbstractDocument.Content {
+        private char[] buffer = new char[1024];
+        private int head;
+        private int length;
+        // Absolute offset of the first character
+        private long start;
+        private final List<WeakReference<Mark>> marks = new ArrayList<>();
+        private int marksPruneSize = 16;
+
+        RingContent() {
+            buffer[0] = '\n'; // implied break at the end of the document
+            length = 1;
+        }
+
+        long toAbsolute(int offset) {
+            return start + offset;
+        }
+
+        int toOffset(long absolute) {
+            return (int) Math.max(0, absolute - start);
+        }
+
+        public Position createPosition(int offset) throws BadLocationException {
+            if (offset < 0 || offset > length) {
+                throw new BadLocationException("Invalid position", offset);
+            }
+            if (marks.size() >= marksPruneSize) {
+                marks.removeIf(mark -> mark.get() == null);
+                marksPruneSize = Math.max(16, marks.size() * 2);
+            }
+            Mark mark = new Mark(start + offset);
+            marks.add(new WeakReference<>(mark));
+            return mark;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public UndoableEdit insertString(int where, String str) throws BadLocationException {
+            if (where < 0 || where >= length) {
+                throw new BadLocationException("Invalid insert", where);
+            }
+            int count = str.length();
+            if (length + count > buffer.length) {
+                grow(length + count);
+            }
+            int mask = buffer.length - 1;
+            for (int i = length - 1; i >= where; i--) {
+                buffer[(head + i + count) & mask] = buffer[(head + i) & mask];
+            }
+            for (int i = 0; i < count; i++) {
+                buffer[(head + where + i) & mask] = str.charAt(i);
+            }
+            length += count;
+            for (WeakReference<Mark> reference : marks) {
+                Mark mark = reference.get();
+                if (mark != null && mark.getOffset() > where) {
+                    mark.position += count;
+                }
+            }
+            return null;
+        }
+
+        public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+            if (where < 0 || nitems < 0 || where + nitems >= length) {
+                throw new BadLocationException("Invalid remove", where + nitems);
+            }
+            if (where == 0) {
+                // Positions in the removed text end up at the start by themselves
+                head = (head + nitems) & (buffer.length - 1);
+                start += nitems;
+                length -= nitems;
+                return null;
+            }
+            int mask = buffer.length - 1;
+            for (int i = where + nitems; i < length; i++) {
+                buffer[(head + i - nitems) & mask] = buffer[(head + i) & mask];
+            }
+            length -= nitems;
+            for (WeakReference<Mark> reference : marks) {
+                Mark mark = reference.get();
+                if (mark != null) {
+                    int offset = mark.getOffset();
+                    if (offset > where + nitems) {
+                        mark.position -= nitems;
+                    } else if (offset > where) {
+                        mark.position = start + where;
+                    }
+                }
+            }
+            return null;
+        }
+
+        public String getString(int where, int len) throws BadLocationException {
+            Segment text = new Segment();
+            getChars(where, len, text);
+            return new String(text.array, text.offset, text.count);
+        }
+
+        public void getChars(int where, int len, Segment txt) throws BadLocationException {
+            if (where < 0 || len < 0 || where + len > length) {
+                throw new BadLocationException("Invalid location", where + len);
+            }
+            int first = (head + where) & (buffer.length - 1);
+            if (first + len <= buffer.length) {
+                txt.array = buffer;
+                txt.offset = first;
+                txt.count = len;
+            } else if (txt.isPartialReturn()) {
+                txt.array = buffer;
+                txt.offset = first;
+                txt.count = buffer.length - first;
+            } else {
+                char[] chars = new char[len];
+                int part = buffer.length - first;
+                System.arraycopy(buffer, first, chars, 0, part);
+                System.arraycopy(buffer, 0, chars, part, len - part);
+                txt.array = chars;
+                txt.offset = 0;
+                txt.count = len;
+            }
+        }
+
+        // Capacity stays a power of two so ring indexes can be masked
+        private void grow(int minimumLength) {
+            int capacity = buffer.length;
+            while (capacity < minimumLength) {
+                capacity *= 2;
+            }
+            char[] grown = new char[capacity];
+            int part = Math.min(length, buffer.length - head);
+            System.arraycopy(buffer, head, grown, 0, part);
+            System.arraycopy(buffer, 0, grown, part, length - part);
+            buffer = grown;
+            head = 0;
+        }
+
+        private class Mark implements Position {
+            private long position;
+
+            Mark(long position) {
+                this.position = position;
+            }
+
+            public int getOffset() {
+                return toOffset(position);
+            }
+        }
+    }
+
+    /**
+     * The root element, holding the lines in a ring so that lines can be added at the end
+     * and removed from the start without moving the others.
+     */
+    private class LineRoot implements Element {
+        private Line[] lines = new Line[64];
+        private int head;
+        private int count;
+
+        LineRoot() {
+            lines[0] = new Line(0, 1);
+            count = 1;
+        }
+
+        Line getLine(int index) {
+            return lines[(head + index) & (lines.length - 1)];
+        }
+
+        // Move the lines from the given index on by the given amount
+        void shiftLines(int index, long shift) {
+            if (shift == 0) {
+                return;
+            }
+            for (int i = index; i < count; i++) {
+                Line line = getLine(i);
+                line.start += shift;
+                line.end += shift;
+            }
+        }
+
+        /*
+         * Replace length lines at index with the given ones, returning the replaced lines.
+         * Cheap at both ends of the ring, elsewhere the lines after index are moved.
+         */
+        Element[] replace(int index, int length, Line[] added) {
+            Element[] removed = new Element[length];
+            for (int i = 0; i < length; i++) {
+                removed[i] = getLine(index + i);
+            }
+            if (count - length + added.length > lines.length) {
+                int capacity = lines.length;
+                while (capacity < count - length + added.length) {
+                    capacity *= 2;
+                }
+                Line[] grown = new Line[capacity];
+                for (int i = 0; i < count; i++) {
+                    grown[i] = getLine(i);
+                }
+                lines = grown;
+                head = 0;
+            }
+            int mask = lines.length - 1;
+            if (index == 0 && added.length <= length) {
+                int dropped = length - added.length;
+                for (int i = 0; i < dropped; i++) {
+                    lines[(head + i) & mask] = null;
+                }
+                head = (head + dropped) & mask;
+                count -= dropped;
+                for (int i = 0; i < added.length; i++) {
+                    lines[(head + i) & mask] = added[i];
+                }
+                return removed;
+            }
+            Line[] tail = new Line[count - index - length];
+            for (int i = 0; i < tail.length; i++) {
+                tail[i] = getLine(index + length + i);
+            }
+            for (int i = index + added.length + tail.length; i < count; i++) {
+                lines[(head + i) & mask] = null;
+            }
+            for (int i = 0; i < added.length; i++) {
+                lines[(head + index + i) & mask] = added[i];
+            }
+            for (int i = 0; i < tail.length; i++) {
+                lines[(head + index + added.length + i) & mask] = tail[i];
+            }
+            count = index + added.length + tail.length;
+            return removed;
+        }
+
+        public Document getDocument() {
+            return RunOutputDocument.this;
+        }
+
+        public Element getParentElement() {
+            return null;
+        }
+
+        public String getName() {
+            return AbstractDocument.ParagraphElementName;
+        }
+
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        public int getStartOffset() {
+            return 0;
+        }
+
+        public int getEndOffset() {
+            return content.length();
+        }
+
+        // Binary search for the last line starting at or before the offset
+        public int getElementIndex(int offset) {
+            long position = content.toAbsolute(Math.max(offset, 0));
+            int low = 0;
+            int high = count - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (getLine(middle).start <= position) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        public int getElementCount() {
+            return count;
+        }
+
+        public Element getElement(int index) {
+            return (index >= 0 && index < count) ? getLine(index) : null;
+        }
+
+        public boolean isLeaf() {
+            return false;
+        }
+    }
+
+    /**
+     * A line, including its line break, at absolute offsets.
+     */
+    private class Line implements Element {
+        private long start;
+        private long end;
+
+        Line(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public Document getDocument() {
+            return RunOutputDocument.this;
+        }
+
+        public Element getParentElement() {
+            return root;
+        }
+
+        public String getName() {
+            return AbstractDocument.ContentElementName;
+        }
+
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        public int getStartOffset() {
+            return content.toOffset(start);
+        }
+
+        public int getEndOffset() {
+            return content.toOffset(end);
+        }
+
+        public int getElementIndex(int offset) {
+            return -1;
+        }
+
+        public int getElementCount() {
+            return 0;
+        }
+
+        public Element getElement(int index) {
+            return null;
+        }
+
+        public boolean isLeaf() {
+            return true;
+        }
+    }
+
+    /**
+     * Describes lines replaced by an edit, for the views.  Edits of this document cannot be undone.
+     */
+    private class LineChange extends AbstractUndoableEdit implements DocumentEvent.ElementChange {
+        private final int index;
+        private final Element[] removed;
+        private final Element[] added;
+
+        LineChange(int index, Element[] removed, Element[] added) {
+            this.index = index;
+            this.removed = removed;
+            this.added = added;
+        }
+
+        public Element getElement() {
+            return root;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Element[] getChildrenRemoved() {
+            return removed;
+        }
+
+        public Element[] getChildrenAdded() {
+            return added;
+        }
+
+        public boolean canUndo() {
+            return false;
+        }
+
+        public boolean canRedo() {
+            return false;
+        }
+    }
+}
@@ -28,11 +28,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 package mars.venus;
 
 import mars.Globals;
-import mars.ProcessingException;
 import mars.mips.hardware.Coprocessor0;
 import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.Simulator;
 import mars.util.SystemIO;
 
 import javax.swing.*;
@@ -54,7 +54,6 @@ public class RunResetAction extends GuiAction {
     public void actionPerformed(ActionEvent e) {
         RunGoAction.resetMaxSteps();
         String name = this.getValue(Action.NAME).toString();
-        ExecutePane executePane = mainUI.getMainPane().getExecutePane();
         // The difficult part here is resetting the data segment.  Two approaches are:
         // 1. After each assembly, get a deep copy of the Globals.memory array
         //    containing data segment.  Then replace it upon reset.
@@ -63,19 +62,18 @@ public class RunResetAction extends GuiAction {
         //    assembly, so there is "no" chance of assembler error.
         // I am choosing the second approach although it will slow down the reset
         // operation.  The first approach requires additional Memory class methods.
-        try {
-            Globals.program.assemble(RunAssembleAction.getMIPSprogramsToAssemble(),
-                    RunAssembleAction.getExtendedAssemblerEnabled(),
-                    RunAssembleAction.getWarningsAreErrors());
-        } catch (ProcessingException pe) {
-            mainUI.getMessagesPane().postMarsMessage(
-                    //pe.errors().generateErrorReport());
-                    "Unable to reset.  Please close file then re-open and re-assemble.\n");
-            return;
-        }
+        // The assembly runs in the background like Run -> Assemble, so that resetting
+        // a large program does not freeze the UI.
+        mainUI.getRunAssembleAction().reassemble(name, () -> reset(name));
+    }
+
+    // Resets the registers and the windows once the program was assembled again.
+    private void reset(String name) {
+        ExecutePane executePane = mainUI.getMainPane().getExecutePane();
         RegisterFile.resetRegisters();
         Coprocessor1.resetRegisters();
         Coprocessor0.resetRegisters();
+        Simulator.clearInterruptRequests();
 
         executePane.getRegistersWindow().clearHighlighting();
         executePane.getRegistersWindow().updateRegisters();
@@ -83,12 +81,15 @@ public class RunResetAction extends GuiAction {
         executePane.getCoprocessor1Window().updateRegisters();
         executePane.getCoprocessor0Window().clearHighlighting();
         executePane.getCoprocessor0Window().updateRegisters();
+        executePane.getDataSegmentWindow().setupTable();
         executePane.getDataSegmentWindow().highlightCellForAddress(Memory.dataBaseAddress);
         executePane.getDataSegmentWindow().clearHighlighting();
         executePane.getTextSegmentWindow().resetModifiedSourceCode();
+        executePane.getTextSegmentWindow().resetBreakpointHits();
         executePane.getTextSegmentWindow().setCodeHighlighting(true);
         executePane.getTextSegmentWindow().highlightStepAtPC();
         mainUI.getRegistersPane().setSelectedComponent(executePane.getRegistersWindow());
+        mainUI.getMessagesPane().getProfilePanel().reset();
         FileStatus.set(FileStatus.RUNNABLE);
         VenusUI.setReset(true);
         VenusUI.setStarted(false);
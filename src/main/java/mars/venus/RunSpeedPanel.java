@@ -48,20 +48,26 @@ public class RunSpeedPanel extends JPanel {
      * will not attempt to update register and memory contents as each instruction
      * is executed.  This is the only possible value for command-line use of Mars.
      */
-    public final static double UNLIMITED_SPEED = 40;
+    public final static double UNLIMITED_SPEED = Double.POSITIVE_INFINITY;
 
-    private final static int SPEED_INDEX_MIN = 0;
-    private final static int SPEED_INDEX_MAX = 40;
-    private final static int SPEED_INDEX_INIT = 40;
-    private static final int SPEED_INDEX_INTERACTION_LIMIT = 35;
-    private static RunSpeedPanel runSpeedPanel = null;
-    private final double[] speedTable = {
+    /**
+     * Highest run speed at which register and memory contents are updated as each
+     * instruction is executed.  Faster runs are paced but only refreshed periodically.
+     */
+    public final static double INTERACTION_LIMIT_SPEED = 30;
+
+    private static final double[] speedTable = {
             .05, .1, .2, .3, .4, .5, 1, 2, 3, 4, 5,      // 0-10
             6, 7, 8, 9, 10, 11, 12, 13, 14, 15,      // 11-20
             16, 17, 18, 19, 20, 21, 22, 23, 24, 25,      // 21-30
-            26, 27, 28, 29, 30, UNLIMITED_SPEED, UNLIMITED_SPEED, // 31-37
-            UNLIMITED_SPEED, UNLIMITED_SPEED, UNLIMITED_SPEED // 38-40
+            26, 27, 28, 29, 30, 50, 100, 200, 500, 1000, // 31-40
+            2000, 5000, 10000, 20000, 50000, 100000,     // 41-46
+            UNLIMITED_SPEED, UNLIMITED_SPEED             // 47-48
     };
+    private final static int SPEED_INDEX_MIN = 0;
+    private final static int SPEED_INDEX_MAX = speedTable.length - 1;
+    private final static int SPEED_INDEX_INIT = SPEED_INDEX_MAX;
+    private static RunSpeedPanel runSpeedPanel = null;
     private final JLabel sliderLabel;
     private final JSlider runSpeedSlider;
     private volatile int runSpeedIndex = SPEED_INDEX_MAX;
@@ -83,7 +89,7 @@ public class RunSpeedPanel extends JPanel {
         this.add(sliderLabel, BorderLayout.NORTH);
         this.add(runSpeedSlider, BorderLayout.CENTER);
         this.setToolTipText("Simulation speed for \"Go\".  At " +
-                ((int) speedTable[SPEED_INDEX_INTERACTION_LIMIT]) + " inst/sec or less, tables updated " +
+                ((int) INTERACTION_LIMIT_SPEED) + " inst/sec or less, tables updated " +
                 "after each instruction.");
     }
 
@@ -115,9 +121,11 @@ public class RunSpeedPanel extends JPanel {
      */
     private String setLabel(int index) {
         String result = "Run speed ";
-        if (index <= SPEED_INDEX_INTERACTION_LIMIT) {
+        if (speedTable[index] != UNLIMITED_SPEED) {
             if (speedTable[index] < 1) {
                 result += speedTable[index];
+            } else if (speedTable[index] >= 1000) {
+                result += ((int) speedTable[index] / 1000) + "k";
             } else {
                 result += ((int) speedTable[index]);
             }
@@ -43,6 +43,9 @@ public class RunStopAction extends GuiAction {
     }
 
     public void actionPerformed(ActionEvent e) {
+        if (RunAssembleAction.cancelAssembly()) {
+            return; // RunAssembleAction reports the cancelled assembly.
+        }
         Simulator.getInstance().stopExecution(this);
         // RunGoAction's "stopped" method will take care of the cleanup.
     }
@@ -64,7 +64,7 @@ public class SettingsDelayedBranchingAction extends GuiAction {
             if (FileStatus.get() == FileStatus.RUNNING) {
                 Simulator.getInstance().stopExecution(this);
             }
-            Globals.getGui().getRunAssembleAction().actionPerformed(null);
+            Globals.getGui().getRunAssembleAction().assembleAgain();
         }
     }
 }
@@ -222,7 +222,7 @@ public class SettingsMemoryConfigurationAction extends GuiAction {
                     if (FileStatus.get() == FileStatus.RUNNING) {
                         Simulator.getInstance().stopExecution(thisAction);
                     }
-                    Globals.getGui().getRunAssembleAction().actionPerformed(null);
+                    Globals.getGui().getRunAssembleAction().assembleAgain();
                 }
             }
         }
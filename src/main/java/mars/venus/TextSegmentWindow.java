@@ -31,13 +31,16 @@ import mars.Globals;
 import mars.ProgramStatement;
 import mars.Settings;
 import mars.mips.hardware.*;
+import mars.simulator.Breakpoints;
 import mars.simulator.Simulator;
 import mars.simulator.SimulatorNotice;
+import mars.util.Binary;
 
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.table.*;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.*;
@@ -65,21 +68,11 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     private final Font tableCellFont = new Font("Monospaced", Font.PLAIN, 12);
     private JTable table;
     private JScrollPane tableScroller;
-    private Object[][] data;
-    /* Maintain an int array of code addresses in parallel with ADDRESS_COLUMN,
-     * to speed model-row -> text-address mapping.  Maintain a Hashtable of
-     * (text-address, model-row) pairs to speed text-address -> model-row mapping.
-     * The former is used for breakpoints and changing display base (e.g. base 10
-     * to 16); the latter is used for highlighting.  Both structures will remain
-     * consistent once set up, since address column is not editable.
-     */
-    private int[] intAddresses;      // index is table model row, value is text address
-    private Map<Integer, Integer> addressRows;   // key is text address, value is table model row
-    private Map<Integer, ModifiedCode> executeMods;   // key is table model row, value is original code, basic, source.
     private TextTableModel tableModel;
     private boolean codeHighlighting;
     private boolean breakpointsEnabled;  // Added 31 Dec 2009
     private int highlightAddress;
+    private int highlightRow = -1; // table model row of highlightAddress, -1 if none
     private TableModelListener tableModelListener;
     private boolean inDelaySlot; // Added 25 June 2007
 
@@ -106,50 +99,12 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
      * Should convert the lines of code over to the table rows and columns.
      **/
     public void setupTable() {
-        int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
         codeHighlighting = true;
         breakpointsEnabled = true;
-        List<ProgramStatement> sourceStatementList = Globals.program.getMachineList();
-        data = new Object[sourceStatementList.size()][columnNames.length];
-        intAddresses = new int[data.length];
-        addressRows = new HashMap<>(data.length);
-        executeMods = new HashMap<>(data.length);
-        // Get highest source line number to determine #leading spaces so line numbers will vertically align
-        // In multi-file situation, this will not necessarily be the last line b/c sourceStatementList contains
-        // source lines from all files.  DPS 3-Oct-10
-        int maxSourceLineNumber = 0;
-        for (int i = sourceStatementList.size() - 1; i >= 0; i--) {
-            ProgramStatement statement = sourceStatementList.get(i);
-            if (statement.getSourceLine() > maxSourceLineNumber) {
-                maxSourceLineNumber = statement.getSourceLine();
-            }
-        }
-        int sourceLineDigits = ("" + maxSourceLineNumber).length();
-        int leadingSpaces;
-        int lastLine = -1;
-        for (int i = 0; i < sourceStatementList.size(); i++) {
-            ProgramStatement statement = sourceStatementList.get(i);
-            intAddresses[i] = statement.getAddress();
-            addressRows.put(intAddresses[i], i);
-            data[i][BREAK_COLUMN] = Boolean.FALSE;
-            data[i][ADDRESS_COLUMN] = NumberDisplayBaseChooser.formatUnsignedInteger(statement.getAddress(), addressBase);
-            data[i][CODE_COLUMN] = NumberDisplayBaseChooser.formatNumber(statement.getBinaryStatement(), 16);
-            data[i][BASIC_COLUMN] = statement.getPrintableBasicAssemblyStatement();
-            String sourceString = "";
-            if (!statement.getSource().equals("")) {
-                leadingSpaces = sourceLineDigits - ("" + statement.getSourceLine()).length();
-                String lineNumber = "          ".substring(0, leadingSpaces)
-                        + statement.getSourceLine() + ": ";
-                if (statement.getSourceLine() == lastLine)
-                    lineNumber = "          ".substring(0, sourceLineDigits) + "  ";
-                sourceString = lineNumber
-                        + mars.util.EditorFont.substituteSpacesForTabs(statement.getSource());
-            }
-            data[i][SOURCE_COLUMN] = sourceString;
-            lastLine = statement.getSourceLine();
-        }
+        highlightRow = -1;
+        // Cells are formatted on demand by the model, so this is quick even for huge programs
         contentPane.removeAll();
-        tableModel = new TextTableModel(data);
+        tableModel = new TextTableModel(Globals.program.getMachineList());
         if (tableModelListener != null) {
             tableModel.addTableModelListener(tableModelListener);
             tableModel.fireTableDataChanged();// initialize listener
@@ -158,6 +113,16 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
 
         // prevents cells in row from being highlighted when user clicks on breakpoint checkbox
         table.setRowSelectionAllowed(false);
+        // right-click on a breakpoint to give it a condition or hit count
+        table.addMouseListener(new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                showBreakpointDialog(e);
+            }
+
+            public void mouseReleased(MouseEvent e) {
+                showBreakpointDialog(e);
+            }
+        });
 
         table.getColumnModel().getColumn(BREAK_COLUMN).setMinWidth(40);
         table.getColumnModel().getColumn(ADDRESS_COLUMN).setMinWidth(80);
@@ -251,12 +216,8 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     public void updateCodeAddresses() {
         if (contentPane.getComponentCount() == 0)
             return; // ignore if no content to change
-        int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-        String formattedAddress;
-        for (int i = 0; i < intAddresses.length; i++) {
-            formattedAddress = NumberDisplayBaseChooser.formatUnsignedInteger(intAddresses[i], addressBase);
-            table.getModel().setValueAt(formattedAddress, i, ADDRESS_COLUMN);
-        }
+        tableModel.clearFormattedRows();
+        tableModel.fireTableChanged(new TableModelEvent(tableModel, 0, tableModel.getRowCount() - 1, ADDRESS_COLUMN));
     }
 
     /**
@@ -266,26 +227,8 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     public void updateBasicStatements() {
         if (contentPane.getComponentCount() == 0)
             return; // ignore if no content to change
-        List<ProgramStatement> sourceStatementList = Globals.program.getMachineList();
-        for (int i = 0; i < sourceStatementList.size(); i++) {
-            // Loop has been extended to cover self-modifying code.  If code at this memory location has been
-            // modified at runtime, construct a ProgramStatement from the current address and binary code
-            // then display its basic code.  DPS 11-July-2013
-            if (executeMods.get(i) == null) { // not modified, so use original logic.
-                ProgramStatement statement = sourceStatementList.get(i);
-                table.getModel().setValueAt(statement.getPrintableBasicAssemblyStatement(), i, BASIC_COLUMN);
-            } else {
-                try {
-                    ProgramStatement statement = new ProgramStatement(
-                            mars.util.Binary.stringToInt((String) table.getModel().getValueAt(i, CODE_COLUMN)),
-                            mars.util.Binary.stringToInt((String) table.getModel().getValueAt(i, ADDRESS_COLUMN))
-                    );
-                    table.getModel().setValueAt(statement.getPrintableBasicAssemblyStatement(), i, BASIC_COLUMN);
-                } catch (NumberFormatException e) { // should never happen but just in case...
-                    table.getModel().setValueAt("", i, BASIC_COLUMN);
-                }
-            }
-        }
+        tableModel.clearFormattedRows();
+        tableModel.fireTableChanged(new TableModelEvent(tableModel, 0, tableModel.getRowCount() - 1, BASIC_COLUMN));
     }
 
     /**
@@ -320,85 +263,53 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
             // NOTE: observable != Memory.getInstance() because Memory class delegates notification duty.
             // This will occur only if running program has written to text segment (self-modifying code)
             if (access.getAccessType() == AccessNotice.WRITE) {
-                int address = access.getAddress();
-                int value = access.getValue();
-                String strValue = mars.util.Binary.intToHexString(access.getValue());
-                String strBasic;
-                String strSource = modifiedCodeMarker;
-                // Translate the address into table model row and modify the values in that row accordingly.
-                int row;
-                try {
-                    row = findRowForAddress(address);
-                } catch (IllegalArgumentException e) {
-                    return; // do nothing if address modified is outside the range of original program.
-                }
-                ModifiedCode mc = executeMods.get(row);
-                if (mc == null) { // if not already modified
-                    // Not already modified and new code is same as original --> do nothing.
-                    if (tableModel.getValueAt(row, CODE_COLUMN).equals(strValue)) {
-                        return;
-                    }
-                    mc = new ModifiedCode(
-                            row,
-                            tableModel.getValueAt(row, CODE_COLUMN),
-                            tableModel.getValueAt(row, BASIC_COLUMN),
-                            tableModel.getValueAt(row, SOURCE_COLUMN)
-                    );
-                    executeMods.put(row, mc);
-                    // make a ProgramStatement and get basic code to display in BASIC_COLUMN
-                    strBasic = new ProgramStatement(value, address).getPrintableBasicAssemblyStatement();
-                } else {
-                    // If restored to original value, restore the basic and source
-                    // This will be the case upon backstepping.
-                    if (mc.getCode().equals(strValue)) {
-                        strBasic = (String) mc.getBasic();
-                        strSource = (String) mc.getSource();
-                        // remove from executeMods since we are back to original
-                        executeMods.remove(row);
-                    } else {
-                        // make a ProgramStatement and get basic code to display in BASIC_COLUMN
-                        strBasic = new ProgramStatement(value, address).getPrintableBasicAssemblyStatement();
-                    }
-                }
-                // For the code column, we don't want to do the following:
-                //       tableModel.setValueAt(strValue,  row, CODE_COLUMN)
-                // because that method will write to memory using Memory.setRawWord() which will
-                // trigger notification to observers, which brings us back to here!!!  Infinite
-                // indirect recursion results.  Neither fun nor productive.  So what happens is
-                // this: (1) change to memory cell causes setValueAt() to be automatically be
-                // called.  (2) it updates the memory cell which in turn notifies us which invokes
-                // the update() method - the method we're in right now.  All we need to do here is
-                // update the table model then notify the controller/view to update its display.
-                data[row][CODE_COLUMN] = strValue;
-                tableModel.fireTableCellUpdated(row, CODE_COLUMN);
-                // The other columns do not present a problem since they are not editable by user.
-                tableModel.setValueAt(strBasic, row, BASIC_COLUMN);
-                tableModel.setValueAt(strSource, row, SOURCE_COLUMN);
-                // Let's update the value displayed in the DataSegmentWindow too.  But it only observes memory while
-                // the MIPS program is running, and even then only in timed or step mode.  There are good reasons
-                // for that.  So we'll pretend to be Memory observable and send it a fake memory write update.
-                try {
-                    Globals.getGui().getMainPane().getExecutePane().getDataSegmentWindow()
-                            .update(Memory.getInstance(), new MemoryAccessNotice(AccessNotice.WRITE, address, value));
-                } catch (Exception e) {
-                    // Not sure if anything bad can happen in this sequence, but if anything does we can let it go.
-                }
+                // Notices come from the simulator thread, while the table model and its formatted
+                // rows belong to the event dispatch thread.
+                TextTableModel model = tableModel;
+                SwingUtilities.invokeLater(() -> codeWritten(model, access.getAddress(), access.getValue()));
             }
         }
     }
 
+    // Shows code written by the running program, unless the program was assembled again since.
+    private void codeWritten(TextTableModel model, int address, int value) {
+        if (model == null || model != tableModel) {
+            return;
+        }
+        // Translate the address into table model row and show the new code in that row.
+        // If restored to original value, the original basic and source are displayed again.
+        // This will be the case upon backstepping.
+        int row = model.getRowForAddress(address);
+        if (row < 0 || !model.setModifiedCode(row, value)) {
+            return; // outside the range of original program, or nothing changed
+        }
+        // Let's update the value displayed in the DataSegmentWindow too.  But it only observes memory while
+        // the MIPS program is running, and even then only in timed or step mode.  There are good reasons
+        // for that.  So we'll pretend to be Memory observable and send it a fake memory write update.
+        try {
+            Globals.getGui().getMainPane().getExecutePane().getDataSegmentWindow()
+                    .update(Memory.getInstance(), new MemoryAccessNotice(AccessNotice.WRITE, address, value));
+        } catch (Exception e) {
+            // Not sure if anything bad can happen in this sequence, but if anything does we can let it go.
+        }
+    }
+
     /**
      * Called by RunResetAction to restore display of any table rows that were
      * overwritten due to self-modifying code feature.
      */
     void resetModifiedSourceCode() {
-        if (executeMods != null && !executeMods.isEmpty()) {
-            for (ModifiedCode mc : executeMods.values()) {
-                tableModel.setValueAt(mc.getCode(), mc.getRow(), CODE_COLUMN);
-                tableModel.setValueAt(mc.getBasic(), mc.getRow(), BASIC_COLUMN);
-                tableModel.setValueAt(mc.getSource(), mc.getRow(), SOURCE_COLUMN);
-            }
-            executeMods.clear();
+        if (tableModel != null) {
+            tableModel.clearModifiedCode();
+        }
+    }
+
+    /**
+     * Called by RunResetAction to start counting breakpoint hits from zero again.
+     */
+    void resetBreakpointHits() {
+        if (tableModel != null) {
+            tableModel.simulatorBreakpoints.resetHits();
         }
     }
 
@@ -407,7 +318,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
      * be used by the code renderer so I will not verify row.
      */
     int getIntCodeAddressAtRow(int row) {
-        return intAddresses[row];
+        return tableModel.getAddressAtRow(row);
     }
 
     /**
@@ -416,35 +327,99 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
      * @return number of current breakpoints
      */
     public int getBreakpointCount() {
-        int breakpointCount = 0;
-        for (Object[] datum : data) {
-            if ((Boolean) datum[BREAK_COLUMN]) {
-                breakpointCount++;
-            }
-        }
-        return breakpointCount;
+        return tableModel.breakpoints.cardinality();
     }
 
     /**
-     * Returns array of current breakpoints, each represented by a MIPS program counter address.
-     * These are stored in the BREAK_COLUMN of the table model.
+     * Returns the breakpoints, with their conditions and hit counts, and the watchpoints for
+     * the simulator.  Breakpoints can still be changed while the program runs.  Disabling
+     * breakpoints leaves the watchpoints active.
      *
-     * @return int array of breakpoints, sorted by PC address, or null if there are none.
+     * @return the breakpoints and watchpoints, or null if no program is assembled.
      */
-    public int[] getSortedBreakPointsArray() {
-        int breakpointCount = getBreakpointCount();
-        if (breakpointCount == 0 || !breakpointsEnabled) { // added second condition 31-dec-09 DPS
+    public Breakpoints getBreakpoints() {
+        if (tableModel == null) {
             return null;
         }
-        int[] breakpoints = new int[breakpointCount];
-        breakpointCount = 0;
-        for (int i = 0; i < data.length; i++) {
-            if ((Boolean) data[i][BREAK_COLUMN]) {
-                breakpoints[breakpointCount++] = intAddresses[i];
+        return tableModel.simulatorBreakpoints;
+    }
+
+    /**
+     * Tells whether the memory word holding the given address is watched.
+     */
+    boolean isWatched(int address) {
+        return tableModel != null && tableModel.simulatorBreakpoints.isWatched(address);
+    }
+
+    /**
+     * Sets or removes a watchpoint, which pauses execution when the memory word holding the
+     * given address changes.  Watchpoints are forgotten on the next assemble, like breakpoints.
+     */
+    void setWatched(int address, boolean watched) {
+        if (tableModel == null) {
+            return;
+        }
+        if (watched) {
+            tableModel.simulatorBreakpoints.addWatchpoint(address);
+        } else {
+            tableModel.simulatorBreakpoints.removeWatchpoint(address);
+        }
+    }
+
+    /*
+     * Shows the dialog to set the condition and hit count of the breakpoint in the row under
+     * the mouse, if the event is a popup trigger on the breakpoint column.
+     */
+    private void showBreakpointDialog(MouseEvent e) {
+        int row = table.rowAtPoint(e.getPoint());
+        int column = table.columnAtPoint(e.getPoint());
+        if (!e.isPopupTrigger() || row < 0 || column < 0 || table.convertColumnIndexToModel(column) != BREAK_COLUMN) {
+            return;
+        }
+        int address = tableModel.getAddressAtRow(row);
+        Breakpoints breakpoints = tableModel.simulatorBreakpoints;
+        String condition = breakpoints.getCondition(address);
+        JTextField conditionField = new JTextField(condition == null ? "" : condition, 30);
+        conditionField.setToolTipText("e.g. $t0 == 5 && mem[$sp + 4] > 0x10.  Leave empty for none.");
+        JSpinner hitCountSpinner = new JSpinner(new SpinnerNumberModel(breakpoints.getHitCount(address), 1, Integer.MAX_VALUE, 1));
+        hitCountSpinner.setToolTipText("Pause from this hit on, counting only hits where the condition holds");
+        JPanel panel = new JPanel(new GridLayout(0, 1));
+        panel.add(new JLabel("Pause only if this condition holds:"));
+        panel.add(conditionField);
+        panel.add(new JLabel("Pause from hit number:"));
+        panel.add(hitCountSpinner);
+        while (true) {
+            int choice = JOptionPane.showConfirmDialog(Globals.getGui(), panel,
+                    "Breakpoint at " + Binary.intToHexString(address),
+                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (choice != JOptionPane.OK_OPTION) {
+                return;
             }
+            try {
+                breakpoints.add(address, conditionField.getText(), (Integer) hitCountSpinner.getValue());
+                break;
+            } catch (IllegalArgumentException iae) {
+                JOptionPane.showMessageDialog(Globals.getGui(), iae.getMessage(), "Invalid breakpoint",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        }
+        tableModel.setValueAt(Boolean.TRUE, row, BREAK_COLUMN);
+    }
+
+    /*
+     * Tool tip for the breakpoint column: condition, hit count and hits of the row's breakpoint.
+     */
+    private String getBreakpointToolTip(int row) {
+        if (!tableModel.breakpoints.get(row)) {
+            return null;
         }
-        Arrays.sort(breakpoints);
-        return breakpoints;
+        int address = tableModel.getAddressAtRow(row);
+        Breakpoints breakpoints = tableModel.simulatorBreakpoints;
+        String condition = breakpoints.getCondition(address);
+        int hitCount = breakpoints.getHitCount(address);
+        return ((condition == null) ? "Unconditional breakpoint" : "Condition: " + condition)
+                + ((hitCount > 1) ? ", pauses from hit " + hitCount : "")
+                + ", hit " + breakpoints.getHits(address) + " times";
     }
 
     /**
@@ -452,11 +427,9 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
      * updates the display of the breakpoint column.
      */
     public void clearAllBreakpoints() {
-        for (int i = 0; i < tableModel.getRowCount(); i++) {
-            if ((Boolean) data[i][BREAK_COLUMN]) {
-                // must use this method to assure display updated and listener notified
-                tableModel.setValueAt(Boolean.FALSE, i, BREAK_COLUMN);
-            }
+        for (int row = tableModel.breakpoints.nextSetBit(0); row >= 0; row = tableModel.breakpoints.nextSetBit(row + 1)) {
+            // must use this method to assure display updated and listener notified
+            tableModel.setValueAt(Boolean.FALSE, row, BREAK_COLUMN);
         }
         // Handles an obscure situation: if you click to set some breakpoints then "immediately" clear them
         // all using the shortcut (CTRL-K), the last checkmark set is not removed even though the breakpoint
@@ -512,21 +485,20 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
      */
     public void highlightStepAtAddress(int address, boolean inDelaySlot) {
         highlightAddress = address;
-        // Scroll if necessary to assure highlighted row is visible.
-        int row;
-        try {
-            row = findRowForAddress(address);
-        } catch (IllegalArgumentException e) {
+        int previousRow = highlightRow;
+        highlightRow = tableModel.getRowForAddress(address);
+        // Trigger highlighting, which is done by the column's cell renderer.
+        // Only the previously highlighted row and the new one need to be re-rendered.
+        if (previousRow >= 0 && previousRow != highlightRow) {
+            table.tableChanged(new TableModelEvent(tableModel, previousRow, previousRow));
+        }
+        if (highlightRow < 0) {
             return;
         }
-        table.scrollRectToVisible(table.getCellRect(row, 0, true));
+        // Scroll if necessary to assure highlighted row is visible.
+        table.scrollRectToVisible(table.getCellRect(highlightRow, 0, true));
         this.inDelaySlot = inDelaySlot;// Added 25 June 2007
-        // Trigger highlighting, which is done by the column's cell renderer.
-        // IMPLEMENTATION NOTE: Pretty crude implementation; mark all rows
-        // as changed so assure that the previously highlighted row is
-        // unhighlighted.  Would be better to keep track of previous row
-        // then fire two events: one for it and one for the new row.
-        table.tableChanged(new TableModelEvent(tableModel));
+        table.tableChanged(new TableModelEvent(tableModel, highlightRow, highlightRow));
         //this.inDelaySlot = false;// Added 25 June 2007
     }
 
@@ -556,8 +528,10 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     public void unhighlightAllSteps() {
         boolean saved = this.getCodeHighlighting();
         this.setCodeHighlighting(false);
-        table.tableChanged(new TableModelEvent(tableModel, 0, data.length - 1, BASIC_COLUMN));
-        table.tableChanged(new TableModelEvent(tableModel, 0, data.length - 1, SOURCE_COLUMN));
+        if (highlightRow >= 0) {
+            table.tableChanged(new TableModelEvent(tableModel, highlightRow, highlightRow, BASIC_COLUMN));
+            table.tableChanged(new TableModelEvent(tableModel, highlightRow, highlightRow, SOURCE_COLUMN));
+        }
         this.setCodeHighlighting(saved);
     }
 
@@ -652,24 +626,64 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
      *  corresponding to this address.
      */
     private int findRowForAddress(int address) throws IllegalArgumentException {
-        int addressRow;
-        try {
-            addressRow = addressRows.get(address);
-        } catch (NullPointerException e) {
-            throw new IllegalArgumentException(); // address not found in map
-            //return addressRow;// if address not in map, do nothing.
+        int addressRow = tableModel.getRowForAddress(address);
+        if (addressRow < 0) {
+            throw new IllegalArgumentException(); // address not found in index
         }
         return addressRow;
     }
 
     /**
-     * Inner class to implement the Table model for this JTable.
+     * Inner class to implement the Table model for this JTable.  Rows are formatted on
+     * demand from the program's machine statements and only the most recently displayed
+     * ones are kept, so setting up the table does not depend on the size of the program.
      */
     static class TextTableModel extends AbstractTableModel {
-        Object[][] data;
-
-        public TextTableModel(Object[][] d) {
-            data = d;
+        // Enough for several screens of rows, so scrolling back and forth rarely reformats
+        private static final int FORMATTED_ROWS_CACHE_SIZE = 512;
+
+        private final List<ProgramStatement> statements;
+        /* Maintain an int array of code addresses, to speed model-row -> text-address
+         * mapping, and a sorted array of (text-address, model-row) pairs packed in longs,
+         * searched to speed text-address -> model-row mapping.  The former is used for
+         * breakpoints and rendering; the latter is used for highlighting.  Both will remain
+         * consistent once set up, since address column is not editable.
+         */
+        private final int[] addresses;
+        private final long[] addressIndex;
+        final BitSet breakpoints;
+        // The breakpoints of the checked rows, as checked by the simulator, and the watchpoints
+        final Breakpoints simulatorBreakpoints = new Breakpoints();
+        // Rows overwritten by self-modifying code, and the code written into each of them
+        private final BitSet modifiedRows;
+        private final int[] modifiedCode;
+        private final Map<Integer, String[]> formattedRows =
+                new LinkedHashMap<>(FORMATTED_ROWS_CACHE_SIZE * 4 / 3, 0.75f, true) {
+                    protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+                        return size() > FORMATTED_ROWS_CACHE_SIZE;
+                    }
+                };
+        private final int sourceLineDigits;
+
+        public TextTableModel(List<ProgramStatement> statements) {
+            this.statements = statements;
+            addresses = new int[statements.size()];
+            addressIndex = new long[addresses.length];
+            breakpoints = new BitSet(addresses.length);
+            modifiedRows = new BitSet(addresses.length);
+            modifiedCode = new int[addresses.length];
+            // Get highest source line number to determine #leading spaces so line numbers will vertically align
+            // In multi-file situation, this will not necessarily be the last line b/c statements contains
+            // source lines from all files.  DPS 3-Oct-10
+            int maxSourceLineNumber = 0;
+            for (int row = 0; row < addresses.length; row++) {
+                ProgramStatement statement = statements.get(row);
+                addresses[row] = statement.getAddress();
+                addressIndex[row] = ((long) addresses[row] << 32) | row;
+                maxSourceLineNumber = Math.max(maxSourceLineNumber, statement.getSourceLine());
+            }
+            Arrays.sort(addressIndex);
+            sourceLineDigits = ("" + maxSourceLineNumber).length();
         }
 
         public int getColumnCount() {
@@ -677,7 +691,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         }
 
         public int getRowCount() {
-            return data.length;
+            return addresses.length;
         }
 
         public String getColumnName(int col) {
@@ -685,7 +699,15 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         }
 
         public Object getValueAt(int row, int col) {
-            return data[row][col];
+            if (col == BREAK_COLUMN) {
+                return breakpoints.get(row);
+            }
+            String[] formattedRow = formattedRows.get(row);
+            if (formattedRow == null) {
+                formattedRow = formatRow(row);
+                formattedRows.put(row, formattedRow);
+            }
+            return formattedRow[col - 1];
         }
 
         /*
@@ -695,7 +717,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
          * rather than a check box.
          */
         public Class<?> getColumnClass(int c) {
-            return getValueAt(0, c).getClass();
+            return (c == BREAK_COLUMN) ? Boolean.class : String.class;
         }
 
         /*
@@ -710,39 +732,37 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
 
         /**
          * Set cell contents in the table model. Overrides inherited empty method.
-         * Straightforward process except for the Code column.
+         * Only the Breakpoint and Code columns can be set.
          */
         @Override
         public void setValueAt(Object value, int row, int col) {
-            if (col != CODE_COLUMN) {
-                data[row][col] = value;
+            if (col == BREAK_COLUMN) {
+                boolean set = (Boolean) value;
+                breakpoints.set(row, set);
+                if (!set) {
+                    simulatorBreakpoints.remove(addresses[row]);
+                } else if (!simulatorBreakpoints.contains(addresses[row])) {
+                    simulatorBreakpoints.add(addresses[row]);
+                }
                 fireTableCellUpdated(row, col);
                 return;
             }
+            if (col != CODE_COLUMN || value.equals(getValueAt(row, col)))
+                return;
             // Handle changes in the Code column.
             int val;
-            int address = 0;
-            if (value.equals(data[row][col]))
-                return;
             try {
                 val = mars.util.Binary.stringToInt((String) value);
             } catch (NumberFormatException nfe) {
-                data[row][col] = "INVALID";
-                fireTableCellUpdated(row, col);
+                fireTableCellUpdated(row, col); // redisplay the current code
                 return;
             }
-            // calculate address from row and column
-            try {
-                address = mars.util.Binary.stringToInt((String) data[row][ADDRESS_COLUMN]);
-            } catch (NumberFormatException nfe) {
-                // can't really happen since memory addresses are completely under
-                // the control of my software.
-            }
             //  Assures that if changed during MIPS program execution, the update will
-            //  occur only between MIPS instructions.
+            //  occur only between MIPS instructions.  The display is updated when the
+            //  text segment observer is notified of the write.
             synchronized (Globals.memoryAndRegistersLock) {
                 try {
-                    Globals.memory.setRawWord(address, val);
+                    Globals.memory.setRawWord(addresses[row], val);
                 } catch (AddressErrorException ignored) {
                     // somehow, user was able to display out-of-range address.  Most likely to occur between
                     // stack base and Kernel.
@@ -750,48 +770,95 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
             }// end synchronized block
         }
 
-        private void printDebugData() {
-            int numRows = getRowCount();
-            int numCols = getColumnCount();
+        int getAddressAtRow(int row) {
+            return addresses[row];
+        }
 
-            for (int i = 0; i < numRows; i++) {
-                System.out.print("    row " + i + ":");
-                for (int j = 0; j < numCols; j++) {
-                    System.out.print("  " + data[i][j]);
-                }
-                System.out.println();
+        /*
+         * Returns the table model row holding the given text segment address, -1 if none.
+         */
+        int getRowForAddress(int address) {
+            int index = Arrays.binarySearch(addressIndex, (long) address << 32);
+            if (index < 0) {
+                index = -index - 1;
             }
-            System.out.println("--------------------------");
+            return (index < addressIndex.length && (int) (addressIndex[index] >> 32) == address)
+                    ? (int) addressIndex[index] : -1;
         }
-    }
 
-    private static class ModifiedCode {
-        private final Integer row;
-        private final Object code;
-        private final Object basic;
-        private final Object source;
-
-        private ModifiedCode(Integer row, Object code, Object basic, Object source) {
-            this.row = row;
-            this.code = code;
-            this.basic = basic;
-            this.source = source;
+        /*
+         * Record code written into the given row by self-modifying code.  Writing back the
+         * original code restores the original display.  Returns false if nothing changed.
+         */
+        boolean setModifiedCode(int row, int code) {
+            if (code == statements.get(row).getBinaryStatement()) {
+                if (!modifiedRows.get(row)) {
+                    return false;
+                }
+                modifiedRows.clear(row);
+            } else {
+                if (modifiedRows.get(row) && modifiedCode[row] == code) {
+                    return false;
+                }
+                modifiedRows.set(row);
+                modifiedCode[row] = code;
+            }
+            formattedRows.remove(row);
+            fireTableRowsUpdated(row, row);
+            return true;
         }
 
-        private Integer getRow() {
-            return this.row;
+        void clearModifiedCode() {
+            for (int row = modifiedRows.nextSetBit(0); row >= 0; row = modifiedRows.nextSetBit(row + 1)) {
+                modifiedRows.clear(row);
+                formattedRows.remove(row);
+                fireTableRowsUpdated(row, row);
+            }
         }
 
-        private Object getCode() {
-            return this.code;
+        /*
+         * Forget formatted rows, for instance after a change of display base.
+         */
+        void clearFormattedRows() {
+            formattedRows.clear();
         }
 
-        private Object getBasic() {
-            return this.basic;
+        // Formats the address, code, basic and source columns of the given row.
+        private String[] formatRow(int row) {
+            ProgramStatement statement = statements.get(row);
+            int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
+            String address = NumberDisplayBaseChooser.formatUnsignedInteger(addresses[row], addressBase);
+            if (modifiedRows.get(row)) {
+                int code = modifiedCode[row];
+                String basic = new ProgramStatement(code, addresses[row]).getPrintableBasicAssemblyStatement();
+                return new String[]{address, NumberDisplayBaseChooser.formatNumber(code, 16), basic, modifiedCodeMarker};
+            }
+            String sourceString = "";
+            if (!statement.getSource().equals("")) {
+                int leadingSpaces = sourceLineDigits - ("" + statement.getSourceLine()).length();
+                String lineNumber = "          ".substring(0, leadingSpaces)
+                        + statement.getSourceLine() + ": ";
+                if (row > 0 && statements.get(row - 1).getSourceLine() == statement.getSourceLine())
+                    lineNumber = "          ".substring(0, sourceLineDigits) + "  ";
+                sourceString = lineNumber
+                        + mars.util.EditorFont.substituteSpacesForTabs(statement.getSource());
+            }
+            return new String[]{address, NumberDisplayBaseChooser.formatNumber(statement.getBinaryStatement(), 16),
+                    statement.getPrintableBasicAssemblyStatement(), sourceString};
         }
 
-        private Object getSource() {
-            return this.source;
+        private void printDebugData() {
+            int numRows = getRowCount();
+            int numCols = getColumnCount();
+
+            for (int i = 0; i < numRows; i++) {
+                System.out.print("    row " + i + ":");
+                for (int j = 0; j < numCols; j++) {
+                    System.out.print("  " + getValueAt(i, j));
+                }
+                System.out.println();
+            }
+            System.out.println("--------------------------");
         }
     }
 
@@ -955,7 +1022,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     //
     private class MyTippedJTable extends JTable {
         private final String[] columnToolTips = {
-                /* break */   "If checked, will set an execution breakpoint. Click header to disable/enable breakpoints",
+                /* break */   "If checked, will set an execution breakpoint. Right-click for a condition or hit count. Click header to disable/enable breakpoints (watchpoints stay active)",
                 /* address */ "Text segment address of binary instruction code",
                 /* code */    "32-bit binary MIPS instruction",
                 /* basic */   "Basic assembler instruction",
@@ -967,6 +1034,16 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
             super(m);
         }
 
+        // Breakpoint cells describe their breakpoint
+        public String getToolTipText(MouseEvent e) {
+            int row = rowAtPoint(e.getPoint());
+            int column = columnAtPoint(e.getPoint());
+            if (row >= 0 && column >= 0 && convertColumnIndexToModel(column) == BREAK_COLUMN) {
+                return getBreakpointToolTip(row);
+            }
+            return super.getToolTipText(e);
+        }
+
         //Implement table header tool tips.
         protected JTableHeader createDefaultTableHeader() {
             tableHeader = new TextTableHeader(columnModel);
@@ -1030,8 +1107,9 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
                     if (realIndex == BREAK_COLUMN) {
                         JCheckBox check = ((JCheckBox) ((DefaultCellEditor) table.getCellEditor(0, index)).getComponent());
                         breakpointsEnabled = !breakpointsEnabled;
+                        tableModel.simulatorBreakpoints.setBreakpointsEnabled(breakpointsEnabled);
                         check.setEnabled(breakpointsEnabled);
-                        table.tableChanged(new TableModelEvent(tableModel, 0, data.length - 1, BREAK_COLUMN));
+                        table.tableChanged(new TableModelEvent(tableModel, 0, tableModel.getRowCount() - 1, BREAK_COLUMN));
                     }
                 }
 
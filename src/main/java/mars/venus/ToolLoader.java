@@ -33,9 +33,7 @@ import mars.util.FilenameFinder;
 import javax.swing.*;
 import java.awt.event.KeyEvent;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.*;
 
 /**
  * This class provides functionality to bring external Mars tools into the Mars
@@ -100,6 +98,16 @@ public class ToolLoader {
      */
     private List<MarsToolClassAndInstance> loadMarsTools() {
         List<MarsToolClassAndInstance> toolList = new ArrayList<>();
+        // Use the registry generated at build time if there is one, scan the classpath otherwise.
+        try {
+            for (MarsTool tool : ServiceLoader.load(MarsTool.class, this.getClass().getClassLoader()))
+                toolList.add(new MarsToolClassAndInstance(tool.getClass(), tool));
+        } catch (ServiceConfigurationError e) {
+            System.out.println("Error instantiating MarsTool from registry: " + e);
+        }
+        if (!toolList.isEmpty())
+            return toolList;
+
         List<String> candidates = FilenameFinder.getFilenameList(this.getClass().getClassLoader(), TOOLS_DIRECTORY_PATH, CLASS_EXTENSION);
         // Add any tools stored externally, as listed in Config.properties file.
         // This needs some work, because mars.Globals.getExternalTools() returns
@@ -89,7 +89,8 @@ public class VenusUI extends JFrame {
     private Action fileNewAction, fileOpenAction, fileCloseAction, fileCloseAllAction, fileSaveAction;
     private Action fileSaveAsAction, fileSaveAllAction, fileDumpMemoryAction, filePrintAction, fileExitAction;
     private Action editCutAction, editCopyAction, editPasteAction, editFindReplaceAction, editSelectAllAction;
-    private Action runAssembleAction, runGoAction, runStepAction, runBackstepAction, runResetAction,
+    private RunAssembleAction runAssembleAction;
+    private Action runGoAction, runStepAction, runBackstepAction, runResetAction,
             runStopAction, runPauseAction, runClearBreakpointsAction, runToggleBreakpointsAction;
     private Action settingsLabelAction, settingsPopupInputAction, settingsValueDisplayBaseAction, settingsAddressDisplayBaseAction,
             settingsExtendedAction, settingsAssembleOnOpenAction, settingsAssembleAllAction,
@@ -449,7 +450,7 @@ public class VenusUI extends JFrame {
                     mainUI);
             runToggleBreakpointsAction = new RunToggleBreakpointsAction("Toggle all breakpoints",
                     null,
-                    "Disable/enable all breakpoints without clearing (can also click Bkpt column header)",
+                    "Disable/enable all breakpoints without clearing, watchpoints stay active (can also click Bkpt column header)",
                     KeyEvent.VK_T,
                     KeyStroke.getKeyStroke(KeyEvent.VK_T, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()),
                     mainUI);
@@ -1036,6 +1037,13 @@ public class VenusUI extends JFrame {
         editRedoAction.setEnabled(false);//updateRedoState(); // DPS 10 Jan 2008
     }
 
+    /* Use this while the program is assembled in the background.  Stop cancels the assembly.
+     */
+    void setMenuStateAssembling() {
+        setMenuStateRunning();
+        runPauseAction.setEnabled(false);
+    }
+
     /* Use this upon completion of execution
      */
     void setMenuStateTerminated() {
@@ -1132,7 +1140,7 @@ public class VenusUI extends JFrame {
      *
      * @return the Action object for the Run->Assemble operation.
      */
-    public Action getRunAssembleAction() {
+    public RunAssembleAction getRunAssembleAction() {
         return runAssembleAction;
     }
 
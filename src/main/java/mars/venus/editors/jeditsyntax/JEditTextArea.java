@@ -105,6 +105,7 @@ public class JEditTextArea extends JComponent {
     protected InputHandler inputHandler;
     protected SyntaxDocument document;
     protected DocumentHandler documentHandler;
+    protected ChangeListener tokenChangeHandler;
     protected Segment lineSegment;
     protected int selectionStart;
     protected int selectionStartLine;
@@ -135,6 +136,7 @@ public class JEditTextArea extends JComponent {
         // Initialize some misc. stuff
         painter = new TextAreaPainter(this, defaults);
         documentHandler = new DocumentHandler();
+        tokenChangeHandler = e -> painter.repaint();
         listenerList = new EventListenerList();
         caretEvent = new MutableCaretEvent();
         lineSegment = new Segment();
@@ -702,11 +704,14 @@ public class JEditTextArea extends JComponent {
     public void setDocument(SyntaxDocument document) {
         if (this.document == document)
             return;
-        if (this.document != null)
+        if (this.document != null) {
             this.document.removeDocumentListener(documentHandler);
+            this.document.removeTokenChangeListener(tokenChangeHandler);
+        }
         this.document = document;
 
         document.addDocumentListener(documentHandler);
+        document.addTokenChangeListener(tokenChangeHandler);
 
         select(0, 0);
         updateScrollBars();
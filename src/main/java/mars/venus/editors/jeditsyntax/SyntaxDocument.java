@@ -10,6 +10,9 @@ package mars.venus.editors.jeditsyntax;
 
 import mars.venus.editors.jeditsyntax.tokenmarker.TokenMarker;
 
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Element;
@@ -20,14 +23,25 @@ import javax.swing.undo.UndoableEdit;
 /**
  * A document implementation that can be tokenized by the syntax highlighting
  * system.
+ * <p>
+ * Lines are tokenized in the background: after the token marker is set or
+ * the text is edited, a timer on the event dispatch thread tokenizes the
+ * invalid lines a few milliseconds at a time, so loading or editing a very
+ * large source does not hold up the editor. Lines painted before the timer
+ * gets to them are tokenized on demand by the painter.
  *
  * @author Slava Pestov
  * @version $Id: SyntaxDocument.java,v 1.14 1999/12/13 03:40:30 sp Exp $
  */
 public class SyntaxDocument extends PlainDocument {
+    // Time the background tokenizer may use the event dispatch thread at once
+    private static final long TOKENIZE_SLICE_NANOS = 5_000_000;
+
     // protected members
     protected TokenMarker tokenMarker;
 
+    private Timer tokenizer;
+
     /**
      * Returns the token marker that is to be used to split lines
      * of this document up into tokens. May return null if this
@@ -50,7 +64,7 @@ public class SyntaxDocument extends PlainDocument {
             return;
         tokenMarker.insertLines(0, getDefaultRootElement()
                 .getElementCount());
-        tokenizeLines();
+        startTokenizer();
     }
 
     /**
@@ -92,6 +106,81 @@ public class SyntaxDocument extends PlainDocument {
         }
     }
 
+    /**
+     * Adds a listener notified when the background tokenizer has changed the
+     * tokens of lines that may already have been painted, because a token
+     * spanning several lines changed before them.
+     *
+     * @param listener The listener
+     */
+    public void addTokenChangeListener(ChangeListener listener) {
+        listenerList.add(ChangeListener.class, listener);
+    }
+
+    /**
+     * Removes a listener added by <code>addTokenChangeListener()</code>.
+     *
+     * @param listener The listener
+     */
+    public void removeTokenChangeListener(ChangeListener listener) {
+        listenerList.remove(ChangeListener.class, listener);
+    }
+
+    /**
+     * Starts tokenizing the invalid lines in the background, if there is
+     * a token marker.
+     */
+    protected void startTokenizer() {
+        if (tokenMarker == null || !tokenMarker.supportsMultilineTokens())
+            return;
+        if (tokenizer == null) {
+            tokenizer = new Timer(0, e -> tokenizeInvalidLines());
+        }
+        tokenizer.start();
+    }
+
+    /**
+     * Tokenizes invalid lines for one time slice, stopping the timer once
+     * every line is up to date.
+     */
+    private void tokenizeInvalidLines() {
+        if (tokenMarker == null) {
+            tokenizer.stop();
+            return;
+        }
+        long deadline = System.nanoTime() + TOKENIZE_SLICE_NANOS;
+        Segment lineSegment = new Segment();
+        Element map = getDefaultRootElement();
+        boolean tokensChanged = false;
+        int line = tokenMarker.getFirstInvalidLine();
+        try {
+            while (line < tokenMarker.getLineCount()) {
+                Element lineElement = map.getElement(line);
+                int lineStart = lineElement.getStartOffset();
+                getText(lineStart, lineElement.getEndOffset()
+                        - lineStart - 1, lineSegment);
+                tokenMarker.markTokens(lineSegment, line);
+                tokensChanged |= tokenMarker.isNextLineRequested();
+                line = tokenMarker.getFirstInvalidLine();
+                if (System.nanoTime() - deadline >= 0)
+                    break;
+            }
+        } catch (BadLocationException bl) {
+            bl.printStackTrace();
+        }
+        if (line >= tokenMarker.getLineCount())
+            tokenizer.stop();
+        if (tokensChanged)
+            fireTokensChanged();
+    }
+
+    private void fireTokensChanged() {
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener : listenerList.getListeners(ChangeListener.class)) {
+            listener.stateChanged(event);
+        }
+    }
+
     /**
      * Starts a compound edit that can be undone in one operation.
      * Subclasses that implement undo should override this method;
@@ -134,6 +223,13 @@ public class SyntaxDocument extends PlainDocument {
                         ch.getChildrenAdded().length -
                                 ch.getChildrenRemoved().length);
             }
+            // The changed lines, and the line after them since the line
+            // before it is not the same
+            Element map = getDefaultRootElement();
+            int firstLine = map.getElementIndex(evt.getOffset());
+            int lastLine = map.getElementIndex(evt.getOffset() + evt.getLength());
+            tokenMarker.invalidateLines(firstLine, lastLine - firstLine + 2);
+            startTokenizer();
         }
 
         super.fireInsertUpdate(evt);
@@ -153,6 +249,9 @@ public class SyntaxDocument extends PlainDocument {
                         ch.getChildrenRemoved().length -
                                 ch.getChildrenAdded().length);
             }
+            tokenMarker.invalidateLines(getDefaultRootElement()
+                    .getElementIndex(evt.getOffset()), 2);
+            startTokenizer();
         }
 
         super.fireRemoveUpdate(evt);
@@ -18,10 +18,10 @@
   * a length field and an indentification tag that can be mapped to a color
   * for painting that token.<p>
   * <p>
-  * For performance reasons, the linked list of tokens is reused after each
-  * line is tokenized. Therefore, the return value of <code>markTokens</code>
-  * should only be used for immediate painting. Notably, it cannot be
-  * cached.
+  * The token list of each line is kept in its <code>LineInfo</code> until the
+  * line is invalidated, so lines that did not change are not tokenized again
+  * when painted. Lines changed by an edit, or whose initial token type may
+  * have changed, are found with <code>getFirstInvalidLine()</code>.
   *
   * @author Slava Pestov
   * @version $Id: TokenMarker.java,v 1.32 1999/12/13 03:40:30 sp Exp $
@@ -57,6 +57,10 @@
       * True if the next line should be painted.
       */
      protected boolean nextLineRequested;
+     /**
+      * Lines before this one all have their tokens up to date.
+      */
+     protected int firstInvalidLine;
 
      /**
       * Creates a new <code>TokenMarker</code>. This DOES NOT create
@@ -69,7 +73,9 @@
 
      /**
       * A wrapper for the lower-level <code>markTokensImpl</code> method
-      * that is called to split a line up into tokens.
+      * that is called to split a line up into tokens. The tokens of a
+      * line that has not been invalidated since it was last marked are
+      * returned without tokenizing it again.
       *
       * @param line      The line
       * @param lineIndex The line number
@@ -80,9 +86,19 @@
                      + lineIndex);
          }
 
+         LineInfo info = lineInfo[lineIndex];
+         if (info.tokens != null) {
+             // Unchanged, so its last token and the next line are too
+             if (lastLine != lineIndex)
+                 nextLineRequested = false;
+             lastLine = lineIndex;
+             return info.tokens;
+         }
+
+         // Start a new list, as the line keeps this one
+         firstToken = null;
          lastToken = null;
 
-         LineInfo info = lineInfo[lineIndex];
          LineInfo prev;
          if (lineIndex == 0)
              prev = null;
@@ -136,6 +152,11 @@
 
          addToken(0, Token.END);
 
+         info.tokens = firstToken;
+         // The next line starts with a different token type now
+         if (oldToken != token && lineIndex + 1 < length)
+             invalidateLines(lineIndex + 1, 1);
+
          return firstToken;
      }
 
@@ -184,6 +205,7 @@
      public void insertLines(int index, int lines) {
          if (lines <= 0)
              return;
+         firstInvalidLine = Math.min(firstInvalidLine, index);
          length += lines;
          ensureCapacity(length);
          int len = index + lines;
@@ -208,6 +230,33 @@
          int len = index + lines;
          length -= lines;
          System.arraycopy(lineInfo, len, lineInfo, index, lineInfo.length - len);
+         firstInvalidLine = Math.min(firstInvalidLine, index);
+     }
+
+     /**
+      * Informs the token marker that lines have changed, so they must be
+      * tokenized again. Lines past the end of the document are ignored.
+      *
+      * @param index The first line number
+      * @param lines The number of lines
+      */
+     public void invalidateLines(int index, int lines) {
+         int end = Math.min(index + lines, length);
+         for (int i = index; i < end; i++) {
+             lineInfo[i].tokens = null;
+         }
+         if (index < end)
+             firstInvalidLine = Math.min(firstInvalidLine, index);
+     }
+
+     /**
+      * Returns the first line whose tokens are not up to date, or the
+      * number of lines if all of them are.
+      */
+     public int getFirstInvalidLine() {
+         while (firstInvalidLine < length && lineInfo[firstInvalidLine].tokens != null)
+             firstInvalidLine++;
+         return firstInvalidLine;
      }
 
      /**
@@ -315,6 +364,11 @@
           * The id of the last token of the line.
           */
          public byte token;
+         /**
+          * The tokens of the line as last marked, or null if the line
+          * has to be tokenized again.
+          */
+         public Token tokens;
          /**
           * This is for use by the token marker implementations
           * themselves. It can be used to store anything that
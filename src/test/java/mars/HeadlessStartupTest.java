@@ -0,0 +1,81 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeadlessStartupTest {
+
+    private static final String PROGRAM = String.join("\n",
+            ".data",
+            "message: .asciiz \"headless\\n\"",
+            ".text",
+            "main:",
+            "    li $v0, 4",
+            "    la $a0, message",
+            "    syscall",
+            "    li $v0, 10",
+            "    syscall",
+            "");
+
+    @Test
+    void commandModeDoesntLoadSwing(@TempDir Path tempDir) throws IOException, InterruptedException {
+        final Path source = tempDir.resolve("headless.asm");
+        Files.writeString(source, PROGRAM);
+
+        // Classes loaded by the test runner itself don't matter, so run MARS in a fresh JVM
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        final Process process = new ProcessBuilder(java,
+                "-verbose:class",
+                "-cp", System.getProperty("java.class.path"),
+                "Mars", "nc", "ic", source.toString())
+                .redirectErrorStream(true)
+                .start();
+        final List<String> output;
+        try (var reader = process.inputReader(StandardCharsets.UTF_8)) {
+            output = reader.lines().collect(Collectors.toList());
+        }
+
+        assertEquals(0, process.waitFor());
+        assertTrue(output.contains("headless"), "Program output is missing");
+
+        final List<String> guiClasses = output.stream()
+                .filter(line -> line.contains("[class,load] javax.swing.") ||
+                        line.contains("[class,load] com.github.weisj.darklaf."))
+                .collect(Collectors.toList());
+        assertTrue(guiClasses.isEmpty(), () -> "GUI classes loaded in command mode:\n" + String.join("\n", guiClasses));
+    }
+}
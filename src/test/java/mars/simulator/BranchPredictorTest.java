@@ -0,0 +1,85 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.tools.BHTEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BranchPredictorTest {
+
+    // Replays the same branches through the BHT Simulator tool's entries and a "bht" predictor
+    private static void assertSameAsBHTEntries(int entries, int history, double takenBias, long seed) {
+        BranchPredictor predictor = new BranchPredictor("bht:" + entries + ":" + history);
+        BHTEntry[] table = new BHTEntry[entries];
+        for (int i = 0; i < entries; i++) {
+            table[i] = new BHTEntry(history, false);
+        }
+        Random random = new Random(seed);
+        // A few more branches than entries, so that some of them share an entry
+        int[] addresses = new int[entries + 3];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = 0x00400000 + 4 * random.nextInt(4 * entries);
+        }
+        for (int i = 0; i < 20000; i++) {
+            int address = addresses[random.nextInt(addresses.length)];
+            boolean taken = random.nextDouble() < takenBias;
+            BHTEntry entry = table[(address >>> 2) % entries];
+            boolean expected = entry.getPrediction();
+            entry.updatePrediction(taken);
+            boolean correct = predictor.predict(address, taken);
+            assertEquals(expected == taken, correct,
+                    "branch " + i + " at " + Integer.toHexString(address) + ", bht:" + entries + ":" + history);
+        }
+        long correct = 0;
+        for (BHTEntry entry : table) {
+            correct += entry.getStatsPredCorrect();
+        }
+        assertEquals(correct, predictor.getCorrectCount());
+    }
+
+    @Test
+    void bhtPredictsLikeBHTEntries() {
+        long seed = 1;
+        for (int entries : new int[]{8, 16, 32}) {
+            for (int history = 1; history <= 4; history++) {
+                for (double bias : new double[]{0.5, 0.8, 0.95}) {
+                    assertSameAsBHTEntries(entries, history, bias, seed++);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsInvalidSpecifications() {
+        assertThrows(IllegalArgumentException.class, () -> new BranchPredictor("bht"));
+        assertThrows(IllegalArgumentException.class, () -> new BranchPredictor("perceptron:16"));
+        assertThrows(IllegalArgumentException.class, () -> new BranchPredictor("bht:0"));
+        assertThrows(IllegalArgumentException.class, () -> new BranchPredictor("bht:16:9"));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.ProcessingException;
+import mars.mips.hardware.RegisterFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BreakpointsTest {
+
+    // Stores 1 into value, then the same value again
+    private static final String[] PROGRAM = {
+            "        .globl main",
+            "        .globl value",
+            "        .globl after",
+            "        .data",
+            "value:  .word 0",
+            "        .text",
+            "main:   la $t0, value",
+            "        li $t1, 1",
+            "        sw $t1, 0($t0)",
+            "after:  addiu $t2, $zero, 2",
+            "        sw $t1, 0($t0)",
+            "        li $v0, 10",
+            "        syscall"};
+
+    private static boolean run(MIPSprogram program, Breakpoints breakpoints) {
+        try {
+            return program.simulateFromPC(breakpoints, 1000, null);
+        } catch (ProcessingException e) {
+            throw new AssertionError(e.errors() == null ? e.toString() : e.errors().generateErrorReport());
+        }
+    }
+
+    @Test
+    void watchpointAndBreakpointHitTogetherPauseOnce(@TempDir Path directory) throws IOException {
+        MIPSprogram program = TestPrograms.assemble(directory, PROGRAM);
+        int after = Globals.symbolTable.getAddress("after");
+        int value = Globals.symbolTable.getAddress("value");
+        Breakpoints breakpoints = new Breakpoints();
+        breakpoints.add(after);
+        breakpoints.addWatchpoint(value);
+
+        assertFalse(run(program, breakpoints));
+        assertEquals(after, RegisterFile.getProgramCounter());
+        assertEquals(1, breakpoints.getHits(after));
+        String description = breakpoints.getHitDescription();
+        assertTrue(description.startsWith("watchpoint on "), description);
+        assertTrue(description.contains("; breakpoint at "), description);
+
+        // Both were reported, so nothing pauses again
+        assertTrue(run(program, breakpoints));
+        assertEquals(1, breakpoints.getHits(after));
+    }
+
+    @Test
+    void disabledBreakpointsLeaveWatchpointsActive(@TempDir Path directory) throws IOException {
+        MIPSprogram program = TestPrograms.assemble(directory, PROGRAM);
+        int after = Globals.symbolTable.getAddress("after");
+        int value = Globals.symbolTable.getAddress("value");
+        Breakpoints breakpoints = new Breakpoints();
+        breakpoints.add(after);
+        breakpoints.addWatchpoint(value);
+        breakpoints.setBreakpointsEnabled(false);
+
+        assertFalse(run(program, breakpoints));
+        assertEquals(0, breakpoints.getHits(after));
+        assertTrue(breakpoints.getHitDescription().startsWith("watchpoint on "));
+        assertFalse(breakpoints.getHitDescription().contains("breakpoint at"));
+        assertTrue(run(program, breakpoints));
+    }
+
+    @Test
+    void hitCountPausesFromTheGivenHitOn(@TempDir Path directory) throws IOException {
+        MIPSprogram program = TestPrograms.assemble(directory,
+                "        .globl loop",
+                "        li $t0, 0",
+                "loop:   addiu $t0, $t0, 1",
+                "        slti $t1, $t0, 5",
+                "        bne $t1, $zero, loop");
+        int loop = Globals.symbolTable.getAddress("loop");
+        Breakpoints breakpoints = new Breakpoints();
+        breakpoints.add(loop, "$t0 >= 1", 3);
+
+        assertFalse(run(program, breakpoints));
+        assertEquals(3, TestPrograms.register("$t0"));
+        assertEquals(3, breakpoints.getHits(loop));
+        breakpoints.resetHits();
+        assertEquals(0, breakpoints.getHits(loop));
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.Globals;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheTest {
+    private static final int BLOCK = 16;
+
+    // Next level recording the addresses it is asked for, writes with bit 0 set
+    private static class RecordingCache extends Cache {
+        final List<Integer> accesses = new ArrayList<>();
+
+        RecordingCache() {
+            super(1, 1, 1, ReplacementPolicy.LRU, WritePolicy.WRITE_BACK, null);
+        }
+
+        @Override
+        public int access(int address, boolean write) {
+            accesses.add(write ? address | 1 : address);
+            return super.access(address, write);
+        }
+    }
+
+    // A single set of four 16 byte blocks, filled with blocks 0 to 3 in this order
+    private static Cache fullyAssociative(Cache.ReplacementPolicy policy) {
+        Cache cache = new Cache(4, BLOCK / 4, 4, policy, Cache.WritePolicy.WRITE_BACK, null);
+        for (int block = 0; block < 4; block++) {
+            assertEquals(~block, cache.access(block * BLOCK, false));
+        }
+        return cache;
+    }
+
+    private static boolean hits(Cache cache, int block) {
+        return cache.access(block * BLOCK, false) >= 0;
+    }
+
+    @Test
+    void lruReplacesLeastRecentlyUsedBlock() {
+        Cache cache = fullyAssociative(Cache.ReplacementPolicy.LRU);
+        assertTrue(hits(cache, 0));
+        assertEquals(~1, cache.access(4 * BLOCK, false));
+        assertTrue(hits(cache, 0));
+        assertTrue(hits(cache, 2));
+        assertTrue(hits(cache, 3));
+        assertFalse(hits(cache, 1));
+    }
+
+    @Test
+    void fifoReplacesFirstFilledBlock() {
+        Cache cache = fullyAssociative(Cache.ReplacementPolicy.FIFO);
+        assertTrue(hits(cache, 0));
+        assertEquals(~0, cache.access(4 * BLOCK, false));
+        assertTrue(hits(cache, 1));
+        assertTrue(hits(cache, 2));
+        assertTrue(hits(cache, 3));
+        assertFalse(hits(cache, 0));
+    }
+
+    @Test
+    void plruFollowsTreeAwayFromRecentAccesses() {
+        Cache cache = fullyAssociative(Cache.ReplacementPolicy.PLRU);
+        // Touching block 0 points the root at the right half, whose last access was block 3,
+        // so block 2 goes where true LRU would have replaced block 1
+        assertTrue(hits(cache, 0));
+        assertEquals(~2, cache.access(4 * BLOCK, false));
+        assertTrue(hits(cache, 0));
+        assertTrue(hits(cache, 1));
+        assertTrue(hits(cache, 3));
+        assertFalse(hits(cache, 2));
+    }
+
+    @Test
+    void writeBackWritesReplacedBlockAddress() {
+        RecordingCache next = new RecordingCache();
+        // Four sets of one 16 byte block: addresses 64 bytes apart share a set
+        Cache cache = new Cache(4, BLOCK / 4, 1, Cache.ReplacementPolicy.LRU, Cache.WritePolicy.WRITE_BACK, next);
+        for (int address : new int[]{0x10010024, 0x80000184, 0xFFFF003C}) {
+            next.accesses.clear();
+            cache.access(address, true);
+            cache.access(address + 4 * BLOCK, false);
+            assertEquals(List.of(address, (address & -BLOCK) | 1, address + 4 * BLOCK), next.accesses,
+                    "write back of " + Integer.toHexString(address));
+        }
+        assertEquals(3, cache.getWriteBackCount());
+        assertEquals(6, cache.getNextLevelReads());
+        assertEquals(3, cache.getNextLevelWrites());
+    }
+
+    @Test
+    void writeThroughForwardsEveryWrite() {
+        RecordingCache next = new RecordingCache();
+        Cache cache = new Cache(4, BLOCK / 4, 1, Cache.ReplacementPolicy.LRU, Cache.WritePolicy.WRITE_THROUGH, next);
+        cache.access(0x10010000, true);         // miss: read the block, then write through
+        cache.access(0x10010004, true);         // hit: write through
+        cache.access(0x10010008, false);        // hit
+        cache.access(0x10010000 + 4 * BLOCK, true); // miss in the same set, nothing dirty to write back
+        assertEquals(4, cache.getAccessCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getWriteCount());
+        assertEquals(1, cache.getWriteHitCount());
+        assertEquals(0, cache.getWriteBackCount());
+        assertEquals(2, cache.getNextLevelReads());
+        assertEquals(3, cache.getNextLevelWrites());
+        assertEquals(List.of(0x10010000, 0x10010001, 0x10010005, 0x10010040, 0x10010041), next.accesses);
+    }
+
+    @Test
+    void hierarchyParsesLevels() {
+        CacheHierarchy hierarchy = new CacheHierarchy("l1i=4k:16:1,l1d=2k:32:2:fifo:wt,l2=64k:32:full:plru");
+        Cache instruction = hierarchy.getInstructionCache();
+        Cache data = hierarchy.getDataCache();
+        Cache second = hierarchy.getSecondLevelCache();
+        assertEquals(256, instruction.getNumberOfBlocks());
+        assertEquals(1, instruction.getSetSizeInBlocks());
+        assertEquals(64, data.getNumberOfBlocks());
+        assertEquals(8, data.getBlockSizeInWords());
+        assertEquals(Cache.ReplacementPolicy.FIFO, data.getReplacementPolicy());
+        assertEquals(Cache.WritePolicy.WRITE_THROUGH, data.getWritePolicy());
+        assertEquals(1, second.getNumberOfSets());
+        assertEquals(Cache.ReplacementPolicy.PLRU, second.getReplacementPolicy());
+        assertSame(second, instruction.getNextLevel());
+        assertSame(second, data.getNextLevel());
+        assertNull(second.getNextLevel());
+
+        hierarchy.access(CacheHierarchy.FETCH, 0x00400000);
+        hierarchy.access(CacheHierarchy.READ, 0x10010000);
+        hierarchy.access(CacheHierarchy.WRITE, 0x10010000);
+        assertEquals(1, instruction.getAccessCount());
+        assertEquals(2, data.getAccessCount());
+        assertEquals(1, data.getWriteHitCount());
+        // Two fills and the written word
+        assertEquals(3, second.getAccessCount());
+    }
+
+    @Test
+    void hierarchyRejectsInvalidSpecifications() {
+        assertThrows(IllegalArgumentException.class, () -> new CacheHierarchy("l2=64k:32:8"));
+        assertThrows(IllegalArgumentException.class, () -> new CacheHierarchy("l1=4k:16:1,l1d=4k:16:1"));
+        assertThrows(IllegalArgumentException.class, () -> new CacheHierarchy("l1=4k:12:1"));
+        assertThrows(IllegalArgumentException.class, () -> new CacheHierarchy("l1=4k:16:3"));
+        assertThrows(IllegalArgumentException.class, () -> new CacheHierarchy("l1=4k:16:1:mru"));
+        assertThrows(IllegalArgumentException.class, () -> new CacheHierarchy("l3=4k:16:1"));
+    }
+
+    @Test
+    void sweepReplaysAccessesOnEveryHierarchy() {
+        Globals.initialize(false);
+        CacheHierarchy unified = new CacheHierarchy("l1=1k:16:1");
+        CacheHierarchy split = new CacheHierarchy("l1i=1k:16:1,l1d=1k:16:1");
+        CacheSweep sweep = new CacheSweep(List.of(unified, split));
+        // More accesses than fit in a buffer, so that several are replayed
+        for (int i = 0; i < 100000; i++) {
+            sweep.record(CacheHierarchy.FETCH, 0x00400000 + 4 * (i % 64));
+            sweep.record((i % 3 == 0) ? CacheHierarchy.WRITE : CacheHierarchy.READ, 0x10010000 + 4 * (i % 512));
+        }
+        sweep.finish();
+        assertEquals(200000, unified.getInstructionCache().getAccessCount());
+        assertEquals(100000, split.getInstructionCache().getAccessCount());
+        assertEquals(100000, split.getDataCache().getAccessCount());
+        // 64 instructions fit in 16 blocks, 512 data words do not fit so each block misses once per pass
+        assertEquals(16, split.getInstructionCache().getMissCount());
+        assertEquals(25000, split.getDataCache().getMissCount());
+        // Sharing one cache, data blocks also evict instructions
+        assertTrue(unified.getInstructionCache().getMissCount() > 25016);
+    }
+}
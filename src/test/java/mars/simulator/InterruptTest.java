@@ -0,0 +1,218 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+package mars.simulator;
+
+import mars.MIPSprogram;
+import mars.mips.hardware.Coprocessor0;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static mars.simulator.TestPrograms.register;
+import static org.junit.jupiter.api.Assertions.*;
+
+class InterruptTest {
+    /*
+     * Counts the interrupts in $s1, keeps Count at the latest one in $s3 and the progress
+     * of the main loop, held in $s0, in $s5 at the latest one and $s4 at the first one.
+     * Only $k0 and $k1 are used otherwise, since the main program may be interrupted
+     * between the instructions of a pseudo-instruction using $at.  The timer is disarmed,
+     * by setting Compare just behind Count, once $s1 reaches $s7.
+     */
+    private static final String[] HANDLER = {
+            ".ktext 0x80000180",
+            "        mfc0 $s3, $9",
+            "        addi $s1, $s1, 1",
+            "        move $s5, $s0",
+            "        addi $k1, $s1, -1",
+            "        bnez $k1, second",
+            "        move $s4, $s0",
+            "second: slt $k1, $s1, $s7",
+            "        bnez $k1, done",
+            "        mfc0 $k0, $9",
+            "        addi $k0, $k0, -1",
+            "        mtc0 $k0, $11",
+            "done:   eret",
+    };
+
+    private static MIPSprogram assemble(Path directory, String... main) throws IOException {
+        String[] lines = new String[main.length + HANDLER.length];
+        System.arraycopy(main, 0, lines, 0, main.length);
+        System.arraycopy(HANDLER, 0, lines, main.length, HANDLER.length);
+        return TestPrograms.assemble(directory, lines);
+    }
+
+    @Test
+    void eventsRunInTimeThenSchedulingOrder() {
+        List<String> runs = new ArrayList<>();
+        EventScheduler.schedule(2, () -> runs.add("b"));
+        EventScheduler.schedule(1, () -> runs.add("a"));
+        EventScheduler.schedule(2, () -> runs.add("c"));
+        EventScheduler.Event cancelled = EventScheduler.schedule(2, () -> runs.add("cancelled"));
+        EventScheduler.cancel(cancelled);
+        EventScheduler.cancel(null);
+        long start = EventScheduler.getTime();
+        assertEquals(start + 2, cancelled.getTime());
+
+        EventScheduler.tick();
+        assertEquals(List.of("a"), runs);
+        EventScheduler.tick();
+        assertEquals(List.of("a", "b", "c"), runs);
+        assertEquals(start + 2, EventScheduler.getTime());
+        assertThrows(IllegalArgumentException.class, () -> EventScheduler.schedule(0, () -> runs.add("now")));
+    }
+
+    @Test
+    void compareInterruptsWhenCountReachesIt(@TempDir Path directory) throws IOException {
+        MIPSprogram program = assemble(directory,
+                ".text",
+                "main:   li $s7, 1",
+                "        li $t1, 0x8001",     // interrupts enabled, only the timer unmasked
+                "        mtc0 $t1, $12",
+                "        mfc0 $s2, $9",
+                "        addi $s2, $s2, 100",
+                "        mtc0 $s2, $11",
+                "loop:   addi $s0, $s0, 1",
+                "        beqz $s1, loop",
+                "        li $v0, 10",
+                "        syscall");
+
+        assertTrue(TestPrograms.run(program, 10000));
+        assertEquals(1, register("$s1"));
+        // Taken before the instruction following the one that made Count equal to Compare
+        assertEquals(register("$s2"), register("$s3"));
+    }
+
+    @Test
+    void countWrapsAroundToReachCompare(@TempDir Path directory) throws IOException {
+        MIPSprogram program = assemble(directory,
+                ".text",
+                "main:   li $s7, 1",
+                "        li $t1, 0x8001",
+                "        mtc0 $t1, $12",
+                "        li $t0, -16",
+                "        mtc0 $t0, $9",
+                "        li $t0, 16",
+                "        mtc0 $t0, $11",
+                "loop:   addi $s0, $s0, 1",
+                "        beqz $s1, loop",
+                "        li $v0, 10",
+                "        syscall");
+
+        assertTrue(TestPrograms.run(program, 10000));
+        assertEquals(1, register("$s1"));
+        assertEquals(16, register("$s3"));
+    }
+
+    @Test
+    void timerIsTakenAgainAfterEretUntilCompareIsWritten(@TempDir Path directory) throws IOException {
+        MIPSprogram program = assemble(directory,
+                ".text",
+                "main:   li $s7, 3",
+                "        li $t1, 0x8001",
+                "        mtc0 $t1, $12",
+                "        mfc0 $t0, $9",
+                "        addi $t0, $t0, 50",
+                "        mtc0 $t0, $11",
+                "loop:   addi $s0, $s0, 1",
+                "        slt $t0, $s1, $s7",
+                "        bnez $t0, loop",
+                "        li $v0, 10",
+                "        syscall");
+
+        assertTrue(TestPrograms.run(program, 10000));
+        assertEquals(3, register("$s1"));
+        // The interrupt is level triggered: the main loop made no progress between the entries
+        assertEquals(register("$s4"), register("$s5"));
+    }
+
+    @Test
+    void maskedTimerWaitsForItsMaskBit(@TempDir Path directory) throws IOException {
+        MIPSprogram program = assemble(directory,
+                ".text",
+                "main:   li $s7, 1",
+                "        li $t1, 0x7f01",     // interrupts enabled, the timer masked
+                "        mtc0 $t1, $12",
+                "        mfc0 $t0, $9",
+                "        addi $t0, $t0, 10",
+                "        mtc0 $t0, $11",
+                "loop:   addi $s0, $s0, 1",
+                "        slti $t0, $s0, 100",
+                "        bnez $t0, loop",
+                "        move $s6, $s1",      // no interrupt taken while masked
+                "        li $t1, 0x8001",
+                "        mtc0 $t1, $12",
+                "        nop",
+                "        li $v0, 10",
+                "        syscall");
+
+        assertTrue(TestPrograms.run(program, 10000));
+        assertEquals(0, register("$s6"));
+        assertEquals(1, register("$s1"));
+        assertEquals(100, register("$s5"));
+    }
+
+    @Test
+    void repeatedMaskedRequestsAreTakenOnceUnmasked(@TempDir Path directory) throws IOException {
+        MIPSprogram program = assemble(directory,
+                ".text",
+                "main:   li $s7, 1",
+                "loop:   addi $s0, $s0, 1",
+                "        slti $t0, $s0, 100",
+                "        bnez $t0, loop",
+                "        move $s6, $s1",
+                "        li $t1, 0x0100",     // unmasked, interrupts disabled
+                "        mtc0 $t1, $12",
+                "        nop",
+                "        move $s2, $s1",
+                "        li $t1, 0x0101",     // unmasked and enabled
+                "        mtc0 $t1, $12",
+                "        nop",
+                "        nop",
+                "        nop",
+                "        li $v0, 10",
+                "        syscall");
+        // Interrupts enabled, all masked
+        Coprocessor0.updateRegister(Coprocessor0.STATUS, 0x0001);
+        for (int i = 0; i < 1000; i++) {
+            Simulator.requestInterrupt(Exceptions.EXTERNAL_INTERRUPT_KEYBOARD);
+        }
+        Simulator.requestInterrupt(Exceptions.EXTERNAL_INTERRUPT_DISPLAY);
+        assertArrayEquals(new int[]{Exceptions.EXTERNAL_INTERRUPT_KEYBOARD, Exceptions.EXTERNAL_INTERRUPT_DISPLAY},
+                Simulator.getInterruptRequests());
+
+        assertTrue(TestPrograms.run(program, 10000));
+        assertEquals(0, register("$s6"));
+        assertEquals(0, register("$s2"));
+        // The keyboard request was taken once; the display one stays masked
+        assertEquals(1, register("$s1"));
+        assertArrayEquals(new int[]{Exceptions.EXTERNAL_INTERRUPT_DISPLAY}, Simulator.getInterruptRequests());
+    }
+}
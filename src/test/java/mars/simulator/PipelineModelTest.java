@@ -0,0 +1,231 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.Settings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineModelTest {
+
+    // Times a program, followed by the exit syscall, with or without delayed branching
+    private static PipelineModel time(Path directory, boolean delayedBranching, String... lines) throws IOException {
+        return time(assemble(directory, lines), delayedBranching);
+    }
+
+    private static PipelineModel time(MIPSprogram program, boolean delayedBranching) {
+        PipelineModel model = new PipelineModel();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching);
+        try {
+            model.start();
+            try {
+                assertTrue(TestPrograms.run(program, 1000));
+            } finally {
+                model.stop();
+            }
+        } finally {
+            Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, false);
+        }
+        return model;
+    }
+
+    private static MIPSprogram assemble(Path directory, String... lines) throws IOException {
+        String[] program = Arrays.copyOf(lines, lines.length + 2);
+        program[lines.length] = "        li $v0, 10";
+        program[lines.length + 1] = "        syscall";
+        return TestPrograms.assemble(directory, program);
+    }
+
+    private static List<String> report(PipelineModel model) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        model.writeReport(new PrintStream(bytes, true, StandardCharsets.UTF_8), 10);
+        return bytes.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+
+    // The report line giving the stall cycles by cause
+    private static String stalls(PipelineModel model) {
+        return report(model).stream().filter(line -> line.startsWith("Stall cycles: ")).findFirst().orElseThrow();
+    }
+
+    private static String branchPenalties(PipelineModel model) {
+        return report(model).stream().filter(line -> line.startsWith("Taken branch")).findFirst().orElseThrow();
+    }
+
+    // Cycles of a program without stalls or taken branches, the exit syscall included
+    private static long unstalled(int instructions) {
+        return instructions + 2 + PipelineModel.PIPELINE_FILL;
+    }
+
+    @Test
+    void independentInstructionsTakeOneCycleEach(@TempDir Path directory) throws IOException {
+        PipelineModel model = time(directory, false,
+                "        addiu $t0, $zero, 1",
+                "        addiu $t1, $zero, 2",
+                "        addu $t2, $t0, $t1",
+                "        addu $t3, $t2, $t2");
+        assertEquals(6, model.getInstructionCount());
+        assertEquals(unstalled(4), model.getCycleCount());
+        assertEquals("Stall cycles: load-use 0, other data dependencies 0, multiply/divide 0", stalls(model));
+    }
+
+    @Test
+    void loadResultIsUsedOneCycleLate(@TempDir Path directory) throws IOException {
+        PipelineModel model = time(directory, false,
+                "        lw $t0, 0($gp)",
+                "        addu $t1, $t0, $t0");
+        assertEquals(unstalled(2) + 1, model.getCycleCount());
+        assertEquals("Stall cycles: load-use 1, other data dependencies 0, multiply/divide 0", stalls(model));
+
+        // One instruction in between hides the stall
+        model = time(directory, false,
+                "        lw $t0, 0($gp)",
+                "        addiu $t2, $zero, 1",
+                "        addu $t1, $t0, $t0");
+        assertEquals(unstalled(3), model.getCycleCount());
+        assertEquals("Stall cycles: load-use 0, other data dependencies 0, multiply/divide 0", stalls(model));
+    }
+
+    @Test
+    void branchesReadTheirOperandsInDecode(@TempDir Path directory) throws IOException {
+        // An ALU result reaches ID one cycle after it reaches EX
+        PipelineModel model = time(directory, false,
+                "        addiu $t0, $zero, 1",
+                "        beq $t0, $zero, skip",
+                "skip:");
+        assertEquals(unstalled(2) + 1, model.getCycleCount());
+        assertEquals("Stall cycles: load-use 0, other data dependencies 1, multiply/divide 0", stalls(model));
+
+        // A loaded value two cycles later
+        model = time(directory, false,
+                "        lw $t0, 0($gp)",
+                "        bne $t0, $zero, skip",
+                "skip:");
+        assertEquals(unstalled(2) + 2, model.getCycleCount());
+        assertEquals("Stall cycles: load-use 2, other data dependencies 0, multiply/divide 0", stalls(model));
+
+        // Registers read by jr too
+        model = time(directory, false,
+                "        la $t0, skip",
+                "        jr $t0",
+                "skip:");
+        assertEquals("Stall cycles: load-use 0, other data dependencies 1, multiply/divide 0", stalls(model));
+    }
+
+    @Test
+    void storeDataIsForwardedToMemoryStage(@TempDir Path directory) throws IOException {
+        // The data stored is needed one stage after the address, so a loaded value is in time
+        PipelineModel model = time(directory, false,
+                "        lw $t0, 0($gp)",
+                "        sw $t0, 4($gp)");
+        assertEquals(unstalled(2), model.getCycleCount());
+        assertEquals("Stall cycles: load-use 0, other data dependencies 0, multiply/divide 0", stalls(model));
+
+        // The address is not
+        model = time(directory, false,
+                "        sw $gp, 0($gp)",
+                "        lw $t0, 0($gp)",
+                "        sw $zero, 0($t0)");
+        assertEquals("Stall cycles: load-use 1, other data dependencies 0, multiply/divide 0", stalls(model));
+    }
+
+    @Test
+    void multiplyAndDivideResultsWaitForTheirLatency(@TempDir Path directory) throws IOException {
+        PipelineModel model = time(directory, false,
+                "        mult $zero, $zero",
+                "        mflo $t0");
+        assertEquals(unstalled(2) + PipelineModel.MULTIPLY_LATENCY - 1, model.getCycleCount());
+        assertEquals("Stall cycles: load-use 0, other data dependencies 0, multiply/divide "
+                + (PipelineModel.MULTIPLY_LATENCY - 1), stalls(model));
+
+        model = time(directory, false,
+                "        addiu $t1, $zero, 3",
+                "        div $t1, $t1",
+                "        mfhi $t0");
+        assertEquals(unstalled(3) + PipelineModel.DIVIDE_LATENCY - 1, model.getCycleCount());
+        assertEquals("Stall cycles: load-use 0, other data dependencies 0, multiply/divide "
+                + (PipelineModel.DIVIDE_LATENCY - 1), stalls(model));
+
+        // mul writes a general purpose register with the multiply latency
+        model = time(directory, false,
+                "        mul $t0, $zero, $zero",
+                "        addiu $t2, $zero, 1",
+                "        addu $t1, $t0, $t0");
+        assertEquals("Stall cycles: load-use 0, other data dependencies 0, multiply/divide "
+                + (PipelineModel.MULTIPLY_LATENCY - 2), stalls(model));
+    }
+
+    @Test
+    void takenBranchesCostARefetchWithoutDelayedBranching(@TempDir Path directory) throws IOException {
+        String[] program = {
+                "        beq $zero, $zero, skip",
+                "        addiu $t0, $zero, 1",
+                "skip:   bne $zero, $zero, skip"};
+        PipelineModel model = time(directory, false, program);
+        // The untaken bne costs nothing
+        assertEquals(4, model.getInstructionCount());
+        assertEquals(unstalled(2) + PipelineModel.BRANCH_PENALTY, model.getCycleCount());
+        assertEquals("Taken branch and jump penalty cycles: " + PipelineModel.BRANCH_PENALTY, branchPenalties(model));
+
+        // The delay slot fills the refetch cycle
+        model = time(directory, true, program);
+        assertEquals(5, model.getInstructionCount());
+        assertEquals(unstalled(3), model.getCycleCount());
+        assertEquals("Taken branch and jump penalty cycles: 0 (delayed branching)", branchPenalties(model));
+    }
+
+    @Test
+    void cyclesAreAttributedToTheCalledFunction(@TempDir Path directory) throws IOException {
+        PipelineModel model = time(TestPrograms.assemble(directory,
+                "        .globl main",
+                "main:   jal work",
+                "        jal work",
+                "        li $v0, 10",
+                "        syscall",
+                "work:   addiu $t0, $t0, 1",
+                "        addiu $t0, $t0, 1",
+                "        jr $ra"), false);
+        List<String> report = report(model);
+        int header = report.indexOf("Functions by cycles");
+        assertTrue(header >= 0);
+        // Each call to work takes three instructions and a cycle to return
+        assertEquals(List.of("8 6 work", "6 4 main"), report.subList(header + 2, report.size()).stream()
+                .map(line -> line.trim().split(" +"))
+                .map(fields -> fields[0] + " " + fields[2] + " " + fields[4])
+                .toList());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.ProcessingException;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.RegisterFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static mars.simulator.TestPrograms.register;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotTest {
+    /*
+     * Writes "abc" to a file, stores 7, then at the global label "snap" writes "def" and
+     * stores 9.  The labels are global, so the tests find them in the global symbol table.
+     */
+    private static MIPSprogram assemble(Path directory, Path output) throws IOException {
+        return TestPrograms.assemble(directory,
+                ".data",
+                "name:   .asciiz \"" + output.toString().replace("\\", "\\\\") + "\"",
+                "text:   .ascii \"abcdef\"",
+                "value:  .word 0",
+                ".text",
+                ".globl snap value",
+                "main:   li $v0, 13",
+                "        la $a0, name",
+                "        li $a1, 1",
+                "        li $a2, 0",
+                "        syscall",
+                "        move $s0, $v0",
+                "        li $v0, 15",
+                "        move $a0, $s0",
+                "        la $a1, text",
+                "        li $a2, 3",
+                "        syscall",
+                "        li $s1, 7",
+                "        sw $s1, value",
+                "snap:   li $v0, 15",
+                "        move $a0, $s0",
+                "        la $a1, text+3",
+                "        li $a2, 3",
+                "        syscall",
+                "        li $s1, 9",
+                "        sw $s1, value",
+                "        li $v0, 16",
+                "        move $a0, $s0",
+                "        syscall",
+                "        li $v0, 10",
+                "        syscall");
+    }
+
+    private static int snapAddress() {
+        return Globals.symbolTable.getAddress("snap");
+    }
+
+    private static void runToSnap(MIPSprogram program) throws ProcessingException {
+        assertFalse(program.simulate(new int[]{snapAddress()}));
+        assertEquals(snapAddress(), RegisterFile.getProgramCounter());
+    }
+
+    private static int value() throws AddressErrorException {
+        return Globals.memory.getWordNoNotify(Globals.symbolTable.getAddress("value"));
+    }
+
+    private static byte[] save() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Snapshot.save(bytes);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void restoreReturnsToTheSavedState(@TempDir Path directory) throws Exception {
+        Path output = directory.resolve("out.txt");
+        MIPSprogram program = assemble(directory, output);
+        runToSnap(program);
+        byte[] snapshot = save();
+        assertTrue(TestPrograms.run(program, -1));
+        assertEquals(9, register("$s1"));
+        assertEquals(9, value());
+        assertEquals("abcdef", Files.readString(output, StandardCharsets.US_ASCII));
+
+        Snapshot.restore(new ByteArrayInputStream(snapshot));
+        assertEquals(snapAddress(), RegisterFile.getProgramCounter());
+        assertEquals(7, register("$s1"));
+        assertEquals(7, value());
+        // The file written since is truncated back, and written again from there
+        assertEquals("abc", Files.readString(output, StandardCharsets.US_ASCII));
+        assertTrue(TestPrograms.run(program, -1));
+        assertEquals(9, register("$s1"));
+        assertEquals("abcdef", Files.readString(output, StandardCharsets.US_ASCII));
+        // Saving the same state again gives the same image
+        Snapshot.restore(new ByteArrayInputStream(snapshot));
+        assertArrayEquals(snapshot, save());
+        assertTrue(TestPrograms.run(program, -1));
+    }
+
+    @Test
+    void invalidImageLeavesStateUntouched(@TempDir Path directory) throws Exception {
+        Path output = directory.resolve("out.txt");
+        MIPSprogram program = assemble(directory, output);
+        runToSnap(program);
+        byte[] snapshot = save();
+        assertTrue(TestPrograms.run(program, -1));
+        int programCounter = RegisterFile.getProgramCounter();
+
+        // Drop the end marker of the open files, the very last part of the image, so that
+        // reading only fails after the file open at the snapshot has been reopened
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(snapshot))) {
+            in.transferTo(image);
+        }
+        byte[] truncated = Arrays.copyOf(image.toByteArray(), image.size() - 4);
+        ByteArrayOutputStream corrupt = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(corrupt)) {
+            out.write(truncated);
+        }
+        assertThrows(IOException.class, () -> Snapshot.restore(new ByteArrayInputStream(corrupt.toByteArray())));
+        assertThrows(IOException.class, () -> Snapshot.restore(new ByteArrayInputStream(new byte[]{1, 2, 3})));
+
+        assertEquals(programCounter, RegisterFile.getProgramCounter());
+        assertEquals(9, register("$s1"));
+        assertEquals(9, value());
+        assertEquals("abcdef", Files.readString(output, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+package mars.simulator;
+
+import mars.ErrorList;
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.ProcessingException;
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.RegisterFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Assembles and runs small MIPS programs in the test JVM, the way the command line does.
+ */
+final class TestPrograms {
+    private TestPrograms() {
+    }
+
+    /**
+     * Assembles a program, given one source line per string, and resets the machine to run it.
+     */
+    static MIPSprogram assemble(Path directory, String... lines) throws IOException {
+        Globals.initialize(false);
+        Path source = Files.createTempFile(directory, "program", ".asm");
+        Files.writeString(source, String.join("\n", lines) + "\n");
+        MIPSprogram program = new MIPSprogram();
+        try {
+            List<MIPSprogram> programs = program.prepareFilesForAssembly(
+                    List.of(source.toString()), source.toString(), null);
+            program.assemble(programs, true, true);
+        } catch (ProcessingException e) {
+            ErrorList errors = e.errors();
+            throw new AssertionError(errors == null ? e.toString() : errors.generateErrorAndWarningReport());
+        }
+        Simulator.clearDelayedBranch();
+        Simulator.clearInterruptRequests();
+        RegisterFile.resetRegisters();
+        Coprocessor1.resetRegisters();
+        Coprocessor0.resetRegisters();
+        RegisterFile.initializeProgramCounter(false);
+        return program;
+    }
+
+    /**
+     * Runs the assembled program until it terminates or has executed the given number of
+     * instructions.  Returns true if it terminated.
+     */
+    static boolean run(MIPSprogram program, int maxSteps) {
+        try {
+            return program.simulate(maxSteps);
+        } catch (ProcessingException e) {
+            throw new AssertionError(e.errors() == null ? e.toString() : e.errors().generateErrorReport());
+        }
+    }
+
+    /**
+     * Returns the value of the named general purpose register.
+     */
+    static int register(String name) {
+        return RegisterFile.getUserRegister(name).getValueNoNotify();
+    }
+}
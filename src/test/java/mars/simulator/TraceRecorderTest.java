@@ -0,0 +1,237 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+package mars.simulator;
+
+import mars.Globals;
+import mars.ProgramStatement;
+import mars.mips.hardware.AccessNotice;
+import mars.mips.hardware.MemoryAccessNotice;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TraceRecorderTest {
+    private static final int ADDU = 0x01095021; // addu $t2, $t0, $t1
+    private static final int ORI = 0x35080001;  // ori $t0, $t0, 1
+
+    /*
+     * Drives a recorder the way the simulator does and keeps the records a reader should
+     * return, each as {kind, address, value, size or register}.  Memory notices are only
+     * recorded when they come from the thread running the MIPS program, so everything
+     * runs on a thread named like it.
+     */
+    private static final class Recording {
+        final List<int[]> expected = new ArrayList<>();
+        // Register writes are recorded before the next instruction, by register number
+        final TreeMap<Integer, Integer> pendingRegisters = new TreeMap<>();
+        final Register[] registers = new Register[TraceReader.REGISTER_COUNT];
+        TraceRecorder recorder;
+
+        Recording() {
+            System.arraycopy(RegisterFile.getRegisters(), 0, registers, 0, TraceReader.HI_REGISTER);
+            registers[TraceReader.HI_REGISTER] = RegisterFile.getHiLoRegisters()[0];
+            registers[TraceReader.LO_REGISTER] = RegisterFile.getHiLoRegisters()[1];
+            for (int register = 0; register < TraceReader.HI_REGISTER; register++) {
+                int value = registers[register].getValueNoNotify();
+                if (value != 0) {
+                    expected.add(new int[]{TraceReader.REGISTER_WRITE, 0, value, register});
+                }
+            }
+        }
+
+        void instruction(int address, int word) {
+            flushRegisters();
+            recorder.instructionStarted(address, new ProgramStatement(word, address));
+            expected.add(new int[]{TraceReader.INSTRUCTION, address, word, 4});
+        }
+
+        void memory(boolean write, int address, int value) {
+            recorder.update(Globals.memory, new MemoryAccessNotice(write ? AccessNotice.WRITE : AccessNotice.READ, address, value));
+            expected.add(new int[]{write ? TraceReader.MEMORY_WRITE : TraceReader.MEMORY_READ, address, value, 4});
+        }
+
+        void register(int register, int value) {
+            registers[register].setValue(value);
+            pendingRegisters.put(register, value);
+        }
+
+        void flushRegisters() {
+            pendingRegisters.forEach((register, value) -> expected.add(new int[]{TraceReader.REGISTER_WRITE, 0, value, register}));
+            pendingRegisters.clear();
+        }
+    }
+
+    private interface Program {
+        void run(Recording recording);
+    }
+
+    private static byte[] record(Recording recording, Program program) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Throwable[] failure = new Throwable[1];
+        Thread mips = new Thread(() -> {
+            try (TraceRecorder recorder = new TraceRecorder(out)) {
+                recording.recorder = recorder;
+                recorder.start();
+                program.run(recording);
+                recording.flushRegisters();
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        }, "MIPS");
+        mips.start();
+        mips.join();
+        if (failure[0] != null) {
+            throw new AssertionError("Recording failed", failure[0]);
+        }
+        return out.toByteArray();
+    }
+
+    private static Recording newRecording() {
+        Globals.initialize(false);
+        RegisterFile.resetRegisters();
+        for (Register register : RegisterFile.getHiLoRegisters()) {
+            register.resetValue();
+        }
+        return new Recording();
+    }
+
+    private static void assertRoundTrip(Recording recording, byte[] trace) throws IOException {
+        List<int[]> actual = new ArrayList<>();
+        try (TraceReader reader = new TraceReader(new ByteArrayInputStream(trace))) {
+            while (reader.next()) {
+                int kind = reader.getKind();
+                boolean register = kind == TraceReader.REGISTER_WRITE;
+                actual.add(new int[]{kind, register ? 0 : reader.getAddress(), reader.getValue(),
+                        register ? reader.getRegister() : reader.getSize()});
+            }
+        }
+        assertEquals(recording.expected.size(), actual.size(), "number of records");
+        for (int i = 0; i < actual.size(); i++) {
+            assertArrayEquals(recording.expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    void roundTripsExtremeValues() throws Exception {
+        int[] values = {0, 1, -1, 63, -64, 64, -65, 8191, -8192, 1 << 27, -(1 << 27),
+                Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE - 1, Integer.MIN_VALUE + 1};
+        Recording recording = newRecording();
+        byte[] trace = record(recording, r -> {
+            for (int i = 0; i < values.length; i++) {
+                int value = values[i];
+                // Jumps between user and kernel text, so instruction address deltas are large too
+                r.instruction((i % 2 == 0) ? 0x00400000 + 4 * i : 0x80000180 + 4 * i, ADDU);
+                r.memory(false, value & ~3, value);
+                r.memory(true, -value & ~3, ~value);
+                r.register(10, value);
+                r.register(TraceReader.HI_REGISTER, ~value);
+            }
+        });
+        assertRoundTrip(recording, trace);
+    }
+
+    @Test
+    void cachesInstructionWords() throws Exception {
+        int loops = 1000;
+        Recording recording = newRecording();
+        byte[] initial = record(newRecording(), r -> {
+        });
+        byte[] trace = record(recording, r -> {
+            for (int i = 0; i < loops; i++) {
+                for (int address = 0x00400000; address < 0x00400010; address += 4) {
+                    r.instruction(address, ADDU);
+                }
+            }
+        });
+        assertRoundTrip(recording, trace);
+        // The first pass stores the words: 4 bytes of delta from 0 then none, the other
+        // passes are a tag and a one byte delta
+        assertEquals(initial.length + (1 + 4 + 4) + 3 * (1 + 1 + 4) + (4 * loops - 4) * 2, trace.length);
+
+        // Words change with self-modifying code, addresses 4096 words apart share a cache entry
+        Recording changing = newRecording();
+        int alias = 0x00400000 + 4 * TraceRecorder.INSTRUCTION_WORD_CACHE_SIZE;
+        trace = record(changing, r -> {
+            for (int i = 0; i < 10; i++) {
+                r.instruction(0x00400000, (i % 3 == 0) ? ORI : ADDU);
+                r.instruction(alias, ADDU);
+                r.instruction(0x00400000, ADDU);
+                r.instruction(alias, ORI);
+            }
+        });
+        assertRoundTrip(changing, trace);
+    }
+
+    /*
+     * Fills the first buffer with records up to the given length, using three byte
+     * records to get there, then writes enough maximum length records to hand off
+     * several buffers.  They are all accesses of one instruction, which takes 6 bytes.
+     */
+    private static void fillFirstBufferTo(int length) throws Exception {
+        int initialLength = record(newRecording(), r -> {
+        }).length - TraceRecorder.MAGIC.length - 1;
+        int padding = length - initialLength - 6;
+        int small = 0;
+        while ((padding - 3 * small) % TraceRecorder.MAX_RECORD_LENGTH != 0) {
+            small++;
+        }
+        int smallRecords = small;
+        int large = (padding - 3 * small) / TraceRecorder.MAX_RECORD_LENGTH;
+        int more = 3 * TraceRecorder.BUFFER_SIZE / TraceRecorder.MAX_RECORD_LENGTH;
+        Recording recording = newRecording();
+        byte[] trace = record(recording, r -> {
+            r.instruction(0, ADDU);
+            // Address and value deltas of 0 take a byte each
+            for (int i = 0; i < smallRecords; i++) {
+                r.memory(false, 0, 0);
+            }
+            // Deltas of 2^30 and the most negative value take five bytes each
+            for (int i = 0; i < large + more; i++) {
+                r.memory(i % 2 == 0, (i % 2 == 0) ? 1 << 30 : 0, Integer.MIN_VALUE);
+            }
+        });
+        assertRoundTrip(recording, trace);
+        assertEquals(TraceRecorder.MAGIC.length + length + more * TraceRecorder.MAX_RECORD_LENGTH + 1, trace.length,
+                "trace length for a first buffer filled to " + length);
+    }
+
+    @Test
+    void handsOffBuffersAtRecordBoundaries() throws Exception {
+        int limit = TraceRecorder.BUFFER_SIZE - TraceRecorder.MAX_RECORD_LENGTH;
+        // Just below the limit, where a maximum length record fills the buffer exactly, and above
+        for (int length = limit - 2; length <= limit + 2; length++) {
+            fillFirstBufferTo(length);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ Copyright (c) 2021,  Francesco Ferlin
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject
+ to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ (MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+package mars.venus;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunOutputDocumentTest {
+    private static String text(javax.swing.text.Document document) throws BadLocationException {
+        return document.getText(0, document.getLength());
+    }
+
+    private static String written(RunOutputDocument document) throws IOException {
+        StringWriter out = new StringWriter();
+        document.write(out);
+        return out.toString();
+    }
+
+    // The line elements must cover the text, each ending just after its line break
+    private static void assertLinesMatchText(javax.swing.text.Document document) throws BadLocationException {
+        String text = text(document) + "\n"; // implied break at the end
+        Element root = document.getDefaultRootElement();
+        int start = 0;
+        for (int i = 0; i < root.getElementCount(); i++) {
+            Element line = root.getElement(i);
+            assertEquals(start, line.getStartOffset(), "start of line " + i);
+            start = text.indexOf('\n', start) + 1;
+            assertEquals(start, line.getEndOffset(), "end of line " + i);
+            assertEquals(i, root.getElementIndex(line.getStartOffset()), "index of line " + i);
+            assertEquals(i, root.getElementIndex(line.getEndOffset() - 1), "index of the end of line " + i);
+        }
+        assertEquals(text.length(), start);
+    }
+
+    private static String line(int number) {
+        return "line " + number + "\n";
+    }
+
+    @Test
+    void appendPastCapacityKeepsTheNewestLines() throws BadLocationException {
+        RunOutputDocument document = new RunOutputDocument(100, 30, 0);
+        StringBuilder all = new StringBuilder();
+        // Enough to wrap the character and line rings around many times
+        for (int i = 0; i < 5000; i++) {
+            document.append(line(i));
+            all.append(line(i));
+            assertTrue(document.getLength() <= 100);
+        }
+        String kept = text(document);
+        assertTrue(kept.length() >= 100 - 30, "kept " + kept.length());
+        assertTrue(all.toString().endsWith(kept));
+        assertTrue(kept.startsWith("line "), "cut in the middle of a line: " + kept);
+        assertLinesMatchText(document);
+
+        // Text longer than the document on its own keeps its end
+        String longText = "x".repeat(250) + "\n";
+        document.append(longText);
+        assertEquals(longText.substring(longText.length() - 100), text(document));
+        assertLinesMatchText(document);
+    }
+
+    @Test
+    void trimEndsAtALineBoundaryWhenItIsNear() throws BadLocationException {
+        RunOutputDocument document = new RunOutputDocument(20, 5, 0);
+        document.append("aaaaaaaaa\n");
+        document.append("bbbbbbbbb\n");
+        document.append("ccccccccc\n");
+        // 15 characters had to go, the second line ends 5 further
+        assertEquals("ccccccccc\n", text(document));
+        assertLinesMatchText(document);
+
+        // A line break further than 5 characters away is not waited for
+        document = new RunOutputDocument(20, 5, 0);
+        document.append("aaaa\n");
+        document.append("b".repeat(19) + "\n");
+        assertEquals("b".repeat(14) + "\n", text(document));
+        assertLinesMatchText(document);
+    }
+
+    @Test
+    void editsInTheMiddleMatchAPlainDocument() throws BadLocationException {
+        RunOutputDocument document = new RunOutputDocument(1000, 100, 0);
+        PlainDocument expected = new PlainDocument();
+        String[] edits = {"first line\nsecond", " line\nthird line\n", "fourth\n"};
+        for (String edit : edits) {
+            document.append(edit);
+            expected.insertString(expected.getLength(), edit, null);
+        }
+        // Typing input in the middle, with and without line breaks, then removing across lines
+        int[][] inserts = {{3, 0}, {15, 1}, {0, 2}, {20, 3}};
+        String[] typed = {"xyz", "one\ntwo\n", "\n", "tail"};
+        for (int[] insert : inserts) {
+            String string = typed[insert[1]];
+            document.insertString(insert[0], string, null);
+            expected.insertString(insert[0], string, null);
+            assertEquals(text(expected), text(document));
+            assertLinesMatchText(document);
+        }
+        int[][] removes = {{5, 10}, {0, 1}, {2, 1}, {text(expected).indexOf('\n'), 1}};
+        for (int[] remove : removes) {
+            document.remove(remove[0], remove[1]);
+            expected.remove(remove[0], remove[1]);
+            assertEquals(text(expected), text(document));
+            assertLinesMatchText(document);
+        }
+        assertEquals(expected.getDefaultRootElement().getElementCount(),
+                document.getDefaultRootElement().getElementCount());
+    }
+
+    @Test
+    void positionsMoveWithTheTextWhenTheStartIsCut() throws BadLocationException {
+        RunOutputDocument document = new RunOutputDocument(30, 10, 0);
+        document.append("first line to be cut\n");
+        document.append("kept\n");
+        Position inCutText = document.createPosition(6);
+        Position kept = document.createPosition(document.getLength() - 5);
+        Position end = document.createPosition(document.getLength());
+        assertEquals("kept\n", document.getText(kept.getOffset(), 5));
+
+        document.append("another line\n");
+        assertEquals("kept\nanother line\n", text(document));
+        assertEquals(0, kept.getOffset());
+        assertEquals("kept\n", document.getText(kept.getOffset(), 5));
+        assertEquals(0, inCutText.getOffset());
+        assertEquals(5, end.getOffset());
+
+        // An edit before a position moves it, one after does not
+        document.insertString(2, "--", null);
+        assertEquals(7, end.getOffset());
+        document.insertString(10, "++", null);
+        assertEquals(7, end.getOffset());
+    }
+
+    @Test
+    void writeGivesTheSpilledTextThenTheDocument() throws BadLocationException, IOException {
+        RunOutputDocument document = new RunOutputDocument(50, 10, 1_000_000);
+        StringBuilder all = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            document.append(line(i));
+            all.append(line(i));
+        }
+        assertTrue(document.getLength() <= 50);
+        assertEquals(all.toString(), written(document));
+        String longText = "y".repeat(120) + "\n";
+        document.append(longText);
+        all.append(longText);
+        assertEquals(all.toString(), written(document));
+
+        document.clear();
+        assertEquals("", text(document));
+        assertEquals("", written(document));
+        assertLinesMatchText(document);
+    }
+
+    @Test
+    void writeNotesTheTextThatWasNotSpilled() throws IOException {
+        RunOutputDocument document = new RunOutputDocument(20, 10, 10);
+        for (int i = 0; i < 10; i++) {
+            document.append("01234" + i + "\n");
+        }
+        // 70 characters were appended, 14 remain and the first 10 went to the temporary file
+        assertEquals("012340\n012\n"
+                + "[46 characters of output not kept]\n"
+                + "012348\n012349\n", written(document));
+    }
+
+    @Test
+    void emptyDocumentHasOneLine() throws BadLocationException {
+        RunOutputDocument document = new RunOutputDocument(10, 5, 0);
+        assertEquals(1, document.getDefaultRootElement().getElementCount());
+        assertLinesMatchText(document);
+        document.append("");
+        assertEquals(0, document.getLength());
+    }
+}